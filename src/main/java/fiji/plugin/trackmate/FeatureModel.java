@@ -25,7 +25,6 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 import org.jgrapht.graph.DefaultWeightedEdge;
 
@@ -57,16 +56,16 @@ public class FeatureModel
 	private final Map< String, Boolean > trackFeatureIsInt = new HashMap<>();
 
 	/**
-	 * Feature storage. We use a Map of Map as a 2D Map. The list maps each
-	 * track to its feature map. The feature map maps each feature to the double
-	 * value for the specified feature.
+	 * Feature storage for tracks. A table of track ID vs feature, with
+	 * primitive columns.
 	 */
-	Map< Integer, Map< String, Double > > trackFeatureValues = new ConcurrentHashMap<>();
+	private final FeatureTable< Integer > trackFeatureValues = new FeatureTable<>();
 
 	/**
-	 * Feature storage for edges.
+	 * Feature storage for edges. A table of edge vs feature, with primitive
+	 * columns, so that edge features can be written concurrently.
 	 */
-	private final ConcurrentHashMap< DefaultWeightedEdge, ConcurrentHashMap< String, Double > > edgeFeatureValues = new ConcurrentHashMap<>();
+	private final FeatureTable< DefaultWeightedEdge > edgeFeatureValues = new FeatureTable<>();
 
 	private final Collection< String > edgeFeatures = new LinkedHashSet<>();
 
@@ -144,23 +143,49 @@ public class FeatureModel
 	 * @param value
 	 *            the feature value
 	 */
-	public synchronized void putEdgeFeature( final DefaultWeightedEdge edge, final String feature, final Double value )
+	public void putEdgeFeature( final DefaultWeightedEdge edge, final String feature, final Double value )
 	{
-		ConcurrentHashMap< String, Double > map = edgeFeatureValues.get( edge );
-		if ( null == map )
-		{
-			map = new ConcurrentHashMap<>();
-			edgeFeatureValues.put( edge, map );
-		}
-		map.put( feature, value );
+		edgeFeatureValues.put( edge, feature, value.doubleValue() );
+	}
+
+	/**
+	 * Stores a numerical feature for an edge of this model, without boxing.
+	 * This method can be called concurrently from several threads.
+	 *
+	 * @param edge
+	 *            the edge whose features to update.
+	 * @param feature
+	 *            the feature.
+	 * @param value
+	 *            the feature value
+	 * @see #putEdgeFeature(DefaultWeightedEdge, String, Double)
+	 */
+	public void putEdgeFeature( final DefaultWeightedEdge edge, final String feature, final double value )
+	{
+		edgeFeatureValues.put( edge, feature, value );
+	}
+
+	/**
+	 * Stores the values of a numerical feature for several edges at once.
+	 * This method can be called concurrently from several threads.
+	 *
+	 * @param edges
+	 *            the edges whose features to update.
+	 * @param n
+	 *            how many edges to update, from the start of the arrays.
+	 * @param feature
+	 *            the feature.
+	 * @param values
+	 *            the feature values, in the same order as the edges.
+	 */
+	public void putEdgeFeatures( final DefaultWeightedEdge[] edges, final int n, final String feature, final double[] values )
+	{
+		edgeFeatureValues.put( edges, n, feature, values );
 	}
 
 	public Double getEdgeFeature( final DefaultWeightedEdge edge, final String featureName )
 	{
-		final ConcurrentHashMap< String, Double > map = edgeFeatureValues.get( edge );
-		if ( null == map )
-			return null;
-		return map.get( featureName );
+		return edgeFeatureValues.get( edge, featureName );
 	}
 
 	/**
@@ -173,10 +198,7 @@ public class FeatureModel
 	 */
 	public void removeEdgeFeature( final DefaultWeightedEdge edge, final String feature )
 	{
-		final ConcurrentHashMap< String, Double > map = edgeFeatureValues.get( edge );
-		if ( null == map )
-			return;
-		map.remove( feature );
+		edgeFeatureValues.remove( edge, feature );
 	}
 
 	/**
@@ -396,15 +418,26 @@ public class FeatureModel
 	 * @param value
 	 *            the feature value.
 	 */
-	public synchronized void putTrackFeature( final Integer trackID, final String feature, final Double value )
+	public void putTrackFeature( final Integer trackID, final String feature, final Double value )
 	{
-		Map< String, Double > trackFeatureMap = trackFeatureValues.get( trackID );
-		if ( null == trackFeatureMap )
-		{
-			trackFeatureMap = new HashMap<>( trackFeatures.size() );
-			trackFeatureValues.put( trackID, trackFeatureMap );
-		}
-		trackFeatureMap.put( feature, value );
+		trackFeatureValues.put( trackID, feature, value.doubleValue() );
+	}
+
+	/**
+	 * Stores a track numerical feature, without boxing. This method can be
+	 * called concurrently from several threads.
+	 *
+	 * @param trackID
+	 *            the ID of the track. It must be an existing track ID.
+	 * @param feature
+	 *            the feature.
+	 * @param value
+	 *            the feature value.
+	 * @see #putTrackFeature(Integer, String, Double)
+	 */
+	public void putTrackFeature( final Integer trackID, final String feature, final double value )
+	{
+		trackFeatureValues.put( trackID, feature, value );
 	}
 
 	/**
@@ -418,10 +451,7 @@ public class FeatureModel
 	 */
 	public void removeTrackFeature( final Integer trackID, final String feature )
 	{
-		final Map< String, Double > map = trackFeatureValues.get( trackID );
-		if ( null == map )
-			return;
-		map.remove( feature );
+		trackFeatureValues.remove( trackID, feature );
 	}
 
 	/**
@@ -436,8 +466,7 @@ public class FeatureModel
 	 */
 	public Double getTrackFeature( final Integer trackID, final String feature )
 	{
-		final Map< String, Double > valueMap = trackFeatureValues.get( trackID );
-		return valueMap == null ? null : valueMap.get( feature );
+		return trackFeatureValues.get( trackID, feature );
 	}
 
 	/**
@@ -499,6 +528,7 @@ public class FeatureModel
 	public void declareSpotFeatures( final Collection< String > features, final Map< String, String > featureNames, final Map< String, String > featureShortNames, final Map< String, Dimension > featureDimensions, final Map< String, Boolean > isIntFeature )
 	{
 		spotFeatures.addAll( features );
+		Spot.FEATURE_SLOTS.register( features );
 		for ( final String feature : features )
 		{
 
@@ -640,13 +670,13 @@ public class FeatureModel
 	 * STATIC UTILS
 	 */
 
-	private static final < K > void appendFeatureValues( final StringBuilder str, final Map< K, ? extends Map< String, Double > > values )
+	private static final < K > void appendFeatureValues( final StringBuilder str, final FeatureTable< K > values )
 	{
 		for ( final K key : values.keySet() )
 		{
 			final String header = "   - " + key.toString() + ":\n";
 			str.append( header );
-			final Map< String, Double > map = values.get( key );
+			final Map< String, Double > map = values.values( key );
 			for ( final String feature : map.keySet() )
 				str.append( "     - " + feature + " = " + map.get( feature ) + '\n' );
 		}
@@ -0,0 +1,123 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2010 - 2023 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns feature keys to contiguous integer slots, so that feature values can
+ * be stored in primitive arrays indexed by slot instead of maps indexed by
+ * feature name.
+ * <p>
+ * Slots are never released: a feature key keeps the same slot for the
+ * lifetime of this instance. Lookups are lock-free, registration of new keys
+ * is synchronized.
+ *
+ * @author Jean-Yves Tinevez
+ */
+public final class FeatureSlots
+{
+
+	private final ConcurrentHashMap< String, Integer > slots = new ConcurrentHashMap<>();
+
+	private volatile String[] keys = new String[ 0 ];
+
+	/**
+	 * Returns the slot of the specified feature key, registering it if it is
+	 * not known yet.
+	 *
+	 * @param key
+	 *            the feature key.
+	 * @return the slot of this key.
+	 */
+	public int slotOf( final String key )
+	{
+		final Integer slot = slots.get( key );
+		if ( null != slot )
+			return slot.intValue();
+
+		synchronized ( this )
+		{
+			final Integer other = slots.get( key );
+			if ( null != other )
+				return other.intValue();
+
+			final String[] newKeys = Arrays.copyOf( keys, keys.length + 1 );
+			final int newSlot = keys.length;
+			newKeys[ newSlot ] = key;
+			keys = newKeys;
+			slots.put( key, Integer.valueOf( newSlot ) );
+			return newSlot;
+		}
+	}
+
+	/**
+	 * Registers all the specified feature keys. Registering in one go the
+	 * features that are computed together makes them use contiguous slots.
+	 *
+	 * @param keys
+	 *            the feature keys.
+	 */
+	public void register( final Collection< String > keys )
+	{
+		for ( final String key : keys )
+			slotOf( key );
+	}
+
+	/**
+	 * Returns the slot of the specified feature key, or <code>-1</code> if it
+	 * is not registered. Does not register the key.
+	 *
+	 * @param key
+	 *            the feature key.
+	 * @return the slot of this key or <code>-1</code>.
+	 */
+	public int indexOf( final Object key )
+	{
+		final Integer slot = slots.get( key );
+		return ( null == slot ) ? -1 : slot.intValue();
+	}
+
+	/**
+	 * Returns the feature key registered at the specified slot.
+	 *
+	 * @param slot
+	 *            the slot.
+	 * @return the feature key.
+	 */
+	public String keyOf( final int slot )
+	{
+		return keys[ slot ];
+	}
+
+	/**
+	 * Returns the number of slots registered so far.
+	 *
+	 * @return the number of slots.
+	 */
+	public int size()
+	{
+		return keys.length;
+	}
+}
@@ -0,0 +1,289 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2010 - 2023 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Columnar storage for the numerical features of model objects (edges,
+ * tracks).
+ * <p>
+ * Each object is assigned a row index the first time a feature is stored for
+ * it, and each feature a column. Columns are primitive arrays, split in chunks
+ * of fixed size, so that values are not boxed and so that several threads can
+ * write concurrently without contending on a single lock. Writes to a value
+ * are atomic and visible to subsequent reads. Locks are only taken when a new
+ * column or a new chunk must be allocated.
+ * <p>
+ * Rows are never recycled: removing a feature value only clears it.
+ *
+ * @author Jean-Yves Tinevez
+ *
+ * @param <K>
+ *            the type of the objects whose features are stored.
+ */
+final class FeatureTable< K >
+{
+
+	private static final int CHUNK_BITS = 10;
+
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	/**
+	 * Marks the cells that hold no value. A NaN with a payload that arithmetic
+	 * operations do not produce.
+	 */
+	private static final long ABSENT = 0x7ffdeadbeef0abcdl;
+
+	private final FeatureSlots slots = new FeatureSlots();
+
+	private final ConcurrentHashMap< K, Integer > rows = new ConcurrentHashMap<>();
+
+	private final AtomicInteger nRows = new AtomicInteger();
+
+	private volatile Column[] columns = new Column[ 0 ];
+
+	/**
+	 * Stores the value of a feature for the specified object.
+	 *
+	 * @param key
+	 *            the object.
+	 * @param feature
+	 *            the feature.
+	 * @param value
+	 *            the value.
+	 */
+	public void put( final K key, final String feature, final double value )
+	{
+		column( slots.slotOf( feature ) ).set( rowOf( key ), value );
+	}
+
+	/**
+	 * Stores the values of a feature for several objects at once. The column
+	 * is resolved once for the whole batch.
+	 *
+	 * @param keys
+	 *            the objects.
+	 * @param n
+	 *            how many objects to store values for, from the start of
+	 *            the arrays.
+	 * @param feature
+	 *            the feature.
+	 * @param values
+	 *            the values, in the same order as the objects.
+	 */
+	public void put( final K[] keys, final int n, final String feature, final double[] values )
+	{
+		final Column column = column( slots.slotOf( feature ) );
+		for ( int i = 0; i < n; i++ )
+			column.set( rowOf( keys[ i ] ), values[ i ] );
+	}
+
+	/**
+	 * Returns the value of a feature for the specified object, or
+	 * <code>null</code> if it is not stored.
+	 *
+	 * @param key
+	 *            the object.
+	 * @param feature
+	 *            the feature.
+	 * @return the value or <code>null</code>.
+	 */
+	public Double get( final K key, final String feature )
+	{
+		final Integer row = rows.get( key );
+		if ( null == row )
+			return null;
+
+		final Column column = existingColumn( slots.indexOf( feature ) );
+		if ( null == column )
+			return null;
+
+		return column.get( row.intValue() );
+	}
+
+	/**
+	 * Clears the value of a feature for the specified object.
+	 *
+	 * @param key
+	 *            the object.
+	 * @param feature
+	 *            the feature.
+	 */
+	public void remove( final K key, final String feature )
+	{
+		final Integer row = rows.get( key );
+		if ( null == row )
+			return;
+
+		final Column column = existingColumn( slots.indexOf( feature ) );
+		if ( null == column )
+			return;
+
+		column.clear( row.intValue() );
+	}
+
+	/**
+	 * Returns the objects for which at least one feature value was stored.
+	 *
+	 * @return the objects.
+	 */
+	public Set< K > keySet()
+	{
+		return rows.keySet();
+	}
+
+	/**
+	 * Returns a new map with the feature values stored for the specified
+	 * object.
+	 *
+	 * @param key
+	 *            the object.
+	 * @return a new map of feature vs value.
+	 */
+	public Map< String, Double > values( final K key )
+	{
+		final Map< String, Double > map = new LinkedHashMap<>();
+		final Integer row = rows.get( key );
+		if ( null == row )
+			return map;
+
+		final Column[] cols = columns;
+		for ( int slot = 0; slot < cols.length; slot++ )
+		{
+			if ( null == cols[ slot ] )
+				continue;
+			final Double value = cols[ slot ].get( row.intValue() );
+			if ( null != value )
+				map.put( slots.keyOf( slot ), value );
+		}
+		return map;
+	}
+
+	private int rowOf( final K key )
+	{
+		final Integer row = rows.get( key );
+		if ( null != row )
+			return row.intValue();
+		return rows.computeIfAbsent( key, k -> Integer.valueOf( nRows.getAndIncrement() ) ).intValue();
+	}
+
+	private Column existingColumn( final int slot )
+	{
+		final Column[] cols = columns;
+		if ( slot < 0 || slot >= cols.length )
+			return null;
+		return cols[ slot ];
+	}
+
+	private Column column( final int slot )
+	{
+		final Column[] cols = columns;
+		if ( slot < cols.length && null != cols[ slot ] )
+			return cols[ slot ];
+		return newColumn( slot );
+	}
+
+	private synchronized Column newColumn( final int slot )
+	{
+		Column[] cols = columns;
+		if ( slot < cols.length && null != cols[ slot ] )
+			return cols[ slot ];
+
+		if ( slot >= cols.length )
+			cols = Arrays.copyOf( cols, Math.max( slot + 1, slots.size() ) );
+		cols[ slot ] = new Column();
+		columns = cols;
+		return cols[ slot ];
+	}
+
+	/**
+	 * The values of one feature, stored in chunks of {@link #CHUNK_SIZE}
+	 * rows.
+	 */
+	private static final class Column
+	{
+
+		private volatile AtomicLongArray[] chunks = new AtomicLongArray[ 0 ];
+
+		private void set( final int row, final double value )
+		{
+			long bits = Double.doubleToRawLongBits( value );
+			if ( bits == ABSENT )
+				bits = Double.doubleToLongBits( value );
+			chunk( row >>> CHUNK_BITS ).set( row & CHUNK_MASK, bits );
+		}
+
+		private void clear( final int row )
+		{
+			final AtomicLongArray[] c = chunks;
+			final int index = row >>> CHUNK_BITS;
+			if ( index < c.length && null != c[ index ] )
+				c[ index ].set( row & CHUNK_MASK, ABSENT );
+		}
+
+		private Double get( final int row )
+		{
+			final AtomicLongArray[] c = chunks;
+			final int index = row >>> CHUNK_BITS;
+			if ( index >= c.length || null == c[ index ] )
+				return null;
+
+			final long bits = c[ index ].get( row & CHUNK_MASK );
+			if ( bits == ABSENT )
+				return null;
+			return Double.valueOf( Double.longBitsToDouble( bits ) );
+		}
+
+		private AtomicLongArray chunk( final int index )
+		{
+			final AtomicLongArray[] c = chunks;
+			if ( index < c.length && null != c[ index ] )
+				return c[ index ];
+			return newChunk( index );
+		}
+
+		private synchronized AtomicLongArray newChunk( final int index )
+		{
+			AtomicLongArray[] c = chunks;
+			if ( index < c.length && null != c[ index ] )
+				return c[ index ];
+
+			if ( index >= c.length )
+				c = Arrays.copyOf( c, Math.max( index + 1, 2 * c.length ) );
+			final AtomicLongArray chunk = new AtomicLongArray( CHUNK_SIZE );
+			for ( int i = 0; i < CHUNK_SIZE; i++ )
+				chunk.lazySet( i, ABSENT );
+			c[ index ] = chunk;
+			chunks = c;
+			return chunk;
+		}
+	}
+}
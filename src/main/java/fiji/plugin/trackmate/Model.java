@@ -627,6 +627,10 @@ public class Model
 	{
 		spotsUpdated.add( spotToUpdate ); // Enlist for feature update when
 											// transaction is marked as finished
+		// Its position or radius might have changed.
+		final Double frame = spotToUpdate.getFeature( Spot.FRAME );
+		if ( null != frame )
+			spots.invalidateSpatialIndex( frame.intValue() );
 		final Set< DefaultWeightedEdge > touchingEdges = trackModel.edgesOf( spotToUpdate );
 		if ( null != touchingEdges )
 		{
@@ -23,13 +23,21 @@ package fiji.plugin.trackmate;
 
 import static fiji.plugin.trackmate.SpotCollection.VISIBILITY;
 
+import java.lang.ref.WeakReference;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 import fiji.plugin.trackmate.util.AlphanumComparator;
 import net.imglib2.AbstractEuclideanSpace;
@@ -64,8 +72,46 @@ public class Spot extends AbstractEuclideanSpace implements RealLocalizable, Com
 
 	public static AtomicInteger IDcounter = new AtomicInteger( -1 );
 
-	/** Store the individual features, and their values. */
-	private final ConcurrentHashMap< String, Double > features = new ConcurrentHashMap<>();
+	/**
+	 * The slots of the spot features, shared by all spots. Feature names are
+	 * interned once in this instance, so that each spot only has to store an
+	 * array of values indexed by slot.
+	 */
+	public static final FeatureSlots FEATURE_SLOTS = new FeatureSlots();
+
+	/** The slots of the {@link #POSITION_FEATURES}. */
+	private static final int[] POSITION_SLOTS = new int[] {
+			FEATURE_SLOTS.slotOf( Spot.POSITION_X ),
+			FEATURE_SLOTS.slotOf( Spot.POSITION_Y ),
+			FEATURE_SLOTS.slotOf( Spot.POSITION_Z ) };
+
+	/**
+	 * Marks the slots that hold no value. It is a NaN with a payload that
+	 * arithmetic operations do not produce, so it does not clash with features
+	 * that are legitimately NaN.
+	 */
+	private static final long ABSENT_BITS = 0x7ffdeadbeef0abcdl;
+
+	private static final double ABSENT = Double.longBitsToDouble( ABSENT_BITS );
+
+	private static final double[] NO_VALUES = new double[ 0 ];
+
+	@SuppressWarnings( "unchecked" )
+	private static final WeakReference< LongAdder >[] NO_COUNTERS = new WeakReference[ 0 ];
+
+	/**
+	 * Store the individual feature values, indexed by their slot in
+	 * {@link #FEATURE_SLOTS}. Written under lock, read without.
+	 */
+	private volatile double[] values = NO_VALUES;
+
+	/**
+	 * The modification counters of the collections this spot belongs to,
+	 * incremented on every feature write. They are weakly referenced so that a
+	 * collection dropped without being cleared does not stay attached to its
+	 * spots. Guarded by this.
+	 */
+	private WeakReference< LongAdder >[] revisionCounters = NO_COUNTERS;
 
 	/** A user-supplied name for this spot. */
 	private String name;
@@ -306,7 +352,8 @@ public class Spot extends AbstractEuclideanSpace implements RealLocalizable, Com
 		s.append( "Position: " + Util.printCoordinates( coordinates ) + "\n" );
 
 		// Feature list
-		if ( null == features || features.size() < 1 )
+		final Map< String, Double > features = getFeatures();
+		if ( features.size() < 1 )
 			s.append( "No features calculated\n" );
 		else
 		{
@@ -331,14 +378,14 @@ public class Spot extends AbstractEuclideanSpace implements RealLocalizable, Com
 	 */
 
 	/**
-	 * Exposes the storage map of features for this spot. Altering the returned
-	 * map will alter the spot.
+	 * Exposes the features of this spot as a map. The map is a view backed by
+	 * the spot feature storage: altering the returned map will alter the spot.
 	 *
 	 * @return a map of {@link String}s to {@link Double}s.
 	 */
 	public Map< String, Double > getFeatures()
 	{
-		return features;
+		return new FeatureMap();
 	}
 
 	/**
@@ -351,7 +398,15 @@ public class Spot extends AbstractEuclideanSpace implements RealLocalizable, Com
 	 */
 	public Double getFeature( final String feature )
 	{
-		return features.get( feature );
+		final int slot = FEATURE_SLOTS.indexOf( feature );
+		if ( slot < 0 )
+			return null;
+
+		final double[] v = values;
+		if ( slot >= v.length || isAbsent( v[ slot ] ) )
+			return null;
+
+		return Double.valueOf( v[ slot ] );
 	}
 
 	/**
@@ -365,7 +420,88 @@ public class Spot extends AbstractEuclideanSpace implements RealLocalizable, Com
 	 */
 	public void putFeature( final String feature, final Double value )
 	{
-		features.put( feature, value );
+		putValue( FEATURE_SLOTS.slotOf( feature ), value.doubleValue() );
+	}
+
+	private synchronized void putValue( final int slot, final double value )
+	{
+		double[] v = values;
+		if ( slot >= v.length )
+		{
+			// Grow to hold all the features registered so far.
+			final int newLength = Math.max( slot + 1, FEATURE_SLOTS.size() );
+			v = Arrays.copyOf( v, newLength );
+			Arrays.fill( v, values.length, newLength, ABSENT );
+		}
+		v[ slot ] = isAbsent( value ) ? Double.NaN : value;
+		values = v;
+		incrementRevisionCounters();
+	}
+
+	private synchronized Double removeValue( final int slot )
+	{
+		final double[] v = values;
+		if ( slot < 0 || slot >= v.length || isAbsent( v[ slot ] ) )
+			return null;
+
+		final Double previous = Double.valueOf( v[ slot ] );
+		v[ slot ] = ABSENT;
+		values = v;
+		incrementRevisionCounters();
+		return previous;
+	}
+
+	private void incrementRevisionCounters()
+	{
+		boolean stale = false;
+		for ( final WeakReference< LongAdder > ref : revisionCounters )
+		{
+			final LongAdder counter = ref.get();
+			if ( counter == null )
+				stale = true;
+			else
+				counter.increment();
+		}
+		if ( stale )
+			removeRevisionCounter( null );
+	}
+
+	/**
+	 * Registers a modification counter to increment on every feature write of
+	 * this spot. Used by the {@link SpotCollection}s this spot belongs to.
+	 */
+	synchronized void addRevisionCounter( final LongAdder counter )
+	{
+		final WeakReference< LongAdder >[] c = revisionCounters;
+		for ( final WeakReference< LongAdder > ref : c )
+			if ( ref.get() == counter )
+				return;
+		final WeakReference< LongAdder >[] nc = Arrays.copyOf( c, c.length + 1 );
+		nc[ c.length ] = new WeakReference<>( counter );
+		revisionCounters = nc;
+	}
+
+	/**
+	 * Unregisters a modification counter registered with
+	 * {@link #addRevisionCounter(LongAdder)}, as well as the counters that were
+	 * garbage-collected.
+	 */
+	synchronized void removeRevisionCounter( final LongAdder counter )
+	{
+		final WeakReference< LongAdder >[] c = revisionCounters;
+		int n = 0;
+		for ( final WeakReference< LongAdder > ref : c )
+		{
+			final LongAdder other = ref.get();
+			if ( other != null && other != counter )
+				c[ n++ ] = ref;
+		}
+		revisionCounters = ( n == 0 ) ? NO_COUNTERS : Arrays.copyOf( c, n );
+	}
+
+	private static final boolean isAbsent( final double value )
+	{
+		return Double.doubleToRawLongBits( value ) == ABSENT_BITS;
 	}
 
 	/**
@@ -397,7 +533,7 @@ public class Spot extends AbstractEuclideanSpace implements RealLocalizable, Com
 	 */
 	public double diffTo( final Spot s, final String feature )
 	{
-		final double f1 = features.get( feature ).doubleValue();
+		final double f1 = getFeature( feature ).doubleValue();
 		final double f2 = s.getFeature( feature ).doubleValue();
 		return f1 - f2;
 	}
@@ -425,7 +561,7 @@ public class Spot extends AbstractEuclideanSpace implements RealLocalizable, Com
 	 */
 	public double normalizeDiffTo( final Spot s, final String feature )
 	{
-		final double a = features.get( feature ).doubleValue();
+		final double a = getFeature( feature ).doubleValue();
 		final double b = s.getFeature( feature ).doubleValue();
 		if ( a == -b )
 			return 0d;
@@ -576,9 +712,140 @@ public class Spot extends AbstractEuclideanSpace implements RealLocalizable, Com
 	@Override
 	public double getDoublePosition( final int d )
 	{
+		final int slot = POSITION_SLOTS[ d ];
+		final double[] v = values;
+		if ( slot < v.length && !isAbsent( v[ slot ] ) )
+			return v[ slot ];
+
+		// Will throw a NPE, as it used to.
 		return getFeature( POSITION_FEATURES[ d ] );
 	}
 
+	/**
+	 * A {@link Map} view over the feature storage of this spot.
+	 */
+	private final class FeatureMap extends AbstractMap< String, Double >
+	{
+
+		@Override
+		public Double get( final Object key )
+		{
+			if ( !( key instanceof String ) )
+				return null;
+			return getFeature( ( String ) key );
+		}
+
+		@Override
+		public boolean containsKey( final Object key )
+		{
+			return get( key ) != null;
+		}
+
+		@Override
+		public Double put( final String key, final Double value )
+		{
+			final Double previous = getFeature( key );
+			putFeature( key, value );
+			return previous;
+		}
+
+		@Override
+		public Double remove( final Object key )
+		{
+			if ( !( key instanceof String ) )
+				return null;
+			return removeValue( FEATURE_SLOTS.indexOf( key ) );
+		}
+
+		@Override
+		public int size()
+		{
+			int size = 0;
+			for ( final double value : values )
+				if ( !isAbsent( value ) )
+					size++;
+			return size;
+		}
+
+		@Override
+		public Set< Entry< String, Double > > entrySet()
+		{
+			return new AbstractSet< Entry< String, Double > >()
+			{
+
+				@Override
+				public Iterator< Entry< String, Double > > iterator()
+				{
+					return new FeatureIterator();
+				}
+
+				@Override
+				public int size()
+				{
+					return FeatureMap.this.size();
+				}
+			};
+		}
+	}
+
+	/**
+	 * Iterates over the slots that hold a value, as they were when the
+	 * iterator was created.
+	 */
+	private final class FeatureIterator implements Iterator< Entry< String, Double > >
+	{
+
+		private final double[] v = values;
+
+		private int next = advance( 0 );
+
+		private int last = -1;
+
+		private int advance( int slot )
+		{
+			while ( slot < v.length && isAbsent( v[ slot ] ) )
+				slot++;
+			return slot;
+		}
+
+		@Override
+		public boolean hasNext()
+		{
+			return next < v.length;
+		}
+
+		@Override
+		public Entry< String, Double > next()
+		{
+			if ( !hasNext() )
+				throw new NoSuchElementException();
+
+			last = next;
+			next = advance( next + 1 );
+			final int slot = last;
+			return new AbstractMap.SimpleEntry< String, Double >( FEATURE_SLOTS.keyOf( slot ), Double.valueOf( v[ slot ] ) )
+			{
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				public Double setValue( final Double value )
+				{
+					putValue( slot, value.doubleValue() );
+					return super.setValue( value );
+				}
+			};
+		}
+
+		@Override
+		public void remove()
+		{
+			if ( last < 0 )
+				throw new IllegalStateException();
+			removeValue( last );
+			last = -1;
+		}
+	}
+
 	/*
 	 * STATIC UTILITY
 	 */
@@ -22,20 +22,29 @@
 package fiji.plugin.trackmate;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.NavigableSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentSkipListMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
 
 import fiji.plugin.trackmate.features.FeatureFilter;
-import fiji.plugin.trackmate.util.Threads;
+import fiji.plugin.trackmate.util.TrackMateExecutor;
+import net.imglib2.KDTree;
+import net.imglib2.RealLocalizable;
 import net.imglib2.algorithm.MultiThreaded;
+import net.imglib2.neighborsearch.KNearestNeighborSearchOnKDTree;
+import net.imglib2.neighborsearch.RadiusNeighborSearchOnKDTree;
 
 /**
  * A utility class that wrap the {@link java.util.SortedMap} we use to store the
@@ -60,19 +69,46 @@ public class SpotCollection implements MultiThreaded
 	public static final String VISIBILITY = "VISIBILITY";
 
 	/**
-	 * Time units for filtering and cropping operation timeouts. Filtering
-	 * should not take more than 1 minute.
+	 * Minimal number of spots processed by one task when work is split over
+	 * several threads.
 	 */
-	private static final TimeUnit TIME_OUT_UNITS = TimeUnit.MINUTES;
+	private static final int MIN_CHUNK_SIZE = 10000;
+
+	/** The frame by frame list of spot this object wrap. */
+	private ConcurrentSkipListMap< Integer, Set< Spot > > content = new ConcurrentSkipListMap<>();
+
+	/** Index of the spots of this collection by their ID. */
+	private final ConcurrentHashMap< Integer, Spot > idIndex = new ConcurrentHashMap<>();
 
 	/**
-	 * Time for filtering and cropping operation timeouts. Filtering should not
-	 * take more than 1 minute.
+	 * Spatial index of the spots of each frame. Built lazily, and discarded
+	 * when the content of a frame changes.
 	 */
-	private static final long TIME_OUT_DELAY = 1;
+	private final ConcurrentHashMap< Integer, FrameSpatialIndex > spatialIndices = new ConcurrentHashMap<>();
 
-	/** The frame by frame list of spot this object wrap. */
-	private ConcurrentSkipListMap< Integer, Set< Spot > > content = new ConcurrentSkipListMap<>();
+	/** Guards the filter index. */
+	private final Object filterLock = new Object();
+
+	/**
+	 * The state of the last filtering operation, reused by the next one if
+	 * still valid. May be <code>null</code>.
+	 */
+	private FilterIndex filterIndex;
+
+	/**
+	 * Incremented when spots are added or removed, and, once
+	 * {@link #featureRevision()} has been called, by the spots of this
+	 * collection when one of their features is written.
+	 */
+	private final LongAdder revision = new LongAdder();
+
+	/**
+	 * Whether the spots of this collection report their feature writes to
+	 * {@link #revision}. Switched on by the first call to
+	 * {@link #featureRevision()}, so that transient collections never attach
+	 * to their spots.
+	 */
+	private volatile boolean tracking;
 
 	private int numThreads;
 
@@ -104,15 +140,68 @@ public class SpotCollection implements MultiThreaded
 	 */
 	public Spot search( final int ID )
 	{
+		final Spot spot = idIndex.get( Integer.valueOf( ID ) );
+		if ( null == spot )
+			return null;
+
 		/*
-		 * Having a map id -> spot would be better, but we don't have a big need
-		 * for this.
+		 * Frames can be removed through the key set view without us knowing.
+		 * Check the spot is still there.
 		 */
-		for ( final Spot spot : iterable( false ) )
-			if ( spot.ID() == ID )
-				return spot;
+		final Double frame = spot.getFeature( Spot.FRAME );
+		final Set< Spot > spots = ( null == frame ) ? null : content.get( Integer.valueOf( frame.intValue() ) );
+		if ( null == spots || !spots.contains( spot ) )
+		{
+			idIndex.remove( Integer.valueOf( ID ), spot );
+			return null;
+		}
+		return spot;
+	}
 
-		return null;
+	/**
+	 * Returns a number that changes every time a spot is added to or removed
+	 * from this collection, or a feature of one of its spots is modified.
+	 * Caches built over the spots of this collection can compare it to the
+	 * value they read <b>before</b> reading the spot features, to know whether
+	 * they are stale.
+	 * <p>
+	 * Spots only report their feature writes to collections on which this
+	 * method has been called at least once, so that temporary collections do
+	 * not slow down feature writes.
+	 *
+	 * @return the current revision of this collection.
+	 */
+	public long featureRevision()
+	{
+		if ( !tracking )
+			startTracking();
+		return revision.sum();
+	}
+
+	private void startTracking()
+	{
+		synchronized ( revision )
+		{
+			if ( tracking )
+				return;
+			for ( final Set< Spot > spots : content.values() )
+				for ( final Spot spot : spots )
+					spot.addRevisionCounter( revision );
+			tracking = true;
+			revision.increment();
+		}
+	}
+
+	private void attach( final Spot spot )
+	{
+		if ( tracking )
+			spot.addRevisionCounter( revision );
+	}
+
+	private void detach( final Spot spot )
+	{
+		if ( tracking )
+			spot.removeRevisionCounter( revision );
 	}
 
 	@Override
@@ -152,6 +241,10 @@ public class SpotCollection implements MultiThreaded
 			content.put( frame, spots );
 		}
 		spots.add( spot );
+		attach( spot );
+		revision.increment();
+		idIndex.put( Integer.valueOf( spot.ID() ), spot );
+		spatialIndices.remove( frame );
 		spot.putFeature( Spot.FRAME, Double.valueOf( frame ) );
 		spot.putFeature( VISIBILITY, ONE );
 	}
@@ -174,7 +267,14 @@ public class SpotCollection implements MultiThreaded
 		final Set< Spot > spots = content.get( frame );
 		if ( null == spots )
 			return false;
-		return spots.remove( spot );
+		if ( !spots.remove( spot ) )
+			return false;
+
+		detach( spot );
+		revision.increment();
+		idIndex.remove( Integer.valueOf( spot.ID() ), spot );
+		spatialIndices.remove( frame );
+		return true;
 	}
 
 	/**
@@ -186,36 +286,14 @@ public class SpotCollection implements MultiThreaded
 	public void setVisible( final boolean visible )
 	{
 		final Double val = visible ? ONE : ZERO;
-		final Collection< Integer > frames = content.keySet();
-
-		final ExecutorService executors = Threads.newFixedThreadPool( numThreads );
-		for ( final Integer frame : frames )
+		final Spot[] spots = toArray();
+		synchronized ( filterLock )
 		{
-
-			final Runnable command = new Runnable()
-			{
-				@Override
-				public void run()
-				{
-
-					final Set< Spot > spots = content.get( frame );
-					for ( final Spot spot : spots )
-						spot.putFeature( VISIBILITY, val );
-				}
-			};
-			executors.execute( command );
-		}
-
-		executors.shutdown();
-		try
-		{
-			final boolean ok = executors.awaitTermination( TIME_OUT_DELAY, TIME_OUT_UNITS );
-			if ( !ok )
-				System.err.println( "[SpotCollection.setVisible()] Timeout of " + TIME_OUT_DELAY + " " + TIME_OUT_UNITS + " reached." );
-		}
-		catch ( final InterruptedException e )
-		{
-			e.printStackTrace();
+			filterIndex = null;
+			parallelFor( spots.length, ( from, to ) -> {
+				for ( int i = from; i < to; i++ )
+					spots[ i ].putFeature( VISIBILITY, val );
+			} );
 		}
 	}
 
@@ -226,57 +304,11 @@ public class SpotCollection implements MultiThreaded
 	 *
 	 * @param featurefilter
 	 *            the filter to use.
+	 * @see #filter(Collection)
 	 */
 	public final void filter( final FeatureFilter featurefilter )
 	{
-
-		final Collection< Integer > frames = content.keySet();
-		final ExecutorService executors = Threads.newFixedThreadPool( numThreads );
-
-		for ( final Integer frame : frames )
-		{
-
-			final Runnable command = new Runnable()
-			{
-				@Override
-				public void run()
-				{
-					final Set< Spot > spots = content.get( frame );
-					final double tval = featurefilter.value;
-
-					if ( featurefilter.isAbove )
-					{
-						for ( final Spot spot : spots )
-						{
-							final Double val = spot.getFeature( featurefilter.feature );
-							spot.putFeature( VISIBILITY, val.compareTo( tval ) < 0 ? ZERO : ONE );
-						}
-
-					}
-					else
-					{
-						for ( final Spot spot : spots )
-						{
-							final Double val = spot.getFeature( featurefilter.feature );
-							spot.putFeature( VISIBILITY, val.compareTo( tval ) > 0 ? ZERO : ONE );
-						}
-					}
-				}
-			};
-			executors.execute( command );
-		}
-
-		executors.shutdown();
-		try
-		{
-			final boolean ok = executors.awaitTermination( TIME_OUT_DELAY, TIME_OUT_UNITS );
-			if ( !ok )
-				System.err.println( "[SpotCollection.filter()] Timeout of " + TIME_OUT_DELAY + " " + TIME_OUT_UNITS + " reached while filtering." );
-		}
-		catch ( final InterruptedException e )
-		{
-			e.printStackTrace();
-		}
+		filter( Collections.singletonList( featurefilter ) );
 	}
 
 	/**
@@ -284,60 +316,64 @@ public class SpotCollection implements MultiThreaded
 	 * {@link FeatureFilter} collection. Spots that are filtered out are marked
 	 * as invisible, and visible otherwise. To be marked as visible, a spot must
 	 * pass <b>all</b> of the specified filters (AND chaining).
+	 * <p>
+	 * The spots are indexed by their sorted feature values, and the index is
+	 * kept between calls. As long as the content of this collection and the
+	 * spot features do not change, moving the threshold of a filter only
+	 * visits the spots with a value between the old and the new threshold, and
+	 * only the spots which visibility changes are written to.
 	 *
 	 * @param filters
 	 *            the filter collection to use.
 	 */
 	public final void filter( final Collection< FeatureFilter > filters )
 	{
-
-		final Collection< Integer > frames = content.keySet();
-		final ExecutorService executors = Threads.newFixedThreadPool( numThreads );
-
-		for ( final Integer frame : frames )
+		synchronized ( filterLock )
 		{
-			final Runnable command = new Runnable()
+			if ( null == filterIndex || !filterIndex.isValid( getNSpots( false ) ) )
 			{
-				@Override
-				public void run()
-				{
-					final Set< Spot > spots = content.get( frame );
-					for ( final Spot spot : spots )
-					{
-
-						boolean shouldNotBeVisible = false;
-						for ( final FeatureFilter featureFilter : filters )
-						{
-
-							final Double val = spot.getFeature( featureFilter.feature );
-							final double tval = featureFilter.value;
-							final boolean isAbove = featureFilter.isAbove;
-
-							if ( null == val || isAbove && val.compareTo( tval ) < 0 || !isAbove && val.compareTo( tval ) > 0 )
-							{
-								shouldNotBeVisible = true;
-								break;
-							}
-						} // loop over filters
-						spot.putFeature( VISIBILITY, shouldNotBeVisible ? ZERO : ONE );
-
-					} // loop over spots
-				}
-			};
-			executors.execute( command );
+				filterIndex = new FilterIndex( toArray() );
+				filterIndex.rebuild( filters );
+			}
+			else
+			{
+				filterIndex.update( filters );
+			}
 		}
+	}
 
-		executors.shutdown();
-		try
+	/**
+	 * Returns all the spots of this collection in an array, frame by frame.
+	 */
+	private Spot[] toArray()
+	{
+		final List< Spot > spots = new ArrayList<>( getNSpots( false ) );
+		for ( final Set< Spot > fc : content.values() )
+			spots.addAll( fc );
+		return spots.toArray( new Spot[ spots.size() ] );
+	}
+
+	/**
+	 * Runs the specified task over the range <code>[0, n)</code>, split in at
+	 * most {@link #getNumThreads()} chunks executed on the shared pool.
+	 */
+	private void parallelFor( final int n, final RangeTask task )
+	{
+		final int nChunks = Math.max( 1, Math.min( numThreads, n / MIN_CHUNK_SIZE ) );
+		if ( nChunks == 1 )
 		{
-			final boolean ok = executors.awaitTermination( TIME_OUT_DELAY, TIME_OUT_UNITS );
-			if ( !ok )
-				System.err.println( "[SpotCollection.filter()] Timeout of " + TIME_OUT_DELAY + " " + TIME_OUT_UNITS + " reached while filtering." );
+			task.run( 0, n );
+			return;
 		}
-		catch ( final InterruptedException e )
+
+		final CompletableFuture< ? >[] futures = new CompletableFuture< ? >[ nChunks ];
+		for ( int c = 0; c < nChunks; c++ )
 		{
-			e.printStackTrace();
+			final int from = ( int ) ( ( long ) n * c / nChunks );
+			final int to = ( int ) ( ( long ) n * ( c + 1 ) / nChunks );
+			futures[ c ] = CompletableFuture.runAsync( () -> task.run( from, to ), TrackMateExecutor.pool() );
 		}
+		CompletableFuture.allOf( futures ).join();
 	}
 
 	/**
@@ -357,25 +393,8 @@ public class SpotCollection implements MultiThreaded
 	 */
 	public final Spot getClosestSpot( final Spot location, final int frame, final boolean visibleSpotsOnly )
 	{
-		final Set< Spot > spots = content.get( frame );
-		if ( null == spots )
-			return null;
-		double minDist = Double.POSITIVE_INFINITY;
-		Spot target = null;
-		for ( final Spot spot : spots )
-		{
-
-			if ( visibleSpotsOnly && !isVisible( spot ) )
-				continue;
-
-			final double d2 = spot.squareDistanceTo( location );
-			if ( d2 < minDist )
-			{
-				minDist = d2;
-				target = spot;
-			}
-		}
-		return target;
+		final List< Spot > closest = getNClosestSpots( location, frame, 1, visibleSpotsOnly );
+		return closest.isEmpty() ? null : closest.get( 0 );
 	}
 
 	/**
@@ -397,26 +416,153 @@ public class SpotCollection implements MultiThreaded
 	 */
 	public final Spot getSpotAt( final Spot location, final int frame, final boolean visibleSpotsOnly )
 	{
-		final Set< Spot > spots = content.get( frame );
-		if ( null == spots || spots.isEmpty() )
+		final FrameSpatialIndex index = getSpatialIndex( frame );
+		if ( null == index )
 			return null;
 
-		double minDist2 = Double.POSITIVE_INFINITY;
-		Spot bestSpot = null;
-		for ( final Spot spot : spots )
+		// No spot can contain the location if it is further than the largest
+		// radius.
+		final RadiusNeighborSearchOnKDTree< Spot > search = new RadiusNeighborSearchOnKDTree<>( index.tree );
+		search.search( location, index.maxRadius, true );
+		for ( int i = 0; i < search.numNeighbors(); i++ )
 		{
+			final Spot spot = search.getSampler( i ).get();
 			if ( visibleSpotsOnly && !isVisible( spot ) )
 				continue;
 
 			final double d2 = spot.squareDistanceTo( location );
 			final double radius = spot.getFeature( Spot.RADIUS );
-			if ( d2 < Math.min( minDist2, radius * radius ) )
+			if ( d2 < radius * radius )
+				return spot;
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the <code>n</code> closest {@link Spot}s to the given location,
+	 * contained in the frame <code>frame</code>, sorted by increasing
+	 * distance. The list returned can contain less than <code>n</code> spots
+	 * if the frame does not contain enough spots.
+	 *
+	 * @param location
+	 *            the location to search for.
+	 * @param frame
+	 *            the frame to inspect.
+	 * @param n
+	 *            the number of spots to return.
+	 * @param visibleSpotsOnly
+	 *            if true, will only search though visible spots. If false, will
+	 *            search through all spots.
+	 * @return a new list of spots, member of this collection.
+	 */
+	public final List< Spot > getNClosestSpots( final RealLocalizable location, final int frame, final int n, final boolean visibleSpotsOnly )
+	{
+		final FrameSpatialIndex index = getSpatialIndex( frame );
+		if ( null == index || n < 1 )
+			return new ArrayList<>( 0 );
+
+		/*
+		 * The index contains invisible spots as well. If we must skip them, we
+		 * widen the search until we have enough visible ones.
+		 */
+		int k = Math.min( n, index.size );
+		while ( true )
+		{
+			final KNearestNeighborSearchOnKDTree< Spot > search = new KNearestNeighborSearchOnKDTree<>( index.tree, k );
+			search.search( location );
+			final List< Spot > closest = new ArrayList<>( n );
+			for ( int i = 0; i < k && closest.size() < n; i++ )
 			{
-				minDist2 = d2;
-				bestSpot = spot;
+				final Spot spot = search.getSampler( i ).get();
+				if ( visibleSpotsOnly && !isVisible( spot ) )
+					continue;
+				closest.add( spot );
 			}
+			if ( closest.size() == n || k == index.size )
+				return closest;
+
+			k = ( int ) Math.min( 2l * k, index.size );
 		}
-		return bestSpot;
+	}
+
+	/**
+	 * Returns the {@link Spot}s contained in the frame <code>frame</code>
+	 * whose center is within the specified distance of the given location,
+	 * sorted by increasing distance.
+	 *
+	 * @param location
+	 *            the location to search for.
+	 * @param frame
+	 *            the frame to inspect.
+	 * @param radius
+	 *            the search radius.
+	 * @param visibleSpotsOnly
+	 *            if true, will only search though visible spots. If false, will
+	 *            search through all spots.
+	 * @return a new list of spots, member of this collection.
+	 */
+	public final List< Spot > getSpotsWithin( final RealLocalizable location, final int frame, final double radius, final boolean visibleSpotsOnly )
+	{
+		final FrameSpatialIndex index = getSpatialIndex( frame );
+		if ( null == index )
+			return new ArrayList<>( 0 );
+
+		final RadiusNeighborSearchOnKDTree< Spot > search = new RadiusNeighborSearchOnKDTree<>( index.tree );
+		search.search( location, radius, true );
+		final List< Spot > spots = new ArrayList<>( search.numNeighbors() );
+		for ( int i = 0; i < search.numNeighbors(); i++ )
+		{
+			final Spot spot = search.getSampler( i ).get();
+			if ( visibleSpotsOnly && !isVisible( spot ) )
+				continue;
+			spots.add( spot );
+		}
+		return spots;
+	}
+
+	/**
+	 * Notifies this collection that the position or the radius of some spots
+	 * in the specified frame changed, so that the spatial index used by
+	 * {@link #getClosestSpot(Spot, int, boolean)},
+	 * {@link #getSpotAt(Spot, int, boolean)},
+	 * {@link #getNClosestSpots(RealLocalizable, int, int, boolean)} and
+	 * {@link #getSpotsWithin(RealLocalizable, int, double, boolean)} is
+	 * rebuilt. Adding and removing spots through this collection, and
+	 * changing spot features, are detected through the
+	 * {@link #featureRevision()} and do not require calling this method.
+	 *
+	 * @param frame
+	 *            the frame in which spots were modified.
+	 */
+	public void invalidateSpatialIndex( final int frame )
+	{
+		spatialIndices.remove( Integer.valueOf( frame ) );
+	}
+
+	/**
+	 * Returns the spatial index for the specified frame, building it if
+	 * required. Returns <code>null</code> if the frame is empty. The index is
+	 * rebuilt when the frame content or any spot feature changed since it was
+	 * built, as told by the {@link #featureRevision()}.
+	 */
+	private FrameSpatialIndex getSpatialIndex( final int frame )
+	{
+		final Integer key = Integer.valueOf( frame );
+		final Set< Spot > spots = content.get( key );
+		if ( null == spots || spots.isEmpty() )
+		{
+			spatialIndices.remove( key );
+			return null;
+		}
+
+		final long revision = featureRevision();
+		FrameSpatialIndex index = spatialIndices.get( key );
+		if ( null == index || !index.isFor( spots, revision ) )
+		{
+			index = new FrameSpatialIndex( spots, revision );
+			spatialIndices.put( key, index );
+		}
+		return index;
 	}
 
 	/**
@@ -579,10 +725,24 @@ public class SpotCollection implements MultiThreaded
 		final Set< Spot > value = new HashSet<>( spots );
 		for ( final Spot spot : value )
 		{
+			attach( spot );
 			spot.putFeature( Spot.FRAME, Double.valueOf( frame ) );
 			spot.putFeature( VISIBILITY, ZERO );
 		}
-		content.put( frame, value );
+		revision.increment();
+		final Set< Spot > previous = content.put( frame, value );
+		if ( null != previous )
+		{
+			for ( final Spot spot : previous )
+			{
+				idIndex.remove( Integer.valueOf( spot.ID() ), spot );
+				if ( !value.contains( spot ) )
+					detach( spot );
+			}
+		}
+		for ( final Spot spot : value )
+			idIndex.put( Integer.valueOf( spot.ID() ), spot );
+		spatialIndices.remove( Integer.valueOf( frame ) );
 	}
 
 	/**
@@ -636,7 +796,17 @@ public class SpotCollection implements MultiThreaded
 	 */
 	public void clear()
 	{
+		for ( final Set< Spot > spots : content.values() )
+			for ( final Spot spot : spots )
+				detach( spot );
+		revision.increment();
 		content.clear();
+		idIndex.clear();
+		spatialIndices.clear();
+		synchronized ( filterLock )
+		{
+			filterIndex = null;
+		}
 	}
 
 	/*
@@ -888,6 +1058,410 @@ public class SpotCollection implements MultiThreaded
 					toRemove.add( spot );
 
 			fc.removeAll( toRemove );
+			for ( final Spot spot : toRemove )
+			{
+				idIndex.remove( Integer.valueOf( spot.ID() ), spot );
+				detach( spot );
+			}
+			if ( !toRemove.isEmpty() )
+				revision.increment();
+			if ( !toRemove.isEmpty() )
+				spatialIndices.remove( frame );
+		}
+	}
+
+	/**
+	 * A task over a range of indices.
+	 */
+	private interface RangeTask
+	{
+		void run( int from, int to );
+	}
+
+	/**
+	 * The state of the last filtering operation, over a snapshot of the spots
+	 * of this collection. The spots rejected by each filter and the visible
+	 * spots are stored as bitsets over the snapshot order.
+	 */
+	private final class FilterIndex
+	{
+
+		private final Spot[] spots;
+
+		/** The sorted values of the features filtered so far. */
+		private final Map< String, SortedFeature > features = new HashMap<>();
+
+		/** The filters currently applied. */
+		private final List< FeatureFilter > filters = new ArrayList<>();
+
+		/** For each filter, the spots it rejects. */
+		private final List< BitSet > rejected = new ArrayList<>();
+
+		private final BitSet visible;
+
+		/** The collection revision this index is consistent with. */
+		private long revision;
+
+		private FilterIndex( final Spot[] spots )
+		{
+			this.spots = spots;
+			this.visible = new BitSet( spots.length );
+		}
+
+		/**
+		 * Returns <code>true</code> if no spot was added or removed, and no
+		 * spot feature was modified since this index was last updated.
+		 */
+		private boolean isValid( final int nSpots )
+		{
+			return nSpots == spots.length && revision == featureRevision();
+		}
+
+		/**
+		 * Applies the specified filters from scratch, and writes the
+		 * visibility of all the spots that do not have the right one.
+		 */
+		private void rebuild( final Collection< FeatureFilter > newFilters )
+		{
+			final long before = featureRevision();
+			for ( final FeatureFilter filter : newFilters )
+			{
+				filters.add( filter );
+				rejected.add( rejectedBy( filter ) );
+			}
+			visible.set( 0, spots.length );
+			for ( final BitSet r : rejected )
+				visible.andNot( r );
+
+			final LongAdder writes = new LongAdder();
+			parallelFor( spots.length, ( from, to ) -> {
+				int n = 0;
+				for ( int i = from; i < to; i++ )
+				{
+					final Double val = visible.get( i ) ? ONE : ZERO;
+					if ( !val.equals( spots[ i ].getFeature( VISIBILITY ) ) )
+					{
+						spots[ i ].putFeature( VISIBILITY, val );
+						n++;
+					}
+				}
+				writes.add( n );
+			} );
+			revision = settle( before, writes.sum() );
+		}
+
+		/**
+		 * Moves from the current filters to the specified ones. Filters are
+		 * matched by their position in the collection. A filter that only
+		 * changed its threshold visits the spots between the old and the new
+		 * threshold. Only the spots which visibility changes are written to.
+		 */
+		private void update( final Collection< FeatureFilter > newFilters )
+		{
+			final long before = featureRevision();
+			final List< FeatureFilter > target = new ArrayList<>( newFilters );
+			final BitSet touched = new BitSet( spots.length );
+			long writes = 0;
+
+			int i = 0;
+			for ( ; i < Math.min( filters.size(), target.size() ); i++ )
+			{
+				final FeatureFilter previous = filters.get( i );
+				final FeatureFilter filter = target.get( i );
+				if ( previous.feature.equals( filter.feature ) && previous.isAbove == filter.isAbove )
+					move( i, filter, touched );
+				else
+					replace( i, filter, touched );
+			}
+			while ( filters.size() > target.size() )
+			{
+				filters.remove( filters.size() - 1 );
+				touched.or( rejected.remove( rejected.size() - 1 ) );
+			}
+			for ( ; i < target.size(); i++ )
+			{
+				final BitSet r = rejectedBy( target.get( i ) );
+				filters.add( target.get( i ) );
+				rejected.add( r );
+				touched.or( r );
+			}
+
+			for ( int o = touched.nextSetBit( 0 ); o >= 0; o = touched.nextSetBit( o + 1 ) )
+			{
+				boolean isVisible = true;
+				for ( final BitSet r : rejected )
+				{
+					if ( r.get( o ) )
+					{
+						isVisible = false;
+						break;
+					}
+				}
+				if ( isVisible != visible.get( o ) )
+				{
+					visible.set( o, isVisible );
+					spots[ o ].putFeature( VISIBILITY, isVisible ? ONE : ZERO );
+					writes++;
+				}
+			}
+			revision = settle( before, writes );
+		}
+
+		/**
+		 * Returns the revision this index is consistent with, after it wrote
+		 * the specified number of spot features starting from the specified
+		 * revision. If anything else modified the collection in the meantime,
+		 * returns the starting revision, so that the index is rebuilt next
+		 * time.
+		 */
+		private long settle( final long before, final long writes )
+		{
+			final long after = featureRevision();
+			return ( after == before + writes ) ? after : before;
+		}
+
+		/**
+		 * Changes the threshold of the filter at the specified position.
+		 */
+		private void move( final int i, final FeatureFilter filter, final BitSet touched )
+		{
+			final FeatureFilter previous = filters.set( i, filter );
+			final SortedFeature sf = sorted( filter.feature );
+			final int s0 = sf.start( previous );
+			final int e0 = sf.end( previous );
+			final int s1 = sf.start( filter );
+			final int e1 = sf.end( filter );
+
+			// Both ranges are prefixes or both are suffixes: they differ by
+			// a single interval.
+			final int from = ( s0 == s1 ) ? Math.min( e0, e1 ) : Math.min( s0, s1 );
+			final int to = ( s0 == s1 ) ? Math.max( e0, e1 ) : Math.max( s0, s1 );
+			final BitSet r = rejected.get( i );
+			for ( int p = from; p < to; p++ )
+			{
+				final int o = sf.order[ p ];
+				r.flip( o );
+				touched.set( o );
+			}
+		}
+
+		/**
+		 * Replaces the filter at the specified position by a filter on another
+		 * feature or in the other direction.
+		 */
+		private void replace( final int i, final FeatureFilter filter, final BitSet touched )
+		{
+			final BitSet r = rejectedBy( filter );
+			filters.set( i, filter );
+			final BitSet previous = rejected.set( i, r );
+			previous.xor( r );
+			touched.or( previous );
+		}
+
+		private BitSet rejectedBy( final FeatureFilter filter )
+		{
+			final SortedFeature sf = sorted( filter.feature );
+			final BitSet r = new BitSet( spots.length );
+			for ( final int o : sf.missing )
+				r.set( o );
+			final int end = sf.end( filter );
+			for ( int p = sf.start( filter ); p < end; p++ )
+				r.set( sf.order[ p ] );
+			return r;
+		}
+
+		private SortedFeature sorted( final String feature )
+		{
+			SortedFeature sf = features.get( feature );
+			if ( null == sf )
+			{
+				sf = new SortedFeature( spots, feature );
+				features.put( feature, sf );
+			}
+			return sf;
+		}
+	}
+
+	/**
+	 * The values of one feature over a snapshot of spots, in ascending order.
+	 * The spots rejected by a filter on this feature are a prefix (above
+	 * filters) or a suffix (below filters) of this order, plus the spots that
+	 * do not have the feature.
+	 */
+	private static final class SortedFeature
+	{
+
+		/** The feature values, in ascending order. */
+		private final double[] values;
+
+		/** The snapshot position of the spot of each value. */
+		private final int[] order;
+
+		/** The snapshot positions of the spots without this feature. */
+		private final int[] missing;
+
+		private SortedFeature( final Spot[] spots, final String feature )
+		{
+			final long[] keys = new long[ spots.length ];
+			final int[] ord = new int[ spots.length ];
+			final int[] miss = new int[ spots.length ];
+			int n = 0;
+			int nMissing = 0;
+			for ( int i = 0; i < spots.length; i++ )
+			{
+				final Double val = spots[ i ].getFeature( feature );
+				if ( null == val )
+				{
+					miss[ nMissing++ ] = i;
+					continue;
+				}
+				keys[ n ] = toKey( val.doubleValue() );
+				ord[ n++ ] = i;
+			}
+			sort( keys, ord, n );
+
+			this.values = new double[ n ];
+			for ( int p = 0; p < n; p++ )
+				values[ p ] = fromKey( keys[ p ] );
+			this.order = Arrays.copyOf( ord, n );
+			this.missing = Arrays.copyOf( miss, nMissing );
+		}
+
+		/**
+		 * Returns the first sorted position rejected by the specified filter.
+		 */
+		private int start( final FeatureFilter filter )
+		{
+			return filter.isAbove ? 0 : bound( filter.value, false );
+		}
+
+		/**
+		 * Returns the sorted position after the last one rejected by the
+		 * specified filter.
+		 */
+		private int end( final FeatureFilter filter )
+		{
+			return filter.isAbove ? bound( filter.value, true ) : values.length;
+		}
+
+		/**
+		 * Returns the first sorted position which value is above the specified
+		 * threshold, or equal to it if <code>orEqual</code> is true. Values
+		 * are compared as in {@link Double#compare(double, double)}, like the
+		 * filters do.
+		 */
+		private int bound( final double threshold, final boolean orEqual )
+		{
+			int lo = 0;
+			int hi = values.length;
+			while ( lo < hi )
+			{
+				final int mid = ( lo + hi ) >>> 1;
+				final int c = Double.compare( values[ mid ], threshold );
+				if ( c < 0 || ( c == 0 && !orEqual ) )
+					lo = mid + 1;
+				else
+					hi = mid;
+			}
+			return lo;
+		}
+
+		/**
+		 * Maps a double to a long which unsigned order is the order of
+		 * {@link Double#compare(double, double)}.
+		 */
+		private static long toKey( final double value )
+		{
+			final long bits = Double.doubleToLongBits( value );
+			return ( bits < 0 ) ? ~bits : bits ^ Long.MIN_VALUE;
+		}
+
+		private static double fromKey( final long key )
+		{
+			return Double.longBitsToDouble( ( key < 0 ) ? key ^ Long.MIN_VALUE : ~key );
+		}
+
+		/**
+		 * Sorts the first <code>n</code> keys in unsigned order along with
+		 * their payload, with a byte-wise radix sort. Passes over a byte that
+		 * is the same for all keys are skipped.
+		 */
+		private static void sort( final long[] keys, final int[] payload, final int n )
+		{
+			if ( n < 2 )
+				return;
+
+			long[] k = keys;
+			int[] p = payload;
+			long[] kb = new long[ n ];
+			int[] pb = new int[ n ];
+			final int[] count = new int[ 257 ];
+			for ( int shift = 0; shift < 64; shift += 8 )
+			{
+				Arrays.fill( count, 0 );
+				for ( int i = 0; i < n; i++ )
+					count[ ( int ) ( ( k[ i ] >>> shift ) & 0xff ) + 1 ]++;
+				if ( count[ ( int ) ( ( k[ 0 ] >>> shift ) & 0xff ) + 1 ] == n )
+					continue;
+
+				for ( int b = 0; b < 256; b++ )
+					count[ b + 1 ] += count[ b ];
+				for ( int i = 0; i < n; i++ )
+				{
+					final int d = count[ ( int ) ( ( k[ i ] >>> shift ) & 0xff ) ]++;
+					kb[ d ] = k[ i ];
+					pb[ d ] = p[ i ];
+				}
+
+				final long[] kt = k;
+				k = kb;
+				kb = kt;
+				final int[] pt = p;
+				p = pb;
+				pb = pt;
+			}
+			if ( k != keys )
+			{
+				System.arraycopy( k, 0, keys, 0, n );
+				System.arraycopy( p, 0, payload, 0, n );
+			}
+		}
+	}
+
+	/**
+	 * A KD-tree over the spots of one frame, with the largest spot radius.
+	 */
+	private static final class FrameSpatialIndex
+	{
+
+		/** The frame content this index was built from. */
+		private final Set< Spot > source;
+
+		/** The feature revision of the collection when this index was built. */
+		private final long revision;
+
+		private final KDTree< Spot > tree;
+
+		private final int size;
+
+		private final double maxRadius;
+
+		private FrameSpatialIndex( final Set< Spot > source, final long revision )
+		{
+			this.source = source;
+			this.revision = revision;
+			final List< Spot > spots = new ArrayList<>( source );
+			double mr = 0.;
+			for ( final Spot spot : spots )
+				mr = Math.max( mr, spot.getFeature( Spot.RADIUS ).doubleValue() );
+			this.maxRadius = mr;
+			this.size = spots.size();
+			this.tree = new KDTree<>( spots, spots );
+		}
+
+		private boolean isFor( final Set< Spot > spots, final long currentRevision )
+		{
+			return source == spots && size == spots.size() && revision == currentRevision;
 		}
 	}
 
@@ -983,6 +1557,7 @@ public class SpotCollection implements MultiThreaded
 				sc.content.put( frame, fc );
 			}
 			fc.add( spot );
+			sc.idIndex.put( Integer.valueOf( spot.ID() ), spot );
 		}
 		return sc;
 	}
@@ -1001,6 +1576,9 @@ public class SpotCollection implements MultiThreaded
 	{
 		final SpotCollection sc = new SpotCollection();
 		sc.content = new ConcurrentSkipListMap<>( source );
+		for ( final Set< Spot > spots : source.values() )
+			for ( final Spot spot : spots )
+				sc.idIndex.put( Integer.valueOf( spot.ID() ), spot );
 		return sc;
 	}
 
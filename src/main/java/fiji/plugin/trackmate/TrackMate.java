@@ -25,6 +25,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
@@ -35,6 +36,8 @@ import org.scijava.Cancelable;
 import org.scijava.Named;
 import org.scijava.util.VersionUtils;
 
+import fiji.plugin.trackmate.detection.FramePrefetcher;
+import fiji.plugin.trackmate.detection.LogDetectorFactory;
 import fiji.plugin.trackmate.detection.ManualDetectorFactory;
 import fiji.plugin.trackmate.detection.SpotDetector;
 import fiji.plugin.trackmate.detection.SpotDetectorFactory;
@@ -55,6 +58,8 @@ import net.imglib2.Interval;
 import net.imglib2.algorithm.Algorithm;
 import net.imglib2.algorithm.Benchmark;
 import net.imglib2.algorithm.MultiThreaded;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
 
 /**
  * <p>
@@ -457,8 +462,7 @@ public class TrackMate implements Benchmark, MultiThreaded, Algorithm, Named, Ca
 		return true;
 	}
 
-	@SuppressWarnings( "rawtypes" )
-	private boolean processFrameByFrame( final SpotDetectorFactory factory, final ImgPlus img, final Logger logger )
+	private < T extends RealType< T > & NativeType< T > > boolean processFrameByFrame( final SpotDetectorFactory< T > factory, final ImgPlus< T > img, final Logger logger )
 	{
 		final Interval interval = TMUtils.getInterval( img, settings );
 		final int zindex = img.dimensionIndex( Axes.Z );
@@ -489,7 +493,30 @@ public class TrackMate implements Benchmark, MultiThreaded, Algorithm, Named, Ca
 				+ ( ( threadsPerFrame > 1 ) ? ( threadsPerFrame + " threads" ) : "1 thread" )
 				+ " per frame.\n" );
 
-		final ExecutorService executorService = Threads.newFixedThreadPool( nSimultaneousFrames );
+		/*
+		 * If the source is a virtual stack, frames are loaded ahead of the
+		 * detectors, in a bounded pool of buffers, so that reading the disk
+		 * overlaps with the detection. The factory must be able to give
+		 * detectors that read from these buffers.
+		 */
+		final boolean prefetch = numFrames > 1
+				&& factory.supportsFrameImg()
+				&& img.dimensionIndex( Axes.TIME ) >= 0
+				&& null != settings.imp
+				&& settings.imp.getStack().isVirtual();
+		final FramePrefetcher< T > prefetcher;
+		if ( prefetch )
+		{
+			final int nBuffers = 2 * nSimultaneousFrames;
+			logger.log( "Source is a virtual stack: prefetching up to " + nBuffers + " frames in memory.\n" );
+			prefetcher = new FramePrefetcher<>( img, settings.tstart, settings.tend, nBuffers );
+		}
+		else
+		{
+			prefetcher = null;
+		}
+
+		final ExecutorService executorService = Threads.newFixedThreadPool( "Detection", nSimultaneousFrames, this );
 		final List< Future< Boolean > > tasks = new ArrayList<>( numFrames );
 		for ( int i = settings.tstart; i <= settings.tend; i++ )
 		{
@@ -499,12 +526,27 @@ public class TrackMate implements Benchmark, MultiThreaded, Algorithm, Named, Ca
 
 				@Override
 				public Boolean call() throws Exception
+				{
+					try
+					{
+						return detect();
+					}
+					finally
+					{
+						if ( null != prefetcher )
+							prefetcher.release( frame );
+					}
+				}
+
+				private Boolean detect() throws Exception
 				{
 					if ( isCanceled() )
 						return Boolean.TRUE; // ok to be canceled.
 
 					// Yield detector for target frame
-					final SpotDetector< ? > detector = factory.getDetector( interval, frame );
+					final SpotDetector< T > detector = ( null == prefetcher )
+							? factory.getDetector( interval, frame )
+							: factory.getDetector( prefetcher.get( frame ), interval, frame );
 					if ( detector instanceof MultiThreaded )
 					{
 						final MultiThreaded md = ( MultiThreaded ) detector;
@@ -595,12 +637,24 @@ public class TrackMate implements Benchmark, MultiThreaded, Algorithm, Named, Ca
 				}
 			}
 		}
+		catch ( final CancellationException e )
+		{
+			// Frames not started when TrackMate was canceled.
+		}
 		catch ( InterruptedException | ExecutionException e )
 		{
 			errorMessage = "Problem during detection: " + e.getMessage();
 			reportOk.set( false );
 			e.printStackTrace();
 		}
+		finally
+		{
+			if ( null != prefetcher )
+				prefetcher.close();
+			// Free the memory cached for the detectors of this run.
+			if ( factory instanceof LogDetectorFactory )
+				( ( LogDetectorFactory< ? > ) factory ).clearCache();
+		}
 
 		model.setSpots( spots, true );
 
@@ -29,6 +29,7 @@ import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 import java.util.function.Supplier;
 import java.util.regex.Pattern;
@@ -142,6 +143,18 @@ public class TrackModel
 
 	Map< Integer, String > names;
 
+	/**
+	 * The track IDs sorted by track names. Built lazily and discarded when
+	 * track names change.
+	 */
+	private volatile Set< Integer > sortedIDs;
+
+	/**
+	 * The visible track IDs sorted by track names. Built lazily and discarded
+	 * when track names or visibility change.
+	 */
+	private volatile Set< Integer > sortedVisibleIDs;
+
 	private final Iterator< String > nameGenerator = new DefaultNameGenerator();
 
 	/*
@@ -227,8 +240,8 @@ public class TrackModel
 		edgesRemoved.clear();
 		tracksUpdated.clear();
 
-		visibility = trackVisibility;
-		names = trackNames;
+		visibility = new TrackMap<>( trackVisibility, false );
+		names = new TrackMap<>( trackNames, true );
 		connectedVertexSets = trackSpots;
 		connectedEdgeSets = trackEdges;
 
@@ -518,22 +531,36 @@ public class TrackModel
 	/**
 	 * Returns the set of track IDs managed by this model, ordered by track
 	 * names (alpha-numerically sorted).
+	 * <p>
+	 * The sorted sets are cached, and only rebuilt after the track names,
+	 * their visibility or the tracks themselves change. They cannot be
+	 * modified, and are not updated by later changes.
 	 *
 	 * @param visibleOnly
 	 *            if <code>true</code>, only visible track IDs will be returned.
-	 * @return a new set of track IDs.
+	 * @return an unmodifiable set of track IDs.
 	 */
 	public Set< Integer > trackIDs( final boolean visibleOnly )
 	{
-		final Set< Integer > ids = TMUtils.sortByValue( names, AlphanumComparator.instance ).keySet();
+		Set< Integer > ids = sortedIDs;
+		if ( null == ids )
+		{
+			ids = Collections.unmodifiableSet( TMUtils.sortByValue( names, AlphanumComparator.instance ).keySet() );
+			sortedIDs = ids;
+		}
 		if ( !visibleOnly )
 			return ids;
 
-		final Set< Integer > vids = new LinkedHashSet<>( ids.size() );
-		for ( final Integer id : ids )
-			if ( visibility.get( id ) )
-				vids.add( id );
-
+		Set< Integer > vids = sortedVisibleIDs;
+		if ( null == vids )
+		{
+			final Set< Integer > set = new LinkedHashSet<>( ids.size() );
+			for ( final Integer id : ids )
+				if ( visibility.get( id ) )
+					set.add( id );
+			vids = Collections.unmodifiableSet( set );
+			sortedVisibleIDs = vids;
+		}
 		return vids;
 	}
 
@@ -664,8 +691,8 @@ public class TrackModel
 		vertexToID = new HashMap<>();
 		edgeToID = new HashMap<>();
 		IDcounter = 0;
-		visibility = new HashMap<>();
-		names = new HashMap<>();
+		visibility = new TrackMap<>( Collections.emptyMap(), false );
+		names = new TrackMap<>( Collections.emptyMap(), true );
 		connectedVertexSets = new HashMap<>();
 		connectedEdgeSets = new HashMap<>();
 
@@ -1324,6 +1351,71 @@ public class TrackModel
 
 	}
 
+	/**
+	 * A map of track properties that discards the cached sorted track IDs when
+	 * it is modified through {@link #put(Integer, Object)},
+	 * {@link #remove(Object)}, {@link #putAll(Map)} or {@link #clear()}.
+	 */
+	private final class TrackMap< V > extends HashMap< Integer, V >
+	{
+
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * If <code>true</code>, changes also affect the sort order of all the
+		 * track IDs, and not only the visible ones.
+		 */
+		private final boolean affectsOrder;
+
+		private TrackMap( final Map< Integer, ? extends V > map, final boolean affectsOrder )
+		{
+			super( map );
+			this.affectsOrder = affectsOrder;
+			invalidate();
+		}
+
+		@Override
+		public V put( final Integer key, final V value )
+		{
+			final boolean existed = containsKey( key );
+			final V previous = super.put( key, value );
+			if ( !existed || !Objects.equals( previous, value ) )
+				invalidate();
+			return previous;
+		}
+
+		@Override
+		public V remove( final Object key )
+		{
+			final boolean existed = containsKey( key );
+			final V previous = super.remove( key );
+			if ( existed )
+				invalidate();
+			return previous;
+		}
+
+		@Override
+		public void putAll( final Map< ? extends Integer, ? extends V > m )
+		{
+			super.putAll( m );
+			invalidate();
+		}
+
+		@Override
+		public void clear()
+		{
+			super.clear();
+			invalidate();
+		}
+
+		private void invalidate()
+		{
+			if ( affectsOrder )
+				sortedIDs = null;
+			sortedVisibleIDs = null;
+		}
+	}
+
 	private static class DefaultNameGenerator implements Iterator< String >
 	{
 
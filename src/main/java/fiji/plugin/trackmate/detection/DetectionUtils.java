@@ -274,6 +274,24 @@ public class DetectionUtils
 	public static final < T extends RealType< T > > Img< FloatType > copyToFloatImg( final RandomAccessible< T > img, final Interval interval, final ImgFactory< FloatType > factory )
 	{
 		final Img< FloatType > output = factory.create( interval );
+		copyToFloatImg( img, interval, output );
+		return output;
+	}
+
+	/**
+	 * Copy an interval of the specified source image on an existing float
+	 * image, with its first pixel at coordinates (0, 0) and of the same size
+	 * as the interval. All the pixels of the float image are overwritten.
+	 *
+	 * @param img
+	 *            the source image.
+	 * @param interval
+	 *            the interval in the source image to copy.
+	 * @param output
+	 *            the float image to write to.
+	 */
+	public static final < T extends RealType< T > > void copyToFloatImg( final RandomAccessible< T > img, final Interval interval, final Img< FloatType > output )
+	{
 		final RandomAccess< T > in = Views.zeroMin( Views.interval( img, interval ) ).randomAccess();
 		final Cursor< FloatType > out = output.cursor();
 		final RealFloatConverter< T > c = new RealFloatConverter<>();
@@ -284,7 +302,6 @@ public class DetectionUtils
 			in.setPosition( out );
 			c.convert( in.get(), out.get() );
 		}
-		return output;
 	}
 
 	/**
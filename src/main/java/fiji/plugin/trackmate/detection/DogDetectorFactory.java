@@ -33,6 +33,7 @@ import fiji.plugin.trackmate.Settings;
 import fiji.plugin.trackmate.gui.components.ConfigurationPanel;
 import fiji.plugin.trackmate.gui.components.detector.DogDetectorConfigurationPanel;
 import fiji.plugin.trackmate.util.TMUtils;
+import net.imagej.ImgPlus;
 import net.imglib2.Interval;
 import net.imglib2.RandomAccessible;
 import net.imglib2.type.NativeType;
@@ -68,7 +69,7 @@ public class DogDetectorFactory< T extends RealType< T > & NativeType< T >> exte
 	 */
 
 	@Override
-	public SpotDetector< T > getDetector( final Interval interval, final int frame )
+	public SpotDetector< T > getDetector( final ImgPlus< T > source, final Interval interval, final int frame )
 	{
 		final double radius = ( Double ) settings.get( KEY_RADIUS );
 		final double threshold = ( Double ) settings.get( KEY_THRESHOLD );
@@ -76,12 +77,28 @@ public class DogDetectorFactory< T extends RealType< T > & NativeType< T >> exte
 		final boolean doSubpixel = ( Boolean ) settings.get( KEY_DO_SUBPIXEL_LOCALIZATION );
 		final double[] calibration = TMUtils.getSpatialCalibration( img );
 
-		final RandomAccessible< T > imFrame = prepareFrameImg( frame );
+		final RandomAccessible< T > imFrame = prepareFrameImg( source, frame );
+		if ( TiledDetector.needsTiling( interval ) )
+		{
+			// Large frame: process it block by block to bound memory.
+			final long[] margin = TiledDetector.computeMargin( radius, calibration, DetectionUtils.squeeze( interval ).numDimensions() );
+			final TiledDetector< T > detector = new TiledDetector<>( interval, calibration, margin, TiledDetector.DEFAULT_MAX_BLOCK_SIZE,
+					block -> new DogDetector<>( imFrame, block, calibration, radius, threshold, doSubpixel, doMedian ) );
+			detector.setNumThreads( 1 );
+			return detector;
+		}
+
 		final DogDetector< T > detector = new DogDetector<>( imFrame, interval, calibration, radius, threshold, doSubpixel, doMedian );
 		detector.setNumThreads( 1 );
 		return detector;
 	}
 
+	@Override
+	public boolean supportsFrameImg()
+	{
+		return getClass() == DogDetectorFactory.class;
+	}
+
 	@Override
 	public String getKey()
 	{
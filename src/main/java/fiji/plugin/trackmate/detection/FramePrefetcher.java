@@ -0,0 +1,246 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2010 - 2023 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.detection;
+
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+
+import net.imagej.ImgPlus;
+import net.imagej.axis.Axes;
+import net.imagej.axis.CalibratedAxis;
+import net.imglib2.Cursor;
+import net.imglib2.img.Img;
+import net.imglib2.img.display.imagej.ImgPlusViews;
+import net.imglib2.type.NativeType;
+import net.imglib2.util.Util;
+import net.imglib2.view.Views;
+
+/**
+ * Loads the frames of a time-lapse in memory ahead of the detectors that
+ * process them.
+ * <p>
+ * A single loader thread copies the frames, in order, to a fixed pool of
+ * in-memory buffers. Detection workers get the frame they need with
+ * {@link #get(int)}, which blocks until it is loaded, and give its buffer back
+ * with {@link #release(int)} once they are done with it. When all the buffers
+ * are in use, the loader waits, so that at most as many frames as there are
+ * buffers are held in memory. This is meant for sources that are slow to read,
+ * such as virtual stacks: the loading of the next frames then overlaps with
+ * the detection in the current ones.
+ * <p>
+ * Frames must be requested in the order they are loaded, as the frame-by-frame
+ * detection does.
+ *
+ * @author Jean-Yves Tinevez
+ *
+ * @param <T>
+ *            the type of the pixels in the source image.
+ */
+public class FramePrefetcher< T extends NativeType< T > >
+{
+
+	private final ImgPlus< T > img;
+
+	private final int timeDim;
+
+	private final int tstart;
+
+	private final int tend;
+
+	private final Semaphore permits;
+
+	private final Queue< Img< T > > pool = new ConcurrentLinkedQueue<>();
+
+	private final ConcurrentHashMap< Integer, CompletableFuture< ImgPlus< T > > > frames = new ConcurrentHashMap<>();
+
+	private final Set< Integer > released = ConcurrentHashMap.newKeySet();
+
+	private final Thread loader;
+
+	private boolean closed = false;
+
+	/**
+	 * Creates a prefetcher for the specified frames of an image. The loader
+	 * thread starts immediately.
+	 *
+	 * @param img
+	 *            the source image. Must have a time axis.
+	 * @param tstart
+	 *            the first frame to load (0-based, inclusive).
+	 * @param tend
+	 *            the last frame to load (0-based, inclusive).
+	 * @param nBuffers
+	 *            the maximal number of frames held in memory at once.
+	 */
+	public FramePrefetcher( final ImgPlus< T > img, final int tstart, final int tend, final int nBuffers )
+	{
+		this.img = img;
+		this.timeDim = img.dimensionIndex( Axes.TIME );
+		this.tstart = tstart;
+		this.tend = tend;
+		this.permits = new Semaphore( Math.max( 1, nBuffers ) );
+		this.loader = new Thread( this::load, "TrackMate frame prefetcher thread" );
+		loader.setDaemon( true );
+		loader.start();
+	}
+
+	/**
+	 * Returns the specified frame, loaded in memory, waiting for it if
+	 * necessary. The returned image has no time axis.
+	 *
+	 * @param frame
+	 *            the frame to get.
+	 * @return the frame, as a new {@link ImgPlus}.
+	 * @throws InterruptedException
+	 *             if the calling thread was interrupted while waiting.
+	 * @throws ExecutionException
+	 *             if the frame could not be loaded.
+	 */
+	public ImgPlus< T > get( final int frame ) throws InterruptedException, ExecutionException
+	{
+		return future( frame ).get();
+	}
+
+	/**
+	 * Signals that the specified frame is not used anymore, so that its buffer
+	 * can be reused for the next frames. Must be called for every frame, even
+	 * if it was not requested with {@link #get(int)}.
+	 *
+	 * @param frame
+	 *            the frame to release.
+	 */
+	public synchronized void release( final int frame )
+	{
+		if ( !released.add( Integer.valueOf( frame ) ) )
+			return;
+
+		final CompletableFuture< ImgPlus< T > > future = frames.remove( Integer.valueOf( frame ) );
+		if ( null != future && future.isDone() && !future.isCompletedExceptionally() )
+			recycle( future.join().getImg() );
+	}
+
+	/**
+	 * Stops the loader thread. Frames that were not loaded yet will not be.
+	 */
+	public synchronized void close()
+	{
+		closed = true;
+		loader.interrupt();
+		for ( final CompletableFuture< ImgPlus< T > > future : frames.values() )
+			future.cancel( false );
+	}
+
+	private synchronized CompletableFuture< ImgPlus< T > > future( final int frame )
+	{
+		final CompletableFuture< ImgPlus< T > > future = frames.computeIfAbsent( Integer.valueOf( frame ), k -> new CompletableFuture<>() );
+		if ( closed )
+			future.cancel( false );
+		return future;
+	}
+
+	private void recycle( final Img< T > buffer )
+	{
+		pool.offer( buffer );
+		permits.release();
+	}
+
+	private void load()
+	{
+		try
+		{
+			for ( int frame = tstart; frame <= tend; frame++ )
+			{
+				permits.acquire();
+				synchronized ( this )
+				{
+					if ( closed )
+						return;
+					if ( released.contains( Integer.valueOf( frame ) ) )
+					{
+						permits.release();
+						continue;
+					}
+				}
+
+				Img< T > buffer = pool.poll();
+				ImgPlus< T > loaded = null;
+				Throwable error = null;
+				try
+				{
+					final ImgPlus< T > source = ImgPlusViews.hyperSlice( img, timeDim, frame );
+					if ( null == buffer )
+						buffer = Util.getArrayOrCellImgFactory( source, Util.getTypeFromInterval( source ) ).create( source );
+					copy( source, buffer );
+					loaded = wrap( buffer, source );
+				}
+				catch ( final RuntimeException | OutOfMemoryError e )
+				{
+					error = e;
+				}
+
+				synchronized ( this )
+				{
+					if ( null == loaded )
+					{
+						if ( null != buffer )
+							pool.offer( buffer );
+						permits.release();
+						future( frame ).completeExceptionally( error );
+					}
+					else if ( closed || released.contains( Integer.valueOf( frame ) ) )
+					{
+						recycle( buffer );
+					}
+					else
+					{
+						future( frame ).complete( loaded );
+					}
+				}
+			}
+		}
+		catch ( final InterruptedException e )
+		{
+			// Closed.
+		}
+	}
+
+	private static final < T extends NativeType< T > > void copy( final ImgPlus< T > source, final Img< T > target )
+	{
+		final Cursor< T > in = Views.flatIterable( source ).cursor();
+		final Cursor< T > out = Views.flatIterable( target ).cursor();
+		while ( out.hasNext() )
+			out.next().set( in.next() );
+	}
+
+	private static final < T extends NativeType< T > > ImgPlus< T > wrap( final Img< T > buffer, final ImgPlus< T > source )
+	{
+		final CalibratedAxis[] axes = new CalibratedAxis[ source.numDimensions() ];
+		for ( int d = 0; d < axes.length; d++ )
+			axes[ d ] = source.axis( d ).copy();
+		return new ImgPlus<>( buffer, source.getName(), axes );
+	}
+}
@@ -53,6 +53,7 @@ import fiji.plugin.trackmate.Settings;
 import fiji.plugin.trackmate.gui.components.ConfigurationPanel;
 import fiji.plugin.trackmate.gui.components.detector.HessianDetectorConfigurationPanel;
 import fiji.plugin.trackmate.util.TMUtils;
+import net.imagej.ImgPlus;
 import net.imglib2.Interval;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.type.NativeType;
@@ -81,7 +82,7 @@ public class HessianDetectorFactory< T extends RealType< T > & NativeType< T > >
 			+ "</html>";
 
 	@Override
-	public SpotDetector< T > getDetector( final Interval interval, final int frame )
+	public SpotDetector< T > getDetector( final ImgPlus< T > source, final Interval interval, final int frame )
 	{
 		final double radiusXY = ( Double ) settings.get( KEY_RADIUS );
 		final double radiusZ = ( Double ) settings.get( KEY_RADIUS_Z );
@@ -90,7 +91,7 @@ public class HessianDetectorFactory< T extends RealType< T > & NativeType< T > >
 		final boolean normalize = ( Boolean ) settings.get( KEY_NORMALIZE );
 
 		final double[] calibration = TMUtils.getSpatialCalibration( img );
-		final RandomAccessibleInterval< T > imFrame = prepareFrameImg( frame );
+		final RandomAccessibleInterval< T > imFrame = prepareFrameImg( source, frame );
 
 		final HessianDetector< T > detector = new HessianDetector<>(
 				Views.extendMirrorDouble( imFrame ),
@@ -105,6 +106,12 @@ public class HessianDetectorFactory< T extends RealType< T > & NativeType< T > >
 		return detector;
 	}
 
+	@Override
+	public boolean supportsFrameImg()
+	{
+		return getClass() == HessianDetectorFactory.class;
+	}
+
 	@Override
 	public boolean forbidMultithreading()
 	{
@@ -29,6 +29,7 @@ import fiji.plugin.trackmate.Spot;
 import net.imglib2.Interval;
 import net.imglib2.RandomAccessible;
 import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.algorithm.MultiThreaded;
 import net.imglib2.img.Img;
 import net.imglib2.img.ImgFactory;
 import net.imglib2.loops.LoopBuilder;
@@ -40,7 +41,7 @@ import net.imglib2.type.numeric.integer.IntType;
 import net.imglib2.util.Util;
 import net.imglib2.view.Views;
 
-public class LabelImageDetector< T extends RealType< T > & NativeType< T > > implements SpotDetector< T >
+public class LabelImageDetector< T extends RealType< T > & NativeType< T > > implements SpotDetector< T >, MultiThreaded
 {
 
 	private final static String BASE_ERROR_MESSAGE = "ThresholdDetector: ";
@@ -103,7 +104,23 @@ public class LabelImageDetector< T extends RealType< T > & NativeType< T > > imp
 		final RandomAccessibleInterval< T > rai = Views.interval( input, interval );
 		final T type = Util.getTypeFromInterval( rai );
 
-		if ( type instanceof IntegerType )
+		if ( input.numDimensions() != 2 )
+		{
+			/*
+			 * 3D: no ROI, we measure all labels in a single scan of the label
+			 * image.
+			 */
+			try
+			{
+				spots = MaskUtils.fromLabelImage( Views.zeroMin( rai ), interval, calibration, numThreads );
+			}
+			catch ( final IllegalArgumentException e )
+			{
+				errorMessage = baseErrorMessage + e.getMessage();
+				return false;
+			}
+		}
+		else if ( type instanceof IntegerType )
 		{
 			processIntegerImg( ( RandomAccessibleInterval ) Views.zeroMin( rai ) );
 		}
@@ -136,10 +153,7 @@ public class LabelImageDetector< T extends RealType< T > & NativeType< T > > imp
 			indices.add( Integer.valueOf( i + 1 ) );
 
 		final ImgLabeling< Integer, R > labeling = ImgLabeling.fromImageAndLabels( rai, indices );
-		if ( input.numDimensions() == 2 )
-			spots = MaskUtils.fromLabelingWithROI( labeling, interval, calibration, simplify, null );
-		else
-			spots = MaskUtils.fromLabeling( labeling, interval, calibration );
+		spots = MaskUtils.fromLabelingWithROI( labeling, interval, calibration, simplify, null );
 	}
 
 	@Override
@@ -159,4 +173,22 @@ public class LabelImageDetector< T extends RealType< T > & NativeType< T > > imp
 	{
 		return processingTime;
 	}
+
+	@Override
+	public void setNumThreads()
+	{
+		this.numThreads = Runtime.getRuntime().availableProcessors();
+	}
+
+	@Override
+	public void setNumThreads( final int numThreads )
+	{
+		this.numThreads = numThreads;
+	}
+
+	@Override
+	public int getNumThreads()
+	{
+		return numThreads;
+	}
 }
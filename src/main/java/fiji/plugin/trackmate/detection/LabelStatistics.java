@@ -0,0 +1,398 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2010 - 2023 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.detection;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import fiji.plugin.trackmate.util.Threads;
+import net.imglib2.Cursor;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.RandomAccessibleInterval;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+/**
+ * Per-label statistics of a 2D or 3D label image, computed in a single scan of
+ * the image: voxel count, centroid, bounding box and optionally the moments of
+ * an intensity image over each label.
+ * <p>
+ * The statistics are stored in primitive arrays indexed by label value, so
+ * label values are expected to be reasonably dense, as it is the case for
+ * label images made of consecutive integers. Pixel values are rounded to the
+ * nearest integer. Labels smaller than or equal to 0 are the background and
+ * are ignored. Labels larger than {@link #MAX_LABEL} cannot be indexed: their
+ * pixels are skipped and counted in {@link #numSkipped()}.
+ *
+ * @author Jean-Yves Tinevez
+ */
+public class LabelStatistics
+{
+
+	/**
+	 * The largest label value that can be indexed in the statistics arrays.
+	 */
+	public static final int MAX_LABEL = ( Integer.MAX_VALUE - 8 ) / 3 - 1;
+
+	/** Number of pixels skipped because their label is too large. */
+	private long skipped;
+
+	/** The number of labels, including the background, below this value. */
+	private int size;
+
+	private long[] count;
+
+	/** Sum of positions, 3 per label. */
+	private long[] sum;
+
+	/** Bounding box min, 3 per label. */
+	private long[] min;
+
+	/** Bounding box max, 3 per label. */
+	private long[] max;
+
+	/** Sum of intensities, or <code>null</code>. */
+	private double[] intensitySum;
+
+	/** Sum of square intensities, or <code>null</code>. */
+	private double[] intensitySumSq;
+
+	/** Max intensity, or <code>null</code>. */
+	private double[] intensityMax;
+
+	private LabelStatistics( final int capacity, final boolean withIntensity )
+	{
+		count = new long[ capacity ];
+		sum = new long[ 3 * capacity ];
+		min = new long[ 3 * capacity ];
+		max = new long[ 3 * capacity ];
+		if ( withIntensity )
+		{
+			intensitySum = new double[ capacity ];
+			intensitySumSq = new double[ capacity ];
+			intensityMax = new double[ capacity ];
+		}
+	}
+
+	/**
+	 * Computes the statistics of the specified label image.
+	 *
+	 * @param <L>
+	 *            the type of the label image.
+	 * @param <S>
+	 *            the type of the intensity image.
+	 * @param labels
+	 *            the label image, 2D or 3D, zero-min. Pixel values are
+	 *            rounded to the nearest integer.
+	 * @param intensity
+	 *            the image in which to measure intensity moments, over the
+	 *            same interval as the label image. Can be <code>null</code>.
+	 * @param numThreads
+	 *            how many threads to use. The image is split in slabs along
+	 *            its last dimension, which are scanned in parallel and merged.
+	 * @return the statistics.
+	 */
+	public static < L extends RealType< L >, S extends RealType< S > > LabelStatistics compute(
+			final RandomAccessibleInterval< L > labels,
+			final RandomAccessibleInterval< S > intensity,
+			final int numThreads )
+	{
+		final int last = labels.numDimensions() - 1;
+		final int nSlabs = ( int ) Math.max( 1, Math.min( numThreads, labels.dimension( last ) ) );
+		if ( nSlabs == 1 )
+			return scan( labels, intensity, labels );
+
+		final List< Interval > slabs = new ArrayList<>( nSlabs );
+		final long depth = labels.dimension( last );
+		for ( int i = 0; i < nSlabs; i++ )
+		{
+			final long[] smin = Intervals.minAsLongArray( labels );
+			final long[] smax = Intervals.maxAsLongArray( labels );
+			smin[ last ] = labels.min( last ) + depth * i / nSlabs;
+			smax[ last ] = labels.min( last ) + depth * ( i + 1 ) / nSlabs - 1;
+			slabs.add( new FinalInterval( smin, smax ) );
+		}
+
+		final ExecutorService executor = Threads.newFixedThreadPool( "Label statistics", nSlabs, null );
+		try
+		{
+			final List< Future< LabelStatistics > > futures = new ArrayList<>( nSlabs );
+			for ( final Interval slab : slabs )
+				futures.add( executor.submit( () -> scan( labels, intensity, slab ) ) );
+
+			final LabelStatistics stats = futures.get( 0 ).get();
+			for ( int i = 1; i < futures.size(); i++ )
+				stats.merge( futures.get( i ).get() );
+			return stats;
+		}
+		catch ( final InterruptedException e )
+		{
+			Thread.currentThread().interrupt();
+			throw new RuntimeException( e );
+		}
+		catch ( final ExecutionException e )
+		{
+			throw new RuntimeException( e.getCause() );
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Scans the specified interval of the label image, in flat iteration
+	 * order, tracking the position without localizing the cursors.
+	 */
+	private static < L extends RealType< L >, S extends RealType< S > > LabelStatistics scan(
+			final RandomAccessibleInterval< L > labels,
+			final RandomAccessibleInterval< S > intensity,
+			final Interval slab )
+	{
+		final LabelStatistics stats = new LabelStatistics( 256, null != intensity );
+		final Cursor< L > cursor = Views.flatIterable( Views.interval( labels, slab ) ).cursor();
+		final Cursor< S > intensityCursor = ( null == intensity )
+				? null
+				: Views.flatIterable( Views.interval( intensity, slab ) ).cursor();
+
+		final int n = slab.numDimensions();
+		final long x0 = slab.min( 0 );
+		final long x1 = slab.max( 0 );
+		final long y0 = n > 1 ? slab.min( 1 ) : 0;
+		final long y1 = n > 1 ? slab.max( 1 ) : 0;
+		long x = x0;
+		long y = y0;
+		long z = n > 2 ? slab.min( 2 ) : 0;
+		while ( cursor.hasNext() )
+		{
+			final long label = Math.round( cursor.next().getRealDouble() );
+			final double value = ( null == intensityCursor ) ? 0. : intensityCursor.next().getRealDouble();
+			if ( label > MAX_LABEL )
+				stats.skipped++;
+			else if ( label > 0 )
+				stats.add( ( int ) label, x, y, z, value );
+
+			if ( x < x1 )
+			{
+				x++;
+			}
+			else
+			{
+				x = x0;
+				if ( y < y1 )
+				{
+					y++;
+				}
+				else
+				{
+					y = y0;
+					z++;
+				}
+			}
+		}
+		return stats;
+	}
+
+	private void add( final int label, final long x, final long y, final long z, final double value )
+	{
+		if ( label >= size )
+		{
+			ensureCapacity( label + 1 );
+			size = label + 1;
+		}
+
+		final int i = 3 * label;
+		if ( count[ label ]++ == 0 )
+		{
+			min[ i ] = x;
+			min[ i + 1 ] = y;
+			min[ i + 2 ] = z;
+			max[ i ] = x;
+			max[ i + 1 ] = y;
+			max[ i + 2 ] = z;
+			if ( null != intensityMax )
+				intensityMax[ label ] = value;
+		}
+		else
+		{
+			min[ i ] = Math.min( min[ i ], x );
+			max[ i ] = Math.max( max[ i ], x );
+			min[ i + 1 ] = Math.min( min[ i + 1 ], y );
+			max[ i + 1 ] = Math.max( max[ i + 1 ], y );
+			// Flat iteration order: z only increases.
+			max[ i + 2 ] = z;
+			if ( null != intensityMax )
+				intensityMax[ label ] = Math.max( intensityMax[ label ], value );
+		}
+		sum[ i ] += x;
+		sum[ i + 1 ] += y;
+		sum[ i + 2 ] += z;
+		if ( null != intensitySum )
+		{
+			intensitySum[ label ] += value;
+			intensitySumSq[ label ] += value * value;
+		}
+	}
+
+	/**
+	 * Adds the statistics of another part of the image to this one.
+	 */
+	private void merge( final LabelStatistics other )
+	{
+		skipped += other.skipped;
+		if ( other.size > size )
+		{
+			ensureCapacity( other.size );
+			size = other.size;
+		}
+		for ( int label = 0; label < other.size; label++ )
+		{
+			if ( other.count[ label ] == 0 )
+				continue;
+
+			final boolean first = count[ label ] == 0;
+			count[ label ] += other.count[ label ];
+			for ( int d = 0; d < 3; d++ )
+			{
+				final int i = 3 * label + d;
+				sum[ i ] += other.sum[ i ];
+				min[ i ] = first ? other.min[ i ] : Math.min( min[ i ], other.min[ i ] );
+				max[ i ] = first ? other.max[ i ] : Math.max( max[ i ], other.max[ i ] );
+			}
+			if ( null != intensitySum )
+			{
+				intensitySum[ label ] += other.intensitySum[ label ];
+				intensitySumSq[ label ] += other.intensitySumSq[ label ];
+				intensityMax[ label ] = first ? other.intensityMax[ label ] : Math.max( intensityMax[ label ], other.intensityMax[ label ] );
+			}
+		}
+	}
+
+	private void ensureCapacity( final int capacity )
+	{
+		if ( capacity <= count.length )
+			return;
+
+		final int newCapacity = ( int ) Math.min( MAX_LABEL + 1l, Math.max( capacity, 2l * count.length ) );
+		count = Arrays.copyOf( count, newCapacity );
+		sum = Arrays.copyOf( sum, 3 * newCapacity );
+		min = Arrays.copyOf( min, 3 * newCapacity );
+		max = Arrays.copyOf( max, 3 * newCapacity );
+		if ( null != intensitySum )
+		{
+			intensitySum = Arrays.copyOf( intensitySum, newCapacity );
+			intensitySumSq = Arrays.copyOf( intensitySumSq, newCapacity );
+			intensityMax = Arrays.copyOf( intensityMax, newCapacity );
+		}
+	}
+
+	/**
+	 * Returns a bound on the label values: all labels found in the image are
+	 * strictly smaller than this value.
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Returns the number of foreground pixels that were skipped because their
+	 * label is larger than {@link #MAX_LABEL}.
+	 */
+	public long numSkipped()
+	{
+		return skipped;
+	}
+
+	/**
+	 * Returns the number of pixels with the specified label, 0 if it is not
+	 * in the image.
+	 */
+	public long count( final int label )
+	{
+		return label < size ? count[ label ] : 0l;
+	}
+
+	/**
+	 * Returns the centroid of a label along a dimension, in pixel
+	 * coordinates.
+	 */
+	public double centroid( final int label, final int d )
+	{
+		return sum[ 3 * label + d ] / ( double ) count[ label ];
+	}
+
+	/**
+	 * Returns the min of the bounding box of a label along a dimension.
+	 */
+	public long min( final int label, final int d )
+	{
+		return min[ 3 * label + d ];
+	}
+
+	/**
+	 * Returns the max of the bounding box of a label along a dimension.
+	 */
+	public long max( final int label, final int d )
+	{
+		return max[ 3 * label + d ];
+	}
+
+	/**
+	 * Returns whether intensity moments were measured.
+	 */
+	public boolean hasIntensity()
+	{
+		return null != intensitySum;
+	}
+
+	/**
+	 * Returns the mean intensity over a label.
+	 */
+	public double meanIntensity( final int label )
+	{
+		return intensitySum[ label ] / count[ label ];
+	}
+
+	/**
+	 * Returns the variance of the intensity over a label.
+	 */
+	public double intensityVariance( final int label )
+	{
+		final double mean = meanIntensity( label );
+		return Math.max( 0., intensitySumSq[ label ] / count[ label ] - mean * mean );
+	}
+
+	/**
+	 * Returns the max intensity over a label.
+	 */
+	public double maxIntensity( final int label )
+	{
+		return intensityMax[ label ];
+	}
+}
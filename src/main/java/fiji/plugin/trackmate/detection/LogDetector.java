@@ -29,15 +29,10 @@ import fiji.plugin.trackmate.util.Threads;
 import net.imglib2.Interval;
 import net.imglib2.RandomAccessible;
 import net.imglib2.algorithm.MultiThreaded;
-import net.imglib2.algorithm.fft2.FFTConvolution;
 import net.imglib2.img.Img;
-import net.imglib2.img.ImgFactory;
 import net.imglib2.type.NativeType;
 import net.imglib2.type.numeric.RealType;
-import net.imglib2.type.numeric.complex.ComplexFloatType;
 import net.imglib2.type.numeric.real.FloatType;
-import net.imglib2.util.Intervals;
-import net.imglib2.util.Util;
 import net.imglib2.view.IntervalView;
 import net.imglib2.view.Views;
 
@@ -77,12 +72,26 @@ public class LogDetector< T extends RealType< T > & NativeType< T > > implements
 
 	protected final double[] calibration;
 
+	/** Kernel FFTs and buffers, possibly shared with other detectors. */
+	protected final LogDetectorCache cache;
+
 	/*
 	 * CONSTRUCTORS
 	 */
 
 	public LogDetector( final RandomAccessible< T > img, final Interval interval, final double[] calibration, final double radius, final double threshold, final boolean doSubPixelLocalization, final boolean doMedianFilter )
 	{
+		this( img, interval, calibration, radius, threshold, doSubPixelLocalization, doMedianFilter, new LogDetectorCache() );
+	}
+
+	/**
+	 * Creates a LoG detector that uses the specified cache for the kernel FFT
+	 * and the float buffers. Detectors of the same run should share the same
+	 * cache.
+	 */
+	public LogDetector( final RandomAccessible< T > img, final Interval interval, final double[] calibration, final double radius, final double threshold, final boolean doSubPixelLocalization, final boolean doMedianFilter, final LogDetectorCache cache )
+	{
+		this.cache = cache;
 		this.img = img;
 		this.interval = DetectionUtils.squeeze( interval );
 		this.calibration = calibration;
@@ -123,51 +132,60 @@ public class LogDetector< T extends RealType< T > & NativeType< T > > implements
 		 * Copy to float for convolution.
 		 */
 
-		final ImgFactory< FloatType > factory = Util.getArrayOrCellImgFactory( interval, new FloatType() );
-		Img< FloatType > floatImg = DetectionUtils.copyToFloatImg( img, interval, factory );
+		final Img< FloatType > buffer = cache.getFloatImg( interval );
+		Img< FloatType > floatImg = buffer;
+		try
+		{
+			DetectionUtils.copyToFloatImg( img, interval, buffer );
 
-		/*
-		 * Do median filtering (or not).
-		 */
+			/*
+			 * Do median filtering (or not).
+			 */
 
-		if ( doMedianFilter )
-		{
-			floatImg = DetectionUtils.applyMedianFilter( floatImg );
-			if ( null == floatImg )
+			if ( doMedianFilter )
 			{
-				errorMessage = BASE_ERROR_MESSAGE + "Failed to apply median filter.";
-				return false;
+				floatImg = DetectionUtils.applyMedianFilter( floatImg );
+				if ( null == floatImg )
+				{
+					errorMessage = BASE_ERROR_MESSAGE + "Failed to apply median filter.";
+					return false;
+				}
 			}
-		}
 
-		// Squeeze singleton dimensions
-		int ndims = interval.numDimensions();
-		for ( int d = 0; d < interval.numDimensions(); d++ )
-			if ( interval.dimension( d ) <= 1 )
-				ndims--;
+			// Squeeze singleton dimensions
+			int ndims = interval.numDimensions();
+			for ( int d = 0; d < interval.numDimensions(); d++ )
+				if ( interval.dimension( d ) <= 1 )
+					ndims--;
 
-		final Img< FloatType > kernel = DetectionUtils.createLoGKernel( radius, ndims, calibration );
-		final FFTConvolution< FloatType > fftconv = new FFTConvolution<>( floatImg, kernel );
+			/*
+			 * Convolve in place, with the kernel FFT computed once per run.
+			 */
 
-		/*
-		 * Determine the right img factory for FFT calculation.
-		 */
-		Interval fftinterval = floatImg;
-		for ( int d = 0; d < kernel.numDimensions(); d++ )
-			fftinterval = Intervals.expand( fftinterval, kernel.dimension( d ), d );
-		final ImgFactory< ComplexFloatType > imgFactory = Util.getArrayOrCellImgFactory( fftinterval, new ComplexFloatType() );
-		fftconv.setFFTImgFactory( imgFactory );
-
-		final ExecutorService service = Threads.newFixedThreadPool( numThreads );
-		fftconv.setExecutorService( service );
-
-		fftconv.convolve();
-		service.shutdown();
-
-		final long[] minopposite = new long[ interval.numDimensions() ];
-		interval.min( minopposite );
-		final IntervalView< FloatType > to = Views.translate( floatImg, minopposite );
-		spots = DetectionUtils.findLocalMaxima( to, threshold, calibration, radius, doSubPixelLocalization, numThreads );
+			final ExecutorService service = Threads.newFixedThreadPool( numThreads );
+			try
+			{
+				final LogDetectorCache.KernelFFT kernelFFT = cache.getKernelFFT( floatImg, radius, ndims, calibration, service );
+				kernelFFT.convolve( floatImg, service );
+			}
+			finally
+			{
+				service.shutdown();
+			}
+
+			final long[] minopposite = new long[ interval.numDimensions() ];
+			interval.min( minopposite );
+			final IntervalView< FloatType > to = Views.translate( floatImg, minopposite );
+			spots = DetectionUtils.findLocalMaxima( to, threshold, calibration, radius, doSubPixelLocalization, numThreads );
+		}
+		finally
+		{
+			/*
+			 * Spots are created or we failed, we can give back the buffer. The
+			 * median filter output is not from the pool and is dropped.
+			 */
+			cache.releaseFloatImg( buffer );
+		}
 
 		final long end = System.currentTimeMillis();
 		this.processingTime = end - start;
@@ -0,0 +1,279 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2010 - 2023 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.detection;
+
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+
+import net.imglib2.Dimensions;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.algorithm.fft2.FFTConvolution;
+import net.imglib2.img.Img;
+import net.imglib2.img.ImgFactory;
+import net.imglib2.type.numeric.complex.ComplexFloatType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
+import net.imglib2.util.Pair;
+import net.imglib2.util.Util;
+import net.imglib2.view.Views;
+
+/**
+ * Caches shared by the {@link LogDetector}s of a single detection run.
+ * <p>
+ * All the frames of a run have the same size and are convolved with the same
+ * LoG kernel. This cache stores the FFT of the kernel, computed once per image
+ * size, and pools the float images the frames are copied to, so that the
+ * per-frame cost of the detection is only the copy, the image FFT and the
+ * inverse FFT. It can be used concurrently by the detectors processing
+ * several frames in parallel. The pool retains at most as many buffers as
+ * there were detectors running concurrently.
+ * <p>
+ * When frames are detected block by block, the blocks at the image borders
+ * have their own sizes. The number of sizes cached is therefore bounded:
+ * beyond {@link #MAX_SIZES}, kernel FFTs are computed for each call and
+ * buffers are not pooled.
+ *
+ * @author Jean-Yves Tinevez
+ */
+public class LogDetectorCache
+{
+
+	/**
+	 * Maximal number of image sizes for which kernel FFTs and buffers are
+	 * cached. Enough for the inner, border and corner blocks of a 3D tiling.
+	 */
+	public static final int MAX_SIZES = 8;
+
+	private final ConcurrentHashMap< KernelKey, KernelFFT > kernels = new ConcurrentHashMap<>();
+
+	private final ConcurrentHashMap< DimensionsKey, Queue< Img< FloatType > > > buffers = new ConcurrentHashMap<>();
+
+	/**
+	 * Returns a float image with the size of the specified interval. The image
+	 * is taken from the pool if possible, in which case its content is
+	 * undefined. It must be given back with
+	 * {@link #releaseFloatImg(Img)} once it is not used anymore.
+	 *
+	 * @param interval
+	 *            the interval whose size to use.
+	 * @return a float image, with its first pixel at (0, 0).
+	 */
+	public Img< FloatType > getFloatImg( final Interval interval )
+	{
+		final Queue< Img< FloatType > > pool = buffers.get( new DimensionsKey( interval ) );
+		final Img< FloatType > img = ( null == pool ) ? null : pool.poll();
+		if ( null != img )
+			return img;
+		return Util.getArrayOrCellImgFactory( interval, new FloatType() ).create( interval );
+	}
+
+	/**
+	 * Gives back a float image to the pool, so that it can be reused for
+	 * another frame of the same size. The image is dropped if too many sizes
+	 * are already pooled.
+	 *
+	 * @param img
+	 *            the image to give back.
+	 */
+	public void releaseFloatImg( final Img< FloatType > img )
+	{
+		final Queue< Img< FloatType > > pool = pool( img );
+		if ( null != pool )
+			pool.offer( img );
+	}
+
+	/**
+	 * Returns the FFT of the LoG kernel for the specified parameters, and
+	 * the intervals needed to convolve an image of the specified size with it.
+	 * It is computed on the first call and then reused.
+	 *
+	 * @param img
+	 *            the zero-min image to convolve.
+	 * @param radius
+	 *            the radius of the LoG kernel.
+	 * @param nDims
+	 *            the dimensionality of the kernel.
+	 * @param calibration
+	 *            the pixel sizes.
+	 * @param service
+	 *            the executor service to use to compute the kernel FFT.
+	 * @return the kernel FFT.
+	 */
+	public KernelFFT getKernelFFT( final Dimensions img, final double radius, final int nDims, final double[] calibration, final ExecutorService service )
+	{
+		final KernelKey key = new KernelKey( img, radius, nDims, calibration );
+		final KernelFFT cached = kernels.get( key );
+		if ( null != cached )
+			return cached;
+
+		synchronized ( kernels )
+		{
+			if ( kernels.size() >= MAX_SIZES && !kernels.containsKey( key ) )
+				return new KernelFFT( img, radius, nDims, calibration, service );
+			return kernels.computeIfAbsent( key, k -> new KernelFFT( img, radius, nDims, calibration, service ) );
+		}
+	}
+
+	/**
+	 * Empties this cache, so that the kernel FFTs and the pooled buffers can
+	 * be garbage-collected. The cache can still be used afterwards.
+	 */
+	public void clear()
+	{
+		kernels.clear();
+		buffers.clear();
+	}
+
+	/**
+	 * Returns the pool of the specified size, created if needed, or
+	 * <code>null</code> if too many sizes are already pooled.
+	 */
+	private Queue< Img< FloatType > > pool( final Dimensions dimensions )
+	{
+		final DimensionsKey key = new DimensionsKey( dimensions );
+		final Queue< Img< FloatType > > pool = buffers.get( key );
+		if ( null != pool )
+			return pool;
+
+		synchronized ( buffers )
+		{
+			if ( buffers.size() >= MAX_SIZES && !buffers.containsKey( key ) )
+				return null;
+			return buffers.computeIfAbsent( key, k -> new ConcurrentLinkedQueue<>() );
+		}
+	}
+
+	/**
+	 * The FFT of a LoG kernel, padded for the convolution of an image of a
+	 * given size.
+	 */
+	public static final class KernelFFT
+	{
+
+		/** The read-only FFT of the kernel. */
+		private final Img< ComplexFloatType > fft;
+
+		/** The interval of the image to transform, padded. */
+		private final Interval imgInterval;
+
+		private final ImgFactory< ComplexFloatType > factory;
+
+		private KernelFFT( final Dimensions img, final double radius, final int nDims, final double[] calibration, final ExecutorService service )
+		{
+			final Img< FloatType > kernel = DetectionUtils.createLoGKernel( radius, nDims, calibration );
+			final Interval imgInterval = new FinalInterval( Intervals.dimensionsAsLongArray( img ) );
+
+			/*
+			 * Determine the right img factory for FFT calculation.
+			 */
+			Interval fftinterval = imgInterval;
+			for ( int d = 0; d < kernel.numDimensions(); d++ )
+				fftinterval = Intervals.expand( fftinterval, kernel.dimension( d ), d );
+			this.factory = Util.getArrayOrCellImgFactory( fftinterval, new ComplexFloatType() );
+
+			final long[] min = new long[ nDims ];
+			final long[] max = new long[ nDims ];
+			final Pair< Interval, Interval > fftIntervals = FFTConvolution.setupFFTs( imgInterval, kernel, min, max );
+			this.imgInterval = fftIntervals.getA();
+			this.fft = FFTConvolution.computeKernelFFT( fftIntervals.getB(), min, max, false, Views.extendValue( kernel, new FloatType() ), factory, service );
+		}
+
+		/**
+		 * Convolves the specified zero-min float image with this kernel, in
+		 * place.
+		 *
+		 * @param img
+		 *            the image to convolve.
+		 * @param service
+		 *            the executor service to use.
+		 */
+		public void convolve( final Img< FloatType > img, final ExecutorService service )
+		{
+			final Img< ComplexFloatType > fftImg = FFTConvolution.computeImgFFT( imgInterval, Views.extendMirrorSingle( img ), factory, service );
+			FFTConvolution.computeConvolution( fftImg, fft, img, false, service );
+		}
+	}
+
+	private static class DimensionsKey
+	{
+
+		private final long[] dimensions;
+
+		private DimensionsKey( final Dimensions dimensions )
+		{
+			this.dimensions = Intervals.dimensionsAsLongArray( dimensions );
+		}
+
+		@Override
+		public boolean equals( final Object obj )
+		{
+			if ( !( obj instanceof DimensionsKey ) || obj.getClass() != getClass() )
+				return false;
+			return Arrays.equals( dimensions, ( ( DimensionsKey ) obj ).dimensions );
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return Arrays.hashCode( dimensions );
+		}
+	}
+
+	private static final class KernelKey extends DimensionsKey
+	{
+
+		private final double radius;
+
+		private final int nDims;
+
+		private final double[] calibration;
+
+		private KernelKey( final Dimensions dimensions, final double radius, final int nDims, final double[] calibration )
+		{
+			super( dimensions );
+			this.radius = radius;
+			this.nDims = nDims;
+			this.calibration = calibration.clone();
+		}
+
+		@Override
+		public boolean equals( final Object obj )
+		{
+			if ( !super.equals( obj ) )
+				return false;
+			final KernelKey other = ( KernelKey ) obj;
+			return radius == other.radius
+					&& nDims == other.nDims
+					&& Arrays.equals( calibration, other.calibration );
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return 31 * super.hashCode() + Double.hashCode( radius );
+		}
+	}
+}
@@ -101,6 +101,11 @@ public class LogDetectorFactory< T extends RealType< T > & NativeType< T >> impl
 
 	protected String errorMessage;
 
+	/**
+	 * Kernel FFTs and buffers shared by the detectors of the current target.
+	 */
+	protected LogDetectorCache cache = new LogDetectorCache();
+
 	/*
 	 * METHODS
 	 */
@@ -110,11 +115,21 @@ public class LogDetectorFactory< T extends RealType< T > & NativeType< T >> impl
 	{
 		this.img = img;
 		this.settings = settings;
+		this.cache = new LogDetectorCache();
 		return checkSettings( settings );
 	}
 	
 	
 	protected RandomAccessibleInterval< T > prepareFrameImg( final int frame )
+	{
+		return prepareFrameImg( img, frame );
+	}
+
+	/**
+	 * Returns the target channel of the specified frame of an image with the
+	 * same axes as the target image, possibly without time axis.
+	 */
+	protected RandomAccessibleInterval< T > prepareFrameImg( final ImgPlus< T > img, final int frame )
 	{
 		final double[] calibration = TMUtils.getSpatialCalibration( img );
 		RandomAccessibleInterval< T > imFrame;
@@ -156,15 +171,52 @@ public class LogDetectorFactory< T extends RealType< T > & NativeType< T >> impl
 
 	@Override
 	public SpotDetector< T > getDetector( final Interval interval, final int frame )
+	{
+		return getDetector( img, interval, frame );
+	}
+
+	/**
+	 * Empties the kernel FFTs and buffers cached for the detectors of this
+	 * factory. Called at the end of a detection run, so that they do not stay
+	 * in memory as long as the factory.
+	 */
+	public void clearCache()
+	{
+		cache.clear();
+	}
+
+	@Override
+	public boolean supportsFrameImg()
+	{
+		/*
+		 * Subclasses that only override getDetector(Interval, int) would be
+		 * bypassed by getDetector(ImgPlus, Interval, int), so they must opt in
+		 * explicitly.
+		 */
+		return getClass() == LogDetectorFactory.class;
+	}
+
+	@Override
+	public SpotDetector< T > getDetector( final ImgPlus< T > source, final Interval interval, final int frame )
 	{
 		final double radius = ( Double ) settings.get( KEY_RADIUS );
 		final double threshold = ( Double ) settings.get( KEY_THRESHOLD );
 		final boolean doMedian = ( Boolean ) settings.get( KEY_DO_MEDIAN_FILTERING );
 		final boolean doSubpixel = ( Boolean ) settings.get( KEY_DO_SUBPIXEL_LOCALIZATION );
 		final double[] calibration = TMUtils.getSpatialCalibration( img );
-		final RandomAccessible< T > imFrame = prepareFrameImg( frame );
+		final RandomAccessible< T > imFrame = prepareFrameImg( source, frame );
+
+		if ( TiledDetector.needsTiling( interval ) )
+		{
+			// Large frame: process it block by block to bound memory.
+			final long[] margin = TiledDetector.computeMargin( radius, calibration, DetectionUtils.squeeze( interval ).numDimensions() );
+			final TiledDetector< T > detector = new TiledDetector<>( interval, calibration, margin, TiledDetector.DEFAULT_MAX_BLOCK_SIZE,
+					block -> new LogDetector<>( imFrame, block, calibration, radius, threshold, doSubpixel, doMedian, cache ) );
+			detector.setNumThreads( 1 );
+			return detector;
+		}
 
-		final LogDetector< T > detector = new LogDetector<>( imFrame, interval, calibration, radius, threshold, doSubpixel, doMedian );
+		final LogDetector< T > detector = new LogDetector<>( imFrame, interval, calibration, radius, threshold, doSubpixel, doMedian, cache );
 		detector.setNumThreads( 1 );
 		return detector;
 	}
@@ -45,6 +45,7 @@ import fiji.plugin.trackmate.Settings;
 import fiji.plugin.trackmate.gui.components.ConfigurationPanel;
 import fiji.plugin.trackmate.gui.components.detector.MaskDetectorConfigurationPanel;
 import fiji.plugin.trackmate.util.TMUtils;
+import net.imagej.ImgPlus;
 import net.imglib2.Interval;
 import net.imglib2.RandomAccessible;
 import net.imglib2.type.NativeType;
@@ -86,13 +87,13 @@ public class MaskDetectorFactory< T extends RealType< T > & NativeType< T > > ex
 	}
 
 	@Override
-	public SpotDetector< T > getDetector( final Interval interval, final int frame )
+	public SpotDetector< T > getDetector( final ImgPlus< T > source, final Interval interval, final int frame )
 	{
 		final double intensityThreshold = 0.;
 		final boolean simplifyContours = ( Boolean ) settings.get( KEY_SIMPLIFY_CONTOURS );
 		final double[] calibration = TMUtils.getSpatialCalibration( img );
 		final int channel = ( Integer ) settings.get( KEY_TARGET_CHANNEL ) - 1;
-		final RandomAccessible< T > imFrame = DetectionUtils.prepareFrameImg( img, channel, frame );
+		final RandomAccessible< T > imFrame = DetectionUtils.prepareFrameImg( source, channel, frame );
 
 		final ThresholdDetector< T > detector = new ThresholdDetector<>(
 				imFrame,
@@ -104,6 +105,12 @@ public class MaskDetectorFactory< T extends RealType< T > & NativeType< T > > ex
 		return detector;
 	}
 
+	@Override
+	public boolean supportsFrameImg()
+	{
+		return getClass() == MaskDetectorFactory.class;
+	}
+
 	@Override
 	public String getKey()
 	{
@@ -34,7 +34,6 @@ import ij.gui.PolygonRoi;
 import ij.measure.Measurements;
 import ij.process.FloatPolygon;
 import net.imglib2.Interval;
-import net.imglib2.RandomAccess;
 import net.imglib2.RandomAccessible;
 import net.imglib2.RandomAccessibleInterval;
 import net.imglib2.algorithm.labeling.ConnectedComponents;
@@ -50,6 +49,7 @@ import net.imglib2.roi.labeling.ImgLabeling;
 import net.imglib2.roi.labeling.LabelRegion;
 import net.imglib2.roi.labeling.LabelRegionCursor;
 import net.imglib2.roi.labeling.LabelRegions;
+import net.imglib2.roi.labeling.LabelingMapping;
 import net.imglib2.type.BooleanType;
 import net.imglib2.type.logic.BitType;
 import net.imglib2.type.numeric.IntegerType;
@@ -251,7 +251,8 @@ public class MaskUtils
 		return fromLabeling(
 				labeling,
 				interval,
-				calibration );
+				calibration,
+				numThreads );
 	}
 
 	/**
@@ -273,6 +274,40 @@ public class MaskUtils
 			final Interval interval,
 			final double[] calibration )
 	{
+		return fromLabeling( labeling, interval, calibration, 1 );
+	}
+
+	/**
+	 * Creates spots from a label image.
+	 * <p>
+	 * If each pixel has at most one label, the spots are created from a single
+	 * scan of the index image of the labeling, with {@link LabelStatistics}.
+	 * 
+	 * @param <R>
+	 *            the type that backs-up the labeling.
+	 * @param labeling
+	 *            the labeling, must be zero-min.
+	 * @param interval
+	 *            the interval, used to reposition the spots from the zero-min
+	 *            labeling to the proper coordinates.
+	 * @param calibration
+	 *            the physical calibration.
+	 * @param numThreads
+	 *            how many threads to use for multithreaded computation.
+	 * @return a list of spots, without ROI.
+	 */
+	public static < R extends IntegerType< R > > List< Spot > fromLabeling(
+			final ImgLabeling< Integer, R > labeling,
+			final Interval interval,
+			final double[] calibration,
+			final int numThreads )
+	{
+		if ( hasSingleLabels( labeling ) )
+		{
+			final LabelStatistics stats = LabelStatistics.compute( labeling.getIndexImg(), null, numThreads );
+			return fromStatistics( stats, labeling.numDimensions(), interval, calibration );
+		}
+
 		// Parse each component.
 		final LabelRegions< Integer > regions = new LabelRegions<>( labeling );
 		final Iterator< LabelRegion< Integer > > iterator = regions.iterator();
@@ -349,57 +384,93 @@ public class MaskUtils
 		// Crop of the quality image.
 		final IntervalView< R > cropQuality = Views.interval( qualityImage, interval );
 		final IntervalView< R > inQuality = Views.zeroMin( cropQuality );
-		final RandomAccess< R > raQuality = inQuality.randomAccess( inQuality );
-
-		// Parse each component.
-		final LabelRegions< Integer > regions = new LabelRegions<>( labeling );
-		final Iterator< LabelRegion< Integer > > iterator = regions.iterator();
-		final List< Spot > spots = new ArrayList<>( regions.getExistingLabels().size() );
-		while ( iterator.hasNext() )
-		{
-			final LabelRegion< Integer > region = iterator.next();
-			final LabelRegionCursor cursor = region.localizingCursor();
-			final int[] cursorPos = new int[ labeling.numDimensions() ];
-			final long[] sum = new long[ 3 ];
-			double quality = Double.NEGATIVE_INFINITY;
-			while ( cursor.hasNext() )
-			{
-				cursor.fwd();
 
-				// Position.
-				cursor.localize( cursorPos );
-				for ( int d = 0; d < sum.length; d++ )
-					sum[ d ] += cursorPos[ d ];
+		// Measure all components in one scan, with the max quality.
+		final LabelStatistics stats = LabelStatistics.compute( labeling.getIndexImg(), inQuality, numThreads );
+		return fromStatistics( stats, labeling.numDimensions(), interval, calibration );
+	}
 
-				// Quality
-				raQuality.setPosition( cursor );
-				final double q = raQuality.get().getRealDouble();
-				if ( q > quality )
-					quality = q;
-			}
+	/**
+	 * Creates spots from a label image, without building a labeling. The
+	 * label image is scanned once, and a spot is created for each label with
+	 * a size that matches the label size. Pixels with a value smaller than or
+	 * equal to 0 are the background.
+	 * 
+	 * @param <R>
+	 *            the type of the label image. Pixel values are rounded to the
+	 *            nearest integer.
+	 * @param labels
+	 *            the label image, must be zero-min.
+	 * @param interval
+	 *            the interval, used to reposition the spots from the zero-min
+	 *            label image to the proper coordinates.
+	 * @param calibration
+	 *            the physical calibration.
+	 * @param numThreads
+	 *            how many threads to use for multithreaded computation.
+	 * @return a list of spots, without ROI.
+	 * @throws IllegalArgumentException
+	 *             if the image contains labels larger than
+	 *             {@link LabelStatistics#MAX_LABEL}.
+	 * @see LabelStatistics
+	 */
+	public static < R extends RealType< R > > List< Spot > fromLabelImage(
+			final RandomAccessibleInterval< R > labels,
+			final Interval interval,
+			final double[] calibration,
+			final int numThreads )
+	{
+		final LabelStatistics stats = LabelStatistics.compute( labels, null, numThreads );
+		if ( stats.numSkipped() > 0 )
+			throw new IllegalArgumentException( "The label image contains " + stats.numSkipped()
+					+ " pixels with a label larger than " + LabelStatistics.MAX_LABEL + "." );
+		return fromStatistics( stats, labels.numDimensions(), interval, calibration );
+	}
 
-			final double[] pos = new double[ 3 ];
-			for ( int d = 0; d < pos.length; d++ )
-				pos[ d ] = sum[ d ] / ( double ) region.size();
+	/**
+	 * Creates a spot for each label in the specified statistics. The quality
+	 * is the max intensity if it was measured, the label size otherwise.
+	 */
+	private static List< Spot > fromStatistics( final LabelStatistics stats, final int nDims, final Interval interval, final double[] calibration )
+	{
+		final List< Spot > spots = new ArrayList<>();
+		for ( int label = 1; label < stats.size(); label++ )
+		{
+			final long size = stats.count( label );
+			if ( size == 0 )
+				continue;
 
-			final double x = calibration[ 0 ] * ( interval.min( 0 ) + pos[ 0 ] );
-			final double y = calibration[ 1 ] * ( interval.min( 1 ) + pos[ 1 ] );
-			final double z = calibration[ 2 ] * ( interval.min( 2 ) + pos[ 2 ] );
+			final double x = calibration[ 0 ] * ( interval.min( 0 ) + stats.centroid( label, 0 ) );
+			final double y = calibration[ 1 ] * ( interval.min( 1 ) + stats.centroid( label, 1 ) );
+			final double z = calibration[ 2 ] * ( ( nDims > 2 ? interval.min( 2 ) : 0 ) + stats.centroid( label, 2 ) );
 
-			double volume = region.size();
+			double volume = size;
 			for ( int d = 0; d < calibration.length; d++ )
 				if ( calibration[ d ] > 0 )
 					volume *= calibration[ d ];
-
-			final double radius = ( labeling.numDimensions() == 2 )
+			final double radius = ( nDims == 2 )
 					? Math.sqrt( volume / Math.PI )
 					: Math.pow( 3. * volume / ( 4. * Math.PI ), 1. / 3. );
+			final double quality = stats.hasIntensity() ? stats.maxIntensity( label ) : size;
 			spots.add( new Spot( x, y, z, radius, quality ) );
 		}
-
 		return spots;
 	}
 
+	/**
+	 * Returns <code>true</code> if no pixel of the specified labeling has more
+	 * than one label. Then each label is represented by a single value of the
+	 * index image.
+	 */
+	private static boolean hasSingleLabels( final ImgLabeling< Integer, ? > labeling )
+	{
+		final LabelingMapping< Integer > mapping = labeling.getMapping();
+		for ( int i = 0; i < mapping.numSets(); i++ )
+			if ( mapping.labelsAtIndex( i ).size() > 1 )
+				return false;
+		return true;
+	}
+
 	/**
 	 * Creates spots <b>with their ROIs</b> from a <b>2D</b> grayscale image,
 	 * thresholded to create a mask. A spot is created for each
@@ -21,6 +21,7 @@
  */
 package fiji.plugin.trackmate.detection;
 
+import net.imagej.ImgPlus;
 import net.imglib2.Interval;
 import net.imglib2.type.NativeType;
 import net.imglib2.type.numeric.RealType;
@@ -55,4 +56,42 @@ public interface SpotDetectorFactory< T extends RealType< T > & NativeType< T >
 	 *            the frame index in the source image to operate on
 	 */
 	public SpotDetector< T > getDetector( final Interval interval, int frame );
+
+	/**
+	 * Returns a new {@link SpotDetector} configured to operate on the given
+	 * target frame, read from the specified image instead of the target
+	 * <code>ImgPlus</code>. This is used to have detectors operate on frames
+	 * loaded in memory ahead of the detection, by a {@link FramePrefetcher}.
+	 * <p>
+	 * The default implementation ignores the specified image and returns
+	 * {@link #getDetector(Interval, int)}. Factories that support it must
+	 * return <code>true</code> in {@link #supportsFrameImg()}.
+	 *
+	 * @param source
+	 *            the image to read the frame from. It has the same axes and
+	 *            calibration as the target <code>ImgPlus</code>, but possibly
+	 *            no time axis, in which case it is the frame itself.
+	 * @param interval
+	 *            the interval that determines the region in the source image to
+	 *            operate on. Same as for {@link #getDetector(Interval, int)}.
+	 * @param frame
+	 *            the frame index in the target image to operate on.
+	 */
+	public default SpotDetector< T > getDetector( final ImgPlus< T > source, final Interval interval, final int frame )
+	{
+		return getDetector( interval, frame );
+	}
+
+	/**
+	 * Returns <code>true</code> if the detectors returned by
+	 * {@link #getDetector(ImgPlus, Interval, int)} operate on the specified
+	 * image. The default is <code>false</code>.
+	 *
+	 * @return whether this factory can detect in a frame given as a separate
+	 *         image.
+	 */
+	public default boolean supportsFrameImg()
+	{
+		return false;
+	}
 }
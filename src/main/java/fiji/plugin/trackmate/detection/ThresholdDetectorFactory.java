@@ -109,12 +109,29 @@ public class ThresholdDetectorFactory< T extends RealType< T > & NativeType< T >
 	
 	@Override
 	public SpotDetector< T > getDetector( final Interval interval, final int frame )
+	{
+		return getDetector( img, interval, frame );
+	}
+
+	@Override
+	public boolean supportsFrameImg()
+	{
+		/*
+		 * Subclasses that only override getDetector(Interval, int) would be
+		 * bypassed by getDetector(ImgPlus, Interval, int), so they must opt in
+		 * explicitly.
+		 */
+		return getClass() == ThresholdDetectorFactory.class;
+	}
+
+	@Override
+	public SpotDetector< T > getDetector( final ImgPlus< T > source, final Interval interval, final int frame )
 	{
 		final double intensityThreshold = ( Double ) settings.get( KEY_INTENSITY_THRESHOLD );
 		final boolean simplifyContours = ( Boolean ) settings.get( KEY_SIMPLIFY_CONTOURS );
 		final double[] calibration = TMUtils.getSpatialCalibration( img );
 		final int channel = ( Integer ) settings.get( KEY_TARGET_CHANNEL ) - 1;
-		final RandomAccessible< T > imFrame = DetectionUtils.prepareFrameImg( img, channel, frame );
+		final RandomAccessible< T > imFrame = DetectionUtils.prepareFrameImg( source, channel, frame );
 
 		final ThresholdDetector< T > detector = new ThresholdDetector<>(
 				imFrame,
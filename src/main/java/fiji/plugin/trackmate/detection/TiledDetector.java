@@ -0,0 +1,361 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2010 - 2023 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.detection;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.util.Threads;
+import net.imglib2.FinalInterval;
+import net.imglib2.Interval;
+import net.imglib2.algorithm.MultiThreaded;
+import net.imglib2.type.NativeType;
+import net.imglib2.type.numeric.RealType;
+import net.imglib2.util.Intervals;
+
+/**
+ * A {@link SpotDetector} that processes a large interval block by block, so
+ * that the peak memory does not depend on the size of the frame.
+ * <p>
+ * The interval is split in core blocks that partition it. Each core block is
+ * expanded by a margin, large enough for the filtering kernel and the maxima
+ * search to give the same result in the core as on the full interval. The
+ * detection is performed on each expanded block by a delegate detector, and
+ * a spot is kept only if the pixel it lies on belongs to the core block. A
+ * maximum found in the overlap of two blocks is therefore reported once.
+ * <p>
+ * Blocks are processed concurrently, one delegate detector per thread. The
+ * peak memory is roughly the number of threads times the memory needed by the
+ * delegate detector on one expanded block.
+ *
+ * @author Jean-Yves Tinevez
+ *
+ * @param <T>
+ *            the type of the pixels in the source image.
+ */
+public class TiledDetector< T extends RealType< T > & NativeType< T > > implements SpotDetector< T >, MultiThreaded
+{
+
+	/*
+	 * CONSTANTS
+	 */
+
+	private final static String BASE_ERROR_MESSAGE = "TiledDetector: ";
+
+	/**
+	 * Default maximal number of pixels in an expanded block. Intervals larger
+	 * than this are processed block by block by the detectors that support it.
+	 */
+	public static final long DEFAULT_MAX_BLOCK_SIZE = 1l << 26;
+
+	/*
+	 * FIELDS
+	 */
+
+	private final Interval interval;
+
+	private final double[] calibration;
+
+	private final long[] margin;
+
+	private final long maxBlockSize;
+
+	private final Function< Interval, SpotDetector< T > > blockDetector;
+
+	private List< Spot > spots = new ArrayList<>();
+
+	private String errorMessage;
+
+	private long processingTime;
+
+	private int numThreads;
+
+	/*
+	 * CONSTRUCTOR
+	 */
+
+	/**
+	 * Creates a tiled detector.
+	 *
+	 * @param interval
+	 *            the interval to detect spots in.
+	 * @param calibration
+	 *            the pixel sizes, used to map spot positions back to pixels.
+	 * @param margin
+	 *            the margin, in pixels and for each dimension of the squeezed
+	 *            interval, to add around each block.
+	 * @param maxBlockSize
+	 *            the maximal number of pixels in an expanded block.
+	 * @param blockDetector
+	 *            a function that returns a new, single-threaded detector for
+	 *            the specified block interval.
+	 */
+	public TiledDetector(
+			final Interval interval,
+			final double[] calibration,
+			final long[] margin,
+			final long maxBlockSize,
+			final Function< Interval, SpotDetector< T > > blockDetector )
+	{
+		this.interval = DetectionUtils.squeeze( interval );
+		this.calibration = calibration;
+		this.margin = margin;
+		this.maxBlockSize = maxBlockSize;
+		this.blockDetector = blockDetector;
+		setNumThreads();
+	}
+
+	/*
+	 * METHODS
+	 */
+
+	@Override
+	public boolean checkInput()
+	{
+		if ( margin.length < interval.numDimensions() )
+		{
+			errorMessage = BASE_ERROR_MESSAGE + "Margin must be specified for " + interval.numDimensions() + " dimensions, got " + margin.length + ".";
+			return false;
+		}
+		if ( maxBlockSize < 1 )
+		{
+			errorMessage = BASE_ERROR_MESSAGE + "Maximal block size must be strictly positive, got " + maxBlockSize + ".";
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public boolean process()
+	{
+		final long start = System.currentTimeMillis();
+
+		final List< Interval > cores = splitInterval( interval, margin, maxBlockSize );
+		final ExecutorService executors = Threads.newFixedThreadPool( Math.max( 1, Math.min( numThreads, cores.size() ) ) );
+		final List< Future< List< Spot > > > futures = new ArrayList<>( cores.size() );
+		for ( final Interval core : cores )
+			futures.add( executors.submit( () -> processBlock( core ) ) );
+
+		final List< Spot > lSpots = new ArrayList<>();
+		try
+		{
+			for ( final Future< List< Spot > > future : futures )
+			{
+				final List< Spot > blockSpots = future.get();
+				if ( null == blockSpots )
+				{
+					executors.shutdownNow();
+					return false;
+				}
+				lSpots.addAll( blockSpots );
+			}
+		}
+		catch ( final InterruptedException | ExecutionException e )
+		{
+			errorMessage = BASE_ERROR_MESSAGE + "Problem processing a block: " + e.getMessage();
+			executors.shutdownNow();
+			return false;
+		}
+		executors.shutdown();
+
+		spots = lSpots;
+		processingTime = System.currentTimeMillis() - start;
+		return true;
+	}
+
+	/**
+	 * Runs the delegate detector on the specified core block expanded by the
+	 * margin, and returns the spots that lie in the core block, or
+	 * <code>null</code> if the detection failed.
+	 */
+	private List< Spot > processBlock( final Interval core )
+	{
+		final Interval block = Intervals.intersect( Intervals.expand( core, margin ), interval );
+		final SpotDetector< T > detector = blockDetector.apply( block );
+		if ( detector instanceof MultiThreaded )
+			( ( MultiThreaded ) detector ).setNumThreads( 1 );
+
+		if ( !detector.checkInput() || !detector.process() )
+		{
+			errorMessage = BASE_ERROR_MESSAGE + detector.getErrorMessage();
+			return null;
+		}
+
+		final List< Spot > blockSpots = detector.getResult();
+		final List< Spot > kept = new ArrayList<>( blockSpots.size() );
+		for ( final Spot spot : blockSpots )
+			if ( isInCore( spot, core ) )
+				kept.add( spot );
+		return kept;
+	}
+
+	/**
+	 * Returns <code>true</code> if the pixel nearest to the spot position,
+	 * clamped to the interval, belongs to the specified core block. Since core
+	 * blocks partition the interval, exactly one block owns a given position.
+	 */
+	private boolean isInCore( final Spot spot, final Interval core )
+	{
+		for ( int d = 0; d < core.numDimensions(); d++ )
+		{
+			long p = Math.round( spot.getDoublePosition( d ) / calibration[ d ] );
+			p = Math.max( interval.min( d ), Math.min( interval.max( d ), p ) );
+			if ( p < core.min( d ) || p > core.max( d ) )
+				return false;
+		}
+		return true;
+	}
+
+	@Override
+	public List< Spot > getResult()
+	{
+		return spots;
+	}
+
+	@Override
+	public String getErrorMessage()
+	{
+		return errorMessage;
+	}
+
+	@Override
+	public long getProcessingTime()
+	{
+		return processingTime;
+	}
+
+	@Override
+	public void setNumThreads()
+	{
+		this.numThreads = Runtime.getRuntime().availableProcessors();
+	}
+
+	@Override
+	public void setNumThreads( final int numThreads )
+	{
+		this.numThreads = numThreads;
+	}
+
+	@Override
+	public int getNumThreads()
+	{
+		return numThreads;
+	}
+
+	/*
+	 * STATIC METHODS
+	 */
+
+	/**
+	 * Returns <code>true</code> if the specified interval is too large to be
+	 * processed in one go, with the default maximal block size.
+	 *
+	 * @param interval
+	 *            the interval to process.
+	 * @return whether it should be processed block by block.
+	 */
+	public static final boolean needsTiling( final Interval interval )
+	{
+		return Intervals.numElements( interval ) > DEFAULT_MAX_BLOCK_SIZE;
+	}
+
+	/**
+	 * Returns the margin, in pixels, needed around a block for LoG and DoG
+	 * detection of spots of the specified radius. The margin covers the
+	 * support of the largest Gaussian used by these detectors, the median
+	 * filter, the maxima neighborhood and the sub-pixel localization moves.
+	 *
+	 * @param radius
+	 *            the spot radius, in physical units.
+	 * @param calibration
+	 *            the pixel sizes.
+	 * @param nDims
+	 *            the number of dimensions of the squeezed interval.
+	 * @return a new <code>long[]</code> array.
+	 */
+	public static final long[] computeMargin( final double radius, final double[] calibration, final int nDims )
+	{
+		final double sigma = 1.1 * radius / Math.sqrt( nDims );
+		final long[] margin = new long[ nDims ];
+		for ( int d = 0; d < nDims; d++ )
+			margin[ d ] = ( long ) Math.ceil( 4. * sigma / calibration[ d ] ) + 4;
+		return margin;
+	}
+
+	/**
+	 * Splits the specified interval in core blocks that partition it, such
+	 * that each core block expanded by the margin has no more than the
+	 * specified number of pixels. The largest core dimension is halved until
+	 * this holds or until core blocks are no larger than the margin.
+	 */
+	static final List< Interval > splitInterval( final Interval interval, final long[] margin, final long maxBlockSize )
+	{
+		final int n = interval.numDimensions();
+		final long[] coreSize = new long[ n ];
+		interval.dimensions( coreSize );
+		while ( true )
+		{
+			long blockSize = 1;
+			int largest = -1;
+			for ( int d = 0; d < n; d++ )
+			{
+				blockSize *= Math.min( interval.dimension( d ), coreSize[ d ] + 2 * margin[ d ] );
+				if ( coreSize[ d ] > Math.max( 1, margin[ d ] ) && ( largest < 0 || coreSize[ d ] > coreSize[ largest ] ) )
+					largest = d;
+			}
+			if ( blockSize <= maxBlockSize || largest < 0 )
+				break;
+			coreSize[ largest ] = ( coreSize[ largest ] + 1 ) / 2;
+		}
+
+		final long[] nBlocks = new long[ n ];
+		long total = 1;
+		for ( int d = 0; d < n; d++ )
+		{
+			nBlocks[ d ] = ( interval.dimension( d ) + coreSize[ d ] - 1 ) / coreSize[ d ];
+			total *= nBlocks[ d ];
+		}
+
+		final List< Interval > cores = new ArrayList<>( ( int ) total );
+		final long[] index = new long[ n ];
+		final long[] min = new long[ n ];
+		final long[] max = new long[ n ];
+		for ( long i = 0; i < total; i++ )
+		{
+			long rem = i;
+			for ( int d = 0; d < n; d++ )
+			{
+				index[ d ] = rem % nBlocks[ d ];
+				rem /= nBlocks[ d ];
+				min[ d ] = interval.min( d ) + index[ d ] * coreSize[ d ];
+				max[ d ] = Math.min( interval.max( d ), min[ d ] + coreSize[ d ] - 1 );
+			}
+			cores.add( new FinalInterval( min, max ) );
+		}
+		return cores;
+	}
+}
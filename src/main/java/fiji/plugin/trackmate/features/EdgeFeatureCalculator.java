@@ -21,6 +21,7 @@
  */
 package fiji.plugin.trackmate.features;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -32,6 +33,8 @@ import fiji.plugin.trackmate.Dimension;
 import fiji.plugin.trackmate.Logger;
 import fiji.plugin.trackmate.Model;
 import fiji.plugin.trackmate.Settings;
+import fiji.plugin.trackmate.features.edges.BatchEdgeAnalyzer;
+import fiji.plugin.trackmate.features.edges.BatchedEdgeFeatureEngine;
 import fiji.plugin.trackmate.features.edges.EdgeAnalyzer;
 import net.imglib2.algorithm.MultiThreadedBenchmarkAlgorithm;
 
@@ -141,6 +144,11 @@ public class EdgeFeatureCalculator extends MultiThreadedBenchmarkAlgorithm imple
 		if ( doLogIt )
 			logger.log( "Computing edge features:\n", Logger.BLUE_COLOR );
 
+		/*
+		 * Consecutive analyzers that can process batches of edges are run
+		 * together, so that each batch is visited once for all of them.
+		 */
+		final List< BatchEdgeAnalyzer > batched = new ArrayList<>();
 		for ( final EdgeAnalyzer analyzer : analyzers )
 		{
 			if ( isCanceled() )
@@ -151,11 +159,46 @@ public class EdgeFeatureCalculator extends MultiThreadedBenchmarkAlgorithm imple
 				// Skip manual features.
 				continue;
 			}
+
+			if ( analyzer instanceof BatchEdgeAnalyzer )
+			{
+				batched.add( ( BatchEdgeAnalyzer ) analyzer );
+				continue;
+			}
+
+			processBatched( batched, edges, doLogIt );
+			batched.clear();
+
 			analyzer.setNumThreads( numThreads );
 			analyzer.process( edges, model );
 			if ( doLogIt )
 				logger.log( "  - " + analyzer.getName() + " in " + analyzer.getProcessingTime() + " ms.\n" );
 		}
+		if ( isCanceled() )
+			return;
+		processBatched( batched, edges, doLogIt );
+	}
+
+	private void processBatched( final List< BatchEdgeAnalyzer > batched, final Collection< DefaultWeightedEdge > edges, final boolean doLogIt )
+	{
+		if ( batched.isEmpty() )
+			return;
+
+		final long start = System.currentTimeMillis();
+		BatchedEdgeFeatureEngine.process( edges, model, batched, numThreads );
+		final long end = System.currentTimeMillis();
+
+		if ( doLogIt )
+		{
+			final StringBuilder names = new StringBuilder();
+			for ( final BatchEdgeAnalyzer analyzer : batched )
+			{
+				if ( names.length() > 0 )
+					names.append( ", " );
+				names.append( analyzer.getName() );
+			}
+			model.getLogger().log( "  - " + names + " in " + ( end - start ) + " ms.\n" );
+		}
 	}
 
 	// --- org.scijava.Cancelable methods ---
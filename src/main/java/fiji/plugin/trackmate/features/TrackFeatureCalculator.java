@@ -21,6 +21,7 @@
  */
 package fiji.plugin.trackmate.features;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -31,6 +32,8 @@ import fiji.plugin.trackmate.Dimension;
 import fiji.plugin.trackmate.Logger;
 import fiji.plugin.trackmate.Model;
 import fiji.plugin.trackmate.Settings;
+import fiji.plugin.trackmate.features.track.AccumulatingTrackAnalyzer;
+import fiji.plugin.trackmate.features.track.FusedTrackFeatureEngine;
 import fiji.plugin.trackmate.features.track.TrackAnalyzer;
 import net.imglib2.algorithm.MultiThreadedBenchmarkAlgorithm;
 
@@ -139,6 +142,11 @@ public class TrackFeatureCalculator extends MultiThreadedBenchmarkAlgorithm impl
 			logger.log( "Computing track features:\n", Logger.BLUE_COLOR );
 		}
 
+		/*
+		 * Consecutive analyzers that accumulate over a single traversal are
+		 * run together, so that each track is visited once for all of them.
+		 */
+		final List< AccumulatingTrackAnalyzer > fused = new ArrayList<>();
 		for ( final TrackAnalyzer analyzer : analyzers )
 		{
 			if ( isCanceled() )
@@ -150,6 +158,15 @@ public class TrackFeatureCalculator extends MultiThreadedBenchmarkAlgorithm impl
 				continue;
 			}
 
+			if ( analyzer.isLocal() && analyzer instanceof AccumulatingTrackAnalyzer )
+			{
+				fused.add( ( AccumulatingTrackAnalyzer ) analyzer );
+				continue;
+			}
+
+			processFused( fused, trackIDs, doLogIt );
+			fused.clear();
+
 			analyzer.setNumThreads( numThreads );
 			if ( analyzer.isLocal() )
 			{
@@ -164,6 +181,31 @@ public class TrackFeatureCalculator extends MultiThreadedBenchmarkAlgorithm impl
 				logger.log( "  - " + analyzer.getName() + " in " + analyzer.getProcessingTime() + " ms.\n" );
 
 		}
+		if ( isCanceled() )
+			return;
+		processFused( fused, trackIDs, doLogIt );
+	}
+
+	private void processFused( final List< AccumulatingTrackAnalyzer > fused, final Collection< Integer > trackIDs, final boolean doLogIt )
+	{
+		if ( fused.isEmpty() )
+			return;
+
+		final long start = System.currentTimeMillis();
+		FusedTrackFeatureEngine.process( trackIDs, model, fused, numThreads );
+		final long end = System.currentTimeMillis();
+
+		if ( doLogIt )
+		{
+			final StringBuilder names = new StringBuilder();
+			for ( final AccumulatingTrackAnalyzer analyzer : fused )
+			{
+				if ( names.length() > 0 )
+					names.append( ", " );
+				names.append( analyzer.getName() );
+			}
+			model.getLogger().log( "  - " + names + " in " + ( end - start ) + " ms.\n" );
+		}
 	}
 
 	// --- org.scijava.Cancelable methods ---
@@ -21,14 +21,10 @@
  */
 package fiji.plugin.trackmate.features.edges;
 
-import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
 
 import javax.swing.ImageIcon;
 
@@ -37,14 +33,13 @@ import org.scijava.plugin.Plugin;
 
 import fiji.plugin.trackmate.Dimension;
 import fiji.plugin.trackmate.Model;
-import fiji.plugin.trackmate.util.Threads;
 
 /**
  * Abstract class for edge analyzers that are local and not manual. Offers
  * multithreading.
  */
 @Plugin( type = EdgeAnalyzer.class, enabled = false )
-public abstract class AbstractEdgeAnalyzer implements EdgeAnalyzer
+public abstract class AbstractEdgeAnalyzer implements BatchEdgeAnalyzer
 {
 
 	private int numThreads;
@@ -181,41 +176,23 @@ public abstract class AbstractEdgeAnalyzer implements EdgeAnalyzer
 			return;
 
 		final long start = System.currentTimeMillis();
-
-		// Create tasks.
-		final List< Callable< Void > > tasks = new ArrayList<>( edges.size() );
-		for ( final DefaultWeightedEdge edge : edges )
-		{
-			final Callable< Void > task = new Callable< Void >()
-			{
-
-				@Override
-				public Void call() throws Exception
-				{
-					analyze( edge, model );
-					return null;
-				}
-			};
-			tasks.add( task );
-		}
-
-		final ExecutorService executorService = Threads.newFixedThreadPool( numThreads );
-		List< Future< Void > > futures;
-		try
-		{
-			futures = executorService.invokeAll( tasks );
-			for ( final Future< Void > future : futures )
-				future.get();
-		}
-		catch ( InterruptedException | ExecutionException e )
-		{
-			e.printStackTrace();
-		}
-		executorService.shutdown();
-
+		BatchedEdgeFeatureEngine.process( edges, model, Collections.singletonList( this ), numThreads );
 		final long end = System.currentTimeMillis();
 		processingTime = end - start;
 	}
 
+	/**
+	 * Computes the features of a batch of edges. By default, calls
+	 * {@link #analyze(DefaultWeightedEdge, Model)} on each edge. Concrete
+	 * implementations can override this method to compute and store the
+	 * feature values in bulk.
+	 */
+	@Override
+	public void processBatch( final EdgeBatch batch, final Model model )
+	{
+		for ( int i = 0; i < batch.size(); i++ )
+			analyze( batch.edge( i ), model );
+	}
+
 	protected abstract void analyze( final DefaultWeightedEdge edge, final Model model );
 }
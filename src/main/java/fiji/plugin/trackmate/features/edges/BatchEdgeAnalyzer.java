@@ -0,0 +1,48 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2010 - 2023 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.features.edges;
+
+import fiji.plugin.trackmate.Model;
+
+/**
+ * Interface for the edge analyzers that can compute their features over a
+ * batch of edges. The {@link BatchedEdgeFeatureEngine} partitions the edges in
+ * contiguous batches and runs all the batch analyzers on each batch in turn,
+ * so that there is one task per batch rather than one task per edge and per
+ * analyzer.
+ *
+ * @author Jean-Yves Tinevez
+ */
+public interface BatchEdgeAnalyzer extends EdgeAnalyzer
+{
+
+	/**
+	 * Computes the features of all the edges in the batch and stores them
+	 * with {@link EdgeBatch#put(String, double[])}.
+	 *
+	 * @param batch
+	 *            the batch of edges.
+	 * @param model
+	 *            the {@link Model} they belong to.
+	 */
+	public void processBatch( final EdgeBatch batch, final Model model );
+}
@@ -0,0 +1,124 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2010 - 2023 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.features.edges;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.TrackModel;
+import fiji.plugin.trackmate.util.Threads;
+
+/**
+ * Computes the features of several {@link BatchEdgeAnalyzer}s over contiguous
+ * batches of edges. Each worker thread takes the next batch, resolves its
+ * source and target spots once, and runs all the analyzers on it.
+ *
+ * @author Jean-Yves Tinevez
+ */
+public class BatchedEdgeFeatureEngine
+{
+
+	/**
+	 * Number of edges per batch.
+	 */
+	public static final int BATCH_SIZE = 1024;
+
+	private BatchedEdgeFeatureEngine()
+	{}
+
+	/**
+	 * Computes the features of the specified analyzers for the specified
+	 * edges. Analyzers are run in list order on each batch.
+	 *
+	 * @param edges
+	 *            the edges to analyze.
+	 * @param model
+	 *            the model the edges belong to.
+	 * @param analyzers
+	 *            the analyzers to run.
+	 * @param numThreads
+	 *            how many threads to use.
+	 */
+	public static void process( final Collection< DefaultWeightedEdge > edges, final Model model, final List< ? extends BatchEdgeAnalyzer > analyzers, final int numThreads )
+	{
+		if ( edges.isEmpty() || analyzers.isEmpty() )
+			return;
+
+		final DefaultWeightedEdge[] all = edges.toArray( new DefaultWeightedEdge[ edges.size() ] );
+		final int nBatches = ( all.length + BATCH_SIZE - 1 ) / BATCH_SIZE;
+		final TrackModel trackModel = model.getTrackModel();
+		final AtomicInteger next = new AtomicInteger( 0 );
+
+		final int nTasks = Math.max( 1, Math.min( numThreads, nBatches ) );
+		final List< Callable< Void > > tasks = new ArrayList<>( nTasks );
+		for ( int i = 0; i < nTasks; i++ )
+		{
+			tasks.add( () -> {
+				final EdgeBatch batch = new EdgeBatch( model, BATCH_SIZE );
+				int b;
+				while ( ( b = next.getAndIncrement() ) < nBatches )
+				{
+					final int start = b * BATCH_SIZE;
+					batch.fill( trackModel, all, start, Math.min( all.length, start + BATCH_SIZE ) );
+					for ( final BatchEdgeAnalyzer analyzer : analyzers )
+						analyzer.processBatch( batch, model );
+				}
+				return null;
+			} );
+		}
+
+		if ( nTasks == 1 )
+		{
+			try
+			{
+				tasks.get( 0 ).call();
+			}
+			catch ( final Exception e )
+			{
+				e.printStackTrace();
+			}
+			return;
+		}
+
+		final ExecutorService executorService = Threads.newFixedThreadPool( nTasks );
+		try
+		{
+			final List< Future< Void > > futures = executorService.invokeAll( tasks );
+			for ( final Future< Void > future : futures )
+				future.get();
+		}
+		catch ( InterruptedException | ExecutionException e )
+		{
+			e.printStackTrace();
+		}
+		executorService.shutdown();
+	}
+}
@@ -66,12 +66,27 @@ public class DirectionalChangeAnalyzer extends AbstractEdgeAnalyzer
 	protected void analyze( final DefaultWeightedEdge edge, final Model model )
 	{
 		final FeatureModel featureModel = model.getFeatureModel();
-		
+		final Spot source = model.getTrackModel().getEdgeSource( edge );
+		final Spot target = model.getTrackModel().getEdgeTarget( edge );
+		final double angleSpeed = directionalChangeRate( source, target, model, new double[ 3 ] );
+		featureModel.putEdgeFeature( edge, DIRECTIONAL_CHANGE_RATE, Double.valueOf( angleSpeed ) );
+	}
+
+	@Override
+	public void processBatch( final EdgeBatch batch, final Model model )
+	{
 		// Storage array for 3D angle calculation.
 		final double[] out = new double[ 3 ];
+		final double[] rates = batch.newValues();
+		for ( int i = 0; i < batch.size(); i++ )
+			rates[ i ] = directionalChangeRate( batch.source( i ), batch.target( i ), model, out );
+		batch.put( DIRECTIONAL_CHANGE_RATE, rates );
+	}
 
-		Spot source = model.getTrackModel().getEdgeSource( edge );
-		Spot target = model.getTrackModel().getEdgeTarget( edge );
+	private static final double directionalChangeRate( final Spot edgeSource, final Spot edgeTarget, final Model model, final double[] out )
+	{
+		Spot source = edgeSource;
+		Spot target = edgeTarget;
 
 		// Some edges maybe improperly oriented.
 		if ( source.diffTo( target, Spot.FRAME ) > 0. )
@@ -116,10 +131,7 @@ public class DirectionalChangeAnalyzer extends AbstractEdgeAnalyzer
 		 * is anyway not defined in case of branching.
 		 */
 		if ( nPredecessors != 1 )
-		{
-			featureModel.putEdgeFeature( edge, DIRECTIONAL_CHANGE_RATE, Double.NaN );
-			return;
-		}
+			return Double.NaN;
 
 		// Vectors.
 		final double dx1 = source.diffTo( predecessor, Spot.POSITION_X );
@@ -128,9 +140,7 @@ public class DirectionalChangeAnalyzer extends AbstractEdgeAnalyzer
 
 		crossProduct( dx1, dy1, dz1, dx2, dy2, dz2, out );
 		final double deltaAlpha = Math.atan2( norm( out ), dotProduct( dx1, dy1, dz1, dx2, dy2, dz2 ) );
-		final double angleSpeed = deltaAlpha / target.diffTo( source, Spot.POSITION_T );
-
-		featureModel.putEdgeFeature( edge, DIRECTIONAL_CHANGE_RATE, Double.valueOf( angleSpeed ) );
+		return deltaAlpha / target.diffTo( source, Spot.POSITION_T );
 	}
 
 	private static final double dotProduct( final double dx1, final double dy1, final double dz1, final double dx2, final double dy2, final double dz2 )
@@ -0,0 +1,125 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2010 - 2023 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.features.edges;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+
+import fiji.plugin.trackmate.FeatureModel;
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.TrackModel;
+
+/**
+ * A contiguous batch of edges, with their source and target spots resolved
+ * once for all the analyzers that process the batch. Feature values are
+ * computed in a primitive array and written to the feature model in bulk with
+ * {@link #put(String, double[])}.
+ * <p>
+ * A batch is used by a single thread.
+ *
+ * @author Jean-Yves Tinevez
+ */
+public final class EdgeBatch
+{
+
+	private final FeatureModel featureModel;
+
+	private final DefaultWeightedEdge[] edges;
+
+	private final Spot[] sources;
+
+	private final Spot[] targets;
+
+	private int size;
+
+	EdgeBatch( final Model model, final int capacity )
+	{
+		this.featureModel = model.getFeatureModel();
+		this.edges = new DefaultWeightedEdge[ capacity ];
+		this.sources = new Spot[ capacity ];
+		this.targets = new Spot[ capacity ];
+	}
+
+	/**
+	 * Resets this batch to the specified range of edges.
+	 */
+	void fill( final TrackModel trackModel, final DefaultWeightedEdge[] from, final int start, final int end )
+	{
+		size = end - start;
+		for ( int i = 0; i < size; i++ )
+		{
+			final DefaultWeightedEdge edge = from[ start + i ];
+			edges[ i ] = edge;
+			sources[ i ] = trackModel.getEdgeSource( edge );
+			targets[ i ] = trackModel.getEdgeTarget( edge );
+		}
+	}
+
+	/**
+	 * Returns the number of edges in this batch.
+	 *
+	 * @return the number of edges.
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	public DefaultWeightedEdge edge( final int i )
+	{
+		return edges[ i ];
+	}
+
+	public Spot source( final int i )
+	{
+		return sources[ i ];
+	}
+
+	public Spot target( final int i )
+	{
+		return targets[ i ];
+	}
+
+	/**
+	 * Returns a new array of length {@link #size()} to compute the values of a
+	 * feature in.
+	 *
+	 * @return a new array.
+	 */
+	public double[] newValues()
+	{
+		return new double[ size ];
+	}
+
+	/**
+	 * Stores the values of a feature for all the edges of this batch.
+	 *
+	 * @param feature
+	 *            the feature.
+	 * @param values
+	 *            the values, one per edge, in batch order.
+	 */
+	public void put( final String feature, final double[] values )
+	{
+		featureModel.putEdgeFeatures( edges, size, feature, values );
+	}
+}
@@ -78,14 +78,42 @@ public class EdgeSpeedAnalyzer extends AbstractEdgeAnalyzer
 		final Spot source = model.getTrackModel().getEdgeSource( edge );
 		final Spot target = model.getTrackModel().getEdgeTarget( edge );
 
+		final double D = displacement( source, target );
+		final double S = speed( source, target, D );
+
+		featureModel.putEdgeFeature( edge, SPEED, S );
+		featureModel.putEdgeFeature( edge, DISPLACEMENT, D );
+	}
+
+	@Override
+	public void processBatch( final EdgeBatch batch, final Model model )
+	{
+		final double[] speeds = batch.newValues();
+		final double[] displacements = batch.newValues();
+		for ( int i = 0; i < batch.size(); i++ )
+		{
+			final Spot source = batch.source( i );
+			final Spot target = batch.target( i );
+
+			final double D = displacement( source, target );
+			displacements[ i ] = D;
+			speeds[ i ] = speed( source, target, D );
+		}
+		batch.put( SPEED, speeds );
+		batch.put( DISPLACEMENT, displacements );
+	}
+
+	private static final double displacement( final Spot source, final Spot target )
+	{
 		final double dx = target.diffTo( source, Spot.POSITION_X );
 		final double dy = target.diffTo( source, Spot.POSITION_Y );
 		final double dz = target.diffTo( source, Spot.POSITION_Z );
-		final double dt = target.diffTo( source, Spot.POSITION_T );
-		final double D = Math.sqrt( dx * dx + dy * dy + dz * dz );
-		final double S = D / Math.abs( dt );
+		return Math.sqrt( dx * dx + dy * dy + dz * dz );
+	}
 
-		featureModel.putEdgeFeature( edge, SPEED, S );
-		featureModel.putEdgeFeature( edge, DISPLACEMENT, D );
+	private static final double speed( final Spot source, final Spot target, final double displacement )
+	{
+		final double dt = target.diffTo( source, Spot.POSITION_T );
+		return displacement / Math.abs( dt );
 	}
 }
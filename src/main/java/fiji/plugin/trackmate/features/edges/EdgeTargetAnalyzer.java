@@ -82,11 +82,40 @@ public class EdgeTargetAnalyzer extends AbstractEdgeAnalyzer
 	{
 		final FeatureModel featureModel = model.getFeatureModel();
 		// Edge weight
-		featureModel.putEdgeFeature( edge, EDGE_COST, model.getTrackModel().getEdgeWeight( edge ) );
+		featureModel.putEdgeFeature( edge, EDGE_COST, cost( edge, model ) );
 		// Source & target name & ID
 		final Spot source = model.getTrackModel().getEdgeSource( edge );
-		featureModel.putEdgeFeature( edge, SPOT_SOURCE_ID, Double.valueOf( source.ID() ) );
+		featureModel.putEdgeFeature( edge, SPOT_SOURCE_ID, id( source ) );
 		final Spot target = model.getTrackModel().getEdgeTarget( edge );
-		featureModel.putEdgeFeature( edge, SPOT_TARGET_ID, Double.valueOf( target.ID() ) );
+		featureModel.putEdgeFeature( edge, SPOT_TARGET_ID, id( target ) );
+	}
+
+	@Override
+	public void processBatch( final EdgeBatch batch, final Model model )
+	{
+		final double[] costs = batch.newValues();
+		final double[] sourceIDs = batch.newValues();
+		final double[] targetIDs = batch.newValues();
+		for ( int i = 0; i < batch.size(); i++ )
+		{
+			// Edge weight
+			costs[ i ] = cost( batch.edge( i ), model );
+			// Source & target name & ID
+			sourceIDs[ i ] = id( batch.source( i ) );
+			targetIDs[ i ] = id( batch.target( i ) );
+		}
+		batch.put( EDGE_COST, costs );
+		batch.put( SPOT_SOURCE_ID, sourceIDs );
+		batch.put( SPOT_TARGET_ID, targetIDs );
+	}
+
+	private static final double cost( final DefaultWeightedEdge edge, final Model model )
+	{
+		return model.getTrackModel().getEdgeWeight( edge );
+	}
+
+	private static final double id( final Spot spot )
+	{
+		return spot.ID();
 	}
 }
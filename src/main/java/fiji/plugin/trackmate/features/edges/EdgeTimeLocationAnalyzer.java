@@ -90,14 +90,42 @@ public class EdgeTimeLocationAnalyzer extends AbstractEdgeAnalyzer
 		final Spot source = model.getTrackModel().getEdgeSource( edge );
 		final Spot target = model.getTrackModel().getEdgeTarget( edge );
 
-		final double x = 0.5 * ( source.getFeature( Spot.POSITION_X ) + target.getFeature( Spot.POSITION_X ) );
-		final double y = 0.5 * ( source.getFeature( Spot.POSITION_Y ) + target.getFeature( Spot.POSITION_Y ) );
-		final double z = 0.5 * ( source.getFeature( Spot.POSITION_Z ) + target.getFeature( Spot.POSITION_Z ) );
-		final double t = 0.5 * ( source.getFeature( Spot.POSITION_T ) + target.getFeature( Spot.POSITION_T ) );
+		final double x = mean( source, target, Spot.POSITION_X );
+		final double y = mean( source, target, Spot.POSITION_Y );
+		final double z = mean( source, target, Spot.POSITION_Z );
+		final double t = mean( source, target, Spot.POSITION_T );
 
 		featureModel.putEdgeFeature( edge, TIME, t );
 		featureModel.putEdgeFeature( edge, X_LOCATION, x );
 		featureModel.putEdgeFeature( edge, Y_LOCATION, y );
 		featureModel.putEdgeFeature( edge, Z_LOCATION, z );
 	}
+
+	@Override
+	public void processBatch( final EdgeBatch batch, final Model model )
+	{
+		final double[] ts = batch.newValues();
+		final double[] xs = batch.newValues();
+		final double[] ys = batch.newValues();
+		final double[] zs = batch.newValues();
+		for ( int i = 0; i < batch.size(); i++ )
+		{
+			final Spot source = batch.source( i );
+			final Spot target = batch.target( i );
+
+			xs[ i ] = mean( source, target, Spot.POSITION_X );
+			ys[ i ] = mean( source, target, Spot.POSITION_Y );
+			zs[ i ] = mean( source, target, Spot.POSITION_Z );
+			ts[ i ] = mean( source, target, Spot.POSITION_T );
+		}
+		batch.put( TIME, ts );
+		batch.put( X_LOCATION, xs );
+		batch.put( Y_LOCATION, ys );
+		batch.put( Z_LOCATION, zs );
+	}
+
+	private static final double mean( final Spot source, final Spot target, final String feature )
+	{
+		return 0.5 * ( source.getFeature( feature ) + target.getFeature( feature ) );
+	}
 }
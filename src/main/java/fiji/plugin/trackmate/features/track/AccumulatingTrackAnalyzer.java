@@ -0,0 +1,57 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2010 - 2023 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.features.track;
+
+import fiji.plugin.trackmate.Model;
+
+/**
+ * Interface for the local track analyzers that can compute their features from
+ * a single traversal of each track, shared with other analyzers. The
+ * {@link FusedTrackFeatureEngine} visits each track once and feeds the
+ * accumulators of all the analyzers at the same time, instead of having each
+ * analyzer fetch, sort and iterate over the track again.
+ * <p>
+ * Analyzers whose features depend on the features of another analyzer can read
+ * them from the feature model in
+ * {@link TrackFeatureAccumulator#finish(Integer, fiji.plugin.trackmate.FeatureModel)},
+ * provided they come after this analyzer in the processing order.
+ *
+ * @author Jean-Yves Tinevez
+ */
+public interface AccumulatingTrackAnalyzer extends TrackAnalyzer
+{
+
+	/**
+	 * Returns a new accumulator for the specified track.
+	 *
+	 * @param trackID
+	 *            the ID of the track to analyze.
+	 * @param model
+	 *            the model the track belongs to.
+	 * @param nSpots
+	 *            the number of spots in the track.
+	 * @param nEdges
+	 *            the number of edges in the track.
+	 * @return a new accumulator.
+	 */
+	public TrackFeatureAccumulator accumulator( final Integer trackID, final Model model, final int nSpots, final int nEdges );
+}
@@ -0,0 +1,169 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2010 - 2023 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.features.track;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+
+import fiji.plugin.trackmate.FeatureModel;
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.TrackModel;
+import fiji.plugin.trackmate.util.Threads;
+
+/**
+ * Computes the features of several {@link AccumulatingTrackAnalyzer}s in a
+ * single traversal of each track. The spots and edges of each track are
+ * fetched and sorted by frame once, then fed to one accumulator per analyzer.
+ * Tracks are processed in parallel on a single thread pool.
+ *
+ * @author Jean-Yves Tinevez
+ */
+public class FusedTrackFeatureEngine
+{
+
+	private FusedTrackFeatureEngine()
+	{}
+
+	/**
+	 * Computes the features of the specified analyzers for the specified
+	 * tracks. Accumulators are finished in the order of the analyzer list, so
+	 * that an analyzer can use the features of the analyzers that come before
+	 * it.
+	 *
+	 * @param trackIDs
+	 *            the IDs of the tracks to analyze.
+	 * @param model
+	 *            the model the tracks belong to.
+	 * @param analyzers
+	 *            the analyzers to run.
+	 * @param numThreads
+	 *            how many threads to use.
+	 */
+	public static void process( final Collection< Integer > trackIDs, final Model model, final List< ? extends AccumulatingTrackAnalyzer > analyzers, final int numThreads )
+	{
+		if ( trackIDs.isEmpty() || analyzers.isEmpty() )
+			return;
+
+		final Integer[] ids = trackIDs.toArray( new Integer[ trackIDs.size() ] );
+		final AtomicInteger next = new AtomicInteger( 0 );
+		final int nTasks = Math.max( 1, Math.min( numThreads, ids.length ) );
+		final List< Callable< Void > > tasks = new ArrayList<>( nTasks );
+		for ( int i = 0; i < nTasks; i++ )
+		{
+			tasks.add( () -> {
+				int t;
+				while ( ( t = next.getAndIncrement() ) < ids.length )
+					analyze( ids[ t ], model, analyzers );
+				return null;
+			} );
+		}
+
+		final ExecutorService executorService = Threads.newFixedThreadPool( nTasks );
+		try
+		{
+			final List< Future< Void > > futures = executorService.invokeAll( tasks );
+			for ( final Future< Void > future : futures )
+				future.get();
+		}
+		catch ( InterruptedException | ExecutionException e )
+		{
+			e.printStackTrace();
+		}
+		executorService.shutdown();
+	}
+
+	/**
+	 * Computes the features of the specified analyzers for a single track, in
+	 * the calling thread.
+	 *
+	 * @param trackID
+	 *            the ID of the track to analyze.
+	 * @param model
+	 *            the model the track belongs to.
+	 * @param analyzers
+	 *            the analyzers to run.
+	 */
+	public static void analyze( final Integer trackID, final Model model, final List< ? extends AccumulatingTrackAnalyzer > analyzers )
+	{
+		final TrackModel trackModel = model.getTrackModel();
+		final Set< Spot > spotSet = trackModel.trackSpots( trackID );
+		if ( null == spotSet )
+			return;
+		final Set< DefaultWeightedEdge > edgeSet = trackModel.trackEdges( trackID );
+
+		// Spots by frame.
+		final Spot[] spots = spotSet.toArray( new Spot[ spotSet.size() ] );
+		Arrays.sort( spots, Spot.frameComparator );
+
+		// Edges by source frame, sorted on primitive keys.
+		final int nEdges = ( null == edgeSet ) ? 0 : edgeSet.size();
+		final DefaultWeightedEdge[] unsorted = new DefaultWeightedEdge[ nEdges ];
+		final Spot[] unsortedSources = new Spot[ nEdges ];
+		final long[] keys = new long[ nEdges ];
+		int n = 0;
+		if ( null != edgeSet )
+		{
+			for ( final DefaultWeightedEdge edge : edgeSet )
+			{
+				final Spot source = trackModel.getEdgeSource( edge );
+				unsorted[ n ] = edge;
+				unsortedSources[ n ] = source;
+				keys[ n ] = ( ( long ) source.getFeature( Spot.FRAME ).intValue() << 32 ) | n;
+				n++;
+			}
+		}
+		Arrays.sort( keys );
+
+		final TrackFeatureAccumulator[] accumulators = new TrackFeatureAccumulator[ analyzers.size() ];
+		for ( int i = 0; i < accumulators.length; i++ )
+			accumulators[ i ] = analyzers.get( i ).accumulator( trackID, model, spots.length, nEdges );
+
+		for ( final Spot spot : spots )
+			for ( final TrackFeatureAccumulator accumulator : accumulators )
+				accumulator.spot( spot );
+
+		for ( final long key : keys )
+		{
+			final int e = ( int ) key;
+			final DefaultWeightedEdge edge = unsorted[ e ];
+			final Spot source = unsortedSources[ e ];
+			final Spot target = trackModel.getEdgeTarget( edge );
+			for ( final TrackFeatureAccumulator accumulator : accumulators )
+				accumulator.edge( edge, source, target );
+		}
+
+		final FeatureModel fm = model.getFeatureModel();
+		for ( final TrackFeatureAccumulator accumulator : accumulators )
+			accumulator.finish( trackID, fm );
+	}
+}
@@ -22,10 +22,10 @@
 package fiji.plugin.trackmate.features.track;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 import org.scijava.plugin.Plugin;
 
@@ -35,7 +35,7 @@ import fiji.plugin.trackmate.Model;
 import fiji.plugin.trackmate.Spot;
 
 @Plugin( type = TrackAnalyzer.class )
-public class TrackDurationAnalyzer extends AbstractTrackAnalyzer
+public class TrackDurationAnalyzer extends AbstractTrackAnalyzer implements AccumulatingTrackAnalyzer
 {
 
 	public static final String KEY = "Track duration";
@@ -86,35 +86,50 @@ public class TrackDurationAnalyzer extends AbstractTrackAnalyzer
 	@Override
 	protected void analyze( final Integer trackID, final Model model )
 	{
-		final FeatureModel fm = model.getFeatureModel();
-
-		// I love brute force.
-		final Set< Spot > track = model.getTrackModel().trackSpots( trackID );
-		double minT = Double.POSITIVE_INFINITY;
-		double maxT = Double.NEGATIVE_INFINITY;
-		Double t;
-		Spot startSpot = null;
-		Spot endSpot = null;
-		for ( final Spot spot : track )
+		FusedTrackFeatureEngine.analyze( trackID, model, Collections.singletonList( this ) );
+	}
+
+	@Override
+	public TrackFeatureAccumulator accumulator( final Integer trackID, final Model model, final int nSpots, final int nEdges )
+	{
+		return new TrackFeatureAccumulator()
 		{
-			t = spot.getFeature( Spot.POSITION_T );
-			if ( t < minT )
+
+			private double minT = Double.POSITIVE_INFINITY;
+
+			private double maxT = Double.NEGATIVE_INFINITY;
+
+			private Spot startSpot = null;
+
+			private Spot endSpot = null;
+
+			@Override
+			public void spot( final Spot spot )
 			{
-				minT = t;
-				startSpot = spot;
+				final double t = spot.getFeature( Spot.POSITION_T ).doubleValue();
+				if ( t < minT )
+				{
+					minT = t;
+					startSpot = spot;
+				}
+				if ( t > maxT )
+				{
+					maxT = t;
+					endSpot = spot;
+				}
 			}
-			if ( t > maxT )
+
+			@Override
+			public void finish( final Integer trackID, final FeatureModel fm )
 			{
-				maxT = t;
-				endSpot = spot;
+				if ( null == startSpot || null == endSpot )
+					return;
+
+				fm.putTrackFeature( trackID, TRACK_DURATION, ( maxT - minT ) );
+				fm.putTrackFeature( trackID, TRACK_START, minT );
+				fm.putTrackFeature( trackID, TRACK_STOP, maxT );
+				fm.putTrackFeature( trackID, TRACK_DISPLACEMENT, Math.sqrt( startSpot.squareDistanceTo( endSpot ) ) );
 			}
-		}
-		if ( null == startSpot || null == endSpot )
-			return;
-
-		fm.putTrackFeature( trackID, TRACK_DURATION, ( maxT - minT ) );
-		fm.putTrackFeature( trackID, TRACK_START, minT );
-		fm.putTrackFeature( trackID, TRACK_STOP, maxT );
-		fm.putTrackFeature( trackID, TRACK_DISPLACEMENT, Math.sqrt( startSpot.squareDistanceTo( endSpot ) ) );
+		};
 	}
 }
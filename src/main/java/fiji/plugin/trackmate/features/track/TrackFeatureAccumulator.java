@@ -0,0 +1,74 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2010 - 2023 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.features.track;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+
+import fiji.plugin.trackmate.FeatureModel;
+import fiji.plugin.trackmate.Spot;
+
+/**
+ * Accumulates the feature values of a single track while it is traversed by
+ * the {@link FusedTrackFeatureEngine}.
+ * <p>
+ * The engine first feeds all the spots of the track in increasing frame order,
+ * then all its edges in increasing frame order of their source spot, and
+ * finally calls {@link #finish(Integer, FeatureModel)} so that the
+ * accumulator stores its values. An accumulator is used by a single thread.
+ *
+ * @author Jean-Yves Tinevez
+ */
+public interface TrackFeatureAccumulator
+{
+
+	/**
+	 * Accumulates a spot of the track.
+	 *
+	 * @param spot
+	 *            the spot.
+	 */
+	public default void spot( final Spot spot )
+	{}
+
+	/**
+	 * Accumulates an edge of the track.
+	 *
+	 * @param edge
+	 *            the edge.
+	 * @param source
+	 *            the source spot of the edge.
+	 * @param target
+	 *            the target spot of the edge.
+	 */
+	public default void edge( final DefaultWeightedEdge edge, final Spot source, final Spot target )
+	{}
+
+	/**
+	 * Stores the accumulated feature values in the feature model.
+	 *
+	 * @param trackID
+	 *            the ID of the track.
+	 * @param fm
+	 *            the feature model to store values in.
+	 */
+	public void finish( final Integer trackID, final FeatureModel fm );
+}
@@ -22,10 +22,10 @@
 package fiji.plugin.trackmate.features.track;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 import org.scijava.plugin.Plugin;
 
@@ -35,7 +35,7 @@ import fiji.plugin.trackmate.Model;
 import fiji.plugin.trackmate.Spot;
 
 @Plugin( type = TrackAnalyzer.class )
-public class TrackLocationAnalyzer extends AbstractTrackAnalyzer
+public class TrackLocationAnalyzer extends AbstractTrackAnalyzer implements AccumulatingTrackAnalyzer
 {
 
 	public static final String KEY = "Track location";
@@ -80,26 +80,36 @@ public class TrackLocationAnalyzer extends AbstractTrackAnalyzer
 	@Override
 	protected void analyze( final Integer trackID, final Model model )
 	{
-		final FeatureModel fm = model.getFeatureModel();
-		final Set< Spot > track = model.getTrackModel().trackSpots( trackID );
-
-		double x = 0.;
-		double y = 0.;
-		double z = 0.;
+		FusedTrackFeatureEngine.analyze( trackID, model, Collections.singletonList( this ) );
+	}
 
-		for ( final Spot spot : track )
+	@Override
+	public TrackFeatureAccumulator accumulator( final Integer trackID, final Model model, final int nSpots, final int nEdges )
+	{
+		return new TrackFeatureAccumulator()
 		{
-			x += spot.getFeature( Spot.POSITION_X );
-			y += spot.getFeature( Spot.POSITION_Y );
-			z += spot.getFeature( Spot.POSITION_Z );
-		}
-		final int nspots = track.size();
-		x /= nspots;
-		y /= nspots;
-		z /= nspots;
-
-		fm.putTrackFeature( trackID, X_LOCATION, x );
-		fm.putTrackFeature( trackID, Y_LOCATION, y );
-		fm.putTrackFeature( trackID, Z_LOCATION, z );
+
+			private double x = 0.;
+
+			private double y = 0.;
+
+			private double z = 0.;
+
+			@Override
+			public void spot( final Spot spot )
+			{
+				x += spot.getFeature( Spot.POSITION_X );
+				y += spot.getFeature( Spot.POSITION_Y );
+				z += spot.getFeature( Spot.POSITION_Z );
+			}
+
+			@Override
+			public void finish( final Integer trackID, final FeatureModel fm )
+			{
+				fm.putTrackFeature( trackID, X_LOCATION, x / nSpots );
+				fm.putTrackFeature( trackID, Y_LOCATION, y / nSpots );
+				fm.putTrackFeature( trackID, Z_LOCATION, z / nSpots );
+			}
+		};
 	}
 }
@@ -27,7 +27,6 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
@@ -47,7 +46,7 @@ import fiji.plugin.trackmate.features.edges.DirectionalChangeAnalyzer;
 import fiji.plugin.trackmate.util.Threads;
 
 @Plugin( type = TrackAnalyzer.class, priority = Priority.LOW )
-public class TrackMotilityAnalyzer implements TrackAnalyzer
+public class TrackMotilityAnalyzer implements AccumulatingTrackAnalyzer
 {
 
 	public static final String KEY = "Track motility analysis";
@@ -255,79 +254,90 @@ public class TrackMotilityAnalyzer implements TrackAnalyzer
 		processingTime = end - start;
 	}
 
-	private static final void analyze( final Integer trackID, final Model model )
+	private final void analyze( final Integer trackID, final Model model )
 	{
-		final FeatureModel fm = model.getFeatureModel();
+		FusedTrackFeatureEngine.analyze( trackID, model, Collections.singletonList( this ) );
+	}
 
-		/*
-		 * Get the first spot (lowest FRAME).
-		 */
+	@Override
+	public TrackFeatureAccumulator accumulator( final Integer trackID, final Model model, final int nSpots, final int nEdges )
+	{
+		final FeatureModel featureModel = model.getFeatureModel();
+		return new TrackFeatureAccumulator()
+		{
 
-		final List< Spot > spots = new ArrayList<>( model.getTrackModel().trackSpots( trackID ) );
-		Collections.sort( spots, Spot.frameComparator );
-		final Spot first = spots.get( 0 );
+			/*
+			 * The first spot (lowest FRAME) comes first.
+			 */
+			private Spot first = null;
 
-		/*
-		 * Iterate over edges.
-		 */
+			private double totalDistance = 0.;
 
-		final Set< DefaultWeightedEdge > edges = model.getTrackModel().trackEdges( trackID );
+			private double maxDistanceSq = Double.NEGATIVE_INFINITY;
 
-		double totalDistance = 0.;
-		double maxDistanceSq = Double.NEGATIVE_INFINITY;
-		double maxDistance = 0.;
-		double sumAngleSpeed = 0.;
-		int nAngleSpeed = 0;
+			private double maxDistance = 0.;
 
-		for ( final DefaultWeightedEdge edge : edges )
-		{
-			// Total distance traveled.
-			final Spot source = model.getTrackModel().getEdgeSource( edge );
-			final Spot target = model.getTrackModel().getEdgeTarget( edge );
-			final double d = Math.sqrt( source.squareDistanceTo( target ) );
-			totalDistance += d;
-
-			// Max distance traveled.
-			final double dToFirstSq = first.squareDistanceTo( target );
-			if ( dToFirstSq > maxDistanceSq )
+			private double sumAngleSpeed = 0.;
+
+			private int nAngleSpeed = 0;
+
+			@Override
+			public void spot( final Spot spot )
 			{
-				maxDistanceSq = dToFirstSq;
-				maxDistance = Math.sqrt( maxDistanceSq );
+				if ( null == first )
+					first = spot;
 			}
 
-			/*
-			 * Mean rate of directional change. We depend on the edge feature
-			 */
-
-			final Double val = fm.getEdgeFeature( edge, DirectionalChangeAnalyzer.DIRECTIONAL_CHANGE_RATE );
-			if ( null != val && !val.isNaN() )
+			@Override
+			public void edge( final DefaultWeightedEdge edge, final Spot source, final Spot target )
 			{
-				sumAngleSpeed += val.doubleValue();
-				nAngleSpeed++;
+				// Total distance traveled.
+				final double d = Math.sqrt( source.squareDistanceTo( target ) );
+				totalDistance += d;
+
+				// Max distance traveled.
+				final double dToFirstSq = first.squareDistanceTo( target );
+				if ( dToFirstSq > maxDistanceSq )
+				{
+					maxDistanceSq = dToFirstSq;
+					maxDistance = Math.sqrt( maxDistanceSq );
+				}
+
+				/*
+				 * Mean rate of directional change. We depend on the edge
+				 * feature
+				 */
+
+				final Double val = featureModel.getEdgeFeature( edge, DirectionalChangeAnalyzer.DIRECTIONAL_CHANGE_RATE );
+				if ( null != val && !val.isNaN() )
+				{
+					sumAngleSpeed += val.doubleValue();
+					nAngleSpeed++;
+				}
 			}
-		}
 
-		/*
-		 * Compute features.
-		 */
-
-		// Dependency features.
-		final double netDistance = fm.getTrackFeature( trackID, TrackDurationAnalyzer.TRACK_DISPLACEMENT );
-		final double tTotal = fm.getTrackFeature( trackID, TrackDurationAnalyzer.TRACK_DURATION );
-		final double vMean = fm.getTrackFeature( trackID, TrackSpeedStatisticsAnalyzer.TRACK_MEAN_SPEED );
-
-		// Our features.
-		final double confinmentRatio = netDistance / totalDistance;
-		final double meanStraightLineSpeed = netDistance / tTotal;
-		final double linearityForwardProgression = meanStraightLineSpeed / vMean;
-		final double meanAngleSpeed = sumAngleSpeed / nAngleSpeed;
-
-		// Store.
-		fm.putTrackFeature( trackID, TRACK_TOTAL_DISTANCE_TRAVELED, totalDistance );
-		fm.putTrackFeature( trackID, TRACK_MAX_DISTANCE_TRAVELED, maxDistance );
-		fm.putTrackFeature( trackID, TRACK_CONFINEMENT_RATIO, confinmentRatio );
-		fm.putTrackFeature( trackID, TRACK_MEAN_STRAIGHT_LINE_SPEED, meanStraightLineSpeed );
-		fm.putTrackFeature( trackID, TRACK_LINEARITY_OF_FORWARD_PROGRESSION, linearityForwardProgression );
-		fm.putTrackFeature( trackID, TRACK_MEAN_DIRECTIONAL_CHANGE_RATE, meanAngleSpeed );
+			@Override
+			public void finish( final Integer trackID, final FeatureModel fm )
+			{
+				// Dependency features.
+				final double netDistance = fm.getTrackFeature( trackID, TrackDurationAnalyzer.TRACK_DISPLACEMENT );
+				final double tTotal = fm.getTrackFeature( trackID, TrackDurationAnalyzer.TRACK_DURATION );
+				final double vMean = fm.getTrackFeature( trackID, TrackSpeedStatisticsAnalyzer.TRACK_MEAN_SPEED );
+
+				// Our features.
+				final double confinmentRatio = netDistance / totalDistance;
+				final double meanStraightLineSpeed = netDistance / tTotal;
+				final double linearityForwardProgression = meanStraightLineSpeed / vMean;
+				final double meanAngleSpeed = sumAngleSpeed / nAngleSpeed;
+
+				// Store.
+				fm.putTrackFeature( trackID, TRACK_TOTAL_DISTANCE_TRAVELED, totalDistance );
+				fm.putTrackFeature( trackID, TRACK_MAX_DISTANCE_TRAVELED, maxDistance );
+				fm.putTrackFeature( trackID, TRACK_CONFINEMENT_RATIO, confinmentRatio );
+				fm.putTrackFeature( trackID, TRACK_MEAN_STRAIGHT_LINE_SPEED, meanStraightLineSpeed );
+				fm.putTrackFeature( trackID, TRACK_LINEARITY_OF_FORWARD_PROGRESSION, linearityForwardProgression );
+				fm.putTrackFeature( trackID, TRACK_MEAN_DIRECTIONAL_CHANGE_RATE, meanAngleSpeed );
+			}
+		};
 	}
 }
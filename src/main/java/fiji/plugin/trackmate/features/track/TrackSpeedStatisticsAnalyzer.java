@@ -22,10 +22,10 @@
 package fiji.plugin.trackmate.features.track;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 import org.jgrapht.graph.DefaultWeightedEdge;
 import org.scijava.plugin.Plugin;
@@ -38,7 +38,7 @@ import fiji.plugin.trackmate.util.TMUtils;
 import net.imglib2.util.Util;
 
 @Plugin( type = TrackAnalyzer.class )
-public class TrackSpeedStatisticsAnalyzer extends AbstractTrackAnalyzer
+public class TrackSpeedStatisticsAnalyzer extends AbstractTrackAnalyzer implements AccumulatingTrackAnalyzer
 {
 
 	public static final String KEY = "Track speed";
@@ -95,31 +95,46 @@ public class TrackSpeedStatisticsAnalyzer extends AbstractTrackAnalyzer
 	@Override
 	protected void analyze( final Integer trackID, final Model model )
 	{
-		final FeatureModel fm = model.getFeatureModel();
-		final Set< DefaultWeightedEdge > track = model.getTrackModel().trackEdges( trackID );
-		final double[] speeds = new double[ track.size() ];
-		int n = 0;
-		for ( final DefaultWeightedEdge edge : track )
+		FusedTrackFeatureEngine.analyze( trackID, model, Collections.singletonList( this ) );
+	}
+
+	@Override
+	public TrackFeatureAccumulator accumulator( final Integer trackID, final Model model, final int nSpots, final int nEdges )
+	{
+		return new TrackFeatureAccumulator()
 		{
-			final Spot source = model.getTrackModel().getEdgeSource( edge );
-			final Spot target = model.getTrackModel().getEdgeTarget( edge );
-			final double d2 = source.squareDistanceTo( target );
-			final double dt = source.diffTo( target, Spot.POSITION_T );
-			final double val = Math.sqrt( d2 ) / Math.abs( dt );
-			speeds[ n++ ] = val;
-		}
-
-		Util.quicksort( speeds, 0, track.size() - 1 );
-		final double median = speeds[ track.size() / 2 ];
-		final double min = speeds[ 0 ];
-		final double max = speeds[ track.size() - 1 ];
-		final double mean = Util.average( speeds );
-		final double std = TMUtils.standardDeviation( speeds );
-
-		fm.putTrackFeature( trackID, TRACK_MEDIAN_SPEED, median );
-		fm.putTrackFeature( trackID, TRACK_MIN_SPEED, min );
-		fm.putTrackFeature( trackID, TRACK_MAX_SPEED, max );
-		fm.putTrackFeature( trackID, TRACK_MEAN_SPEED, mean );
-		fm.putTrackFeature( trackID, TRACK_STD_SPEED, std );
+
+			private final double[] speeds = new double[ nEdges ];
+
+			private int n = 0;
+
+			@Override
+			public void edge( final DefaultWeightedEdge edge, final Spot source, final Spot target )
+			{
+				final double d2 = source.squareDistanceTo( target );
+				final double dt = source.diffTo( target, Spot.POSITION_T );
+				speeds[ n++ ] = Math.sqrt( d2 ) / Math.abs( dt );
+			}
+
+			@Override
+			public void finish( final Integer trackID, final FeatureModel fm )
+			{
+				if ( n == 0 )
+					return;
+
+				Util.quicksort( speeds, 0, n - 1 );
+				final double median = speeds[ n / 2 ];
+				final double min = speeds[ 0 ];
+				final double max = speeds[ n - 1 ];
+				final double mean = Util.average( speeds );
+				final double std = TMUtils.standardDeviation( speeds );
+
+				fm.putTrackFeature( trackID, TRACK_MEDIAN_SPEED, median );
+				fm.putTrackFeature( trackID, TRACK_MIN_SPEED, min );
+				fm.putTrackFeature( trackID, TRACK_MAX_SPEED, max );
+				fm.putTrackFeature( trackID, TRACK_MEAN_SPEED, mean );
+				fm.putTrackFeature( trackID, TRACK_STD_SPEED, std );
+			}
+		};
 	}
 }
@@ -24,8 +24,6 @@ package fiji.plugin.trackmate.features.track;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
-import java.util.Set;
 
 import org.scijava.plugin.Plugin;
 
@@ -35,7 +33,7 @@ import fiji.plugin.trackmate.Model;
 import fiji.plugin.trackmate.Spot;
 
 @Plugin( type = TrackAnalyzer.class )
-public class TrackSpotQualityFeatureAnalyzer extends AbstractTrackAnalyzer
+public class TrackSpotQualityFeatureAnalyzer extends AbstractTrackAnalyzer implements AccumulatingTrackAnalyzer
 {
 
 	public static final String KEY = "Track quality";
@@ -55,14 +53,33 @@ public class TrackSpotQualityFeatureAnalyzer extends AbstractTrackAnalyzer
 	@Override
 	protected void analyze( final Integer trackID, final Model model )
 	{
-		final FeatureModel fm = model.getFeatureModel();
-		final Set< Spot > track = model.getTrackModel().trackSpots( trackID );
-		final double mean = track
-				.stream()
-				.filter( Objects::nonNull )
-				.mapToDouble( s -> s.getFeature( Spot.QUALITY ).doubleValue() )
-				.average()
-				.getAsDouble();
-		fm.putTrackFeature( trackID, TRACK_MEAN_QUALITY, Double.valueOf( mean ) );
+		FusedTrackFeatureEngine.analyze( trackID, model, Collections.singletonList( this ) );
+	}
+
+	@Override
+	public TrackFeatureAccumulator accumulator( final Integer trackID, final Model model, final int nSpots, final int nEdges )
+	{
+		return new TrackFeatureAccumulator()
+		{
+
+			private double sum = 0.;
+
+			private int n = 0;
+
+			@Override
+			public void spot( final Spot spot )
+			{
+				sum += spot.getFeature( Spot.QUALITY ).doubleValue();
+				n++;
+			}
+
+			@Override
+			public void finish( final Integer trackID, final FeatureModel fm )
+			{
+				if ( n == 0 )
+					return;
+				fm.putTrackFeature( trackID, TRACK_MEAN_QUALITY, Double.valueOf( sum / n ) );
+			}
+		};
 	}
 }
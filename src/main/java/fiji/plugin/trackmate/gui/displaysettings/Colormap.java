@@ -52,6 +52,18 @@ public class Colormap implements PaintScale, Serializable
 
 	private final Color defaultColor;
 
+	/**
+	 * Number of colors pre-computed in the lookup table used by
+	 * {@link #getLUTPaint(double)}.
+	 */
+	public static final int LUT_SIZE = 1024;
+
+	/**
+	 * The lookup table used by {@link #getLUTPaint(double)}. Built lazily and
+	 * discarded when colors are added.
+	 */
+	private transient volatile Color[] lut;
+
 	/*
 	 * INNER CLASSES
 	 */
@@ -209,6 +221,7 @@ public class Colormap implements PaintScale, Serializable
 		if ( value < lowerBound )
 			return;
 		colors.put( value, color );
+		lut = null;
 	}
 
 	@Override
@@ -260,6 +273,34 @@ public class Colormap implements PaintScale, Serializable
 		return new Color( red, green, blue );
 	}
 
+	/**
+	 * Returns a color of this paint scale, read from a lookup table of
+	 * {@link #LUT_SIZE} colors interpolated over the range of this paint scale.
+	 * Contrary to {@link #getPaint(double)}, this method does not allocate and
+	 * runs in constant time, at the price of quantizing the value. Meant to be
+	 * used when painting many objects.
+	 */
+	public Color getLUTPaint( final double value )
+	{
+		Color[] l = lut;
+		if ( null == l )
+		{
+			l = new Color[ LUT_SIZE ];
+			for ( int i = 0; i < LUT_SIZE; i++ )
+				l[ i ] = getPaint( lowerBound + i * ( upperBound - lowerBound ) / ( LUT_SIZE - 1 ) );
+			lut = l;
+		}
+
+		final double pos = ( value - lowerBound ) / ( upperBound - lowerBound ) * ( LUT_SIZE - 1 );
+		if ( Double.isNaN( pos ) )
+			return getPaint( value );
+		if ( pos <= 0. )
+			return l[ 0 ];
+		if ( pos >= LUT_SIZE - 1 )
+			return l[ LUT_SIZE - 1 ];
+		return l[ ( int ) ( pos + 0.5 ) ];
+	}
+
 	@Override
 	public double getUpperBound()
 	{
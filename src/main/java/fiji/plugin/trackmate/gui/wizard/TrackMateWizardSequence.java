@@ -73,6 +73,7 @@ import fiji.plugin.trackmate.tracking.manual.ManualTrackerFactory;
 import fiji.plugin.trackmate.util.Threads;
 import fiji.plugin.trackmate.visualization.trackscheme.SpotImageUpdater;
 import fiji.plugin.trackmate.visualization.trackscheme.TrackScheme;
+import fiji.plugin.trackmate.visualization.trackscheme.VirtualTrackScheme;
 
 public class TrackMateWizardSequence implements WizardSequence
 {
@@ -450,6 +451,11 @@ public class TrackMateWizardSequence implements WizardSequence
 		{
 			Threads.run( "Launching TrackScheme thread", () ->
 			{
+				if ( VirtualTrackScheme.isPreferredFor( trackmate.getModel() ) )
+				{
+					new VirtualTrackScheme( trackmate.getModel(), selectionModel, displaySettings ).render();
+					return;
+				}
 				final TrackScheme trackscheme = new TrackScheme( trackmate.getModel(), selectionModel, displaySettings );
 				final SpotImageUpdater thumbnailUpdater = new SpotImageUpdater( trackmate.getSettings() );
 				trackscheme.setSpotImageUpdater( thumbnailUpdater );
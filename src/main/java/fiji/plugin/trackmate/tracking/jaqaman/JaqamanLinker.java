@@ -21,17 +21,26 @@
  */
 package fiji.plugin.trackmate.tracking.jaqaman;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import net.imglib2.algorithm.BenchmarkAlgorithm;
+import net.imglib2.algorithm.MultiThreaded;
 import net.imglib2.algorithm.OutputAlgorithm;
 import net.imglib2.util.Util;
 import fiji.plugin.trackmate.Logger;
+import fiji.plugin.trackmate.util.Threads;
 import fiji.plugin.trackmate.tracking.jaqaman.costmatrix.CostMatrixCreator;
 import fiji.plugin.trackmate.tracking.jaqaman.costmatrix.LAPJV;
 import fiji.plugin.trackmate.tracking.jaqaman.costmatrix.SparseCostMatrix;
@@ -47,8 +56,11 @@ import fiji.plugin.trackmate.tracking.jaqaman.costmatrix.SparseCostMatrix;
  * @param <J>
  *            the type of the target objects to link.
  */
-public class JaqamanLinker< K extends Comparable< K >, J extends Comparable< J > > extends BenchmarkAlgorithm implements OutputAlgorithm< Map< K, J > >
+public class JaqamanLinker< K extends Comparable< K >, J extends Comparable< J > > extends BenchmarkAlgorithm implements OutputAlgorithm< Map< K, J > >, MultiThreaded
 {
+
+	private static final String BASE_ERROR_MESSAGE = "[JaqamanLinker] ";
+
 	private Map< K, J > assignments;
 
 	private Map< K, Double > costs;
@@ -57,6 +69,10 @@ public class JaqamanLinker< K extends Comparable< K >, J extends Comparable< J >
 
 	private final Logger logger;
 
+	private boolean decompose = true;
+
+	private int numThreads;
+
 	/**
 	 * Creates a new linker for the specified cost matrix creator. See Jaqaman
 	 * <i>et al.</i>, Nature Methods, <b>2008</b>, Figure 1b.
@@ -70,6 +86,7 @@ public class JaqamanLinker< K extends Comparable< K >, J extends Comparable< J >
 	{
 		this.costMatrixCreator = costMatrixCreator;
 		this.logger = logger;
+		setNumThreads();
 	}
 
 	public JaqamanLinker( final CostMatrixCreator< K, J > costMatrixCreator )
@@ -152,41 +169,178 @@ public class JaqamanLinker< K extends Comparable< K >, J extends Comparable< J >
 		final int nRows = tl.getNRows();
 
 		/*
-		 * Top right
+		 * Alternative costs of sources (top right) and targets (bottom left).
 		 */
 
 		final double[] cctr = new double[ nRows ];
+		for ( int i = 0; i < nRows; i++ )
+			cctr[ i ] = costMatrixCreator.getAlternativeCostForSource( matrixRows.get( i ) );
+
+		final double[] ccbl = new double[ nCols ];
+		for ( int i = 0; i < nCols; i++ )
+			ccbl[ i ] = costMatrixCreator.getAlternativeCostForTarget( matrixCols.get( i ) );
+
+		/*
+		 * Alt. cost for the bottom right block is the overall min of
+		 * alternative costs. This deviate or extend a bit the u-track code.
+		 */
+		final double minCost = Math.min( Util.min( ccbl ), Util.min( cctr ) );
+		logger.setProgress( 0.6 );
+
+		/*
+		 * Solve the cost matrix, possibly block by block.
+		 */
+		logger.setStatus( "Solving the cost matrix..." );
+		final int[] rowAssignment = new int[ nRows ];
+		final double[] rowCosts = new double[ nRows ];
+		final List< SparseCostMatrix.Block > blocks = decompose ? tl.decompose() : null;
+		final boolean ok;
+		if ( null == blocks || blocks.size() < 2 )
+			ok = solve( tl, identity( nRows ), identity( nCols ), cctr, ccbl, minCost, rowAssignment, rowCosts );
+		else
+			ok = solve( blocks, cctr, ccbl, minCost, rowAssignment, rowCosts );
+		if ( !ok )
+			return false;
+
+		assignments = new HashMap<>();
+		costs = new HashMap<>();
+		for ( int i = 0; i < nRows; i++ )
+		{
+			final int j = rowAssignment[ i ];
+			if ( j >= 0 )
+			{
+				final K source = matrixRows.get( i );
+				final J target = matrixCols.get( j );
+				assignments.put( source, target );
+				costs.put( source, Double.valueOf( rowCosts[ i ] ) );
+			}
+		}
+
+		logger.setProgress( 1 );
+		logger.setStatus( "" );
+		final long end = System.currentTimeMillis();
+		processingTime = end - start;
+
+		return true;
+	}
+
+	/**
+	 * Solves the independent blocks of the top-left cost matrix concurrently.
+	 * Blocks are handed to the worker threads from the largest to the
+	 * smallest.
+	 */
+	private boolean solve( final List< SparseCostMatrix.Block > blocks, final double[] cctr, final double[] ccbl, final double minCost, final int[] rowAssignment, final double[] rowCosts )
+	{
+		blocks.sort( Comparator.comparingInt( ( final SparseCostMatrix.Block b ) -> b.getMatrix().getCosts().length ).reversed() );
+		final int nWorkers = Math.max( 1, Math.min( numThreads, blocks.size() ) );
+		final AtomicInteger next = new AtomicInteger( 0 );
+		final Callable< Boolean > worker = () -> {
+			int b;
+			while ( ( b = next.getAndIncrement() ) < blocks.size() )
+			{
+				final SparseCostMatrix.Block block = blocks.get( b );
+				if ( !solve( block.getMatrix(), block.getRows(), block.getCols(), cctr, ccbl, minCost, rowAssignment, rowCosts ) )
+					return Boolean.FALSE;
+			}
+			return Boolean.TRUE;
+		};
+
+		if ( nWorkers == 1 )
+		{
+			try
+			{
+				return worker.call().booleanValue();
+			}
+			catch ( final Exception e )
+			{
+				errorMessage = BASE_ERROR_MESSAGE + e.getMessage();
+				return false;
+			}
+		}
+
+		final ExecutorService executors = Threads.newFixedThreadPool( nWorkers );
+		final List< Future< Boolean > > futures = new ArrayList<>( nWorkers );
+		for ( int i = 0; i < nWorkers; i++ )
+			futures.add( executors.submit( worker ) );
+
+		boolean ok = true;
+		try
+		{
+			for ( final Future< Boolean > future : futures )
+				ok = future.get().booleanValue() && ok;
+		}
+		catch ( final InterruptedException | ExecutionException e )
+		{
+			errorMessage = BASE_ERROR_MESSAGE + e.getMessage();
+			ok = false;
+		}
+		executors.shutdown();
+		return ok;
+	}
+
+	/**
+	 * Completes the specified top-left cost matrix with alternative costs,
+	 * solves it and writes the assignments in the specified arrays.
+	 *
+	 * @param tl
+	 *            the top-left cost matrix of the problem or of one of its
+	 *            independent blocks.
+	 * @param rows
+	 *            the indices of the rows of <code>tl</code> in the full
+	 *            problem.
+	 * @param cols
+	 *            the indices of the columns of <code>tl</code> in the full
+	 *            problem.
+	 * @param cctr
+	 *            the alternative costs of all the sources.
+	 * @param ccbl
+	 *            the alternative costs of all the targets.
+	 * @param minCost
+	 *            the cost to use in the bottom-right block.
+	 * @param rowAssignment
+	 *            written with the column assigned to each row of the full
+	 *            problem, or -1.
+	 * @param rowCosts
+	 *            written with the cost of these assignments.
+	 * @return <code>true</code> if the solver succeeded.
+	 */
+	private boolean solve( final SparseCostMatrix tl, final int[] rows, final int[] cols, final double[] cctr, final double[] ccbl, final double minCost, final int[] rowAssignment, final double[] rowCosts )
+	{
+		final int nRows = rows.length;
+		final int nCols = cols.length;
+
+		/*
+		 * Top right
+		 */
+
+		final double[] cctrBlock = new double[ nRows ];
 		final int[] kktr = new int[ nRows ];
 		for ( int i = 0; i < nRows; i++ )
 		{
 			kktr[ i ] = i;
-			cctr[ i ] = costMatrixCreator.getAlternativeCostForSource( matrixRows.get( i ) );
+			cctrBlock[ i ] = cctr[ rows[ i ] ];
 		}
 		final int[] numbertr = new int[ nRows ];
 		Arrays.fill( numbertr, 1 );
-		final SparseCostMatrix tr = new SparseCostMatrix( cctr, kktr, numbertr, nRows );
+		final SparseCostMatrix tr = new SparseCostMatrix( cctrBlock, kktr, numbertr, nRows );
 
 		/*
 		 * Bottom left
 		 */
-		final double[] ccbl = new double[ nCols ];
+		final double[] ccblBlock = new double[ nCols ];
 		final int[] kkbl = new int[ nCols ];
 		for ( int i = 0; i < kkbl.length; i++ )
 		{
 			kkbl[ i ] = i;
-			ccbl[ i ] = costMatrixCreator.getAlternativeCostForTarget( matrixCols.get( i ) );
+			ccblBlock[ i ] = ccbl[ cols[ i ] ];
 		}
 		final int[] numberbl = new int[ nCols ];
 		Arrays.fill( numberbl, 1 );
-		final SparseCostMatrix bl = new SparseCostMatrix( ccbl, kkbl, numberbl, nCols );
+		final SparseCostMatrix bl = new SparseCostMatrix( ccblBlock, kkbl, numberbl, nCols );
 
 		/*
 		 * Bottom right.
-		 * 
-		 * Alt. cost is the overall min of alternative costs. This deviate or
-		 * extend a bit the u-track code.
 		 */
-		final double minCost = Math.min( Util.min( ccbl ), Util.min( cctr ) );
 		final SparseCostMatrix br = tl.transpose();
 		br.fillWith( minCost );
 
@@ -194,12 +348,10 @@ public class JaqamanLinker< K extends Comparable< K >, J extends Comparable< J >
 		 * Stitch them together
 		 */
 		final SparseCostMatrix full = ( tl.hcat( tr ) ).vcat( bl.hcat( br ) );
-		logger.setProgress( 0.6 );
 
 		/*
 		 * Solve the full cost matrix.
 		 */
-		logger.setStatus( "Solving the cost matrix..." );
 		final LAPJV solver = new LAPJV( full );
 		if ( !solver.checkInput() || !solver.process() )
 		{
@@ -208,28 +360,60 @@ public class JaqamanLinker< K extends Comparable< K >, J extends Comparable< J >
 		}
 
 		final int[] assgn = solver.getResult();
-		assignments = new HashMap<>();
-		costs = new HashMap<>();
-		for ( int i = 0; i < assgn.length; i++ )
+		for ( int i = 0; i < nRows; i++ )
 		{
 			final int j = assgn[ i ];
-			if ( i < matrixRows.size() && j < matrixCols.size() )
+			if ( j < nCols )
 			{
-				final K source = matrixRows.get( i );
-				final J target = matrixCols.get( j );
-				assignments.put( source, target );
-
-				final double cost = full.get( i, j, Double.POSITIVE_INFINITY );
-				costs.put( source, Double.valueOf( cost ) );
+				rowAssignment[ rows[ i ] ] = cols[ j ];
+				rowCosts[ rows[ i ] ] = full.get( i, j, Double.POSITIVE_INFINITY );
+			}
+			else
+			{
+				rowAssignment[ rows[ i ] ] = -1;
 			}
 		}
+		return true;
+	}
 
-		logger.setProgress( 1 );
-		logger.setStatus( "" );
-		final long end = System.currentTimeMillis();
-		processingTime = end - start;
+	private static final int[] identity( final int n )
+	{
+		final int[] index = new int[ n ];
+		for ( int i = 0; i < n; i++ )
+			index[ i ] = i;
+		return index;
+	}
 
-		return true;
+	/**
+	 * Sets whether the cost matrix is split in independent blocks, solved
+	 * separately and concurrently. The assignments are the same as when the
+	 * whole matrix is solved at once, up to ties between optimal solutions.
+	 * <code>true</code> by default.
+	 *
+	 * @param decompose
+	 *            whether to solve the problem block by block.
+	 */
+	public void setDecompose( final boolean decompose )
+	{
+		this.decompose = decompose;
+	}
+
+	@Override
+	public void setNumThreads()
+	{
+		this.numThreads = Runtime.getRuntime().availableProcessors();
+	}
+
+	@Override
+	public void setNumThreads( final int numThreads )
+	{
+		this.numThreads = numThreads;
+	}
+
+	@Override
+	public int getNumThreads()
+	{
+		return numThreads;
 	}
 
 	public String resultToString()
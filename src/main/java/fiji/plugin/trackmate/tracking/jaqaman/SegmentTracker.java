@@ -188,6 +188,7 @@ public class SegmentTracker implements SpotTracker, Benchmark
 		costMatrixCreator.setNumThreads( numThreads );
 		final SlaveLogger jlLogger = new SlaveLogger( logger, 0, 0.9 );
 		final JaqamanLinker< Spot, Spot > linker = new JaqamanLinker<>( costMatrixCreator, jlLogger );
+		linker.setNumThreads( numThreads );
 		if ( !linker.checkInput() || !linker.process() )
 		{
 			errorMessage = linker.getErrorMessage();
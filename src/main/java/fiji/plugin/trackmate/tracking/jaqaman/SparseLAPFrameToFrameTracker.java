@@ -51,6 +51,7 @@ import fiji.plugin.trackmate.tracking.jaqaman.costfunction.CostFunction;
 import fiji.plugin.trackmate.tracking.jaqaman.costfunction.FeaturePenaltyCostFunction;
 import fiji.plugin.trackmate.tracking.jaqaman.costfunction.SquareDistCostFunction;
 import fiji.plugin.trackmate.tracking.jaqaman.costmatrix.JaqamanLinkingCostMatrixCreator;
+import fiji.plugin.trackmate.tracking.jaqaman.costmatrix.KDTreeLinkingCostMatrixCreator;
 import fiji.plugin.trackmate.util.Threads;
 import net.imglib2.algorithm.MultiThreadedBenchmarkAlgorithm;
 
@@ -168,6 +169,13 @@ public class SparseLAPFrameToFrameTracker extends MultiThreadedBenchmarkAlgorith
 		final Double maxDist = ( Double ) settings.get( KEY_LINKING_MAX_DISTANCE );
 		final double costThreshold = maxDist * maxDist;
 		final double alternativeCostFactor = ( Double ) settings.get( KEY_ALTERNATIVE_LINKING_COST_FACTOR );
+		/*
+		 * With a pure square-distance cost, no pair further than the max
+		 * distance can be accepted, so we can only look for candidates within
+		 * this distance. Feature penalties might lower the cost of distant
+		 * pairs, so we have to test all pairs in that case.
+		 */
+		final boolean useKDTree = costFunction instanceof SquareDistCostFunction;
 
 		// Instantiate graph
 		graph = new SimpleWeightedGraph<>( DefaultWeightedEdge.class );
@@ -209,8 +217,12 @@ public class SparseLAPFrameToFrameTracker extends MultiThreadedBenchmarkAlgorith
 					 * Run the linker.
 					 */
 
-					final JaqamanLinkingCostMatrixCreator< Spot, Spot > creator = new JaqamanLinkingCostMatrixCreator<>( sources, targets, costFunction, costThreshold, alternativeCostFactor, 1d );
+					final JaqamanLinkingCostMatrixCreator< Spot, Spot > creator = useKDTree
+							? new KDTreeLinkingCostMatrixCreator<>( sources, targets, costFunction, costThreshold, maxDist, alternativeCostFactor, 1d )
+							: new JaqamanLinkingCostMatrixCreator<>( sources, targets, costFunction, costThreshold, alternativeCostFactor, 1d );
 					final JaqamanLinker< Spot, Spot > linker = new JaqamanLinker<>( creator );
+					// Frames are already processed in parallel.
+					linker.setNumThreads( 1 );
 					if ( !linker.checkInput() || !linker.process() )
 					{
 						errorMessage = "At frame " + lFrame0 + " to " + lFrame1 + ": " + linker.getErrorMessage();
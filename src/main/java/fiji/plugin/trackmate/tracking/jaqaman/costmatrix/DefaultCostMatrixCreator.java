@@ -22,9 +22,10 @@
 package fiji.plugin.trackmate.tracking.jaqaman.costmatrix;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashSet;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import net.imglib2.util.Util;
 
@@ -118,68 +119,120 @@ public class DefaultCostMatrixCreator< K extends Comparable< K >, J extends Comp
 	@Override
 	public boolean process()
 	{
-		uniqueRows = new ArrayList<>( new HashSet<>( rows ) );
-		Collections.sort( uniqueRows );
-		uniqueCols = new ArrayList<>( new HashSet<>( cols ) );
-		Collections.sort( uniqueCols );
+		final long start = System.currentTimeMillis();
+		final int n = costs.length;
+
+		/*
+		 * Index rows and columns. Each distinct object gets an index in
+		 * encounter order, then indices are remapped to the rank of the object
+		 * in the sorted list of distinct objects.
+		 */
+
+		final int[] r = new int[ n ];
+		final int[] c = new int[ n ];
+		uniqueRows = index( rows, r );
+		uniqueCols = index( cols, c );
+		final int nRows = uniqueRows.size();
+		final int nCols = uniqueCols.size();
 
-		final List< Assignment > assignments = new ArrayList<>( costs.length );
-		for ( int i = 0; i < costs.length; i++ )
+		/*
+		 * Counting sort by column, then stable counting sort by row: this
+		 * yields the row compressed storage with columns sorted within each
+		 * row.
+		 */
+
+		final int[] byColRows = new int[ n ];
+		final int[] byColCols = new int[ n ];
+		final double[] byColCosts = new double[ n ];
+		final int[] colStart = new int[ nCols + 1 ];
+		for ( int i = 0; i < n; i++ )
+			colStart[ c[ i ] + 1 ]++;
+		for ( int j = 0; j < nCols; j++ )
+			colStart[ j + 1 ] += colStart[ j ];
+		for ( int i = 0; i < n; i++ )
 		{
-			final K rowObj = rows.get( i );
-			final J colObj = cols.get( i );
-			final int r = Collections.binarySearch( uniqueRows, rowObj );
-			final int c = Collections.binarySearch( uniqueCols, colObj );
-			assignments.add( new Assignment( r, c, costs[ i ] ) );
+			final int pos = colStart[ c[ i ] ]++;
+			byColRows[ pos ] = r[ i ];
+			byColCols[ pos ] = c[ i ];
+			byColCosts[ pos ] = costs[ i ];
+		}
+
+		final int[] kk = new int[ n ];
+		final double[] cc = new double[ n ];
+		final int[] number = new int[ nRows ];
+		for ( int i = 0; i < n; i++ )
+			number[ byColRows[ i ] ]++;
+		final int[] rowStart = new int[ nRows ];
+		for ( int i = 1; i < nRows; i++ )
+			rowStart[ i ] = rowStart[ i - 1 ] + number[ i - 1 ];
+		for ( int i = 0; i < n; i++ )
+		{
+			final int pos = rowStart[ byColRows[ i ] ]++;
+			kk[ pos ] = byColCols[ i ];
+			cc[ pos ] = byColCosts[ i ];
 		}
-		Collections.sort( assignments );
 
 		// Test we do not have duplicates.
-		Assignment previousAssgn = assignments.get( 0 );
-		for ( int i = 1; i < assignments.size(); i++ )
+		int pos = 0;
+		for ( int i = 0; i < nRows; i++ )
 		{
-			final Assignment assgn = assignments.get( i );
-			if ( assgn.equals( previousAssgn ) )
+			for ( int k = pos + 1; k < pos + number[ i ]; k++ )
 			{
-				errorMessage = BASE_ERROR_MESSAGE + "Found duplicate assignment at index: " + assgn + ".";
-				return false;
+				if ( kk[ k ] == kk[ k - 1 ] )
+				{
+					errorMessage = BASE_ERROR_MESSAGE + "Found duplicate assignment at row " + i + ", column " + kk[ k ] + ".";
+					return false;
+				}
 			}
-			previousAssgn = assgn;
+			pos += number[ i ];
 		}
 
-		final int nRows = uniqueRows.size();
-		final int nCols = uniqueCols.size();
-		final int[] kk = new int[ costs.length ];
-		final int[] number = new int[ nRows ];
-		final double[] cc = new double[ costs.length ];
-
-		Assignment a = assignments.get( 0 );
-		kk[ 0 ] = a.c;
-		cc[ 0 ] = a.cost;
-		int currentRow = a.r;
-		int nOfEl = 0;
-		for ( int i = 1; i < assignments.size(); i++ )
-		{
-			a = assignments.get( i );
+		scm = new SparseCostMatrix( cc, kk, number, nCols );
 
-			kk[ i ] = a.c;
-			cc[ i ] = a.cost;
-			nOfEl++;
+		alternativeCost = computeAlternativeCosts();
 
-			if ( a.r != currentRow )
+		processingTime = System.currentTimeMillis() - start;
+		return true;
+	}
+
+	/**
+	 * Writes in <code>indices</code> the index of each element of the
+	 * specified list in the sorted list of its distinct elements, and returns
+	 * this sorted list.
+	 */
+	private static final < T extends Comparable< T > > ArrayList< T > index( final List< T > list, final int[] indices )
+	{
+		final Map< T, Integer > ids = new HashMap<>();
+		final ArrayList< T > unique = new ArrayList<>();
+		for ( int i = 0; i < indices.length; i++ )
+		{
+			final T obj = list.get( i );
+			Integer id = ids.get( obj );
+			if ( null == id )
 			{
-				number[ currentRow ] = nOfEl;
-				nOfEl = 0;
-				currentRow = a.r;
+				id = Integer.valueOf( unique.size() );
+				ids.put( obj, id );
+				unique.add( obj );
 			}
+			indices[ i ] = id.intValue();
 		}
-		number[ currentRow ] = nOfEl + 1;
 
-		scm = new SparseCostMatrix( cc, kk, number, nCols );
+		final Integer[] order = new Integer[ unique.size() ];
+		for ( int i = 0; i < order.length; i++ )
+			order[ i ] = Integer.valueOf( i );
+		Arrays.sort( order, ( a, b ) -> unique.get( a.intValue() ).compareTo( unique.get( b.intValue() ) ) );
 
-		alternativeCost = computeAlternativeCosts();
+		final int[] rank = new int[ order.length ];
+		final ArrayList< T > sorted = new ArrayList<>( order.length );
+		for ( int i = 0; i < order.length; i++ )
+		{
+			rank[ order[ i ].intValue() ] = i;
+			sorted.add( unique.get( order[ i ].intValue() ) );
+		}
+		for ( int i = 0; i < indices.length; i++ )
+			indices[ i ] = rank[ indices[ i ] ];
 
-		return true;
+		return sorted;
 	}
 
 	protected double computeAlternativeCosts()
@@ -187,7 +240,76 @@ public class DefaultCostMatrixCreator< K extends Comparable< K >, J extends Comp
 		if ( percentile == 1 )
 			return alternativeCostFactor * Util.max( costs );
 
-		return alternativeCostFactor * Util.percentile( costs, percentile );
+		return alternativeCostFactor * percentile( costs, percentile );
+	}
+
+	/**
+	 * Returns the specified percentile of the values, with the same
+	 * convention as {@link Util#percentile(double[], double)}, but using a
+	 * selection algorithm instead of sorting a full copy of the values.
+	 *
+	 * @param values
+	 *            the values. Not modified.
+	 * @param percentile
+	 *            the percentile, from 0 to 1.
+	 * @return the percentile value.
+	 */
+	static final double percentile( final double[] values, final double percentile )
+	{
+		final int length = values.length;
+		final int pos = Math.min( length - 1, Math.max( 0, ( int ) Math.round( ( length - 1 ) * percentile ) ) );
+		return select( values.clone(), pos );
+	}
+
+	/**
+	 * Returns the k-th smallest value of the specified array, reordering it in
+	 * place. Quickselect with median-of-three pivots.
+	 */
+	private static final double select( final double[] a, final int k )
+	{
+		int lo = 0;
+		int hi = a.length - 1;
+		while ( hi > lo )
+		{
+			final int mid = ( lo + hi ) >>> 1;
+			// Median of three, moved to hi.
+			if ( a[ mid ] < a[ lo ] )
+				swap( a, mid, lo );
+			if ( a[ hi ] < a[ lo ] )
+				swap( a, hi, lo );
+			if ( a[ mid ] < a[ hi ] )
+				swap( a, mid, hi );
+			final double pivot = a[ hi ];
+
+			// Three-way partition: [lo, lt) < pivot, [lt, gt] == pivot, (gt, hi] > pivot.
+			int lt = lo;
+			int gt = hi;
+			int i = lo;
+			while ( i <= gt )
+			{
+				if ( a[ i ] < pivot )
+					swap( a, lt++, i++ );
+				else if ( a[ i ] > pivot )
+					swap( a, i, gt-- );
+				else
+					i++;
+			}
+
+			if ( k < lt )
+				hi = lt - 1;
+			else if ( k > gt )
+				lo = gt + 1;
+			else
+				return pivot;
+		}
+		return a[ k ];
+	}
+
+	private static final void swap( final double[] a, final int i, final int j )
+	{
+		final double tmp = a[ i ];
+		a[ i ] = a[ j ];
+		a[ j ] = tmp;
 	}
 
 	@Override
@@ -101,20 +101,7 @@ public class JaqamanLinkingCostMatrixCreator< K extends Comparable< K >, J exten
 		final List< J > accTargets = new ArrayList<>();
 		final ResizableDoubleArray costs = new ResizableDoubleArray();
 
-		for ( final K source : sources )
-		{
-			for ( final J target : targets )
-			{
-
-				final double cost = costFunction.linkingCost( source, target );
-				if ( cost < costThreshold )
-				{
-					accSources.add( source );
-					accTargets.add( target );
-					costs.add( cost );
-				}
-			}
-		}
+		collectCandidates( sources, targets, costFunction, costThreshold, accSources, accTargets, costs );
 		costs.trimToSize();
 
 		/*
@@ -145,7 +132,7 @@ public class JaqamanLinkingCostMatrixCreator< K extends Comparable< K >, J exten
 			scm = cmCreator.getResult();
 			sourceList = cmCreator.getSourceList();
 			targetList = cmCreator.getTargetList();
-			alternativeCost = cmCreator.computeAlternativeCosts();
+			alternativeCost = cmCreator.getAlternativeCostForSource( null );
 		}
 
 		final long end = System.currentTimeMillis();
@@ -153,6 +140,55 @@ public class JaqamanLinkingCostMatrixCreator< K extends Comparable< K >, J exten
 		return true;
 	}
 
+	/**
+	 * Enumerates the source-target pairs whose linking cost is strictly below
+	 * the cost threshold, and appends them to the specified accumulators.
+	 * <p>
+	 * This default implementation evaluates the cost function for every
+	 * source × target combination. Subclasses can override it to prune
+	 * candidates that cannot possibly be accepted, as long as the pairs they
+	 * report and their costs are the same.
+	 * 
+	 * @param sources
+	 *            the sources to link.
+	 * @param targets
+	 *            the targets to link.
+	 * @param costFunction
+	 *            the cost function.
+	 * @param costThreshold
+	 *            the cost threshold. Only pairs with a cost strictly lower
+	 *            than this value are accepted.
+	 * @param accSources
+	 *            the list to add the source of accepted pairs to.
+	 * @param accTargets
+	 *            the list to add the target of accepted pairs to.
+	 * @param costs
+	 *            the array to add the cost of accepted pairs to.
+	 */
+	protected void collectCandidates(
+			final Iterable< K > sources,
+			final Iterable< J > targets,
+			final CostFunction< K, J > costFunction,
+			final double costThreshold,
+			final List< K > accSources,
+			final List< J > accTargets,
+			final ResizableDoubleArray costs )
+	{
+		for ( final K source : sources )
+		{
+			for ( final J target : targets )
+			{
+				final double cost = costFunction.linkingCost( source, target );
+				if ( cost < costThreshold )
+				{
+					accSources.add( source );
+					accTargets.add( target );
+					costs.add( cost );
+				}
+			}
+		}
+	}
+
 	@Override
 	public String getErrorMessage()
 	{
@@ -44,13 +44,21 @@ import fiji.plugin.trackmate.tracking.jaqaman.costfunction.SquareDistCostFunctio
 import fiji.plugin.trackmate.util.Threads;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Future;
 
+import net.imglib2.KDTree;
 import net.imglib2.algorithm.MultiThreaded;
+import net.imglib2.neighborsearch.RadiusNeighborSearchOnKDTree;
 import org.jgrapht.Graph;
 import org.jgrapht.graph.DefaultWeightedEdge;
 
@@ -202,159 +210,99 @@ public class JaqamanSegmentCostMatrixCreator implements CostMatrixCreator< Spot,
 			allMiddles = Collections.emptyList();
 		}
 
-		final Object lock = new Object();
+		/*
+		 * Bucket segment starts and middles by frame, and index them in space
+		 * within each frame. This way a source only visits the targets that
+		 * are in the right frames and within the max distance.
+		 */
+		final FrameIndex startIndex = new FrameIndex( allowGapClosing || allowSplitting ? segmentStarts : Collections.emptyList() );
+		final FrameIndex middleIndex = new FrameIndex( allowMerging ? allMiddles : Collections.emptyList() );
 
 		/*
-		 * Sources and targets.
+		 * With a pure square-distance cost, no pair further than the max
+		 * distance can be accepted, so we only search candidates within this
+		 * distance. Feature penalties might lower the cost of distant pairs,
+		 * so we have to test all the pairs of the right frames in that case.
 		 */
-		final ArrayList< Spot > sources = new ArrayList<>();
-		final ArrayList< Spot > targets = new ArrayList<>();
-		// Corresponding costs.
-		final ResizableDoubleArray linkCosts = new ResizableDoubleArray();
+		final boolean gcUseTree = gcCostFunction instanceof SquareDistCostFunction;
+		final boolean mUseTree = mCostFunction instanceof SquareDistCostFunction;
+		final boolean sUseTree = sCostFunction instanceof SquareDistCostFunction;
 
 		/*
 		 * A. We iterate over all segment ends, targeting 1st the segment starts
 		 * (gap-closing) then the segment middles (merging).
 		 */
 
-		final ExecutorService executorGCM = Threads.newFixedThreadPool( numThreads );
-		for ( final Spot source : segmentEnds )
+		final List< Spot > gcmSources = ( allowGapClosing || allowMerging ) ? segmentEnds : Collections.emptyList();
+		final List< Candidates > gcmCandidates = collectInParallel( gcmSources, new CandidateCollector()
 		{
-			executorGCM.submit( new Runnable()
+			@Override
+			public void collect( final Spot source, final FrameIndex.Search startSearch, final FrameIndex.Search middleSearch, final Candidates out )
 			{
-				@Override
-				public void run()
-				{
-					final int sourceFrame = source.getFeature( Spot.FRAME ).intValue();
+				final int sourceFrame = source.getFeature( Spot.FRAME ).intValue();
 
-					/*
-					 * Iterate over segment starts - GAP-CLOSING.
-					 */
+				/*
+				 * Iterate over segment starts - GAP-CLOSING.
+				 */
 
-					if ( allowGapClosing )
-					{
-						for ( final Spot target : segmentStarts )
-						{
-							// Check frame interval, must be within user
-							// specification.
-							final int targetFrame = target.getFeature( Spot.FRAME ).intValue();
-							final int tdiff = targetFrame - sourceFrame;
-							if ( tdiff < 1 || tdiff > maxFrameInterval )
-							{
-								continue;
-							}
-
-							// Check max distance
-							final double cost = gcCostFunction.linkingCost( source, target );
-							if ( cost > gcCostThreshold )
-							{
-								continue;
-							}
-
-							synchronized ( lock )
-							{
-								sources.add( source );
-								targets.add( target );
-								linkCosts.add( cost );
-							}
-						}
-					}
+				if ( allowGapClosing )
+				{
+					// Frame interval must be within user specification.
+					final int maxTargetFrame = ( int ) Math.min( ( long ) sourceFrame + maxFrameInterval, Integer.MAX_VALUE );
+					startSearch.collect( source, sourceFrame + 1, maxTargetFrame, gcCostFunction, gcCostThreshold, gcMaxDistance, gcUseTree, out );
+				}
 
-					/*
-					 * Iterate over middle points - MERGING.
-					 */
+				/*
+				 * Iterate over middle points - MERGING.
+				 */
 
-					if ( allowMerging )
-					{
-						for ( final Spot target : allMiddles )
-						{
-							// Check frame interval, must be 1.
-							final int targetFrame = target.getFeature( Spot.FRAME ).intValue();
-							final int tdiff = targetFrame - sourceFrame;
-							if ( tdiff != 1 )
-							{
-								continue;
-							}
-
-							// Check max distance
-							final double cost = mCostFunction.linkingCost( source, target );
-							if ( cost > mCostThreshold )
-							{
-								continue;
-							}
-
-							synchronized ( lock )
-							{
-								sources.add( source );
-								targets.add( target );
-								linkCosts.add( cost );
-							}
-						}
-					}
+				if ( allowMerging )
+				{
+					// Frame interval must be 1.
+					middleSearch.collect( source, sourceFrame + 1, sourceFrame + 1, mCostFunction, mCostThreshold, mMaxDistance, mUseTree, out );
 				}
-			} );
-		}
-		executorGCM.shutdown();
-		try
-		{
-			executorGCM.awaitTermination( 1, TimeUnit.DAYS );
-		}
-		catch ( final InterruptedException e )
-		{
-			errorMessage = BASE_ERROR_MESSAGE + e.getMessage();
+			}
+		}, startIndex, middleIndex );
+		if ( null == gcmCandidates )
 			return false;
-		}
 
 		/*
 		 * Iterate over middle points targeting segment starts - SPLITTING
 		 */
-		if ( allowSplitting )
+
+		final List< Spot > sSources = allowSplitting ? allMiddles : Collections.emptyList();
+		final List< Candidates > sCandidates = collectInParallel( sSources, new CandidateCollector()
 		{
-			final ExecutorService executorS = Threads.newFixedThreadPool( numThreads );
-			for ( final Spot source : allMiddles )
-			{
-				executorS.submit( new Runnable()
-				{
-					@Override
-					public void run()
-					{
-						final int sourceFrame = source.getFeature( Spot.FRAME ).intValue();
-						for ( final Spot target : segmentStarts )
-						{
-							// Check frame interval, must be 1.
-							final int targetFrame = target.getFeature( Spot.FRAME ).intValue();
-							final int tdiff = targetFrame - sourceFrame;
-
-							if ( tdiff != 1 )
-							{
-								continue;
-							}
-
-							// Check max distance
-							final double cost = sCostFunction.linkingCost( source, target );
-							if ( cost > sCostThreshold )
-							{
-								continue;
-							}
-							synchronized ( lock )
-							{
-								sources.add( source );
-								targets.add( target );
-								linkCosts.add( cost );
-							}
-						}
-					}
-				} );
-			}
-			executorS.shutdown();
-			try
+			@Override
+			public void collect( final Spot source, final FrameIndex.Search startSearch, final FrameIndex.Search middleSearch, final Candidates out )
 			{
-				executorS.awaitTermination( 1, TimeUnit.DAYS );
-			}
-			catch ( final InterruptedException e )
-			{
-				errorMessage = BASE_ERROR_MESSAGE + e.getMessage();
+				// Frame interval must be 1.
+				final int sourceFrame = source.getFeature( Spot.FRAME ).intValue();
+				startSearch.collect( source, sourceFrame + 1, sourceFrame + 1, sCostFunction, sCostThreshold, sMaxDistance, sUseTree, out );
 			}
+		}, startIndex, middleIndex );
+		if ( null == sCandidates )
+			return false;
+
+		/*
+		 * Merge the candidates found by each thread.
+		 */
+
+		final List< Candidates > allCandidates = new ArrayList<>( gcmCandidates );
+		allCandidates.addAll( sCandidates );
+		int nCandidates = 0;
+		for ( final Candidates c : allCandidates )
+			nCandidates += c.costs.size;
+
+		final ArrayList< Spot > sources = new ArrayList<>( nCandidates );
+		final ArrayList< Spot > targets = new ArrayList<>( nCandidates );
+		final ResizableDoubleArray linkCosts = new ResizableDoubleArray( nCandidates );
+		for ( final Candidates c : allCandidates )
+		{
+			sources.addAll( c.sources );
+			targets.addAll( c.targets );
+			System.arraycopy( c.costs.data, 0, linkCosts.data, linkCosts.size, c.costs.size );
+			linkCosts.size += c.costs.size;
 		}
 		linkCosts.trimToSize();
 
@@ -385,7 +333,7 @@ public class JaqamanSegmentCostMatrixCreator implements CostMatrixCreator< Spot,
 			/*
 			 * Compute the alternative cost from the cost array
 			 */
-			alternativeCost = creator.computeAlternativeCosts();
+			alternativeCost = creator.getAlternativeCostForSource( null );
 
 			scm = creator.getResult();
 			uniqueSources = creator.getSourceList();
@@ -397,6 +345,56 @@ public class JaqamanSegmentCostMatrixCreator implements CostMatrixCreator< Spot,
 		return true;
 	}
 
+	/**
+	 * Splits the specified sources in contiguous chunks, one per thread, and
+	 * collects the candidate links of each chunk in a separate
+	 * {@link Candidates} instance, so that threads do not have to synchronize.
+	 * 
+	 * @return the list of candidates collected by each thread, or
+	 *         <code>null</code> if an error occurred.
+	 */
+	private List< Candidates > collectInParallel( final List< Spot > sources, final CandidateCollector collector, final FrameIndex startIndex, final FrameIndex middleIndex )
+	{
+		if ( sources.isEmpty() )
+			return Collections.emptyList();
+
+		final int nChunks = Math.max( 1, Math.min( numThreads, sources.size() ) );
+		final int chunkSize = ( sources.size() + nChunks - 1 ) / nChunks;
+		final ExecutorService executor = Threads.newFixedThreadPool( nChunks );
+		final List< Future< Candidates > > futures = new ArrayList<>( nChunks );
+		for ( int from = 0; from < sources.size(); from += chunkSize )
+		{
+			final List< Spot > chunk = sources.subList( from, Math.min( from + chunkSize, sources.size() ) );
+			futures.add( executor.submit( new Callable< Candidates >()
+			{
+				@Override
+				public Candidates call()
+				{
+					final Candidates out = new Candidates();
+					final FrameIndex.Search startSearch = startIndex.search();
+					final FrameIndex.Search middleSearch = middleIndex.search();
+					for ( final Spot source : chunk )
+						collector.collect( source, startSearch, middleSearch, out );
+					return out;
+				}
+			} ) );
+		}
+		executor.shutdown();
+
+		final List< Candidates > results = new ArrayList<>( futures.size() );
+		try
+		{
+			for ( final Future< Candidates > future : futures )
+				results.add( future.get() );
+		}
+		catch ( final InterruptedException | ExecutionException e )
+		{
+			errorMessage = BASE_ERROR_MESSAGE + e.getMessage();
+			return null;
+		}
+		return results;
+	}
+
 	protected CostFunction< Spot, Spot > getCostFunctionFor( final Map< String, Double > featurePenalties )
 	{
 		// Link Nick Perry original non sparse LAP framework.
@@ -494,6 +492,127 @@ public class JaqamanSegmentCostMatrixCreator implements CostMatrixCreator< Spot,
 		return ok;
 	}
 
+	/*
+	 * INNER CLASSES
+	 */
+
+	/**
+	 * Collects the candidate links for one source.
+	 */
+	private static interface CandidateCollector
+	{
+		public void collect( Spot source, FrameIndex.Search startSearch, FrameIndex.Search middleSearch, Candidates out );
+	}
+
+	/**
+	 * Per-thread accumulator for candidate links.
+	 */
+	private static final class Candidates
+	{
+		private final List< Spot > sources = new ArrayList<>();
+
+		private final List< Spot > targets = new ArrayList<>();
+
+		private final ResizableDoubleArray costs = new ResizableDoubleArray();
+
+		private void add( final Spot source, final Spot target, final double cost )
+		{
+			sources.add( source );
+			targets.add( target );
+			costs.add( cost );
+		}
+	}
+
+	/**
+	 * Spots bucketed by frame, with a KD-tree for each frame.
+	 */
+	private static final class FrameIndex
+	{
+
+		private final NavigableMap< Integer, List< Spot > > spotsByFrame = new TreeMap<>();
+
+		private final Map< Integer, KDTree< Spot > > treesByFrame = new HashMap<>();
+
+		private FrameIndex( final Collection< Spot > spots )
+		{
+			for ( final Spot spot : spots )
+			{
+				final Integer frame = Integer.valueOf( spot.getFeature( Spot.FRAME ).intValue() );
+				List< Spot > list = spotsByFrame.get( frame );
+				if ( list == null )
+				{
+					list = new ArrayList<>();
+					spotsByFrame.put( frame, list );
+				}
+				list.add( spot );
+			}
+			for ( final Integer frame : spotsByFrame.keySet() )
+			{
+				final List< Spot > list = spotsByFrame.get( frame );
+				treesByFrame.put( frame, new KDTree<>( list, list ) );
+			}
+		}
+
+		/**
+		 * Returns a new search on this index. Searches are not thread-safe
+		 * and must not be shared across threads.
+		 */
+		private Search search()
+		{
+			return new Search();
+		}
+
+		private final class Search
+		{
+
+			private final Map< Integer, RadiusNeighborSearchOnKDTree< Spot > > searches = new HashMap<>();
+
+			/**
+			 * Adds to the specified candidates all the links from the source
+			 * to the spots of the specified frame range (inclusive) with a
+			 * cost not larger than the cost threshold.
+			 */
+			private void collect( final Spot source, final int minFrame, final int maxFrame, final CostFunction< Spot, Spot > costFunction, final double costThreshold, final double maxDistance, final boolean useTree, final Candidates out )
+			{
+				if ( maxFrame < minFrame )
+					return;
+
+				for ( final Integer key : spotsByFrame.subMap( minFrame, true, maxFrame, true ).keySet() )
+					collect( source, key, costFunction, costThreshold, maxDistance, useTree, out );
+			}
+
+			private void collect( final Spot source, final Integer key, final CostFunction< Spot, Spot > costFunction, final double costThreshold, final double maxDistance, final boolean useTree, final Candidates out )
+			{
+				final List< Spot > targets = spotsByFrame.get( key );
+				if ( !useTree )
+				{
+					for ( final Spot target : targets )
+					{
+						final double cost = costFunction.linkingCost( source, target );
+						if ( cost <= costThreshold )
+							out.add( source, target, cost );
+					}
+					return;
+				}
+
+				RadiusNeighborSearchOnKDTree< Spot > search = searches.get( key );
+				if ( null == search )
+				{
+					search = new RadiusNeighborSearchOnKDTree<>( treesByFrame.get( key ) );
+					searches.put( key, search );
+				}
+				search.search( source, maxDistance, false );
+				for ( int i = 0; i < search.numNeighbors(); i++ )
+				{
+					final Spot target = search.getSampler( i ).get();
+					final double cost = costFunction.linkingCost( source, target );
+					if ( cost <= costThreshold )
+						out.add( source, target, cost );
+				}
+			}
+		}
+	}
+
 	@Override
 	public void setNumThreads()
 	{
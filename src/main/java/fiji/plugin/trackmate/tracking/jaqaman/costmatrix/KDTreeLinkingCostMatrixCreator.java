@@ -0,0 +1,126 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2010 - 2023 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.tracking.jaqaman.costmatrix;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import fiji.plugin.trackmate.tracking.jaqaman.costfunction.CostFunction;
+import net.imglib2.KDTree;
+import net.imglib2.RealLocalizable;
+import net.imglib2.neighborsearch.RadiusNeighborSearchOnKDTree;
+
+/**
+ * A {@link JaqamanLinkingCostMatrixCreator} that uses a KD-tree built on the
+ * targets to only evaluate the cost function for the targets that are within
+ * a maximal distance of each source.
+ * <p>
+ * This creator generates the same cost matrix as its parent class, but in
+ * <code>O(N log M)</code> instead of <code>O(N × M)</code>, <b>provided</b>
+ * the cost function is such that any pair of objects separated by more than
+ * the maximal distance has a cost larger or equal to the cost threshold. This
+ * is the case for instance for the
+ * {@link fiji.plugin.trackmate.tracking.jaqaman.costfunction.SquareDistCostFunction}
+ * with a maximal distance equal to the square root of the cost threshold. It
+ * is the caller responsibility to ensure this condition holds.
+ * 
+ * @author Jean-Yves Tinevez
+ *
+ * @param <K>
+ *            the type of the sources.
+ * @param <J>
+ *            the type of the targets.
+ */
+public class KDTreeLinkingCostMatrixCreator< K extends RealLocalizable & Comparable< K >, J extends RealLocalizable & Comparable< J > > extends JaqamanLinkingCostMatrixCreator< K, J >
+{
+
+	private final double maxDistance;
+
+	/**
+	 * Creates a new cost matrix creator.
+	 * 
+	 * @param sources
+	 *            the sources to link.
+	 * @param targets
+	 *            the targets to link.
+	 * @param costFunction
+	 *            the cost function.
+	 * @param costThreshold
+	 *            the cost threshold. Only pairs with a cost strictly lower
+	 *            than this value are accepted.
+	 * @param maxDistance
+	 *            the maximal distance between a source and a target above
+	 *            which the cost function is guaranteed to return a cost
+	 *            larger than or equal to the cost threshold.
+	 * @param alternativeCostFactor
+	 *            the alternative cost factor.
+	 * @param percentile
+	 *            the percentile of the cost distribution used to compute the
+	 *            alternative cost.
+	 */
+	public KDTreeLinkingCostMatrixCreator(
+			final Iterable< K > sources,
+			final Iterable< J > targets,
+			final CostFunction< K, J > costFunction,
+			final double costThreshold,
+			final double maxDistance,
+			final double alternativeCostFactor,
+			final double percentile )
+	{
+		super( sources, targets, costFunction, costThreshold, alternativeCostFactor, percentile );
+		this.maxDistance = maxDistance;
+	}
+
+	@Override
+	protected void collectCandidates(
+			final Iterable< K > sources,
+			final Iterable< J > targets,
+			final CostFunction< K, J > costFunction,
+			final double costThreshold,
+			final List< K > accSources,
+			final List< J > accTargets,
+			final ResizableDoubleArray costs )
+	{
+		final List< J > targetList = new ArrayList<>();
+		for ( final J target : targets )
+			targetList.add( target );
+
+		final KDTree< J > tree = new KDTree<>( targetList, targetList );
+		final RadiusNeighborSearchOnKDTree< J > search = new RadiusNeighborSearchOnKDTree<>( tree );
+		for ( final K source : sources )
+		{
+			search.search( source, maxDistance, false );
+			final int nNeighbors = search.numNeighbors();
+			for ( int i = 0; i < nNeighbors; i++ )
+			{
+				final J target = search.getSampler( i ).get();
+				final double cost = costFunction.linkingCost( source, target );
+				if ( cost < costThreshold )
+				{
+					accSources.add( source );
+					accTargets.add( target );
+					costs.add( cost );
+				}
+			}
+		}
+	}
+}
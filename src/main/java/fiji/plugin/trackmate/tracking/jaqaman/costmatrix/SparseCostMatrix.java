@@ -21,6 +21,7 @@
  */
 package fiji.plugin.trackmate.tracking.jaqaman.costmatrix;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -551,6 +552,179 @@ public class SparseCostMatrix
 		return new SparseCostMatrix( cc2, kk2, number2, nRows );
 	}
 
+	/**
+	 * Splits this matrix in independent blocks.
+	 * <p>
+	 * The matrix is seen as a bipartite graph, where rows and columns are
+	 * nodes and non-infinite costs are edges. Each connected component of this
+	 * graph yields a block: the sub-matrix made of the rows and columns of the
+	 * component. Since no non-infinite cost links two different blocks, a
+	 * linear assignment problem on this matrix can be solved block by block.
+	 * Blocks are returned in the order of their first row, and row and column
+	 * indices are sorted within each block.
+	 *
+	 * @return a new list of blocks.
+	 */
+	public List< Block > decompose()
+	{
+		/*
+		 * Union-find over rows [0, nRows) and columns [nRows, nRows + nCols).
+		 */
+		final int[] parent = new int[ nRows + nCols ];
+		for ( int i = 0; i < parent.length; i++ )
+			parent[ i ] = i;
+		for ( int i = 0; i < nRows; i++ )
+		{
+			for ( int k = start[ i ]; k < start[ i ] + number[ i ]; k++ )
+			{
+				final int a = find( parent, i );
+				final int b = find( parent, nRows + kk[ k ] );
+				if ( a != b )
+					parent[ Math.max( a, b ) ] = Math.min( a, b );
+			}
+		}
+
+		/*
+		 * Label components and count their rows and columns.
+		 */
+		final int[] label = new int[ nRows + nCols ];
+		Arrays.fill( label, -1 );
+		int nComponents = 0;
+		for ( int i = 0; i < parent.length; i++ )
+		{
+			final int root = find( parent, i );
+			if ( label[ root ] < 0 )
+				label[ root ] = nComponents++;
+			label[ i ] = label[ root ];
+		}
+		final int[] rowCount = new int[ nComponents ];
+		final int[] colCount = new int[ nComponents ];
+		for ( int i = 0; i < nRows; i++ )
+			rowCount[ label[ i ] ]++;
+		for ( int j = 0; j < nCols; j++ )
+			colCount[ label[ nRows + j ] ]++;
+
+		/*
+		 * Collect row and column indices, and the local index of each column
+		 * in its block.
+		 */
+		final int[][] rows = new int[ nComponents ][];
+		final int[][] cols = new int[ nComponents ][];
+		for ( int c = 0; c < nComponents; c++ )
+		{
+			rows[ c ] = new int[ rowCount[ c ] ];
+			cols[ c ] = new int[ colCount[ c ] ];
+		}
+		final int[] fill = new int[ nComponents ];
+		for ( int i = 0; i < nRows; i++ )
+		{
+			final int c = label[ i ];
+			rows[ c ][ fill[ c ]++ ] = i;
+		}
+		Arrays.fill( fill, 0 );
+		final int[] localCol = new int[ nCols ];
+		for ( int j = 0; j < nCols; j++ )
+		{
+			final int c = label[ nRows + j ];
+			localCol[ j ] = fill[ c ];
+			cols[ c ][ fill[ c ]++ ] = j;
+		}
+
+		/*
+		 * Build sub-matrices. Column indices map monotonically, so they stay
+		 * sorted within each row.
+		 */
+		final List< Block > blocks = new ArrayList<>( nComponents );
+		for ( int c = 0; c < nComponents; c++ )
+		{
+			final int[] r = rows[ c ];
+			int card = 0;
+			for ( final int i : r )
+				card += number[ i ];
+
+			final double[] cc2 = new double[ card ];
+			final int[] kk2 = new int[ card ];
+			final int[] number2 = new int[ r.length ];
+			int index = 0;
+			for ( int ri = 0; ri < r.length; ri++ )
+			{
+				final int i = r[ ri ];
+				number2[ ri ] = number[ i ];
+				for ( int k = start[ i ]; k < start[ i ] + number[ i ]; k++ )
+				{
+					cc2[ index ] = cc[ k ];
+					kk2[ index ] = localCol[ kk[ k ] ];
+					index++;
+				}
+			}
+			blocks.add( new Block( r, cols[ c ], new SparseCostMatrix( cc2, kk2, number2, cols[ c ].length ) ) );
+		}
+		return blocks;
+	}
+
+	private static final int find( final int[] parent, int i )
+	{
+		while ( parent[ i ] != i )
+		{
+			parent[ i ] = parent[ parent[ i ] ];
+			i = parent[ i ];
+		}
+		return i;
+	}
+
+	/**
+	 * An independent block of a sparse cost matrix.
+	 *
+	 * @see SparseCostMatrix#decompose()
+	 */
+	public static final class Block
+	{
+
+		private final int[] rows;
+
+		private final int[] cols;
+
+		private final SparseCostMatrix matrix;
+
+		private Block( final int[] rows, final int[] cols, final SparseCostMatrix matrix )
+		{
+			this.rows = rows;
+			this.cols = cols;
+			this.matrix = matrix;
+		}
+
+		/**
+		 * Returns the indices, in the parent matrix, of the rows of this block.
+		 *
+		 * @return the row indices, sorted.
+		 */
+		public int[] getRows()
+		{
+			return rows;
+		}
+
+		/**
+		 * Returns the indices, in the parent matrix, of the columns of this
+		 * block.
+		 *
+		 * @return the column indices, sorted.
+		 */
+		public int[] getCols()
+		{
+			return cols;
+		}
+
+		/**
+		 * Returns the sub-matrix of this block.
+		 *
+		 * @return the sub-matrix.
+		 */
+		public SparseCostMatrix getMatrix()
+		{
+			return matrix;
+		}
+	}
+
 	/**
 	 * Replace all the non-infinite values of this matrix by the specified
 	 * value.
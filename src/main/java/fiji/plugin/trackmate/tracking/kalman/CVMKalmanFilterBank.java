@@ -0,0 +1,426 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2010 - 2023 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.tracking.kalman;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.IntConsumer;
+
+import fiji.plugin.trackmate.util.TrackMateExecutor;
+
+/**
+ * A bank of constant-velocity Kalman filters, equivalent to many
+ * {@link CVMKalmanFilter}s sharing the same noise parameters, stored in
+ * primitive arrays.
+ * <p>
+ * With the constant velocity model, the evolution, measurement and noise
+ * matrices are the same 2×2 matrix for each of the X, Y and Z axes, and the
+ * axes are independent. Starting from an isotropic state covariance, the 6×6
+ * covariance is therefore always made of three identical 2×2 symmetric blocks
+ * (position variance, position-velocity covariance, velocity variance), that
+ * we store once per filter. Prediction and update are computed in closed form
+ * on these blocks, without matrices and without allocation.
+ * <p>
+ * Filters are addressed by an integer slot returned by
+ * {@link #add(Object, double, double, double, double, double, double, double)}.
+ * Slots of removed filters are reused. Each filter carries an object of type
+ * <code>T</code>, typically the last spot it was matched to.
+ * <p>
+ * This class is not thread-safe, but {@link #predictAll()} and
+ * {@link #updateAll(int[], double[], int)} process the filters in parallel on
+ * the shared TrackMate pool when there are many of them.
+ *
+ * @author Jean-Yves Tinevez
+ *
+ * @param <T>
+ *            the type of the objects attached to the filters.
+ */
+public class CVMKalmanFilterBank< T >
+{
+
+	private static final int MIN_CHUNK_SIZE = 8192;
+
+	/** Variance of the position process noise. */
+	private final double qp;
+
+	/** Variance of the velocity process noise. */
+	private final double qv;
+
+	/** Variance of the position measurement noise. */
+	private final double r;
+
+	/** State: <code>x, y, z, vx, vy, vz</code> per filter. */
+	private double[] state;
+
+	/** Predicted state, same layout. */
+	private double[] predicted;
+
+	/**
+	 * Covariance blocks: position variance, position-velocity covariance and
+	 * velocity variance, per filter.
+	 */
+	private double[] covariance;
+
+	private int[] nOcclusions;
+
+	/**
+	 * Whether the filter is alive and was predicted but not updated in the
+	 * current frame.
+	 */
+	private boolean[] pending;
+
+	private boolean[] alive;
+
+	private Object[] attachments;
+
+	/** Free slots below {@link #size}. */
+	private int[] free;
+
+	private int nFree;
+
+	/** Slots in use or free are all below this. */
+	private int size;
+
+	private int nAlive;
+
+	/**
+	 * Creates an empty bank.
+	 *
+	 * @param positionProcessStd
+	 *            the std of the noise affecting the position evolution.
+	 * @param velocityProcessStd
+	 *            the std of the noise affecting the velocity evolution, in
+	 *            <code>length/frame</code> units.
+	 * @param positionMeasurementStd
+	 *            the std of the noise affecting the position measurement.
+	 * @see CVMKalmanFilter#CVMKalmanFilter(double[], double, double, double,
+	 *      double)
+	 */
+	public CVMKalmanFilterBank( final double positionProcessStd, final double velocityProcessStd, final double positionMeasurementStd )
+	{
+		this.qp = positionProcessStd * positionProcessStd;
+		this.qv = velocityProcessStd * velocityProcessStd;
+		this.r = positionMeasurementStd * positionMeasurementStd;
+		allocate( 64 );
+	}
+
+	/**
+	 * Adds a new filter. It is not updated nor occluded before the next call
+	 * to {@link #predictAll()}.
+	 *
+	 * @return the slot of the new filter.
+	 */
+	public int add( final T attachment, final double x, final double y, final double z, final double vx, final double vy, final double vz, final double initStateCovariance )
+	{
+		final int slot;
+		if ( nFree > 0 )
+		{
+			slot = free[ --nFree ];
+		}
+		else
+		{
+			if ( size == alive.length )
+				allocate( 2 * size );
+			slot = size++;
+		}
+
+		final int s = 6 * slot;
+		state[ s ] = x;
+		state[ s + 1 ] = y;
+		state[ s + 2 ] = z;
+		state[ s + 3 ] = vx;
+		state[ s + 4 ] = vy;
+		state[ s + 5 ] = vz;
+		System.arraycopy( state, s, predicted, s, 6 );
+
+		final int c = 3 * slot;
+		covariance[ c ] = initStateCovariance;
+		covariance[ c + 1 ] = 0.;
+		covariance[ c + 2 ] = initStateCovariance;
+
+		nOcclusions[ slot ] = 0;
+		pending[ slot ] = false;
+		alive[ slot ] = true;
+		attachments[ slot ] = attachment;
+		nAlive++;
+		return slot;
+	}
+
+	/**
+	 * Removes a filter. Its slot can be reused.
+	 */
+	public void remove( final int slot )
+	{
+		if ( !alive[ slot ] )
+			return;
+		alive[ slot ] = false;
+		pending[ slot ] = false;
+		attachments[ slot ] = null;
+		free[ nFree++ ] = slot;
+		nAlive--;
+	}
+
+	/**
+	 * Runs the prediction step of all the filters.
+	 */
+	public void predictAll()
+	{
+		parallelFor( size, ( from, to ) -> {
+			for ( int slot = from; slot < to; slot++ )
+			{
+				if ( !alive[ slot ] )
+					continue;
+				predict( slot );
+				pending[ slot ] = true;
+			}
+		} );
+	}
+
+	private void predict( final int slot )
+	{
+		final int s = 6 * slot;
+		for ( int d = 0; d < 3; d++ )
+		{
+			predicted[ s + d ] = state[ s + d ] + state[ s + 3 + d ];
+			predicted[ s + 3 + d ] = state[ s + 3 + d ];
+		}
+
+		// P = A P A' + Q, on the 2x2 block.
+		final int c = 3 * slot;
+		final double a = covariance[ c ];
+		final double b = covariance[ c + 1 ];
+		final double v = covariance[ c + 2 ];
+		covariance[ c ] = a + 2. * b + v + qp;
+		covariance[ c + 1 ] = b + v;
+		covariance[ c + 2 ] = v + qv;
+	}
+
+	/**
+	 * Runs the update step of a filter with the specified measured position.
+	 */
+	public void update( final int slot, final double mx, final double my, final double mz )
+	{
+		final int c = 3 * slot;
+		final double a = covariance[ c ];
+		final double b = covariance[ c + 1 ];
+		final double v = covariance[ c + 2 ];
+
+		// Gain, identical on all axes.
+		final double s = a + r;
+		final double kp = a / s;
+		final double kv = b / s;
+
+		final int o = 6 * slot;
+		final double ix = mx - predicted[ o ];
+		final double iy = my - predicted[ o + 1 ];
+		final double iz = mz - predicted[ o + 2 ];
+		state[ o ] = predicted[ o ] + kp * ix;
+		state[ o + 1 ] = predicted[ o + 1 ] + kp * iy;
+		state[ o + 2 ] = predicted[ o + 2 ] + kp * iz;
+		state[ o + 3 ] = predicted[ o + 3 ] + kv * ix;
+		state[ o + 4 ] = predicted[ o + 4 ] + kv * iy;
+		state[ o + 5 ] = predicted[ o + 5 ] + kv * iz;
+
+		// P = (I - K H) P.
+		covariance[ c ] = a * r / s;
+		covariance[ c + 1 ] = b * r / s;
+		covariance[ c + 2 ] = v - b * b / s;
+
+		pending[ slot ] = false;
+	}
+
+	/**
+	 * Runs the update step of several filters.
+	 *
+	 * @param slots
+	 *            the slots of the filters to update.
+	 * @param measurements
+	 *            the measured positions, 3 per filter, in the same order.
+	 * @param n
+	 *            the number of filters to update.
+	 */
+	public void updateAll( final int[] slots, final double[] measurements, final int n )
+	{
+		parallelFor( n, ( from, to ) -> {
+			for ( int i = from; i < to; i++ )
+				update( slots[ i ], measurements[ 3 * i ], measurements[ 3 * i + 1 ], measurements[ 3 * i + 2 ] );
+		} );
+	}
+
+	/**
+	 * Deals with the filters that were predicted but not updated since: they
+	 * take their predicted state, and are removed if they have been occluded
+	 * more than the specified number of times.
+	 *
+	 * @param maxOcclusions
+	 *            the maximal number of occlusions.
+	 * @param onRemove
+	 *            called with the slot of each filter removed, before it is
+	 *            removed. Can be <code>null</code>.
+	 */
+	public void occludePending( final int maxOcclusions, final IntConsumer onRemove )
+	{
+		for ( int slot = 0; slot < size; slot++ )
+		{
+			if ( !pending[ slot ] )
+				continue;
+
+			pending[ slot ] = false;
+			nOcclusions[ slot ]++;
+			System.arraycopy( predicted, 6 * slot, state, 6 * slot, 6 );
+			if ( nOcclusions[ slot ] > maxOcclusions )
+			{
+				if ( null != onRemove )
+					onRemove.accept( slot );
+				remove( slot );
+			}
+		}
+	}
+
+	/**
+	 * Calls the specified consumer with the slot of each live filter.
+	 */
+	public void forEach( final IntConsumer consumer )
+	{
+		for ( int slot = 0; slot < size; slot++ )
+			if ( alive[ slot ] )
+				consumer.accept( slot );
+	}
+
+	/**
+	 * Returns a bound on the slots of the filters: all slots are strictly
+	 * smaller than this value.
+	 */
+	public int slotBound()
+	{
+		return size;
+	}
+
+	/**
+	 * Returns the number of live filters.
+	 */
+	public int size()
+	{
+		return nAlive;
+	}
+
+	/**
+	 * Returns the predicted position of a filter along a dimension.
+	 */
+	public double getPredictedPosition( final int slot, final int d )
+	{
+		return predicted[ 6 * slot + d ];
+	}
+
+	/**
+	 * Returns the state of a filter: position for <code>d</code> in 0..2,
+	 * velocity for <code>d</code> in 3..5.
+	 */
+	public double getState( final int slot, final int d )
+	{
+		return state[ 6 * slot + d ];
+	}
+
+	/**
+	 * Returns the root mean square error on position of a filter.
+	 */
+	public double getPositionError( final int slot )
+	{
+		return Math.sqrt( covariance[ 3 * slot ] );
+	}
+
+	/**
+	 * Returns the root mean square error on velocity of a filter.
+	 */
+	public double getVelocityError( final int slot )
+	{
+		return Math.sqrt( covariance[ 3 * slot + 2 ] );
+	}
+
+	public int getNOcclusion( final int slot )
+	{
+		return nOcclusions[ slot ];
+	}
+
+	@SuppressWarnings( "unchecked" )
+	public T getAttachment( final int slot )
+	{
+		return ( T ) attachments[ slot ];
+	}
+
+	public void setAttachment( final int slot, final T attachment )
+	{
+		attachments[ slot ] = attachment;
+	}
+
+	private void allocate( final int capacity )
+	{
+		if ( null == alive )
+		{
+			state = new double[ 6 * capacity ];
+			predicted = new double[ 6 * capacity ];
+			covariance = new double[ 3 * capacity ];
+			nOcclusions = new int[ capacity ];
+			pending = new boolean[ capacity ];
+			alive = new boolean[ capacity ];
+			attachments = new Object[ capacity ];
+			free = new int[ capacity ];
+			return;
+		}
+		state = Arrays.copyOf( state, 6 * capacity );
+		predicted = Arrays.copyOf( predicted, 6 * capacity );
+		covariance = Arrays.copyOf( covariance, 3 * capacity );
+		nOcclusions = Arrays.copyOf( nOcclusions, capacity );
+		pending = Arrays.copyOf( pending, capacity );
+		alive = Arrays.copyOf( alive, capacity );
+		attachments = Arrays.copyOf( attachments, capacity );
+		free = Arrays.copyOf( free, capacity );
+	}
+
+	private interface RangeTask
+	{
+		void run( int from, int to );
+	}
+
+	/**
+	 * Runs the specified task over the range <code>[0, n)</code>, split in
+	 * chunks executed on the shared pool.
+	 */
+	private static void parallelFor( final int n, final RangeTask task )
+	{
+		final int nChunks = Math.max( 1, Math.min( TrackMateExecutor.getParallelism(), n / MIN_CHUNK_SIZE ) );
+		if ( nChunks == 1 )
+		{
+			task.run( 0, n );
+			return;
+		}
+
+		final CompletableFuture< ? >[] futures = new CompletableFuture< ? >[ nChunks ];
+		for ( int c = 0; c < nChunks; c++ )
+		{
+			final int from = ( int ) ( ( long ) n * c / nChunks );
+			final int to = ( int ) ( ( long ) n * ( c + 1 ) / nChunks );
+			futures[ c ] = CompletableFuture.runAsync( () -> task.run( from, to ), TrackMateExecutor.pool() );
+		}
+		CompletableFuture.allOf( futures ).join();
+	}
+}
@@ -22,6 +22,7 @@
 package fiji.plugin.trackmate.tracking.kalman;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -43,6 +44,7 @@ import fiji.plugin.trackmate.tracking.jaqaman.costfunction.CostFunction;
 import fiji.plugin.trackmate.tracking.jaqaman.costfunction.FeaturePenaltyCostFunction;
 import fiji.plugin.trackmate.tracking.jaqaman.costfunction.SquareDistCostFunction;
 import fiji.plugin.trackmate.tracking.jaqaman.costmatrix.JaqamanLinkingCostMatrixCreator;
+import fiji.plugin.trackmate.tracking.jaqaman.costmatrix.KDTreeLinkingCostMatrixCreator;
 import net.imglib2.algorithm.Benchmark;
 
 public class KalmanTracker implements SpotTracker, Benchmark, Cancelable
@@ -135,14 +137,10 @@ public class KalmanTracker implements SpotTracker, Benchmark, Cancelable
 		 * Constants.
 		 */
 
-		// Max KF search cost.
-		final double maxCost = maxSearchRadius * maxSearchRadius;
 		// Cost function to nucleate KFs.
 		// final CostFunction< Spot, Spot > nucleatingCostFunction = new
 		// SquareDistCostFunction();
 		final CostFunction< Spot, Spot > nucleatingCostFunction = getCostFunction( featurePenalties );
-		// Max cost to nucleate KFs.
-		final double maxInitialCost = initialSearchRadius * initialSearchRadius;
 
 		final CostFunction< Spot, Spot > costFunction = getCostFunction( featurePenalties );
 
@@ -210,8 +208,23 @@ public class KalmanTracker implements SpotTracker, Benchmark, Cancelable
 		meanSpotRadius /= orphanSpots.size();
 		final double positionMeasurementStd = meanSpotRadius / 10d;
 
-		// The master map that contains the currently active KFs.
-		final Map< CVMKalmanFilter, Spot > kalmanFiltersMap = new HashMap<>( orphanSpots.size() );
+		// The bank that holds the currently active KFs, with their last spot.
+		final CVMKalmanFilterBank< Spot > kalmanFilters = new CVMKalmanFilterBank<>( positionProcessStd, velocityProcessStd, positionMeasurementStd );
+
+		/*
+		 * The spots used to represent the prediction of each KF in the linking
+		 * step, indexed by filter slot. They are reused from frame to frame,
+		 * and only their features are updated.
+		 */
+		Spot[] predictionSpots = new Spot[ 64 ];
+		// The spot the features of each prediction spot were copied from.
+		Spot[] predictionSources = new Spot[ 64 ];
+		final Map< Spot, Integer > predictionSlots = new HashMap<>();
+		final List< Spot > predictions = new ArrayList<>();
+
+		// Buffers for the batched update of the KFs.
+		int[] updatedSlots = new int[ 64 ];
+		double[] updateMeasurements = new double[ 3 * 64 ];
 
 		/*
 		 * Then loop over time, starting from second frame.
@@ -231,35 +244,54 @@ public class KalmanTracker implements SpotTracker, Benchmark, Cancelable
 			 * Predict for all Kalman filters, and use it to generate linking
 			 * candidates.
 			 */
-			final Map< Spot, CVMKalmanFilter > predictionMap = new HashMap<>( kalmanFiltersMap.size() );
-			for ( final CVMKalmanFilter kf : kalmanFiltersMap.keySet() )
+			kalmanFilters.predictAll();
+			predictions.clear();
+			final int frameNumber = frame;
+			if ( kalmanFilters.slotBound() > predictionSpots.length )
 			{
-				final double[] X = kf.predict();
-				final Spot s = kalmanFiltersMap.get( kf );
-				final Spot predSpot = new Spot( X[ 0 ], X[ 1 ], X[ 2 ], s.getFeature( Spot.RADIUS ), s.getFeature( Spot.QUALITY ) );
-				// copy the necessary features of original spot to the predicted
-				// spot
-				if ( null != featurePenalties )
-					predSpot.copyFeatures( s, featurePenalties );
-
-				predictionMap.put( predSpot, kf );
+				final int newLength = Math.max( kalmanFilters.slotBound(), 2 * predictionSpots.length );
+				predictionSpots = Arrays.copyOf( predictionSpots, newLength );
+				predictionSources = Arrays.copyOf( predictionSources, newLength );
+			}
+			final Spot[] pSpots = predictionSpots;
+			final Spot[] pSources = predictionSources;
+			kalmanFilters.forEach( slot -> {
+				final Spot s = kalmanFilters.getAttachment( slot );
+				final double x = kalmanFilters.getPredictedPosition( slot, 0 );
+				final double y = kalmanFilters.getPredictedPosition( slot, 1 );
+				final double z = kalmanFilters.getPredictedPosition( slot, 2 );
+				Spot predSpot = pSpots[ slot ];
+				if ( null == predSpot )
+				{
+					predSpot = new Spot( x, y, z, s.getFeature( Spot.RADIUS ), s.getFeature( Spot.QUALITY ) );
+					pSpots[ slot ] = predSpot;
+					predictionSlots.put( predSpot, Integer.valueOf( slot ) );
+				}
+				else
+				{
+					predSpot.putFeature( Spot.POSITION_X, x );
+					predSpot.putFeature( Spot.POSITION_Y, y );
+					predSpot.putFeature( Spot.POSITION_Z, z );
+				}
+				if ( pSources[ slot ] != s )
+				{
+					// copy the necessary features of original spot to the
+					// predicted spot
+					predSpot.putFeature( Spot.RADIUS, s.getFeature( Spot.RADIUS ) );
+					predSpot.putFeature( Spot.QUALITY, s.getFeature( Spot.QUALITY ) );
+					if ( null != featurePenalties )
+						predSpot.copyFeatures( s, featurePenalties );
+					pSources[ slot ] = s;
+				}
+				predictions.add( predSpot );
 
 				if ( savePredictions )
 				{
-					final Spot pred = new Spot( X[ 0 ], X[ 1 ], X[ 2 ], s.getFeature( Spot.RADIUS ), s.getFeature( Spot.QUALITY ) );
+					final Spot pred = new Spot( x, y, z, s.getFeature( Spot.RADIUS ), s.getFeature( Spot.QUALITY ) );
 					pred.setName( "Pred_" + s.getName() );
-					pred.putFeature( Spot.RADIUS, s.getFeature( Spot.RADIUS ) );
-					predictionsCollection.add( predSpot, frame );
+					predictionsCollection.add( pred, frameNumber );
 				}
-
-			}
-			final List< Spot > predictions = new ArrayList<>( predictionMap.keySet() );
-
-			/*
-			 * The KF for which we could not find a measurement in the target
-			 * frame. Is updated later.
-			 */
-			final Collection< CVMKalmanFilter > childlessKFs = new HashSet<>( kalmanFiltersMap.keySet() );
+			} );
 
 			/*
 			 * Find the global (in space) optimum for associating a prediction
@@ -270,14 +302,13 @@ public class KalmanTracker implements SpotTracker, Benchmark, Cancelable
 			if ( !predictions.isEmpty() && !measurements.isEmpty() )
 			{
 				// Only link measurements to predictions if we have predictions.
-				final JaqamanLinkingCostMatrixCreator< Spot, Spot > crm = new JaqamanLinkingCostMatrixCreator<>(
+				final JaqamanLinkingCostMatrixCreator< Spot, Spot > crm = createCostMatrixCreator(
 						predictions,
 						measurements,
 						costFunction,
-						maxCost,
-						ALTERNATIVE_COST_FACTOR,
-						PERCENTILE );
+						maxSearchRadius );
 				final JaqamanLinker< Spot, Spot > linker = new JaqamanLinker<>( crm );
+				linker.setNumThreads( 1 );
 				if ( !linker.checkInput() || !linker.process() )
 				{
 					errorMessage = BASE_ERROR_MSG + "Error linking candidates in frame " + frame + ": " + linker.getErrorMessage();
@@ -285,13 +316,19 @@ public class KalmanTracker implements SpotTracker, Benchmark, Cancelable
 				}
 				final Map< Spot, Spot > agnts = linker.getResult();
 				final Map< Spot, Double > costs = linker.getAssignmentCosts();
+				if ( agnts.size() > updatedSlots.length )
+				{
+					updatedSlots = new int[ 2 * agnts.size() ];
+					updateMeasurements = new double[ 3 * updatedSlots.length ];
+				}
 				// Deal with found links.
+				int nUpdates = 0;
 				for ( final Spot spotty : agnts.keySet() )
 				{
-					final CVMKalmanFilter kf = predictionMap.get( spotty );
+					final int slot = predictionSlots.get( spotty ).intValue();
 
 					// Create links for found match.
-					final Spot source = kalmanFiltersMap.get( kf );
+					final Spot source = kalmanFilters.getAttachment( slot );
 					final Spot target = agnts.get( spotty );
 
 					graph.addVertex( source );
@@ -300,18 +337,20 @@ public class KalmanTracker implements SpotTracker, Benchmark, Cancelable
 					final double cost = costs.get( spotty );
 					graph.setEdgeWeight( edge, cost );
 
-					// Update Kalman filter
-					kf.update( toMeasurement( target ) );
+					// Queue Kalman filter update
+					updatedSlots[ nUpdates ] = slot;
+					updateMeasurements[ 3 * nUpdates ] = target.getDoublePosition( 0 );
+					updateMeasurements[ 3 * nUpdates + 1 ] = target.getDoublePosition( 1 );
+					updateMeasurements[ 3 * nUpdates + 2 ] = target.getDoublePosition( 2 );
+					nUpdates++;
 
 					// Update Kalman track spot
-					kalmanFiltersMap.put( kf, target );
+					kalmanFilters.setAttachment( slot, target );
 
 					// Remove from orphan set
 					orphanSpots.remove( target );
-
-					// Remove from childless KF set
-					childlessKFs.remove( kf );
 				}
+				kalmanFilters.updateAll( updatedSlots, updateMeasurements, nUpdates );
 			}
 
 			/*
@@ -330,14 +369,13 @@ public class KalmanTracker implements SpotTracker, Benchmark, Cancelable
 				 * spots of this frame.
 				 */
 
-				final JaqamanLinkingCostMatrixCreator< Spot, Spot > ic = new JaqamanLinkingCostMatrixCreator<>(
+				final JaqamanLinkingCostMatrixCreator< Spot, Spot > ic = createCostMatrixCreator(
 						previousOrphanSpots,
 						orphanSpots,
 						nucleatingCostFunction,
-						maxInitialCost,
-						ALTERNATIVE_COST_FACTOR,
-						PERCENTILE );
+						initialSearchRadius );
 				final JaqamanLinker< Spot, Spot > newLinker = new JaqamanLinker<>( ic );
+				newLinker.setNumThreads( 1 );
 				if ( !newLinker.checkInput() || !newLinker.process() )
 				{
 					errorMessage = BASE_ERROR_MSG + "Error linking spots from frame " + ( frame - 1 ) + " to frame " + frame + ": " + newLinker.getErrorMessage();
@@ -354,13 +392,16 @@ public class KalmanTracker implements SpotTracker, Benchmark, Cancelable
 					// Remove from orphan collection.
 					orphanSpots.remove( target );
 
-					// Derive initial state and create Kalman filter.
-					final double[] XP = estimateInitialState( source, target );
-					final CVMKalmanFilter kt = new CVMKalmanFilter( XP, Double.MIN_NORMAL, positionProcessStd, velocityProcessStd, positionMeasurementStd );
-					// We trust the initial state a lot.
-
-					// Store filter and source
-					kalmanFiltersMap.put( kt, target );
+					// Derive initial state and create Kalman filter, storing
+					// the target with it. We trust the initial state a lot.
+					kalmanFilters.add( target,
+							target.getDoublePosition( 0 ),
+							target.getDoublePosition( 1 ),
+							target.getDoublePosition( 2 ),
+							target.diffTo( source, Spot.POSITION_X ),
+							target.diffTo( source, Spot.POSITION_Y ),
+							target.diffTo( source, Spot.POSITION_Z ),
+							Double.MIN_NORMAL );
 
 					// Add edge to the graph.
 					graph.addVertex( source );
@@ -372,19 +413,12 @@ public class KalmanTracker implements SpotTracker, Benchmark, Cancelable
 			}
 			previousOrphanSpots = orphanSpots;
 
-			// Deal with childless KFs.
-			for ( final CVMKalmanFilter kf : childlessKFs )
-			{
-				// Echo we missed a measurement
-				kf.update( null );
-
-				/*
-				 * We can bridge a limited number of gaps. If too much, we die.
-				 * If not, we will use predicted state next time.
-				 */
-				if ( kf.getNOcclusion() > maxFrameGap )
-					kalmanFiltersMap.remove( kf );
-			}
+			/*
+			 * Deal with childless KFs. We can bridge a limited number of gaps.
+			 * If too much, they die. If not, they will use predicted state next
+			 * time.
+			 */
+			kalmanFilters.occludePending( maxFrameGap, null );
 
 			final double progress = ( double ) p / keySet.size();
 			logger.setProgress( progress );
@@ -454,29 +488,6 @@ public class KalmanTracker implements SpotTracker, Benchmark, Cancelable
 		this.logger = logger;
 	}
 
-	private static final double[] toMeasurement( final Spot spot )
-	{
-		final double[] d = new double[] {
-				spot.getDoublePosition( 0 ),
-				spot.getDoublePosition( 1 ),
-				spot.getDoublePosition( 2 )
-		};
-		return d;
-	}
-
-	private static final double[] estimateInitialState( final Spot first, final Spot second )
-	{
-		final double[] xp = new double[] {
-				second.getDoublePosition( 0 ),
-				second.getDoublePosition( 1 ),
-				second.getDoublePosition( 2 ),
-				second.diffTo( first, Spot.POSITION_X ),
-				second.diffTo( first, Spot.POSITION_Y ),
-				second.diffTo( first, Spot.POSITION_Z )
-		};
-		return xp;
-	}
-
 	private static final List< Spot > generateSpotList( final SpotCollection spots, final int frame )
 	{
 		final List< Spot > list = new ArrayList<>( spots.getNSpots( frame, true ) );
@@ -486,6 +497,24 @@ public class KalmanTracker implements SpotTracker, Benchmark, Cancelable
 		return list;
 	}
 
+	/**
+	 * Creates a cost matrix creator that accepts links shorter than the
+	 * specified radius. When the cost function is a pure square distance, the
+	 * candidates are searched in a KD-tree built on the targets.
+	 */
+	private static JaqamanLinkingCostMatrixCreator< Spot, Spot > createCostMatrixCreator(
+			final Iterable< Spot > sources,
+			final Iterable< Spot > targets,
+			final CostFunction< Spot, Spot > costFunction,
+			final double radius )
+	{
+		final double maxCost = radius * radius;
+		if ( costFunction instanceof SquareDistCostFunction )
+			return new KDTreeLinkingCostMatrixCreator<>( sources, targets, costFunction, maxCost, radius, ALTERNATIVE_COST_FACTOR, PERCENTILE );
+
+		return new JaqamanLinkingCostMatrixCreator<>( sources, targets, costFunction, maxCost, ALTERNATIVE_COST_FACTOR, PERCENTILE );
+	}
+
 	/**
 	 * Creates a suitable cost function.
 	 *
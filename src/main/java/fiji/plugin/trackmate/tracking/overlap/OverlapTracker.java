@@ -25,8 +25,6 @@ import static fiji.plugin.trackmate.tracking.overlap.OverlapTrackerFactory.BASE_
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -47,11 +45,11 @@ import fiji.plugin.trackmate.SpotRoi;
 import fiji.plugin.trackmate.tracking.SpotTracker;
 import fiji.plugin.trackmate.util.Threads;
 import math.geom2d.AffineTransform2D;
+import math.geom2d.Box2D;
 import math.geom2d.Point2D;
 import math.geom2d.conic.Circle2D;
 import math.geom2d.polygon.Polygon2D;
 import math.geom2d.polygon.Polygons2D;
-import math.geom2d.polygon.Rectangle2D;
 import math.geom2d.polygon.SimplePolygon2D;
 import net.imglib2.algorithm.MultiThreadedBenchmarkAlgorithm;
 
@@ -191,7 +189,7 @@ public class OverlapTracker extends MultiThreadedBenchmarkAlgorithm implements S
 
 		// First frame.
 		final int sourceFrame = frameIterator.next();
-		Map< Spot, Polygon2D > sourceGeometries = createGeometry( spots.iterable( sourceFrame, true ), method, enlargeFactor );
+		Geometries sourceGeometries = new Geometries( spots.iterable( sourceFrame, true ), method, enlargeFactor );
 
 		logger.setStatus( "Frame to frame linking..." );
 		int progress = 0;
@@ -201,7 +199,7 @@ public class OverlapTracker extends MultiThreadedBenchmarkAlgorithm implements S
 				break;
 
 			final int targetFrame = frameIterator.next();
-			final Map< Spot, Polygon2D > targetGeometries = createGeometry( spots.iterable( targetFrame, true ), method, enlargeFactor );
+			final Geometries targetGeometries = new Geometries( spots.iterable( targetFrame, true ), method, enlargeFactor );
 
 			if ( sourceGeometries.isEmpty() || targetGeometries.isEmpty() )
 				continue;
@@ -210,11 +208,8 @@ public class OverlapTracker extends MultiThreadedBenchmarkAlgorithm implements S
 			final List< Future< IoULink > > futures = new ArrayList<>();
 
 			// Submit work.
-			for ( final Spot target : targetGeometries.keySet() )
-			{
-				final Polygon2D targetPoly = targetGeometries.get( target );
-				futures.add( executors.submit( new FindBestSourceTask( target, targetPoly, sourceGeometries, minIoU ) ) );
-			}
+			for ( int t = 0; t < targetGeometries.size(); t++ )
+				futures.add( executors.submit( new FindBestSourceTask( targetGeometries, t, sourceGeometries, minIoU ) ) );
 
 			// Get results.
 			for ( final Future< IoULink > future : futures )
@@ -273,27 +268,6 @@ public class OverlapTracker extends MultiThreadedBenchmarkAlgorithm implements S
 		return ok;
 	}
 
-	private static Map< Spot, Polygon2D > createGeometry( final Iterable< Spot > spots, final IoUCalculation method, final double scale )
-	{
-		final Map< Spot, Polygon2D > geometries = new HashMap<>();
-		switch ( method )
-		{
-		case FAST:
-			for ( final Spot spot : spots )
-				geometries.put( spot, toBoundingBox( spot, scale ) );
-			break;
-
-		case PRECISE:
-			for ( final Spot spot : spots )
-				geometries.put( spot, toPolygon( spot, scale ) );
-			break;
-
-		default:
-			throw new IllegalArgumentException( "Do not know how to compute IoU for method " + method );
-		}
-		return Collections.unmodifiableMap( geometries );
-	}
-
 	private static SimplePolygon2D toPolygon( final Spot spot, final double scale )
 	{
 		final double xc = spot.getDoublePosition( 0 );
@@ -314,7 +288,11 @@ public class OverlapTracker extends MultiThreadedBenchmarkAlgorithm implements S
 		return poly.transform( AffineTransform2D.createScaling( new Point2D( xc, yc ), scale, scale ) );
 	}
 
-	private static Rectangle2D toBoundingBox( final Spot spot, final double scale )
+	/**
+	 * Writes the bounding box of the specified spot, as
+	 * <code>[ minX, maxX, minY, maxY ]</code>, in the specified array.
+	 */
+	private static void toBoundingBox( final Spot spot, final double scale, final double[] box )
 	{
 		final double xc = spot.getDoublePosition( 0 );
 		final double yc = spot.getDoublePosition( 1 );
@@ -322,7 +300,10 @@ public class OverlapTracker extends MultiThreadedBenchmarkAlgorithm implements S
 		if ( roi == null )
 		{
 			final double radius = spot.getFeature( Spot.RADIUS ).doubleValue() * scale;
-			return new Rectangle2D( xc - radius, yc - radius, 2 * radius, 2 * radius );
+			box[ 0 ] = xc - radius;
+			box[ 1 ] = xc + radius;
+			box[ 2 ] = yc - radius;
+			box[ 3 ] = yc + radius;
 		}
 		else
 		{
@@ -330,25 +311,205 @@ public class OverlapTracker extends MultiThreadedBenchmarkAlgorithm implements S
 			final double maxX = Arrays.stream( roi.x ).max().getAsDouble() * scale;
 			final double minY = Arrays.stream( roi.y ).min().getAsDouble() * scale;
 			final double maxY = Arrays.stream( roi.y ).max().getAsDouble() * scale;
-			return new Rectangle2D( xc + minX, yc + minY, maxX - minX, maxY - minY );
+			box[ 0 ] = xc + minX;
+			box[ 1 ] = xc + maxX;
+			box[ 2 ] = yc + minY;
+			box[ 3 ] = yc + maxY;
+		}
+	}
+
+	/**
+	 * The geometries of the spots of one frame, stored as flat arrays, with a
+	 * uniform grid over their bounding boxes.
+	 * <p>
+	 * With the {@link IoUCalculation#FAST} method, only the bounding boxes are
+	 * stored and the IoU is computed directly from them. With the
+	 * {@link IoUCalculation#PRECISE} method, the spot polygons are also
+	 * stored, and the exact intersection is only computed for spots whose
+	 * bounding boxes overlap.
+	 */
+	private static final class Geometries
+	{
+
+		private final Spot[] spots;
+
+		/**
+		 * The spot polygons. <code>null</code> for the
+		 * {@link IoUCalculation#FAST} method.
+		 */
+		private final Polygon2D[] polygons;
+
+		private final double[] minX;
+
+		private final double[] maxX;
+
+		private final double[] minY;
+
+		private final double[] maxY;
+
+		private final double[] areas;
+
+		/*
+		 * Grid over bounding boxes. The spots in cell c are
+		 * cellItems[cellStart[c]] to cellItems[cellStart[c+1]-1].
+		 */
+
+		private double x0;
+
+		private double y0;
+
+		private double cellSize;
+
+		private int nx;
+
+		private int ny;
+
+		private int[] cellStart;
+
+		private int[] cellItems;
+
+		private Geometries( final Iterable< Spot > iterable, final IoUCalculation method, final double scale )
+		{
+			final List< Spot > list = new ArrayList<>();
+			for ( final Spot spot : iterable )
+				list.add( spot );
+
+			final int n = list.size();
+			this.spots = list.toArray( new Spot[ n ] );
+			this.minX = new double[ n ];
+			this.maxX = new double[ n ];
+			this.minY = new double[ n ];
+			this.maxY = new double[ n ];
+			this.areas = new double[ n ];
+
+			switch ( method )
+			{
+			case FAST:
+			{
+				this.polygons = null;
+				final double[] box = new double[ 4 ];
+				for ( int i = 0; i < n; i++ )
+				{
+					toBoundingBox( spots[ i ], scale, box );
+					minX[ i ] = box[ 0 ];
+					maxX[ i ] = box[ 1 ];
+					minY[ i ] = box[ 2 ];
+					maxY[ i ] = box[ 3 ];
+					areas[ i ] = ( box[ 1 ] - box[ 0 ] ) * ( box[ 3 ] - box[ 2 ] );
+				}
+				break;
+			}
+
+			case PRECISE:
+			{
+				this.polygons = new Polygon2D[ n ];
+				for ( int i = 0; i < n; i++ )
+				{
+					final Polygon2D poly = toPolygon( spots[ i ], scale );
+					final Box2D box = poly.boundingBox();
+					polygons[ i ] = poly;
+					minX[ i ] = box.getMinX();
+					maxX[ i ] = box.getMaxX();
+					minY[ i ] = box.getMinY();
+					maxY[ i ] = box.getMaxY();
+					areas[ i ] = Math.abs( poly.area() );
+				}
+				break;
+			}
+
+			default:
+				throw new IllegalArgumentException( "Do not know how to compute IoU for method " + method );
+			}
+
+			if ( n > 0 )
+				buildGrid();
+		}
+
+		private void buildGrid()
+		{
+			final int n = spots.length;
+			x0 = Double.POSITIVE_INFINITY;
+			y0 = Double.POSITIVE_INFINITY;
+			double x1 = Double.NEGATIVE_INFINITY;
+			double y1 = Double.NEGATIVE_INFINITY;
+			double meanSize = 0.;
+			for ( int i = 0; i < n; i++ )
+			{
+				x0 = Math.min( x0, minX[ i ] );
+				y0 = Math.min( y0, minY[ i ] );
+				x1 = Math.max( x1, maxX[ i ] );
+				y1 = Math.max( y1, maxY[ i ] );
+				meanSize += Math.max( maxX[ i ] - minX[ i ], maxY[ i ] - minY[ i ] );
+			}
+			meanSize /= n;
+
+			/*
+			 * Cells about the size of a spot, but not so many that the grid
+			 * gets much bigger than the number of spots when they are sparse.
+			 */
+			final double minCellSize = Math.sqrt( ( x1 - x0 ) * ( y1 - y0 ) / ( 4. * n ) );
+			cellSize = Math.max( meanSize, minCellSize );
+			if ( !( cellSize > 0. ) || Double.isInfinite( cellSize ) )
+				cellSize = 1.;
+			nx = cellX( x1 ) + 1;
+			ny = cellY( y1 ) + 1;
+
+			// Count then fill.
+			cellStart = new int[ nx * ny + 1 ];
+			for ( int i = 0; i < n; i++ )
+				for ( int cy = cellY( minY[ i ] ); cy <= cellY( maxY[ i ] ); cy++ )
+					for ( int cx = cellX( minX[ i ] ); cx <= cellX( maxX[ i ] ); cx++ )
+						cellStart[ cy * nx + cx + 1 ]++;
+
+			for ( int c = 0; c < nx * ny; c++ )
+				cellStart[ c + 1 ] += cellStart[ c ];
+
+			cellItems = new int[ cellStart[ nx * ny ] ];
+			final int[] fill = Arrays.copyOf( cellStart, nx * ny );
+			for ( int i = 0; i < n; i++ )
+				for ( int cy = cellY( minY[ i ] ); cy <= cellY( maxY[ i ] ); cy++ )
+					for ( int cx = cellX( minX[ i ] ); cx <= cellX( maxX[ i ] ); cx++ )
+						cellItems[ fill[ cy * nx + cx ]++ ] = i;
+		}
+
+		private int cellX( final double x )
+		{
+			final int cx = ( int ) Math.floor( ( x - x0 ) / cellSize );
+			return Math.max( 0, nx > 0 ? Math.min( nx - 1, cx ) : cx );
+		}
+
+		private int cellY( final double y )
+		{
+			final int cy = ( int ) Math.floor( ( y - y0 ) / cellSize );
+			return Math.max( 0, ny > 0 ? Math.min( ny - 1, cy ) : cy );
+		}
+
+		private int size()
+		{
+			return spots.length;
+		}
+
+		private boolean isEmpty()
+		{
+			return spots.length == 0;
 		}
 	}
 
 	private static final class FindBestSourceTask implements Callable< IoULink >
 	{
 
-		private final Spot target;
+		private final Geometries targetGeometries;
 
-		private final Polygon2D targetPoly;
+		private final int t;
 
-		private final Map< Spot, Polygon2D > sourceGeometries;
+		private final Geometries sourceGeometries;
 
 		private final double minIoU;
 
-		public FindBestSourceTask( final Spot target, final Polygon2D targetPoly, final Map< Spot, Polygon2D > sourceGeometries, final double minIoU )
+		public FindBestSourceTask( final Geometries targetGeometries, final int t, final Geometries sourceGeometries, final double minIoU )
 		{
-			this.target = target;
-			this.targetPoly = targetPoly;
+			this.targetGeometries = targetGeometries;
+			this.t = t;
 			this.sourceGeometries = sourceGeometries;
 			this.minIoU = minIoU;
 		}
@@ -356,25 +517,66 @@ public class OverlapTracker extends MultiThreadedBenchmarkAlgorithm implements S
 		@Override
 		public IoULink call() throws Exception
 		{
-			final double targetArea = Math.abs( targetPoly.area() );
+			final Geometries sg = sourceGeometries;
+			final double tMinX = targetGeometries.minX[ t ];
+			final double tMaxX = targetGeometries.maxX[ t ];
+			final double tMinY = targetGeometries.minY[ t ];
+			final double tMaxY = targetGeometries.maxY[ t ];
+			final double targetArea = targetGeometries.areas[ t ];
+			final Polygon2D targetPoly = ( targetGeometries.polygons == null ) ? null : targetGeometries.polygons[ t ];
+
 			double maxIoU = minIoU;
 			Spot bestSpot = null;
-			for ( final Spot spot : sourceGeometries.keySet() )
+
+			// Only visit the grid cells the target box overlaps.
+			final int cx0 = sg.cellX( tMinX );
+			final int cx1 = sg.cellX( tMaxX );
+			final int cy0 = sg.cellY( tMinY );
+			final int cy1 = sg.cellY( tMaxY );
+			for ( int cy = cy0; cy <= cy1; cy++ )
 			{
-				final Polygon2D sourcePoly = sourceGeometries.get( spot );
-				final double intersection = Math.abs( Polygons2D.intersection( targetPoly, sourcePoly ).area() );
-				if ( intersection == 0. )
-					continue;
-
-				final double union = Math.abs( sourcePoly.area() ) + targetArea - intersection;
-				final double iou = intersection / union;
-				if ( iou > maxIoU )
+				for ( int cx = cx0; cx <= cx1; cx++ )
 				{
-					maxIoU = iou;
-					bestSpot = spot;
+					final int c = cy * sg.nx + cx;
+					for ( int k = sg.cellStart[ c ]; k < sg.cellStart[ c + 1 ]; k++ )
+					{
+						final int s = sg.cellItems[ k ];
+
+						// Bounding-box test.
+						final double iMinX = Math.max( tMinX, sg.minX[ s ] );
+						final double iMaxX = Math.min( tMaxX, sg.maxX[ s ] );
+						if ( iMaxX <= iMinX )
+							continue;
+						final double iMinY = Math.max( tMinY, sg.minY[ s ] );
+						final double iMaxY = Math.min( tMaxY, sg.maxY[ s ] );
+						if ( iMaxY <= iMinY )
+							continue;
+
+						/*
+						 * A source spanning several cells is met several times.
+						 * Only process it in the cell that contains the corner
+						 * of the box intersection.
+						 */
+						if ( sg.cellX( iMinX ) != cx || sg.cellY( iMinY ) != cy )
+							continue;
+
+						final double intersection = ( targetPoly == null )
+								? ( iMaxX - iMinX ) * ( iMaxY - iMinY )
+								: Math.abs( Polygons2D.intersection( targetPoly, sg.polygons[ s ] ).area() );
+						if ( intersection == 0. )
+							continue;
+
+						final double union = sg.areas[ s ] + targetArea - intersection;
+						final double iou = intersection / union;
+						if ( iou > maxIoU )
+						{
+							maxIoU = iou;
+							bestSpot = sg.spots[ s ];
+						}
+					}
 				}
 			}
-			return new IoULink( bestSpot, target, maxIoU );
+			return new IoULink( bestSpot, targetGeometries.spots[ t ], maxIoU );
 		}
 	}
 
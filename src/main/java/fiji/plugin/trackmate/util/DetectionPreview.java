@@ -21,33 +21,102 @@
  */
 package fiji.plugin.trackmate.util;
 
+import java.awt.Rectangle;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Objects;
 import java.util.function.DoubleConsumer;
 import java.util.function.Supplier;
 
 import javax.swing.JFormattedTextField;
+import javax.swing.event.AncestorEvent;
+import javax.swing.event.AncestorListener;
 
 import fiji.plugin.trackmate.Logger;
 import fiji.plugin.trackmate.Model;
 import fiji.plugin.trackmate.Settings;
 import fiji.plugin.trackmate.Spot;
 import fiji.plugin.trackmate.SpotCollection;
+import fiji.plugin.trackmate.SpotRoi;
 import fiji.plugin.trackmate.TrackMate;
 import fiji.plugin.trackmate.detection.DetectorKeys;
 import fiji.plugin.trackmate.detection.SpotDetectorFactoryBase;
 import fiji.plugin.trackmate.features.FeatureFilter;
 import fiji.plugin.trackmate.features.FeatureUtils;
 import fiji.plugin.trackmate.gui.displaysettings.DisplaySettings.TrackMateObject;
+import ij.ImageListener;
+import ij.ImagePlus;
+import ij.gui.Roi;
+import ij.process.FloatPolygon;
+import ij.process.ImageProcessor;
 import net.imglib2.util.Pair;
 import net.imglib2.util.ValuePair;
 
 public class DetectionPreview
 {
 
+	/**
+	 * How many unthresholded detection results to keep.
+	 */
+	private static final int CACHE_SIZE = 8;
+
 	private final DetectionPreviewPanel panel;
 
+	/**
+	 * The unthresholded results of the last previews, keyed by frame, image,
+	 * ROI and detector settings minus the threshold. Changing only the
+	 * threshold re-filters a cached result instead of rerunning detection.
+	 */
+	private final Map< PreviewKey, Model > cache = new LinkedHashMap< PreviewKey, Model >( 16, 0.75f, true )
+	{
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry( final Map.Entry< PreviewKey, Model > eldest )
+		{
+			return size() > CACHE_SIZE;
+		}
+	};
+
+	/**
+	 * Drops the cached results of an image when it is closed, or when its
+	 * pixels may have been edited in place. ImageJ flags such edits with
+	 * {@link ImagePlus#changes}; plain redraws, such as the ones the preview
+	 * triggers itself, leave it untouched and keep the cache.
+	 */
+	private final ImageListener imageListener = new ImageListener()
+	{
+
+		@Override
+		public void imageUpdated( final ImagePlus imp )
+		{
+			if ( imp.changes )
+				forget( imp );
+		}
+
+		@Override
+		public void imageOpened( final ImagePlus imp )
+		{}
+
+		@Override
+		public void imageClosed( final ImagePlus imp )
+		{
+			forget( imp );
+		}
+
+		private void forget( final ImagePlus imp )
+		{
+			synchronized ( cache )
+			{
+				cache.keySet().removeIf( key -> key.isFor( imp ) );
+			}
+		}
+	};
+
 	protected DetectionPreview(
 			final Model model,
 			final Settings settings,
@@ -58,7 +127,24 @@ public class DetectionPreview
 			final String axisLabel,
 			final String thresholdKey )
 	{
-		this.panel = new DetectionPreviewPanel( thresholdUpdater, axisLabel );
+		final DoubleConsumer updater = ( thresholdUpdater == null ) ? null : threshold -> {
+			thresholdUpdater.accept( threshold );
+			// Instant preview if we already have the detection results.
+			if ( thresholdKey == null )
+				return;
+			final Map< String, Object > detectorSettings = new HashMap<>( detectionSettingsSupplier.get() );
+			if ( !detectorSettings.containsKey( thresholdKey ) )
+				return;
+			detectorSettings.put( thresholdKey, Double.valueOf( threshold ) );
+			final int frame = currentFrameSupplier.get();
+			if ( !isCached( settings, frame, detectorFactory, detectorSettings, thresholdKey ) )
+				return;
+			// Cheap: re-filtering cached spots, can be done right away.
+			final Pair< Model, Double > out = runPreviewDetection( settings, frame, detectorFactory, detectorSettings, thresholdKey );
+			if ( out != null )
+				updateModelAndHistogram( model, out.getA(), frame, out.getB().doubleValue() );
+		};
+		this.panel = new DetectionPreviewPanel( updater, axisLabel );
 		panel.btnPreview.addActionListener( l -> preview(
 				model,
 				settings,
@@ -66,6 +152,30 @@ public class DetectionPreview
 				detectionSettingsSupplier.get(),
 				currentFrameSupplier.get(),
 				thresholdKey ) );
+
+		/*
+		 * Listen to images only while the panel is displayed, and forget the
+		 * results when it goes away.
+		 */
+		panel.addAncestorListener( new AncestorListener()
+		{
+			@Override
+			public void ancestorAdded( final AncestorEvent event )
+			{
+				ImagePlus.addImageListener( imageListener );
+			}
+
+			@Override
+			public void ancestorRemoved( final AncestorEvent event )
+			{
+				ImagePlus.removeImageListener( imageListener );
+				clearCache();
+			}
+
+			@Override
+			public void ancestorMoved( final AncestorEvent event )
+			{}
+		} );
 	}
 
 	public DetectionPreviewPanel getPanel()
@@ -78,6 +188,32 @@ public class DetectionPreview
 		return panel.logger;
 	}
 
+	/**
+	 * Discards the cached detection results, for instance if the image content
+	 * changed. The next preview will rerun the detection.
+	 */
+	public void clearCache()
+	{
+		synchronized ( cache )
+		{
+			cache.clear();
+		}
+	}
+
+	private boolean isCached(
+			final Settings settings,
+			final int frame,
+			final SpotDetectorFactoryBase< ? > detectorFactory,
+			final Map< String, Object > detectorSettings,
+			final String thresholdKey )
+	{
+		final PreviewKey key = new PreviewKey( settings.imp, frame, detectorFactory, detectorSettings, thresholdKey );
+		synchronized ( cache )
+		{
+			return cache.containsKey( key );
+		}
+	}
+
 	protected void preview(
 			final Model model,
 			final Settings settings,
@@ -122,6 +258,10 @@ public class DetectionPreview
 
 	/**
 	 * Runs the preview with the specified parameters.
+	 * <p>
+	 * If the detection was already run on this frame with the same settings
+	 * except for the threshold, the cached results are re-filtered with the
+	 * new threshold instead.
 	 * 
 	 * @param settings
 	 *            the settings object to use as preview. Will be used for its
@@ -174,34 +314,63 @@ public class DetectionPreview
 			threshold = Double.NaN;
 		}
 
-		// Execute preview.
-		final TrackMate trackmate = new TrackMate( lSettings );
-		trackmate.getModel().setLogger( panel.logger );
+		final PreviewKey key = new PreviewKey( settings.imp, frame, detectorFactory, detectorSettings, thresholdKey );
+		Model out;
+		synchronized ( cache )
+		{
+			out = cache.get( key );
+		}
 
-		final boolean detectionOk = trackmate.execDetection();
-		if ( !detectionOk )
+		if ( out == null )
 		{
-			panel.logger.error( trackmate.getErrorMessage() );
-			return null;
+			// Execute preview.
+			final TrackMate trackmate = new TrackMate( lSettings );
+			trackmate.getModel().setLogger( panel.logger );
+
+			final boolean detectionOk = trackmate.execDetection();
+			if ( !detectionOk )
+			{
+				panel.logger.error( trackmate.getErrorMessage() );
+				return null;
+			}
+			out = trackmate.getModel();
+			synchronized ( cache )
+			{
+				cache.put( key, out );
+			}
 		}
 
-		if ( hasThreshold )
-			// Filter by the initial threshold value.
-			trackmate.getModel().getSpots().filter( new FeatureFilter( Spot.QUALITY, threshold, true ) );
-		else
-			// Make them all visible.
-			trackmate.getModel().getSpots().setVisible( true );
+		synchronized ( out )
+		{
+			if ( hasThreshold )
+				// Filter by the initial threshold value.
+				out.getSpots().filter( new FeatureFilter( Spot.QUALITY, threshold, true ) );
+			else
+				// Make them all visible.
+				out.getSpots().setVisible( true );
+		}
 
-		return new ValuePair< Model, Double >( trackmate.getModel(), Double.valueOf( threshold ) );
+		return new ValuePair< Model, Double >( out, Double.valueOf( threshold ) );
 	}
 
 	protected void updateModelAndHistogram( final Model targetModel, final Model sourceModel, final int frame, final double threshold )
 	{
-		final int nSpots = sourceModel.getSpots().getNSpots( frame, true );
-		final ArrayList< Spot > spotsToCopy = new ArrayList<>( nSpots );
-		final Iterable< Spot > it = sourceModel.getSpots().iterable( frame, true );
-		for ( final Spot spot : it )
-			spotsToCopy.add( spot );
+		/*
+		 * The source model may be a cached result that later previews filter
+		 * again, so the target model gets copies of its spots.
+		 */
+		final ArrayList< Spot > spotsToCopy;
+		final double[] values;
+		synchronized ( sourceModel )
+		{
+			final int nSpots = sourceModel.getSpots().getNSpots( frame, true );
+			spotsToCopy = new ArrayList<>( nSpots );
+			final Iterable< Spot > it = sourceModel.getSpots().iterable( frame, true );
+			for ( final Spot spot : it )
+				spotsToCopy.add( copy( spot ) );
+			values = FeatureUtils.collectFeatureValues(
+					Spot.QUALITY, TrackMateObject.SPOTS, sourceModel, false );
+		}
 
 		if ( targetModel != null )
 		{
@@ -217,10 +386,99 @@ public class DetectionPreview
 
 		// Update histogram if any.
 		if ( panel.chart != null )
-		{
-			final double[] values = FeatureUtils.collectFeatureValues(
-					Spot.QUALITY, TrackMateObject.SPOTS, sourceModel, false );
 			panel.chart.displayHistogram( values, threshold );
+	}
+
+	private static Spot copy( final Spot spot )
+	{
+		final Spot copy = new Spot( spot );
+		copy.getFeatures().putAll( spot.getFeatures() );
+		final SpotRoi roi = spot.getRoi();
+		copy.setRoi( roi == null ? null : roi.copy() );
+		return copy;
+	}
+
+	/**
+	 * Identifies a detection result regardless of the threshold value. The
+	 * image is only weakly referenced, so that the cache does not keep closed
+	 * images alive.
+	 */
+	private static final class PreviewKey
+	{
+
+		private final WeakReference< ImagePlus > imp;
+
+		private final int impHash;
+
+		private final Rectangle roiBounds;
+
+		private final int roiType;
+
+		/** The ROI outline, in image coordinates. */
+		private final float[] roiX, roiY;
+
+		/** The ROI mask within its bounds, or <code>null</code>. */
+		private final Object roiMask;
+
+		private final int frame;
+
+		private final String detectorKey;
+
+		private final Map< String, Object > detectorSettings;
+
+		private PreviewKey(
+				final ImagePlus imp,
+				final int frame,
+				final SpotDetectorFactoryBase< ? > detectorFactory,
+				final Map< String, Object > detectorSettings,
+				final String thresholdKey )
+		{
+			this.imp = new WeakReference<>( imp );
+			this.impHash = System.identityHashCode( imp );
+			final Roi roi = imp.getRoi();
+			this.roiBounds = ( roi == null ) ? null : roi.getBounds();
+			this.roiType = ( roi == null ) ? -1 : roi.getType();
+			final FloatPolygon polygon = ( roi == null ) ? null : roi.getFloatPolygon();
+			this.roiX = ( polygon == null ) ? null : Arrays.copyOf( polygon.xpoints, polygon.npoints );
+			this.roiY = ( polygon == null ) ? null : Arrays.copyOf( polygon.ypoints, polygon.npoints );
+			final ImageProcessor mask = ( roi == null ) ? null : roi.getMask();
+			this.roiMask = ( mask == null ) ? null : mask.getPixels();
+			this.frame = frame;
+			this.detectorKey = detectorFactory.getKey();
+			this.detectorSettings = new HashMap<>( detectorSettings );
+			if ( thresholdKey != null )
+				this.detectorSettings.remove( thresholdKey );
+		}
+
+		@Override
+		public boolean equals( final Object obj )
+		{
+			if ( !( obj instanceof PreviewKey ) )
+				return false;
+			final PreviewKey o = ( PreviewKey ) obj;
+			final ImagePlus referent = imp.get();
+			return referent != null
+					&& referent == o.imp.get()
+					&& frame == o.frame
+					&& roiType == o.roiType
+					&& Objects.equals( roiBounds, o.roiBounds )
+					&& Arrays.equals( roiX, o.roiX )
+					&& Arrays.equals( roiY, o.roiY )
+					&& Objects.deepEquals( roiMask, o.roiMask )
+					&& Objects.equals( detectorKey, o.detectorKey )
+					&& detectorSettings.equals( o.detectorSettings );
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return Objects.hash( impHash, frame, roiType, roiBounds, Arrays.hashCode( roiX ), Arrays.hashCode( roiY ), detectorKey, detectorSettings );
+		}
+
+		private boolean isFor( final ImagePlus other )
+		{
+			final ImagePlus referent = imp.get();
+			return referent == null || referent == other;
 		}
 	}
 
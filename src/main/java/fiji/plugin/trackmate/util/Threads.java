@@ -26,11 +26,22 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 
+import org.scijava.Cancelable;
+
+/**
+ * Entry point for the threads and executors used by TrackMate.
+ * <p>
+ * Compute executors are views on the pool shared by the whole application,
+ * managed by {@link TrackMateExecutor}: shutting them down does not stop
+ * threads, and their tasks count against the global parallelism. Executors
+ * for tasks that wait rather than compute (UI updates, I/O, periodic tasks)
+ * have their own named threads.
+ */
 public final class Threads {
 
 	public static void run( final Runnable r )
 	{
-		new Thread( r ).start();
+		new Thread( r, "TrackMate-" + callerStage() ).start();
 	}
 
 	public static void run( final String name, final Runnable r )
@@ -38,22 +49,64 @@ public final class Threads {
 		new Thread( r, name ).start();
 	}
 
+	/**
+	 * Returns an executor that runs at most the specified number of tasks at
+	 * the same time on the shared TrackMate pool. Metrics are reported under
+	 * the name of the calling class.
+	 *
+	 * @param nThreads
+	 *            the maximal number of tasks running at the same time.
+	 * @return a new executor.
+	 */
 	public static ExecutorService newFixedThreadPool( final int nThreads )
 	{
-		return Executors.newFixedThreadPool( nThreads );
+		return TrackMateExecutor.newStage( callerStage(), nThreads, null );
+	}
+
+	/**
+	 * Returns an executor that runs at most the specified number of tasks at
+	 * the same time on the shared TrackMate pool. Tasks that have not started
+	 * when the specified {@link Cancelable} is canceled are canceled.
+	 *
+	 * @param stage
+	 *            the stage name, used for metrics.
+	 * @param nThreads
+	 *            the maximal number of tasks running at the same time.
+	 * @param cancelable
+	 *            the object whose cancellation cancels the pending tasks. Can
+	 *            be <code>null</code>.
+	 * @return a new executor.
+	 */
+	public static ExecutorService newFixedThreadPool( final String stage, final int nThreads, final Cancelable cancelable )
+	{
+		return TrackMateExecutor.newStage( stage, nThreads, cancelable );
 	}
+
 	public static ExecutorService newCachedThreadPool()
 	{
-		return Executors.newCachedThreadPool();
+		return Executors.newCachedThreadPool( TrackMateExecutor.threadFactory( callerStage() ) );
 	}
 
 	public static ExecutorService newSingleThreadExecutor()
 	{
-		return Executors.newSingleThreadExecutor();
+		return Executors.newSingleThreadExecutor( TrackMateExecutor.threadFactory( callerStage() ) );
 	}
 
 	public static ScheduledExecutorService newSingleThreadScheduledExecutor()
 	{
-		return Executors.newSingleThreadScheduledExecutor();
+		return Executors.newSingleThreadScheduledExecutor( TrackMateExecutor.threadFactory( callerStage() ) );
+	}
+
+	/**
+	 * Returns the simple name of the class that called the public method of
+	 * this class.
+	 */
+	private static String callerStage()
+	{
+		final StackTraceElement[] stack = new Throwable().getStackTrace();
+		final String className = ( stack.length > 2 ) ? stack[ 2 ].getClassName() : "Threads";
+		final String simpleName = className.substring( className.lastIndexOf( '.' ) + 1 );
+		final int inner = simpleName.indexOf( '$' );
+		return ( inner > 0 ) ? simpleName.substring( 0, inner ) : simpleName;
 	}
 }
@@ -0,0 +1,639 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2010 - 2023 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinPool.ForkJoinWorkerThreadFactory;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.scijava.Cancelable;
+
+/**
+ * The execution service shared by all the parallel stages of TrackMate.
+ * <p>
+ * All the compute tasks run on a single work-stealing {@link ForkJoinPool},
+ * whose parallelism is the global thread budget of TrackMate. Stages do not
+ * create threads: they get a lightweight {@link ExecutorService} view on this
+ * pool with {@link #newStage(String, int, Cancelable)}, that caps how many of
+ * their tasks run at the same time. Shutting down a view does not affect the
+ * pool.
+ * <p>
+ * Stages are often nested (a detector running several threads inside a frame
+ * processed in parallel with other frames). Waiting on the result of a task
+ * from a pool thread is done through {@link ForkJoinPool#managedBlock}, so
+ * that the pool compensates for the blocked thread instead of deadlocking, and
+ * the total number of active threads stays close to the budget instead of
+ * multiplying with the nesting depth.
+ * <p>
+ * The parallelism defaults to the number of available processors, and can be
+ * set with the <code>trackmate.parallelism</code> system property or with
+ * {@link #setParallelism(int)}. Utilization metrics are collected per stage
+ * name and can be read with {@link #getMetrics()}.
+ *
+ * @author Jean-Yves Tinevez
+ */
+public final class TrackMateExecutor
+{
+
+	/**
+	 * System property that sets the global parallelism.
+	 */
+	public static final String PARALLELISM_PROPERTY = "trackmate.parallelism";
+
+	private static final AtomicInteger POOL_COUNT = new AtomicInteger();
+
+	private static final Map< String, StageMetrics > METRICS = new ConcurrentHashMap<>();
+
+	private static volatile ForkJoinPool pool = newPool( defaultParallelism() );
+
+	private TrackMateExecutor()
+	{}
+
+	/**
+	 * Returns the shared pool.
+	 *
+	 * @return the shared pool.
+	 */
+	public static ForkJoinPool pool()
+	{
+		return pool;
+	}
+
+	/**
+	 * Returns the global parallelism, that is the maximal number of threads
+	 * running TrackMate tasks at the same time, blocked threads excluded.
+	 *
+	 * @return the parallelism.
+	 */
+	public static int getParallelism()
+	{
+		return pool.getParallelism();
+	}
+
+	/**
+	 * Sets the global parallelism. The tasks already submitted complete on the
+	 * previous pool.
+	 *
+	 * @param parallelism
+	 *            the new parallelism, strictly positive.
+	 */
+	public static synchronized void setParallelism( final int parallelism )
+	{
+		if ( parallelism < 1 )
+			throw new IllegalArgumentException( "Parallelism must be strictly positive, was " + parallelism + "." );
+		if ( parallelism == pool.getParallelism() )
+			return;
+
+		final ForkJoinPool old = pool;
+		pool = newPool( parallelism );
+		old.shutdown();
+	}
+
+	/**
+	 * Returns a new view on the shared pool for the specified stage.
+	 *
+	 * @param stage
+	 *            the stage name, used for metrics.
+	 * @param maxConcurrency
+	 *            the maximal number of tasks of this view running at the same
+	 *            time.
+	 * @param cancelable
+	 *            if not <code>null</code>, the tasks of this view that have
+	 *            not started when this object is canceled are canceled too.
+	 * @return a new {@link ExecutorService}, that can be canceled.
+	 */
+	public static StageExecutorService newStage( final String stage, final int maxConcurrency, final Cancelable cancelable )
+	{
+		return new StageExecutorService( stage, Math.max( 1, maxConcurrency ), cancelable, metrics( stage ) );
+	}
+
+	/**
+	 * Returns a {@link ThreadFactory} for threads that do not compute but wait
+	 * (I/O, user interface updates, periodic tasks). They are named after the
+	 * stage.
+	 *
+	 * @param stage
+	 *            the stage name.
+	 * @return a new {@link ThreadFactory}.
+	 */
+	public static ThreadFactory threadFactory( final String stage )
+	{
+		final AtomicInteger count = new AtomicInteger();
+		return r -> {
+			return new Thread( r, "TrackMate-" + stage + "-" + count.incrementAndGet() );
+		};
+	}
+
+	/**
+	 * Returns a snapshot of the metrics of all the stages that ran since the
+	 * last call to {@link #resetMetrics()}, sorted by stage name.
+	 *
+	 * @return a new map of stage name vs metrics.
+	 */
+	public static Map< String, StageMetrics > getMetrics()
+	{
+		final Map< String, StageMetrics > snapshot = new TreeMap<>();
+		METRICS.forEach( ( stage, m ) -> snapshot.put( stage, m.copy() ) );
+		return snapshot;
+	}
+
+	/**
+	 * Discards all the stage metrics.
+	 */
+	public static void resetMetrics()
+	{
+		METRICS.clear();
+	}
+
+	private static StageMetrics metrics( final String stage )
+	{
+		return METRICS.computeIfAbsent( stage, StageMetrics::new );
+	}
+
+	private static int defaultParallelism()
+	{
+		final int processors = Runtime.getRuntime().availableProcessors();
+		final String property = System.getProperty( PARALLELISM_PROPERTY );
+		if ( null == property )
+			return processors;
+		try
+		{
+			return Math.max( 1, Integer.parseInt( property.trim() ) );
+		}
+		catch ( final NumberFormatException e )
+		{
+			return processors;
+		}
+	}
+
+	private static ForkJoinPool newPool( final int parallelism )
+	{
+		final int poolIndex = POOL_COUNT.incrementAndGet();
+		final AtomicInteger count = new AtomicInteger();
+		// Workers must see the plugin classes, not only the system ones.
+		final ClassLoader creatorLoader = Thread.currentThread().getContextClassLoader();
+		final ClassLoader loader = ( creatorLoader == null ) ? TrackMateExecutor.class.getClassLoader() : creatorLoader;
+		final ForkJoinWorkerThreadFactory factory = p -> {
+			final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread( p );
+			thread.setName( "TrackMate-worker-" + poolIndex + "-" + count.incrementAndGet() );
+			thread.setDaemon( true );
+			thread.setContextClassLoader( loader );
+			return thread;
+		};
+		return new ForkJoinPool( parallelism, factory, null, true );
+	}
+
+	/**
+	 * Utilization metrics of a stage.
+	 */
+	public static final class StageMetrics
+	{
+
+		private final String stage;
+
+		private final AtomicLong submitted = new AtomicLong();
+
+		private final AtomicLong completed = new AtomicLong();
+
+		private final AtomicLong canceled = new AtomicLong();
+
+		private final AtomicLong busyNanos = new AtomicLong();
+
+		private final AtomicLong firstStart = new AtomicLong( Long.MAX_VALUE );
+
+		private final AtomicLong lastEnd = new AtomicLong( Long.MIN_VALUE );
+
+		private StageMetrics( final String stage )
+		{
+			this.stage = stage;
+		}
+
+		private StageMetrics copy()
+		{
+			final StageMetrics copy = new StageMetrics( stage );
+			copy.submitted.set( submitted.get() );
+			copy.completed.set( completed.get() );
+			copy.canceled.set( canceled.get() );
+			copy.busyNanos.set( busyNanos.get() );
+			copy.firstStart.set( firstStart.get() );
+			copy.lastEnd.set( lastEnd.get() );
+			return copy;
+		}
+
+		private void started( final long t )
+		{
+			firstStart.accumulateAndGet( t, Math::min );
+		}
+
+		private void ended( final long start, final long end )
+		{
+			busyNanos.addAndGet( end - start );
+			lastEnd.accumulateAndGet( end, Math::max );
+			completed.incrementAndGet();
+		}
+
+		public String getStage()
+		{
+			return stage;
+		}
+
+		/**
+		 * Returns the number of tasks submitted to this stage.
+		 */
+		public long getSubmitted()
+		{
+			return submitted.get();
+		}
+
+		/**
+		 * Returns the number of tasks of this stage that ran.
+		 */
+		public long getCompleted()
+		{
+			return completed.get();
+		}
+
+		/**
+		 * Returns the number of tasks of this stage canceled before running.
+		 */
+		public long getCanceled()
+		{
+			return canceled.get();
+		}
+
+		/**
+		 * Returns the cumulated time spent running the tasks of this stage,
+		 * in milliseconds.
+		 */
+		public double getBusyTime()
+		{
+			return busyNanos.get() / 1e6;
+		}
+
+		/**
+		 * Returns the time between the start of the first task and the end of
+		 * the last one, in milliseconds.
+		 */
+		public double getWallTime()
+		{
+			final long start = firstStart.get();
+			final long end = lastEnd.get();
+			return ( end < start ) ? 0. : ( end - start ) / 1e6;
+		}
+
+		/**
+		 * Returns the average number of threads busy with this stage while it
+		 * ran, divided by the global parallelism. Stages that ran several
+		 * times are averaged over their whole span. Tasks waiting on nested
+		 * stages count as busy, so this can exceed 1.
+		 */
+		public double getUtilization()
+		{
+			final double wall = getWallTime();
+			if ( wall <= 0. )
+				return 0.;
+			return getBusyTime() / wall / getParallelism();
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format( "%s: %d tasks, %d canceled, busy %.1f ms, wall %.1f ms, utilization %.0f%%",
+					stage, getCompleted(), getCanceled(), getBusyTime(), getWallTime(), 100. * getUtilization() );
+		}
+	}
+
+	/**
+	 * A view on the shared pool that runs at most a fixed number of tasks at
+	 * the same time.
+	 */
+	public static final class StageExecutorService extends AbstractExecutorService implements Cancelable
+	{
+
+		private final String stage;
+
+		private final int maxConcurrency;
+
+		private final Cancelable parent;
+
+		private final StageMetrics metrics;
+
+		private final ConcurrentLinkedQueue< Runnable > pending = new ConcurrentLinkedQueue<>();
+
+		private final AtomicInteger running = new AtomicInteger();
+
+		private volatile boolean isShutdown;
+
+		private volatile String cancelReason;
+
+		private StageExecutorService( final String stage, final int maxConcurrency, final Cancelable parent, final StageMetrics metrics )
+		{
+			this.stage = stage;
+			this.maxConcurrency = maxConcurrency;
+			this.parent = parent;
+			this.metrics = metrics;
+		}
+
+		public String getStage()
+		{
+			return stage;
+		}
+
+		@Override
+		public void execute( final Runnable command )
+		{
+			if ( isShutdown )
+				throw new RejectedExecutionException( "Stage " + stage + " is shut down." );
+			metrics.submitted.incrementAndGet();
+			pending.add( command );
+			dispatch();
+		}
+
+		private void dispatch()
+		{
+			while ( !pending.isEmpty() )
+			{
+				final int r = running.get();
+				if ( r >= maxConcurrency )
+					return;
+				if ( !running.compareAndSet( r, r + 1 ) )
+					continue;
+
+				final Runnable command = pending.poll();
+				if ( null == command )
+				{
+					finished();
+					continue;
+				}
+				schedule( () -> run( command ) );
+			}
+		}
+
+		private void schedule( final Runnable task )
+		{
+			while ( true )
+			{
+				try
+				{
+					pool.execute( task );
+					return;
+				}
+				catch ( final RejectedExecutionException e )
+				{
+					// The pool was replaced by setParallelism(); retry.
+					Thread.yield();
+				}
+			}
+		}
+
+		private void run( final Runnable command )
+		{
+			try
+			{
+				if ( isCanceled() )
+				{
+					metrics.canceled.incrementAndGet();
+					if ( command instanceof RunnableFuture )
+						( ( RunnableFuture< ? > ) command ).cancel( false );
+					return;
+				}
+
+				final long start = System.nanoTime();
+				metrics.started( start );
+				try
+				{
+					command.run();
+				}
+				finally
+				{
+					metrics.ended( start, System.nanoTime() );
+				}
+			}
+			finally
+			{
+				finished();
+				dispatch();
+			}
+		}
+
+		private void finished()
+		{
+			if ( running.decrementAndGet() == 0 && isShutdown && pending.isEmpty() )
+			{
+				synchronized ( this )
+				{
+					notifyAll();
+				}
+			}
+		}
+
+		@Override
+		protected < T > RunnableFuture< T > newTaskFor( final Callable< T > callable )
+		{
+			return new ManagedFutureTask<>( callable );
+		}
+
+		@Override
+		protected < T > RunnableFuture< T > newTaskFor( final Runnable runnable, final T value )
+		{
+			return new ManagedFutureTask<>( Executors.callable( runnable, value ) );
+		}
+
+		@Override
+		public void shutdown()
+		{
+			isShutdown = true;
+			finished0();
+		}
+
+		@Override
+		public List< Runnable > shutdownNow()
+		{
+			isShutdown = true;
+			final List< Runnable > dropped = new ArrayList<>();
+			Runnable command;
+			while ( null != ( command = pending.poll() ) )
+				dropped.add( command );
+			finished0();
+			return dropped;
+		}
+
+		private void finished0()
+		{
+			if ( isTerminated() )
+			{
+				synchronized ( this )
+				{
+					notifyAll();
+				}
+			}
+		}
+
+		@Override
+		public boolean isShutdown()
+		{
+			return isShutdown;
+		}
+
+		@Override
+		public boolean isTerminated()
+		{
+			return isShutdown && running.get() == 0 && pending.isEmpty();
+		}
+
+		@Override
+		public synchronized boolean awaitTermination( final long timeout, final TimeUnit unit ) throws InterruptedException
+		{
+			final long deadline = System.nanoTime() + unit.toNanos( timeout );
+			while ( !isTerminated() )
+			{
+				final long remaining = deadline - System.nanoTime();
+				if ( remaining <= 0 )
+					return false;
+				TimeUnit.NANOSECONDS.timedWait( this, remaining );
+			}
+			return true;
+		}
+
+		/**
+		 * Cancels the tasks of this view that have not started yet. Tasks
+		 * already running are not interrupted.
+		 */
+		@Override
+		public void cancel( final String reason )
+		{
+			cancelReason = ( null == reason ) ? "" : reason;
+			dispatch();
+		}
+
+		@Override
+		public boolean isCanceled()
+		{
+			return null != cancelReason || ( null != parent && parent.isCanceled() );
+		}
+
+		@Override
+		public String getCancelReason()
+		{
+			if ( null != cancelReason )
+				return cancelReason;
+			return ( null == parent ) ? null : parent.getCancelReason();
+		}
+	}
+
+	/**
+	 * A {@link FutureTask} that, when waited on from a pool thread, lets the
+	 * pool compensate for the blocked thread.
+	 */
+	private static final class ManagedFutureTask< T > extends FutureTask< T >
+	{
+
+		private ManagedFutureTask( final Callable< T > callable )
+		{
+			super( callable );
+		}
+
+		@Override
+		public T get() throws InterruptedException, ExecutionException
+		{
+			if ( !isDone() && Thread.currentThread() instanceof ForkJoinWorkerThread )
+			{
+				ForkJoinPool.managedBlock( new ForkJoinPool.ManagedBlocker()
+				{
+
+					@Override
+					public boolean block() throws InterruptedException
+					{
+						try
+						{
+							ManagedFutureTask.super.get();
+						}
+						catch ( final ExecutionException e )
+						{
+							// Reported by the get() below.
+						}
+						return true;
+					}
+
+					@Override
+					public boolean isReleasable()
+					{
+						return isDone();
+					}
+				} );
+			}
+			return super.get();
+		}
+
+		@Override
+		public T get( final long timeout, final TimeUnit unit ) throws InterruptedException, ExecutionException, TimeoutException
+		{
+			final long deadline = System.nanoTime() + unit.toNanos( timeout );
+			if ( !isDone() && Thread.currentThread() instanceof ForkJoinWorkerThread )
+			{
+				ForkJoinPool.managedBlock( new ForkJoinPool.ManagedBlocker()
+				{
+
+					@Override
+					public boolean block() throws InterruptedException
+					{
+						try
+						{
+							ManagedFutureTask.super.get( deadline - System.nanoTime(), TimeUnit.NANOSECONDS );
+						}
+						catch ( final ExecutionException | TimeoutException e )
+						{
+							// Reported by the get() below.
+						}
+						return true;
+					}
+
+					@Override
+					public boolean isReleasable()
+					{
+						return isDone() || deadline - System.nanoTime() <= 0;
+					}
+				} );
+			}
+			return super.get( Math.max( 0, deadline - System.nanoTime() ), TimeUnit.NANOSECONDS );
+		}
+	}
+}
@@ -74,6 +74,6 @@ public class PerEdgeFeatureColorGenerator implements TrackColorGenerator
 			return undefinedValueColor;
 
 		final double val = feat.doubleValue();
-		return colormap.getPaint( ( val - min ) / ( max - min ) );
+		return colormap.getLUTPaint( ( val - min ) / ( max - min ) );
 	}
 }
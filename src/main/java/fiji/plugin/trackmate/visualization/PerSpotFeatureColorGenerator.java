@@ -77,6 +77,6 @@ public class PerSpotFeatureColorGenerator implements TrackColorGenerator
 			return undefinedValueColor;
 
 		final double val = feat.doubleValue();
-		return colormap.getPaint( ( val - min ) / ( max - min ) );
+		return colormap.getLUTPaint( ( val - min ) / ( max - min ) );
 	}
 }
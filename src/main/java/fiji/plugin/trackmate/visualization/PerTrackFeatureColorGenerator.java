@@ -96,7 +96,7 @@ public class PerTrackFeatureColorGenerator implements TrackColorGenerator
 				else if ( val.isNaN() )
 					col = undefinedValueColor;
 				else
-					col = cmap.getPaint( ( val.doubleValue() - min ) / ( max - min ) );
+					col = cmap.getLUTPaint( ( val.doubleValue() - min ) / ( max - min ) );
 
 				colorIndex.put( trackID, col );
 			}
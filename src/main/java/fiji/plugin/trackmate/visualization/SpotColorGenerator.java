@@ -66,6 +66,6 @@ public class SpotColorGenerator implements FeatureColorGenerator< Spot >
 		if ( feat.isNaN() )
 			return undefinedValueColor;
 
-		return colormap.getPaint( ( feat.doubleValue() - min ) / ( max - min ) );
+		return colormap.getLUTPaint( ( feat.doubleValue() - min ) / ( max - min ) );
 	}
 }
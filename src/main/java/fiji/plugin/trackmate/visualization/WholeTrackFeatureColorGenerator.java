@@ -72,7 +72,7 @@ public class WholeTrackFeatureColorGenerator implements FeatureColorGenerator< I
 			return undefinedValueColor;
 
 		final double val = feat.doubleValue();
-		return colormap.getPaint( ( val - min ) / ( max - min ) );
+		return colormap.getLUTPaint( ( val - min ) / ( max - min ) );
 	}
 
 }
@@ -122,6 +122,10 @@ public class HyperStackDisplayer extends AbstractTrackMateModelView
 		case ModelChangeEvent.SPOTS_COMPUTED:
 		case ModelChangeEvent.TRACKS_VISIBILITY_CHANGED:
 		case ModelChangeEvent.TRACKS_COMPUTED:
+			spotOverlay.invalidateColorGenerator();
+			trackOverlay.invalidateColorGenerator();
+			spotOverlay.invalidateLayerCache();
+			trackOverlay.invalidateEdgeIndex();
 			refresh();
 			break;
 		}
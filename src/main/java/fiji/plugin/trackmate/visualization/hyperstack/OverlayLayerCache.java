@@ -0,0 +1,272 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2010 - 2023 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.visualization.hyperstack;
+
+import java.awt.AlphaComposite;
+import java.awt.Composite;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.ConcurrentModificationException;
+import java.util.concurrent.ExecutorService;
+
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.util.Threads;
+
+/**
+ * Off-screen raster of the static content of an overlay: the shapes that do
+ * not depend on the selection, for a given frame, slice and zoom.
+ * <p>
+ * When the raster is up to date for the current view, the overlay draws it in
+ * one image copy and only paints the dynamic content live. Otherwise the
+ * overlay paints everything live as before, while the raster for the new view
+ * is rendered on a background thread. The owner is notified when it is ready
+ * so that it can repaint. Rasters are discarded with {@link #invalidate()},
+ * when the model or the display settings change.
+ *
+ * @author Jean-Yves Tinevez
+ */
+class OverlayLayerCache
+{
+
+	private static final ExecutorService EXECUTOR = Threads.newCachedThreadPool();
+
+	/**
+	 * Paints the static content of an overlay for the specified view.
+	 */
+	interface Painter
+	{
+		void paint( Graphics2D g2d, View view );
+	}
+
+	private final Painter painter;
+
+	private final Runnable onReady;
+
+	/** Incremented by {@link #invalidate()}. Guarded by this. */
+	private long generation;
+
+	/** The current raster, its view and generation. Guarded by this. */
+	private BufferedImage image;
+
+	private View imageView;
+
+	private long imageGeneration = -1;
+
+	/** The next view to render, or <code>null</code>. Guarded by this. */
+	private View requested;
+
+	private long requestedGeneration;
+
+	/** Whether a render loop is running. Guarded by this. */
+	private boolean rendering;
+
+	/**
+	 * Creates a new cache.
+	 *
+	 * @param painter
+	 *            paints the static content, called from a background thread.
+	 * @param onReady
+	 *            called from a background thread when a new raster is ready.
+	 */
+	OverlayLayerCache( final Painter painter, final Runnable onReady )
+	{
+		this.painter = painter;
+		this.onReady = onReady;
+	}
+
+	/**
+	 * Draws the raster if it is up to date for the specified view. Otherwise,
+	 * schedules its rendering and returns <code>false</code>: the caller must
+	 * then paint the static content itself.
+	 *
+	 * @param g2d
+	 *            the graphics to draw on.
+	 * @param view
+	 *            the current view.
+	 * @return <code>true</code> if the raster was drawn.
+	 */
+	boolean draw( final Graphics2D g2d, final View view )
+	{
+		final BufferedImage current;
+		synchronized ( this )
+		{
+			if ( image == null || imageGeneration != generation || !view.equals( imageView ) )
+			{
+				requested = view;
+				requestedGeneration = generation;
+				if ( !rendering )
+				{
+					rendering = true;
+					EXECUTOR.execute( this::render );
+				}
+				return false;
+			}
+			current = image;
+		}
+
+		// The raster already carries the transparency of its shapes.
+		final Composite composite = g2d.getComposite();
+		g2d.setComposite( AlphaComposite.SrcOver );
+		g2d.drawImage( current, 0, 0, null );
+		g2d.setComposite( composite );
+		return true;
+	}
+
+	/**
+	 * Discards the current raster and any rendering in progress.
+	 */
+	synchronized void invalidate()
+	{
+		generation++;
+		image = null;
+		imageView = null;
+	}
+
+	private void render()
+	{
+		while ( true )
+		{
+			final View view;
+			final long gen;
+			synchronized ( this )
+			{
+				view = requested;
+				gen = requestedGeneration;
+				requested = null;
+				if ( view == null || view.width <= 0 || view.height <= 0 )
+				{
+					rendering = false;
+					return;
+				}
+			}
+
+			final BufferedImage raster = new BufferedImage( view.width, view.height, BufferedImage.TYPE_INT_ARGB );
+			final Graphics2D g2d = raster.createGraphics();
+			try
+			{
+				painter.paint( g2d, view );
+			}
+			catch ( final ConcurrentModificationException e )
+			{
+				// The model changed under our feet. A new request will follow.
+				continue;
+			}
+			catch ( final RuntimeException e )
+			{
+				e.printStackTrace();
+				continue;
+			}
+			finally
+			{
+				g2d.dispose();
+			}
+
+			synchronized ( this )
+			{
+				if ( gen != generation )
+					continue;
+				image = raster;
+				imageView = view;
+				imageGeneration = gen;
+			}
+			onReady.run();
+		}
+	}
+
+	/**
+	 * The parameters the static content of an overlay depends on, besides the
+	 * model and the display settings.
+	 */
+	static final class View
+	{
+
+		/** The frame, 0-based. */
+		final int frame;
+
+		/** The Z position of the current slice, in physical units. */
+		final double z;
+
+		/** The image X coordinate of the top-left corner of the canvas. */
+		final int xcorner;
+
+		/** The image Y coordinate of the top-left corner of the canvas. */
+		final int ycorner;
+
+		final double magnification;
+
+		/** The canvas width, in screen pixels. */
+		final int width;
+
+		/** The canvas height, in screen pixels. */
+		final int height;
+
+		/** The revision of the spot collection painted. */
+		final long revision;
+
+		/** The spot being edited, not part of the static content. */
+		final Spot editingSpot;
+
+		View( final int frame, final double z, final int xcorner, final int ycorner, final double magnification, final int width, final int height, final long revision, final Spot editingSpot )
+		{
+			this.frame = frame;
+			this.z = z;
+			this.xcorner = xcorner;
+			this.ycorner = ycorner;
+			this.magnification = magnification;
+			this.width = width;
+			this.height = height;
+			this.revision = revision;
+			this.editingSpot = editingSpot;
+		}
+
+		@Override
+		public boolean equals( final Object obj )
+		{
+			if ( !( obj instanceof View ) )
+				return false;
+			final View o = ( View ) obj;
+			return frame == o.frame
+					&& Double.compare( z, o.z ) == 0
+					&& xcorner == o.xcorner
+					&& ycorner == o.ycorner
+					&& Double.compare( magnification, o.magnification ) == 0
+					&& width == o.width
+					&& height == o.height
+					&& revision == o.revision
+					&& editingSpot == o.editingSpot;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			int h = frame;
+			h = 31 * h + Double.hashCode( z );
+			h = 31 * h + xcorner;
+			h = 31 * h + ycorner;
+			h = 31 * h + Double.hashCode( magnification );
+			h = 31 * h + width;
+			h = 31 * h + height;
+			h = 31 * h + Long.hashCode( revision );
+			return h;
+		}
+	}
+}
@@ -37,10 +37,10 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 
 import fiji.plugin.trackmate.Model;
 import fiji.plugin.trackmate.Spot;
-import fiji.plugin.trackmate.SpotCollection;
 import fiji.plugin.trackmate.SpotRoi;
 import fiji.plugin.trackmate.features.FeatureUtils;
 import fiji.plugin.trackmate.gui.displaysettings.DisplaySettings;
@@ -73,6 +73,22 @@ public class SpotOverlay extends Roi
 
 	protected final Model model;
 
+	/**
+	 * The color generator used to paint the spots, kept between repaints.
+	 * Discarded when the display settings change, or with
+	 * {@link #invalidateColorGenerator()}.
+	 */
+	private volatile FeatureColorGenerator< Spot > colorGenerator;
+
+	/**
+	 * Raster of the spots of the current frame, drawn instead of the spots
+	 * themselves when up to date. Only the selection and the editing spot
+	 * are then painted live.
+	 */
+	private final OverlayLayerCache layerCache;
+
+	private volatile boolean layered = true;
+
 	/*
 	 * CONSTRUCTOR
 	 */
@@ -84,19 +100,75 @@ public class SpotOverlay extends Roi
 		this.imp = imp;
 		this.calibration = TMUtils.getSpatialCalibration( imp );
 		this.displaySettings = displaySettings;
+		this.layerCache = new OverlayLayerCache( this::drawStaticLayer, () -> {
+			if ( imp.getCanvas() != null )
+				imp.getCanvas().repaint();
+		} );
+		displaySettings.listeners().add( () -> {
+			invalidateColorGenerator();
+			layerCache.invalidate();
+		} );
 	}
 
 	/*
 	 * METHODS
 	 */
 
+	/**
+	 * Discards the color generator kept between repaints. The next repaint
+	 * will create a new one. Must be called when the model changes in a way
+	 * that affects the colors.
+	 */
+	public void invalidateColorGenerator()
+	{
+		colorGenerator = null;
+	}
+
+	/**
+	 * Discards the raster of the spots. Must be called when the model
+	 * changes.
+	 */
+	public void invalidateLayerCache()
+	{
+		layerCache.invalidate();
+	}
+
+	/**
+	 * Sets whether the spots that are not selected are drawn from a raster
+	 * rendered in the background rather than painted at each repaint.
+	 *
+	 * @param layered
+	 *            whether to use the raster.
+	 */
+	public void setLayeredRendering( final boolean layered )
+	{
+		this.layered = layered;
+		if ( !layered )
+			layerCache.invalidate();
+	}
+
+	/**
+	 * Returns the color generator to paint the spots with, created if needed.
+	 *
+	 * @return the color generator.
+	 */
+	protected FeatureColorGenerator< Spot > getColorGenerator()
+	{
+		FeatureColorGenerator< Spot > cg = colorGenerator;
+		if ( null == cg )
+		{
+			cg = FeatureUtils.createSpotColorGenerator( model, displaySettings );
+			colorGenerator = cg;
+		}
+		return cg;
+	}
+
 	@Override
 	public void drawOverlay( final Graphics g )
 	{
 		final int xcorner = ic.offScreenX( 0 );
 		final int ycorner = ic.offScreenY( 0 );
 		final double magnification = getMagnification();
-		final SpotCollection spots = model.getSpots();
 
 		if ( !displaySettings.isSpotVisible() )
 			return;
@@ -106,7 +178,6 @@ public class SpotOverlay extends Roi
 		final TrackDisplayMode trackDisplayMode = displaySettings.getTrackDisplayMode();
 		final boolean selectionOnly = ( trackDisplayMode == TrackDisplayMode.SELECTION_ONLY );
 		final boolean filled = displaySettings.isSpotFilled();
-		final float alpha = ( float ) displaySettings.getSpotTransparencyAlpha();
 
 		final Graphics2D g2d = ( Graphics2D ) g;
 
@@ -117,10 +188,7 @@ public class SpotOverlay extends Roi
 		final Color originalColor = g2d.getColor();
 		final Font originalFont = g2d.getFont();
 
-		g2d.setComposite( AlphaComposite.getInstance( AlphaComposite.SRC_OVER, alpha ) );
-		g2d.setFont( displaySettings.getFont() );
-		g2d.setRenderingHint( RenderingHints.KEY_ANTIALIASING,
-				displaySettings.getUseAntialiasing() ? RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF );
+		setUp( g2d );
 		fm = g2d.getFontMetrics();
 
 		final double zslice = ( imp.getSlice() - 1 ) * calibration[ 2 ];
@@ -128,9 +196,7 @@ public class SpotOverlay extends Roi
 		final int frame = imp.getFrame() - 1;
 
 		// Deal with normal spots.
-		final FeatureColorGenerator< Spot > colorGenerator = FeatureUtils.createSpotColorGenerator( model, displaySettings );
-
-		g2d.setStroke( new BasicStroke( ( float ) displaySettings.getLineThickness() ) );
+		final FeatureColorGenerator< Spot > colorGenerator = getColorGenerator();
 
 		if ( selectionOnly && null != spotSelection)
 		{
@@ -157,22 +223,10 @@ public class SpotOverlay extends Roi
 		else
 		{
 			// Other track displays.
-			for ( final Iterator< Spot > iterator = spots.iterator( frame, true ); iterator.hasNext(); )
-			{
-				final Spot spot = iterator.next();
-
-				if ( editingSpot == spot || ( spotSelection != null && spotSelection.contains( spot ) ) )
-					continue;
-
-				final Color color = colorGenerator.color( spot );
-				g2d.setColor( color );
-
-				final double z = spot.getFeature( Spot.POSITION_Z ).doubleValue();
-				if ( doLimitDrawingDepth && Math.abs( z - zslice ) > drawingDepth )
-					continue;
-
-				drawSpot( g2d, spot, zslice, xcorner, ycorner, lMag, filled );
-			}
+			final boolean fromRaster = layered && layerCache.draw( g2d,
+					new OverlayLayerCache.View( frame, zslice, xcorner, ycorner, lMag, ic.getWidth(), ic.getHeight(), model.getSpots().featureRevision(), editingSpot ) );
+			if ( !fromRaster )
+				drawSpots( g2d, frame, zslice, xcorner, ycorner, lMag, editingSpot, spotSelection );
 
 			// Deal with spot selection
 			if ( null != spotSelection )
@@ -229,6 +283,65 @@ public class SpotOverlay extends Roi
 		g2d.setFont( originalFont );
 	}
 
+	/**
+	 * Paints the spots of the specified view in the raster, selected or not,
+	 * from a snapshot of the frame content taken under the model lock.
+	 */
+	private void drawStaticLayer( final Graphics2D g2d, final OverlayLayerCache.View view )
+	{
+		final List< Spot > spots = new ArrayList<>();
+		synchronized ( model )
+		{
+			for ( final Iterator< Spot > it = model.getSpots().iterator( view.frame, true ); it.hasNext(); )
+				spots.add( it.next() );
+		}
+		setUp( g2d );
+		drawSpots( g2d, spots.iterator(), view.z, view.xcorner, view.ycorner, view.magnification, view.editingSpot, null );
+	}
+
+	private void setUp( final Graphics2D g2d )
+	{
+		g2d.setComposite( AlphaComposite.getInstance( AlphaComposite.SRC_OVER, ( float ) displaySettings.getSpotTransparencyAlpha() ) );
+		g2d.setFont( displaySettings.getFont() );
+		g2d.setRenderingHint( RenderingHints.KEY_ANTIALIASING,
+				displaySettings.getUseAntialiasing() ? RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF );
+		g2d.setStroke( new BasicStroke( ( float ) displaySettings.getLineThickness() ) );
+	}
+
+	/**
+	 * Paints the visible spots of the specified frame, except the editing spot
+	 * and the ones in the specified selection, if not <code>null</code>.
+	 */
+	private void drawSpots( final Graphics2D g2d, final int frame, final double zslice, final int xcorner, final int ycorner, final double magnification, final Spot editing, final Collection< Spot > selection )
+	{
+		drawSpots( g2d, model.getSpots().iterator( frame, true ), zslice, xcorner, ycorner, magnification, editing, selection );
+	}
+
+	private void drawSpots( final Graphics2D g2d, final Iterator< Spot > spots, final double zslice, final int xcorner, final int ycorner, final double magnification, final Spot editing, final Collection< Spot > selection )
+	{
+		final boolean doLimitDrawingDepth = displaySettings.isZDrawingDepthLimited();
+		final double drawingDepth = displaySettings.getZDrawingDepth();
+		final boolean filled = displaySettings.isSpotFilled();
+		final FeatureColorGenerator< Spot > colorGenerator = getColorGenerator();
+
+		while ( spots.hasNext() )
+		{
+			final Spot spot = spots.next();
+
+			if ( editing == spot || ( selection != null && selection.contains( spot ) ) )
+				continue;
+
+			final Color color = colorGenerator.color( spot );
+			g2d.setColor( color );
+
+			final double z = spot.getFeature( Spot.POSITION_Z ).doubleValue();
+			if ( doLimitDrawingDepth && Math.abs( z - zslice ) > drawingDepth )
+				continue;
+
+			drawSpot( g2d, spot, zslice, xcorner, ycorner, magnification, filled );
+		}
+	}
+
 	/**
 	 * @param g2d
 	 * @param frame
@@ -316,6 +429,7 @@ public class SpotOverlay extends Roi
 	private final void drawSpotName( final Graphics2D g2d, final Spot spot, final double xs, final double ys, final int textPos )
 	{
 		final String str = spot.toString();
+		final FontMetrics fm = g2d.getFontMetrics();
 		final int xindent = fm.stringWidth( str );
 		int xtext = ( int ) ( xs + textPos + 5 );
 		if ( xtext + xindent > imp.getWindow().getWidth() )
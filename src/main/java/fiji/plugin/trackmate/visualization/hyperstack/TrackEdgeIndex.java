@@ -0,0 +1,327 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2010 - 2023 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.visualization.hyperstack;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.SpotCollection;
+import fiji.plugin.trackmate.TrackModel;
+
+/**
+ * Index of the edges of the visible tracks, bucketed by the frame of their
+ * source spot and by spatial tile, so that the {@link TrackOverlay} only visits
+ * the edges of the time window and of the viewport it paints.
+ * <p>
+ * Instances are snapshots of the model taken at construction, together with
+ * the {@link SpotCollection#featureRevision()} they were built against.
+ *
+ * @author Jean-Yves Tinevez
+ */
+class TrackEdgeIndex
+{
+
+	/** Maximal number of tiles along X and Y. */
+	private static final int MAX_TILES = 64;
+
+	/** Target average number of edges per tile. */
+	private static final int EDGES_PER_TILE = 16;
+
+	/** Maximal total number of buckets. */
+	private static final int MAX_BUCKETS = 1 << 22;
+
+	final DefaultWeightedEdge[] edges;
+
+	final Spot[] sources;
+
+	final Spot[] targets;
+
+	/** Edge end points, in pixel units. */
+	final double[] x0, y0, x1, y1;
+
+	/** Edge end points Z, in physical units. */
+	final double[] z0, z1;
+
+	/** Frame of the source spot of each edge. */
+	final int[] frames;
+
+	/** The model this index was built from. */
+	private final Model model;
+
+	/** The spot collection this index was built against. */
+	private final SpotCollection spots;
+
+	/** The spot collection revision this index was built against. */
+	final long revision;
+
+	private final int minFrame;
+
+	private final int nFrames;
+
+	private final int nx;
+
+	private final int ny;
+
+	private final double gx0;
+
+	private final double gy0;
+
+	private final double tileWidth;
+
+	private final double tileHeight;
+
+	/** Start of each (frame, tile) bucket in {@link #entries}. */
+	private final int[] bucketStart;
+
+	/** Edge indices, by bucket. An edge appears in all the tiles it spans. */
+	private final int[] entries;
+
+	/** Last query each edge was visited in, to visit it only once. */
+	private final int[] visited;
+
+	private int query;
+
+	TrackEdgeIndex( final Model model, final double[] calibration )
+	{
+		this.model = model;
+		this.spots = model.getSpots();
+		this.revision = spots.featureRevision();
+		final TrackModel trackModel = model.getTrackModel();
+
+		// Snapshot the visible edges.
+		synchronized ( model )
+		{
+			int n = 0;
+			for ( final Integer trackID : trackModel.unsortedTrackIDs( true ) )
+				n += trackModel.trackEdges( trackID ).size();
+
+			edges = new DefaultWeightedEdge[ n ];
+			sources = new Spot[ n ];
+			targets = new Spot[ n ];
+			int e = 0;
+			for ( final Integer trackID : trackModel.unsortedTrackIDs( true ) )
+			{
+				for ( final DefaultWeightedEdge edge : trackModel.trackEdges( trackID ) )
+				{
+					edges[ e ] = edge;
+					sources[ e ] = trackModel.getEdgeSource( edge );
+					targets[ e ] = trackModel.getEdgeTarget( edge );
+					e++;
+				}
+			}
+		}
+
+		final int n = edges.length;
+		x0 = new double[ n ];
+		y0 = new double[ n ];
+		x1 = new double[ n ];
+		y1 = new double[ n ];
+		z0 = new double[ n ];
+		z1 = new double[ n ];
+		frames = new int[ n ];
+		visited = new int[ n ];
+
+		int fmin = Integer.MAX_VALUE;
+		int fmax = Integer.MIN_VALUE;
+		double xmin = Double.POSITIVE_INFINITY;
+		double ymin = Double.POSITIVE_INFINITY;
+		double xmax = Double.NEGATIVE_INFINITY;
+		double ymax = Double.NEGATIVE_INFINITY;
+		for ( int e = 0; e < n; e++ )
+		{
+			final Spot source = sources[ e ];
+			final Spot target = targets[ e ];
+			x0[ e ] = source.getFeature( Spot.POSITION_X ) / calibration[ 0 ] + 0.5f;
+			y0[ e ] = source.getFeature( Spot.POSITION_Y ) / calibration[ 1 ] + 0.5f;
+			x1[ e ] = target.getFeature( Spot.POSITION_X ) / calibration[ 0 ] + 0.5f;
+			y1[ e ] = target.getFeature( Spot.POSITION_Y ) / calibration[ 1 ] + 0.5f;
+			z0[ e ] = source.getFeature( Spot.POSITION_Z ).doubleValue();
+			z1[ e ] = target.getFeature( Spot.POSITION_Z ).doubleValue();
+			frames[ e ] = source.getFeature( Spot.FRAME ).intValue();
+
+			fmin = Math.min( fmin, frames[ e ] );
+			fmax = Math.max( fmax, frames[ e ] );
+			xmin = Math.min( xmin, Math.min( x0[ e ], x1[ e ] ) );
+			xmax = Math.max( xmax, Math.max( x0[ e ], x1[ e ] ) );
+			ymin = Math.min( ymin, Math.min( y0[ e ], y1[ e ] ) );
+			ymax = Math.max( ymax, Math.max( y0[ e ], y1[ e ] ) );
+		}
+
+		if ( n == 0 )
+		{
+			minFrame = 0;
+			nFrames = 0;
+			nx = 1;
+			ny = 1;
+			gx0 = 0.;
+			gy0 = 0.;
+			tileWidth = 1.;
+			tileHeight = 1.;
+			bucketStart = new int[ 1 ];
+			entries = new int[ 0 ];
+			return;
+		}
+
+		/*
+		 * Grid: square, sized for about EDGES_PER_TILE edges per tile of a
+		 * frame on average.
+		 */
+
+		minFrame = fmin;
+		nFrames = fmax - fmin + 1;
+		int g = ( int ) Math.ceil( Math.sqrt( ( double ) n / nFrames / EDGES_PER_TILE ) );
+		g = Math.max( 1, Math.min( MAX_TILES, g ) );
+		while ( g > 1 && ( long ) nFrames * g * g > MAX_BUCKETS )
+			g--;
+		nx = g;
+		ny = g;
+		gx0 = xmin;
+		gy0 = ymin;
+		tileWidth = Math.max( 1e-9, ( xmax - xmin ) / nx );
+		tileHeight = Math.max( 1e-9, ( ymax - ymin ) / ny );
+
+		/*
+		 * Two passes: count then fill.
+		 */
+
+		final int nBuckets = nFrames * nx * ny;
+		bucketStart = new int[ nBuckets + 1 ];
+		for ( int e = 0; e < n; e++ )
+		{
+			final int base = ( frames[ e ] - minFrame ) * nx * ny;
+			final int tx0 = tileX( Math.min( x0[ e ], x1[ e ] ) );
+			final int tx1 = tileX( Math.max( x0[ e ], x1[ e ] ) );
+			final int ty0 = tileY( Math.min( y0[ e ], y1[ e ] ) );
+			final int ty1 = tileY( Math.max( y0[ e ], y1[ e ] ) );
+			for ( int ty = ty0; ty <= ty1; ty++ )
+				for ( int tx = tx0; tx <= tx1; tx++ )
+					bucketStart[ base + ty * nx + tx + 1 ]++;
+		}
+		for ( int b = 0; b < nBuckets; b++ )
+			bucketStart[ b + 1 ] += bucketStart[ b ];
+
+		entries = new int[ bucketStart[ nBuckets ] ];
+		final int[] fill = Arrays.copyOf( bucketStart, nBuckets );
+		for ( int e = 0; e < n; e++ )
+		{
+			final int base = ( frames[ e ] - minFrame ) * nx * ny;
+			final int tx0 = tileX( Math.min( x0[ e ], x1[ e ] ) );
+			final int tx1 = tileX( Math.max( x0[ e ], x1[ e ] ) );
+			final int ty0 = tileY( Math.min( y0[ e ], y1[ e ] ) );
+			final int ty1 = tileY( Math.max( y0[ e ], y1[ e ] ) );
+			for ( int ty = ty0; ty <= ty1; ty++ )
+				for ( int tx = tx0; tx <= tx1; tx++ )
+					entries[ fill[ base + ty * nx + tx ]++ ] = e;
+		}
+	}
+
+	/**
+	 * Returns <code>true</code> if this index is out of date with respect to
+	 * the spot features, for instance because a spot was moved.
+	 *
+	 * @return whether the index must be rebuilt.
+	 */
+	boolean isStale()
+	{
+		return model.getSpots() != spots || revision != spots.featureRevision();
+	}
+
+	/**
+	 * Visits once each edge whose source frame is in the specified range and
+	 * whose bounding box intersects the specified rectangle, in pixel units.
+	 * Edges that pass this test are not guaranteed to be on the rectangle.
+	 *
+	 * @param fromFrame
+	 *            the first frame, inclusive.
+	 * @param toFrame
+	 *            the last frame, inclusive.
+	 * @param minx
+	 *            the left bound of the rectangle.
+	 * @param miny
+	 *            the top bound of the rectangle.
+	 * @param maxx
+	 *            the right bound of the rectangle.
+	 * @param maxy
+	 *            the bottom bound of the rectangle.
+	 * @param visitor
+	 *            receives the edge indices.
+	 */
+	synchronized void forEach( final int fromFrame, final int toFrame, final double minx, final double miny, final double maxx, final double maxy, final IntConsumer visitor )
+	{
+		if ( nFrames == 0 )
+			return;
+		final int f0 = Math.max( 0, ( int ) Math.max( Integer.MIN_VALUE, ( long ) fromFrame - minFrame ) );
+		final int f1 = Math.min( nFrames - 1, ( int ) Math.min( Integer.MAX_VALUE, ( long ) toFrame - minFrame ) );
+		if ( f0 > f1 )
+			return;
+		if ( maxx < gx0 || maxy < gy0 || minx > gx0 + nx * tileWidth || miny > gy0 + ny * tileHeight )
+			return;
+
+		final int tx0 = tileX( minx );
+		final int tx1 = tileX( maxx );
+		final int ty0 = tileY( miny );
+		final int ty1 = tileY( maxy );
+
+		if ( ++query == Integer.MAX_VALUE )
+		{
+			Arrays.fill( visited, 0 );
+			query = 1;
+		}
+
+		for ( int f = f0; f <= f1; f++ )
+		{
+			final int base = f * nx * ny;
+			for ( int ty = ty0; ty <= ty1; ty++ )
+			{
+				for ( int tx = tx0; tx <= tx1; tx++ )
+				{
+					final int b = base + ty * nx + tx;
+					for ( int p = bucketStart[ b ]; p < bucketStart[ b + 1 ]; p++ )
+					{
+						final int e = entries[ p ];
+						if ( visited[ e ] == query )
+							continue;
+						visited[ e ] = query;
+						if ( Math.max( x0[ e ], x1[ e ] ) < minx || Math.min( x0[ e ], x1[ e ] ) > maxx
+								|| Math.max( y0[ e ], y1[ e ] ) < miny || Math.min( y0[ e ], y1[ e ] ) > maxy )
+							continue;
+						visitor.accept( e );
+					}
+				}
+			}
+		}
+	}
+
+	private int tileX( final double x )
+	{
+		return Math.max( 0, Math.min( nx - 1, ( int ) Math.floor( ( x - gx0 ) / tileWidth ) ) );
+	}
+
+	private int tileY( final double y )
+	{
+		return Math.max( 0, Math.min( ny - 1, ( int ) Math.floor( ( y - gy0 ) / tileHeight ) ) );
+	}
+}
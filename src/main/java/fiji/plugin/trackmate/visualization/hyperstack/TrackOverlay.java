@@ -32,7 +32,6 @@ import java.awt.Stroke;
 import java.awt.geom.AffineTransform;
 import java.util.Collection;
 import java.util.HashSet;
-import java.util.Set;
 
 import org.jgrapht.graph.DefaultWeightedEdge;
 
@@ -63,6 +62,28 @@ public class TrackOverlay extends Roi
 
 	protected final Model model;
 
+	/**
+	 * The color generator used to paint the tracks, kept between repaints.
+	 * Discarded when the display settings change, or with
+	 * {@link #invalidateColorGenerator()}.
+	 */
+	private volatile FeatureColorGenerator< DefaultWeightedEdge > colorGenerator;
+
+	/**
+	 * The index of the visible edges, kept between repaints. Discarded when
+	 * the model changes, with {@link #invalidateEdgeIndex()}, and rebuilt when
+	 * spot features changed since it was built.
+	 */
+	private volatile TrackEdgeIndex edgeIndex;
+
+	/**
+	 * Raster of the edges of the current view, drawn instead of the edges
+	 * themselves when up to date. Only the selection is then painted live.
+	 */
+	private final OverlayLayerCache layerCache;
+
+	private volatile boolean layered = true;
+
 	/*
 	 * CONSTRUCTOR
 	 */
@@ -74,6 +95,14 @@ public class TrackOverlay extends Roi
 		this.calibration = TMUtils.getSpatialCalibration( imp );
 		this.imp = imp;
 		this.displaySettings = displaySettings;
+		this.layerCache = new OverlayLayerCache( this::drawStaticLayer, () -> {
+			if ( imp.getCanvas() != null )
+				imp.getCanvas().repaint();
+		} );
+		displaySettings.listeners().add( () -> {
+			invalidateColorGenerator();
+			layerCache.invalidate();
+		} );
 	}
 
 	/*
@@ -85,6 +114,74 @@ public class TrackOverlay extends Roi
 		this.highlight = edges;
 	}
 
+	/**
+	 * Discards the color generator kept between repaints. The next repaint
+	 * will create a new one. Must be called when the model changes in a way
+	 * that affects the colors.
+	 */
+	public void invalidateColorGenerator()
+	{
+		colorGenerator = null;
+	}
+
+	/**
+	 * Discards the edge index kept between repaints. The next repaint will
+	 * build a new one. Must be called when tracks are added, removed or change
+	 * visibility.
+	 */
+	public void invalidateEdgeIndex()
+	{
+		edgeIndex = null;
+		layerCache.invalidate();
+	}
+
+	/**
+	 * Sets whether the edges are drawn from a raster rendered in the
+	 * background rather than painted at each repaint. The selection is always
+	 * painted live.
+	 *
+	 * @param layered
+	 *            whether to use the raster.
+	 */
+	public void setLayeredRendering( final boolean layered )
+	{
+		this.layered = layered;
+		if ( !layered )
+			layerCache.invalidate();
+	}
+
+	/**
+	 * Returns the index of the visible edges, rebuilt if needed.
+	 *
+	 * @return the edge index.
+	 */
+	private TrackEdgeIndex getEdgeIndex()
+	{
+		TrackEdgeIndex index = edgeIndex;
+		if ( null == index || index.isStale() )
+		{
+			index = new TrackEdgeIndex( model, calibration );
+			edgeIndex = index;
+		}
+		return index;
+	}
+
+	/**
+	 * Returns the color generator to paint the tracks with, created if needed.
+	 *
+	 * @return the color generator.
+	 */
+	protected FeatureColorGenerator< DefaultWeightedEdge > getColorGenerator()
+	{
+		FeatureColorGenerator< DefaultWeightedEdge > cg = colorGenerator;
+		if ( null == cg )
+		{
+			cg = FeatureUtils.createTrackColorGenerator( model, displaySettings );
+			colorGenerator = cg;
+		}
+		return cg;
+	}
+
 	@Override
 	public final synchronized void drawOverlay( final Graphics g )
 	{
@@ -117,44 +214,14 @@ public class TrackOverlay extends Roi
 		final int currentFrame = imp.getFrame() - 1;
 		final TrackDisplayMode trackDisplayMode = displaySettings.getTrackDisplayMode();
 		final int trackDisplayDepth = displaySettings.isFadeTracks() ? displaySettings.getFadeTrackRange() : 1_000_000_000;
-		final Set< Integer > filteredTrackKeys = model.getTrackModel().unsortedTrackIDs( true );
 
-		g2d.setStroke( new BasicStroke( ( float ) displaySettings.getLineThickness() ) );
-		if ( trackDisplayMode == TrackDisplayMode.LOCAL )
-			g2d.setComposite( AlphaComposite.getInstance( AlphaComposite.SRC_OVER ) );
+		setUp( g2d );
 
-		g2d.setRenderingHint( RenderingHints.KEY_ANTIALIASING,
-				displaySettings.getUseAntialiasing() ? RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF );
-
-		// Color generator.
-		final FeatureColorGenerator< DefaultWeightedEdge > colorGenerator = FeatureUtils.createTrackColorGenerator( model, displaySettings );
-
-		// Determine bounds for limited view modes
-		final int minT;
-		final int maxT;
-		switch ( trackDisplayMode )
-		{
-		default:
-		case LOCAL:
-		case SELECTION_ONLY:
-			minT = currentFrame - trackDisplayDepth;
-			maxT = currentFrame + trackDisplayDepth;
-			break;
-		case LOCAL_FORWARD:
-			minT = currentFrame;
-			maxT = currentFrame + trackDisplayDepth;
-			break;
-		case LOCAL_BACKWARD:
-			minT = currentFrame - trackDisplayDepth;
-			maxT = currentFrame;
-			break;
-		}
-
-		switch ( trackDisplayMode )
-		{
-
-		case SELECTION_ONLY:
+		if ( trackDisplayMode == TrackDisplayMode.SELECTION_ONLY )
 		{
+			final FeatureColorGenerator< DefaultWeightedEdge > colorGenerator = getColorGenerator();
+			final int minT = currentFrame - trackDisplayDepth;
+			final int maxT = currentFrame + trackDisplayDepth;
 			for ( final DefaultWeightedEdge edge : highlight )
 			{
 				final Spot source = model.getTrackModel().getEdgeSource( edge );
@@ -175,68 +242,13 @@ public class TrackOverlay extends Roi
 				final float transparency = ( float ) ( 1 - Math.abs( ( double ) sourceFrame - currentFrame ) / trackDisplayDepth );
 				drawEdge( g2d, source, target, xcorner, ycorner, magnification, transparency );
 			}
-
-			break;
-		}
-		case FULL:
-		{
-			for ( final Integer trackID : filteredTrackKeys )
-			{
-				final Set< DefaultWeightedEdge > track = new HashSet<>( model.getTrackModel().trackEdges( trackID ) );
-				for ( final DefaultWeightedEdge edge : track )
-				{
-					final Spot source = model.getTrackModel().getEdgeSource( edge );
-					final Spot target = model.getTrackModel().getEdgeTarget( edge );
-					if ( !isOnClip( source, target, minx, miny, maxx, maxy, calibration ) )
-						continue;
-
-					final double zs = source.getFeature( Spot.POSITION_Z ).doubleValue();
-					final double zt = target.getFeature( Spot.POSITION_Z ).doubleValue();
-					if ( doLimitDrawingDepth && Math.abs( zs - zslice ) > drawingDepth && Math.abs( zt - zslice ) > drawingDepth )
-						continue;
-
-					g2d.setColor( colorGenerator.color( edge ) );
-					drawEdge( g2d, source, target, xcorner, ycorner, magnification );
-				}
-			}
-			break;
 		}
-		case LOCAL:
-		case LOCAL_BACKWARD:
-		case LOCAL_FORWARD:
+		else
 		{
-
-			for ( final Integer trackID : filteredTrackKeys )
-			{
-				final Set< DefaultWeightedEdge > track;
-				synchronized ( model )
-				{
-					track = new HashSet<>( model.getTrackModel().trackEdges( trackID ) );
-				}
-				for ( final DefaultWeightedEdge edge : track )
-				{
-					final Spot source = model.getTrackModel().getEdgeSource( edge );
-					final int sourceFrame = source.getFeature( Spot.FRAME ).intValue();
-					if ( sourceFrame < minT || sourceFrame >= maxT )
-						continue;
-
-					final float transparency = ( float ) ( 1 - Math.abs( ( double ) sourceFrame - currentFrame ) / trackDisplayDepth );
-					final Spot target = model.getTrackModel().getEdgeTarget( edge );
-					if ( !isOnClip( source, target, minx, miny, maxx, maxy, calibration ) )
-						continue;
-
-					final double zs = source.getFeature( Spot.POSITION_Z ).doubleValue();
-					final double zt = target.getFeature( Spot.POSITION_Z ).doubleValue();
-					if ( doLimitDrawingDepth && Math.abs( zs - zslice ) > drawingDepth && Math.abs( zt - zslice ) > drawingDepth )
-						continue;
-
-					g2d.setColor( colorGenerator.color( edge ) );
-					drawEdge( g2d, source, target, xcorner, ycorner, magnification, transparency );
-				}
-			}
-			break;
-
-		}
+			final boolean fromRaster = layered && layerCache.draw( g2d,
+					new OverlayLayerCache.View( currentFrame, zslice, xcorner, ycorner, magnification, ic.getWidth(), ic.getHeight(), model.getSpots().featureRevision(), null ) );
+			if ( !fromRaster )
+				drawTracks( g2d, currentFrame, zslice, xcorner, ycorner, magnification, ic.getWidth(), ic.getHeight() );
 		}
 
 		if ( trackDisplayMode != TrackDisplayMode.SELECTION_ONLY )
@@ -262,6 +274,93 @@ public class TrackOverlay extends Roi
 		g2d.setColor( originalColor );
 	}
 
+	/**
+	 * Paints the edges of the specified view in the raster.
+	 */
+	private void drawStaticLayer( final Graphics2D g2d, final OverlayLayerCache.View view )
+	{
+		setUp( g2d );
+		drawTracks( g2d, view.frame, view.z, view.xcorner, view.ycorner, view.magnification, view.width, view.height );
+	}
+
+	private void setUp( final Graphics2D g2d )
+	{
+		g2d.setStroke( new BasicStroke( ( float ) displaySettings.getLineThickness() ) );
+		if ( displaySettings.getTrackDisplayMode() == TrackDisplayMode.LOCAL )
+			g2d.setComposite( AlphaComposite.getInstance( AlphaComposite.SRC_OVER ) );
+
+		g2d.setRenderingHint( RenderingHints.KEY_ANTIALIASING,
+				displaySettings.getUseAntialiasing() ? RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF );
+	}
+
+	/**
+	 * Paints the edges of the visible tracks in the FULL and LOCAL modes.
+	 */
+	private void drawTracks( final Graphics2D g2d, final int currentFrame, final double zslice, final int xcorner, final int ycorner, final double magnification, final int width, final int height )
+	{
+		final double minx = xcorner;
+		final double miny = ycorner;
+		final double maxx = minx + width / magnification;
+		final double maxy = miny + height / magnification;
+
+		final boolean doLimitDrawingDepth = displaySettings.isZDrawingDepthLimited();
+		final double drawingDepth = displaySettings.getZDrawingDepth();
+		final TrackDisplayMode trackDisplayMode = displaySettings.getTrackDisplayMode();
+		final int trackDisplayDepth = displaySettings.isFadeTracks() ? displaySettings.getFadeTrackRange() : 1_000_000_000;
+
+		// Color generator.
+		final FeatureColorGenerator< DefaultWeightedEdge > colorGenerator = getColorGenerator();
+
+		// Determine bounds for limited view modes
+		final int minT;
+		final int maxT;
+		switch ( trackDisplayMode )
+		{
+		default:
+		case LOCAL:
+			minT = currentFrame - trackDisplayDepth;
+			maxT = currentFrame + trackDisplayDepth;
+			break;
+		case LOCAL_FORWARD:
+			minT = currentFrame;
+			maxT = currentFrame + trackDisplayDepth;
+			break;
+		case LOCAL_BACKWARD:
+			minT = currentFrame - trackDisplayDepth;
+			maxT = currentFrame;
+			break;
+		}
+
+		final TrackEdgeIndex index = getEdgeIndex();
+		if ( trackDisplayMode == TrackDisplayMode.FULL )
+		{
+			index.forEach( Integer.MIN_VALUE, Integer.MAX_VALUE, minx, miny, maxx, maxy, e -> {
+				if ( !isOnClip( index.x0[ e ], index.y0[ e ], index.x1[ e ], index.y1[ e ], minx, miny, maxx, maxy ) )
+					return;
+
+				if ( doLimitDrawingDepth && Math.abs( index.z0[ e ] - zslice ) > drawingDepth && Math.abs( index.z1[ e ] - zslice ) > drawingDepth )
+					return;
+
+				g2d.setColor( colorGenerator.color( index.edges[ e ] ) );
+				drawEdge( g2d, index.sources[ e ], index.targets[ e ], xcorner, ycorner, magnification );
+			} );
+		}
+		else
+		{
+			index.forEach( minT, maxT - 1, minx, miny, maxx, maxy, e -> {
+				if ( !isOnClip( index.x0[ e ], index.y0[ e ], index.x1[ e ], index.y1[ e ], minx, miny, maxx, maxy ) )
+					return;
+
+				if ( doLimitDrawingDepth && Math.abs( index.z0[ e ] - zslice ) > drawingDepth && Math.abs( index.z1[ e ] - zslice ) > drawingDepth )
+					return;
+
+				final float transparency = ( float ) ( 1 - Math.abs( ( double ) index.frames[ e ] - currentFrame ) / trackDisplayDepth );
+				g2d.setColor( colorGenerator.color( index.edges[ e ] ) );
+				drawEdge( g2d, index.sources[ e ], index.targets[ e ], xcorner, ycorner, magnification, transparency );
+			} );
+		}
+	}
+
 	private static final boolean isOnClip( final Spot source, final Spot target, final double minx, final double miny, final double maxx, final double maxy, final double[] calibration )
 	{
 		// Find x & y in physical coordinates
@@ -274,7 +373,15 @@ public class TrackOverlay extends Roi
 		final double y0p = y0i / calibration[ 1 ] + 0.5f;
 		final double x1p = x1i / calibration[ 0 ] + 0.5f;
 		final double y1p = y1i / calibration[ 1 ] + 0.5f;
+		return isOnClip( x0p, y0p, x1p, y1p, minx, miny, maxx, maxy );
+	}
 
+	/**
+	 * Returns <code>true</code> if the segment, in pixel units, has an end
+	 * inside the clip or crosses one of its borders.
+	 */
+	private static final boolean isOnClip( final double x0p, final double y0p, final double x1p, final double y1p, final double minx, final double miny, final double maxx, final double maxy )
+	{
 		// Is any spot inside the clip?
 		if ( ( x0p > minx && x0p < maxx && y0p > miny && y0p < maxy )
 				|| ( x1p > minx && x1p < maxx && y1p > miny && y1p < maxy ) )
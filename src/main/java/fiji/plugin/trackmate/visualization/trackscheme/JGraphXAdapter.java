@@ -21,17 +21,26 @@
  */
 package fiji.plugin.trackmate.visualization.trackscheme;
 
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.function.DoubleSupplier;
 
 import org.jgrapht.event.GraphEdgeChangeEvent;
 import org.jgrapht.event.GraphListener;
 import org.jgrapht.event.GraphVertexChangeEvent;
 import org.jgrapht.graph.DefaultWeightedEdge;
 
+import com.mxgraph.io.mxCodec;
 import com.mxgraph.model.mxCell;
 import com.mxgraph.model.mxGeometry;
 import com.mxgraph.model.mxICell;
+import com.mxgraph.util.mxConstants;
+import com.mxgraph.util.mxStyleUtils;
+import com.mxgraph.util.mxXmlUtils;
 import com.mxgraph.view.mxGraph;
 
 import fiji.plugin.trackmate.Model;
@@ -50,6 +59,16 @@ public class JGraphXAdapter extends mxGraph implements GraphListener< Spot, Defa
 
 	private final Model tmm;
 
+	private SpotImageUpdater spotImageUpdater;
+
+	private DoubleSupplier thumbnailRadiusFactor;
+
+	/**
+	 * If <code>true</code>, the graph is being exported and missing thumbnails
+	 * must be generated in the painting thread.
+	 */
+	private volatile boolean exporting;
+
 	/*
 	 * CONSTRUCTOR
 	 */
@@ -162,6 +181,112 @@ public class JGraphXAdapter extends mxGraph implements GraphListener< Spot, Defa
 		return cellToVertexMap.get( cell );
 	}
 
+	/**
+	 * Sets the source of the thumbnails of the cells whose image style is
+	 * {@link SpotImageUpdater#THUMBNAIL_STYLE}.
+	 *
+	 * @param spotImageUpdater
+	 *            the thumbnail source, may be <code>null</code>.
+	 * @param radiusFactor
+	 *            supplies the current thumbnail radius factor.
+	 */
+	public void setSpotImageUpdater( final SpotImageUpdater spotImageUpdater, final DoubleSupplier radiusFactor )
+	{
+		this.spotImageUpdater = spotImageUpdater;
+		this.thumbnailRadiusFactor = radiusFactor;
+	}
+
+	/**
+	 * Returns the thumbnail of the spot of the specified cell.
+	 *
+	 * @param cell
+	 *            the cell.
+	 * @param wait
+	 *            if <code>true</code>, a missing thumbnail is generated in the
+	 *            calling thread. Otherwise its generation is queued and
+	 *            <code>null</code> is returned.
+	 * @return the thumbnail, or <code>null</code>.
+	 */
+	public BufferedImage getThumbnailFor( final mxICell cell, final boolean wait )
+	{
+		final Spot spot = cellToVertexMap.get( cell );
+		if ( spot == null || spotImageUpdater == null )
+			return null;
+		final double radiusFactor = thumbnailRadiusFactor.getAsDouble();
+		return wait
+				? spotImageUpdater.getImage( spot, radiusFactor )
+				: spotImageUpdater.getThumbnail( spot, radiusFactor );
+	}
+
+	/**
+	 * Returns the thumbnail of the spot of the specified cell, generated in the
+	 * calling thread if the graph is being exported, queued otherwise.
+	 *
+	 * @param cell
+	 *            the cell.
+	 * @return the thumbnail, or <code>null</code>.
+	 * @see #setExporting(boolean)
+	 */
+	public BufferedImage getThumbnailFor( final mxICell cell )
+	{
+		return getThumbnailFor( cell, exporting );
+	}
+
+	/**
+	 * Sets whether this graph is being exported. While it is, the thumbnails
+	 * painted are generated synchronously instead of being queued, so that
+	 * images rendered off-screen contain all of them.
+	 *
+	 * @param exporting
+	 *            whether the graph is being exported.
+	 */
+	public void setExporting( final boolean exporting )
+	{
+		this.exporting = exporting;
+	}
+
+	public boolean isExporting()
+	{
+		return exporting;
+	}
+
+	/**
+	 * Returns the XML encoding of the graph model, with the thumbnails served
+	 * by the {@link SpotImageUpdater} embedded in the cell styles as image
+	 * data, so that the file can be read without TrackMate.
+	 *
+	 * @return the XML string.
+	 */
+	public String encodeModel()
+	{
+		final List< mxCell > cells = new ArrayList<>();
+		final List< String > styles = new ArrayList<>();
+		final double radiusFactor = ( thumbnailRadiusFactor == null ) ? 1. : thumbnailRadiusFactor.getAsDouble();
+		try
+		{
+			if ( spotImageUpdater != null )
+			{
+				for ( final Map.Entry< mxCell, Spot > entry : cellToVertexMap.entrySet() )
+				{
+					final mxCell cell = entry.getKey();
+					final String style = cell.getStyle();
+					if ( style == null || !style.contains( SpotImageUpdater.THUMBNAIL_STYLE ) )
+						continue;
+					final String imageStr = spotImageUpdater.getImageString( entry.getValue(), radiusFactor );
+					cells.add( cell );
+					styles.add( style );
+					cell.setStyle( mxStyleUtils.setStyle( style, mxConstants.STYLE_IMAGE, "data:image/base64," + imageStr ) );
+				}
+			}
+			return mxXmlUtils.getXml( new mxCodec().encode( getModel() ) );
+		}
+		finally
+		{
+			for ( int i = 0; i < cells.size(); i++ )
+				cells.get( i ).setStyle( styles.get( i ) );
+		}
+	}
+
 	public DefaultWeightedEdge getEdgeFor( final mxICell cell )
 	{
 		return cellToEdgeMap.get( cell );
@@ -48,7 +48,6 @@ import com.itextpdf.text.pdf.PdfContentByte;
 import com.itextpdf.text.pdf.PdfWriter;
 import com.mxgraph.canvas.mxICanvas;
 import com.mxgraph.canvas.mxSvgCanvas;
-import com.mxgraph.io.mxCodec;
 import com.mxgraph.io.mxGdCodec;
 import com.mxgraph.swing.mxGraphComponent;
 import com.mxgraph.util.mxCellRenderer;
@@ -58,7 +57,6 @@ import com.mxgraph.util.mxUtils;
 import com.mxgraph.util.mxXmlUtils;
 import com.mxgraph.util.png.mxPngEncodeParam;
 import com.mxgraph.util.png.mxPngImageEncoder;
-import com.mxgraph.view.mxGraph;
 
 import fiji.plugin.trackmate.util.DefaultFileFilter;
 
@@ -85,14 +83,13 @@ public class SaveAction extends AbstractAction
 	protected void saveXmlPng( final TrackSchemeFrame frame, final String filename, final Color bg ) throws IOException
 	{
 		final mxGraphComponent graphComponent = trackScheme.getGUI().graphComponent;
-		final mxGraph graph = trackScheme.getGraph();
+		final JGraphXAdapter graph = trackScheme.getGraph();
 
 		// Creates the image for the PNG file
 		final BufferedImage image = mxCellRenderer.createBufferedImage( graph, null, 1, bg, graphComponent.isAntiAlias(), null, graphComponent.getCanvas() );
 
 		// Creates the URL-encoded XML data
-		final mxCodec codec = new mxCodec();
-		final String xml = URLEncoder.encode( mxXmlUtils.getXml( codec.encode( graph.getModel() ) ), "UTF-8" );
+		final String xml = URLEncoder.encode( graph.encodeModel(), "UTF-8" );
 		final mxPngEncodeParam param = mxPngEncodeParam.getDefaultEncodeParam( image );
 		param.setCompressedText( new String[] { "mxGraphModel", xml } );
 
@@ -111,7 +108,7 @@ public class SaveAction extends AbstractAction
 	public void actionPerformed( final ActionEvent e )
 	{
 		final mxGraphComponent graphComponent = trackScheme.getGUI().graphComponent;
-		final mxGraph graph = trackScheme.getGraph();
+		final JGraphXAdapter graph = trackScheme.getGraph();
 		FileFilter selectedFilter = null;
 		final DefaultFileFilter xmlPngFilter = new DefaultFileFilter( ".png", "PNG+XML file (.png)" );
 		final FileFilter vmlFileFilter = new DefaultFileFilter( ".html", "VML file (.html)" );
@@ -188,6 +185,8 @@ public class SaveAction extends AbstractAction
 		if ( new File( filename ).exists() && JOptionPane.showConfirmDialog( graphComponent, "Overwrite existing file?" ) != JOptionPane.YES_OPTION )
 		{ return; }
 
+		// Generate the missing thumbnails while painting the exported graph.
+		graph.setExporting( true );
 		try
 		{
 			final String ext = filename.substring( filename.lastIndexOf( '.' ) + 1 );
@@ -220,9 +219,7 @@ public class SaveAction extends AbstractAction
 			}
 			else if ( ext.equalsIgnoreCase( "mxe" ) || ext.equalsIgnoreCase( "xml" ) )
 			{
-				final mxCodec codec = new mxCodec();
-				final String xml = mxXmlUtils.getXml( codec.encode( graph.getModel() ) );
-				mxUtils.writeFile( xml, filename );
+				mxUtils.writeFile( graph.encodeModel(), filename );
 
 			}
 			else if ( ext.equalsIgnoreCase( "txt" ) )
@@ -270,6 +267,10 @@ public class SaveAction extends AbstractAction
 			ex.printStackTrace();
 			JOptionPane.showMessageDialog( graphComponent, ex.toString(), "Error", JOptionPane.ERROR_MESSAGE );
 		}
+		finally
+		{
+			graph.setExporting( false );
+		}
 	}
 
 	private void exportGraphToPdf( final String filename )
@@ -76,6 +76,59 @@ public class SpotIconGrabber< T extends RealType< T > >
 	 *            this radius.
 	 */
 	public String getImageString( final Spot spot, final double radiusFactor )
+	{
+		final ImageProcessor ip = crop( spot, radiusFactor );
+		ip.resetMinAndMax();
+		return toImageString( ip.getBufferedImage() );
+	}
+
+	/**
+	 * Returns the thumbnail image of the specified spot, displayed with the
+	 * specified display range.
+	 *
+	 * @param spot
+	 *            the spot to generate a thumbnail image from.
+	 * @param radiusFactor
+	 *            a factor that determines the size of the thumbnail. The
+	 *            thumbnail will have a size equal to the spot diameter times
+	 *            this radius.
+	 * @param displayMin
+	 *            the pixel value displayed as black.
+	 * @param displayMax
+	 *            the pixel value displayed as white.
+	 * @return a new 8-bit image.
+	 */
+	public BufferedImage getImage( final Spot spot, final double radiusFactor, final double displayMin, final double displayMax )
+	{
+		final ImageProcessor ip = crop( spot, radiusFactor );
+		ip.setMinAndMax( displayMin, displayMax );
+		return ip.getBufferedImage();
+	}
+
+	/**
+	 * Encodes the specified image as a base64 PNG string, as used in the image
+	 * style of JGraphX cells.
+	 *
+	 * @param image
+	 *            the image to encode.
+	 * @return the image string, or an empty string if it could not be encoded.
+	 */
+	public static String toImageString( final BufferedImage image )
+	{
+		final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		try
+		{
+			ImageIO.write( image, "png", bos );
+			return mxBase64.encodeToString( bos.toByteArray(), false );
+		}
+		catch ( final IOException e )
+		{
+			e.printStackTrace();
+			return "";
+		}
+	}
+
+	private ImageProcessor crop( final Spot spot, final double radiusFactor )
 	{
 		// Get crop coordinates
 		final double[] calibration = TMUtils.getSpatialCalibration( img );
@@ -104,22 +157,7 @@ public class SpotIconGrabber< T extends RealType< T > >
 
 		// Convert to ImagePlus
 		final ImagePlus imp = ImageJFunctions.wrap( crop, crop.toString() );
-		final ImageProcessor ip = imp.getProcessor();
-		ip.resetMinAndMax();
-
-		// Convert to base64
-		final ByteArrayOutputStream bos = new ByteArrayOutputStream();
-		final BufferedImage lImg = ip.getBufferedImage();
-		try
-		{
-			ImageIO.write( lImg, "png", bos );
-			return mxBase64.encodeToString( bos.toByteArray(), false );
-		}
-		catch ( final IOException e )
-		{
-			e.printStackTrace();
-			return "";
-		}
+		return imp.getProcessor();
 	}
 
 	/**
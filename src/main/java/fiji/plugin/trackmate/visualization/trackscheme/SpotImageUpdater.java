@@ -21,22 +21,85 @@
  */
 package fiji.plugin.trackmate.visualization.trackscheme;
 
+import java.awt.image.BufferedImage;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+
 import fiji.plugin.trackmate.Settings;
 import fiji.plugin.trackmate.Spot;
 import fiji.plugin.trackmate.util.TMUtils;
+import fiji.plugin.trackmate.util.Threads;
+import ij.ImagePlus;
 import net.imagej.ImgPlus;
 
+/**
+ * Generates and caches the thumbnail images of spots displayed in
+ * TrackScheme.
+ * <p>
+ * Thumbnails are stored as {@link BufferedImage}s in a least-recently-used
+ * cache bounded in number of pixels. They are keyed by spot ID, channel,
+ * radius factor and display range, as well as by the spot position and radius
+ * so that a moved spot gets a new thumbnail. Missing thumbnails can be
+ * requested without blocking with
+ * {@link #getThumbnail(Spot, double)}: they are then generated on a small pool
+ * of worker threads, lowest frame first so that each worker can reuse the
+ * hyperslice of the previous one, and the listeners registered with
+ * {@link #addThumbnailListener(Runnable)} are notified when they are ready.
+ *
+ * @author Jean-Yves Tinevez
+ */
 public class SpotImageUpdater
 {
 
-	private int previousFrame;
+	/**
+	 * Value of the image style of the JGraphX cells whose thumbnail is served
+	 * by a {@link SpotImageUpdater} instead of being embedded in the style.
+	 */
+	public static final String THUMBNAIL_STYLE = "trackscheme-thumbnail";
 
-	private int previousChannel;
+	/** Default cache capacity, in pixels: 64 MB of ARGB thumbnails. */
+	private static final long DEFAULT_CAPACITY = 16l * 1024l * 1024l;
 
-	private SpotIconGrabber< ? > grabber;
+	private static final int N_WORKERS = Math.max( 1, Math.min( 4, Runtime.getRuntime().availableProcessors() / 2 ) );
 
 	private final Settings settings;
 
+	private final long capacity;
+
+	/** The cache, in access order. Guarded by this. */
+	private final LinkedHashMap< ThumbnailKey, BufferedImage > cache;
+
+	/** Number of pixels in the cache. Guarded by this. */
+	private long nPixels;
+
+	/** Thumbnails to generate. Guarded by this. */
+	private final PriorityQueue< Request > queue;
+
+	/** Keys of the queued thumbnails. Guarded by this. */
+	private final Set< ThumbnailKey > queued;
+
+	/** Number of workers draining the queue. Guarded by this. */
+	private int nWorkers;
+
+	/** Sequence number of requests, to keep them in order within a frame. */
+	private long sequence;
+
+	private ExecutorService executor;
+
+	private final CopyOnWriteArrayList< Runnable > listeners = new CopyOnWriteArrayList<>();
+
+	/**
+	 * Per-thread grabber for synchronous calls, reused as long as the frame and
+	 * channel do not change.
+	 */
+	private final ThreadLocal< Grabber > grabbers = ThreadLocal.withInitial( Grabber::new );
+
 	/**
 	 * Instantiates a new spot image updater.
 	 *
@@ -45,17 +108,32 @@ public class SpotImageUpdater
 	 *            and the target channel.
 	 */
 	public SpotImageUpdater( final Settings settings )
+	{
+		this( settings, DEFAULT_CAPACITY );
+	}
+
+	/**
+	 * Instantiates a new spot image updater.
+	 *
+	 * @param settings
+	 *            the {@link Settings} object from which we read the raw image
+	 *            and the target channel.
+	 * @param capacity
+	 *            the maximal number of pixels kept in the thumbnail cache.
+	 */
+	public SpotImageUpdater( final Settings settings, final long capacity )
 	{
 		this.settings = settings;
-		this.previousFrame = -1;
-		this.previousChannel = -1;
+		this.capacity = capacity;
+		this.cache = new LinkedHashMap<>( 256, 0.75f, true );
+		this.queue = new PriorityQueue<>();
+		this.queued = new HashSet<>();
 	}
 
 	/**
 	 * Returns the image string of the given spot, based on the raw images
-	 * contained in the given model. For performance, the image at target frame
-	 * is stored for subsequent calls of this method. So it is a good idea to
-	 * group calls to this method for spots that belong to the same frame.
+	 * contained in the given model. The thumbnail is taken from the cache or
+	 * generated in the calling thread.
 	 *
 	 * @param radiusFactor
 	 *            a factor that determines the size of the thumbnail. The
@@ -63,24 +141,316 @@ public class SpotImageUpdater
 	 *            this radius.
 	 * @return the image string.
 	 */
-	@SuppressWarnings( { "rawtypes", "unchecked" } )
 	public String getImageString( final Spot spot, final double radiusFactor )
 	{
-		final int frame = spot.getFeature( Spot.FRAME ).intValue();
-		final int targetChannel = settings.imp.getC() - 1;
-		if ( frame == previousFrame && targetChannel == previousChannel )
+		return SpotIconGrabber.toImageString( getImage( spot, radiusFactor ) );
+	}
+
+	/**
+	 * Returns the thumbnail image of the given spot, taken from the cache or
+	 * generated in the calling thread. For performance, the image at target
+	 * frame is stored for subsequent calls of this method. So it is a good
+	 * idea to group calls to this method for spots that belong to the same
+	 * frame.
+	 *
+	 * @param spot
+	 *            the spot.
+	 * @param radiusFactor
+	 *            a factor that determines the size of the thumbnail.
+	 * @return the thumbnail image.
+	 */
+	public BufferedImage getImage( final Spot spot, final double radiusFactor )
+	{
+		final ThumbnailKey key = keyFor( spot, radiusFactor );
+		final BufferedImage cached = get( key );
+		if ( cached != null )
+			return cached;
+
+		final BufferedImage image = grabbers.get().grab( spot, key );
+		put( key, image );
+		return image;
+	}
+
+	/**
+	 * Returns the thumbnail image of the given spot if it is in the cache.
+	 * Otherwise, queues its generation and returns <code>null</code>. The
+	 * thumbnail listeners are notified when it is ready.
+	 *
+	 * @param spot
+	 *            the spot.
+	 * @param radiusFactor
+	 *            a factor that determines the size of the thumbnail.
+	 * @return the thumbnail image, or <code>null</code> if it is not ready
+	 *         yet.
+	 */
+	public BufferedImage getThumbnail( final Spot spot, final double radiusFactor )
+	{
+		final ThumbnailKey key = keyFor( spot, radiusFactor );
+		synchronized ( this )
+		{
+			final BufferedImage cached = cache.get( key );
+			if ( cached != null )
+				return cached;
+			if ( queued.add( key ) )
+			{
+				queue.add( new Request( spot, key, sequence++ ) );
+				if ( nWorkers < N_WORKERS )
+				{
+					nWorkers++;
+					if ( executor == null )
+						executor = Threads.newCachedThreadPool();
+					executor.execute( this::drain );
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Registers a listener notified, from a worker thread, each time a
+	 * requested thumbnail has been generated.
+	 *
+	 * @param listener
+	 *            the listener.
+	 */
+	public void addThumbnailListener( final Runnable listener )
+	{
+		listeners.add( listener );
+	}
+
+	public void removeThumbnailListener( final Runnable listener )
+	{
+		listeners.remove( listener );
+	}
+
+	/**
+	 * Empties the cache and discards pending requests.
+	 */
+	public synchronized void clear()
+	{
+		cache.clear();
+		nPixels = 0;
+		queue.clear();
+		queued.clear();
+	}
+
+	/*
+	 * PRIVATE METHODS
+	 */
+
+	private void drain()
+	{
+		final Grabber grabber = new Grabber();
+		while ( true )
 		{
-			// Keep the same image than in memory
+			final Request request;
+			synchronized ( this )
+			{
+				request = queue.poll();
+				if ( request == null )
+				{
+					nWorkers--;
+					return;
+				}
+			}
+
+			BufferedImage image = null;
+			boolean grabbed = false;
+			try
+			{
+				image = grabber.grab( request.spot, request.key );
+				grabbed = true;
+			}
+			finally
+			{
+				synchronized ( this )
+				{
+					// Cleared in the meantime?
+					final boolean wanted = queued.remove( request.key );
+					if ( !grabbed )
+					{
+						// This worker dies: hand the rest of the queue over.
+						if ( queue.isEmpty() )
+							nWorkers--;
+						else
+							executor.execute( this::drain );
+					}
+					else if ( wanted )
+					{
+						put( request.key, image );
+					}
+					else
+					{
+						image = null;
+					}
+				}
+			}
+			if ( image == null )
+				continue;
+			for ( final Runnable listener : listeners )
+				listener.run();
 		}
-		else
+	}
+
+	private synchronized BufferedImage get( final ThumbnailKey key )
+	{
+		return cache.get( key );
+	}
+
+	private synchronized void put( final ThumbnailKey key, final BufferedImage image )
+	{
+		final BufferedImage previous = cache.put( key, image );
+		if ( previous != null )
+			nPixels -= pixels( previous );
+		nPixels += pixels( image );
+
+		// Evict least recently used, but keep the one we just added.
+		final Iterator< BufferedImage > it = cache.values().iterator();
+		while ( nPixels > capacity && cache.size() > 1 )
 		{
-			final ImgPlus img = TMUtils.rawWraps( settings.imp );
-			final ImgPlus< ? > imgCT = TMUtils.hyperSlice( img, targetChannel, frame );
+			nPixels -= pixels( it.next() );
+			it.remove();
+		}
+	}
+
+	private static long pixels( final BufferedImage image )
+	{
+		return ( long ) image.getWidth() * image.getHeight();
+	}
+
+	private ThumbnailKey keyFor( final Spot spot, final double radiusFactor )
+	{
+		final ImagePlus imp = settings.imp;
+		return new ThumbnailKey( spot, imp.getC() - 1, radiusFactor, imp.getDisplayRangeMin(), imp.getDisplayRangeMax() );
+	}
+
+	/**
+	 * Extracts thumbnails, keeping the hyperslice of the last frame and channel
+	 * it was used for.
+	 */
+	private final class Grabber
+	{
+
+		private int frame = -1;
+
+		private int channel = -1;
+
+		private SpotIconGrabber< ? > grabber;
+
+		@SuppressWarnings( { "rawtypes", "unchecked" } )
+		private BufferedImage grab( final Spot spot, final ThumbnailKey key )
+		{
+			final int targetFrame = spot.getFeature( Spot.FRAME ).intValue();
+			if ( targetFrame != frame || key.channel != channel )
+			{
+				final ImgPlus img = TMUtils.rawWraps( settings.imp );
+				final ImgPlus< ? > imgCT = TMUtils.hyperSlice( img, key.channel, targetFrame );
+				grabber = new SpotIconGrabber( imgCT );
+				frame = targetFrame;
+				channel = key.channel;
+			}
+			return grabber.getImage( spot, key.radiusFactor, key.displayMin, key.displayMax );
+		}
+	}
+
+	private static final class Request implements Comparable< Request >
+	{
+
+		private final Spot spot;
 
-			grabber = new SpotIconGrabber( imgCT );
-			previousFrame = frame;
-			previousChannel = targetChannel;
+		private final ThumbnailKey key;
+
+		private final int frame;
+
+		private final long sequence;
+
+		private Request( final Spot spot, final ThumbnailKey key, final long sequence )
+		{
+			this.spot = spot;
+			this.key = key;
+			this.frame = spot.getFeature( Spot.FRAME ).intValue();
+			this.sequence = sequence;
+		}
+
+		@Override
+		public int compareTo( final Request o )
+		{
+			if ( frame != o.frame )
+				return Integer.compare( frame, o.frame );
+			return Long.compare( sequence, o.sequence );
+		}
+	}
+
+	private static final class ThumbnailKey
+	{
+
+		private final int spotID;
+
+		private final int channel;
+
+		private final double radiusFactor;
+
+		private final double displayMin;
+
+		private final double displayMax;
+
+		private final double x;
+
+		private final double y;
+
+		private final double z;
+
+		private final double radius;
+
+		private final int hash;
+
+		private ThumbnailKey( final Spot spot, final int channel, final double radiusFactor, final double displayMin, final double displayMax )
+		{
+			this.spotID = spot.ID();
+			this.channel = channel;
+			this.radiusFactor = radiusFactor;
+			this.displayMin = displayMin;
+			this.displayMax = displayMax;
+			this.x = spot.getDoublePosition( 0 );
+			this.y = spot.getDoublePosition( 1 );
+			this.z = spot.getDoublePosition( 2 );
+			this.radius = spot.getFeature( Spot.RADIUS ).doubleValue();
+
+			int h = spotID;
+			h = 31 * h + channel;
+			h = 31 * h + Double.hashCode( radiusFactor );
+			h = 31 * h + Double.hashCode( displayMin );
+			h = 31 * h + Double.hashCode( displayMax );
+			h = 31 * h + Double.hashCode( x );
+			h = 31 * h + Double.hashCode( y );
+			h = 31 * h + Double.hashCode( z );
+			h = 31 * h + Double.hashCode( radius );
+			this.hash = h;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return hash;
+		}
+
+		@Override
+		public boolean equals( final Object obj )
+		{
+			if ( this == obj )
+				return true;
+			if ( !( obj instanceof ThumbnailKey ) )
+				return false;
+			final ThumbnailKey o = ( ThumbnailKey ) obj;
+			return spotID == o.spotID
+					&& channel == o.channel
+					&& Double.compare( radiusFactor, o.radiusFactor ) == 0
+					&& Double.compare( displayMin, o.displayMin ) == 0
+					&& Double.compare( displayMax, o.displayMax ) == 0
+					&& Double.compare( x, o.x ) == 0
+					&& Double.compare( y, o.y ) == 0
+					&& Double.compare( z, o.z ) == 0
+					&& Double.compare( radius, o.radius ) == 0;
 		}
-		return grabber.getImageString( spot, radiusFactor );
 	}
 }
@@ -37,6 +37,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.swing.JViewport;
 import javax.swing.SwingUtilities;
@@ -144,11 +145,30 @@ public class TrackScheme extends AbstractTrackMateModelView
 	private int unlaidSpotColumn = 2;
 
 	/**
-	 * The instance in charge of generating the string image representation of
-	 * spots imported in this view. If <code>null</code>, nothing is done.
+	 * The instance in charge of generating the thumbnail images of spots
+	 * imported in this view. If <code>null</code>, nothing is done.
 	 */
 	private SpotImageUpdater spotImageUpdater;
 
+	/**
+	 * Whether a repaint for newly generated thumbnails is already scheduled.
+	 */
+	private final AtomicBoolean thumbnailRepaintPending = new AtomicBoolean( false );
+
+	/**
+	 * Repaints the graph once for all the thumbnails generated since the last
+	 * repaint.
+	 */
+	private final Runnable thumbnailRepainter = () -> {
+		if ( !thumbnailRepaintPending.compareAndSet( false, true ) )
+			return;
+		SwingUtilities.invokeLater( () -> {
+			thumbnailRepaintPending.set( false );
+			if ( gui.graphComponent != null )
+				gui.graphComponent.getGraphControl().repaint();
+		} );
+	};
+
 	TrackSchemeStylist stylist;
 
 	/**
@@ -176,6 +196,8 @@ public class TrackScheme extends AbstractTrackMateModelView
 			public void windowClosing( final WindowEvent e )
 			{
 				model.removeModelChangeListener( TrackScheme.this );
+				if ( spotImageUpdater != null )
+					spotImageUpdater.removeThumbnailListener( thumbnailRepainter );
 			}
 		} );
 		gui.setLocationByPlatform( true );
@@ -189,7 +211,13 @@ public class TrackScheme extends AbstractTrackMateModelView
 
 	public void setSpotImageUpdater( final SpotImageUpdater spotImageUpdater )
 	{
+		if ( this.spotImageUpdater != null )
+			this.spotImageUpdater.removeThumbnailListener( thumbnailRepainter );
 		this.spotImageUpdater = spotImageUpdater;
+		if ( spotImageUpdater != null )
+			spotImageUpdater.addThumbnailListener( thumbnailRepainter );
+		if ( graph != null )
+			graph.setSpotImageUpdater( spotImageUpdater, displaySettings::getSpotDisplayRadius );
 	}
 
 	public SelectionModel getSelectionModel()
@@ -266,6 +294,7 @@ public class TrackScheme extends AbstractTrackMateModelView
 		lGraph.setGridEnabled( false );
 		lGraph.setLabelsVisible( true );
 		lGraph.setDropEnabled( false );
+		lGraph.setSpotImageUpdater( spotImageUpdater, displaySettings::getSpotDisplayRadius );
 
 		// Cells removed from JGraphX
 		lGraph.addListener( mxEvent.CELLS_REMOVED, new CellRemovalListener() );
@@ -308,10 +337,9 @@ public class TrackScheme extends AbstractTrackMateModelView
 			// Update cell look
 			if ( spotImageUpdater != null && doThumbnailCapture )
 			{
+				// The thumbnail key follows the spot position and radius.
 				String style = cell.getStyle();
-				final double radiusFactor = displaySettings.getSpotDisplayRadius();
-				final String imageStr = spotImageUpdater.getImageString( spot, radiusFactor );
-				style = mxStyleUtils.setStyle( style, mxConstants.STYLE_IMAGE, "data:image/base64," + imageStr );
+				style = mxStyleUtils.setStyle( style, mxConstants.STYLE_IMAGE, SpotImageUpdater.THUMBNAIL_STYLE );
 				graph.getModel().setStyle( cell, style );
 			}
 		}
@@ -344,12 +372,8 @@ public class TrackScheme extends AbstractTrackMateModelView
 		final mxGeometry geometry = new mxGeometry( x, y, DEFAULT_CELL_WIDTH, DEFAULT_CELL_HEIGHT );
 		cellAdded.setGeometry( geometry );
 		// Set its style
-		final double radiusFactor = displaySettings.getSpotDisplayRadius();
 		if ( null != spotImageUpdater && doThumbnailCapture )
-		{
-			final String imageStr = spotImageUpdater.getImageString( spot, radiusFactor );
-			graph.getModel().setStyle( cellAdded, mxConstants.STYLE_IMAGE + "=" + "data:image/base64," + imageStr );
-		}
+			graph.getModel().setStyle( cellAdded, mxConstants.STYLE_IMAGE + "=" + SpotImageUpdater.THUMBNAIL_STYLE );
 		return cellAdded;
 	}
 
@@ -1073,57 +1097,28 @@ public class TrackScheme extends AbstractTrackMateModelView
 	}
 
 	/**
-	 * Captures and stores the thumbnail image that will be displayed in each
-	 * spot cell, when using styles that can display images.
+	 * Flags each spot cell to display its thumbnail, when using styles that
+	 * can display images. The thumbnails themselves are generated in the
+	 * background by the {@link SpotImageUpdater}, as cells get painted.
 	 */
 	private void createThumbnails()
 	{
-		// Group spots per frame
-		final Set< Integer > frames = model.getSpots().keySet();
-		final HashMap< Integer, HashSet< Spot > > spotPerFrame = new HashMap<>( frames.size() );
-		for ( final Integer frame : frames )
-			spotPerFrame.put( frame, new HashSet< Spot >( model.getSpots().getNSpots( frame, true ) ) ); // max
+		if ( null == spotImageUpdater )
+			return;
 
-		for ( final Integer trackID : model.getTrackModel().trackIDs( true ) )
+		graph.getModel().beginUpdate();
+		try
 		{
-			for ( final Spot spot : model.getTrackModel().trackSpots( trackID ) )
+			for ( final mxCell cell : graph.getVertexCells() )
 			{
-				final int frame = spot.getFeature( Spot.FRAME ).intValue();
-				spotPerFrame.get( frame ).add( spot );
+				String style = cell.getStyle();
+				style = mxStyleUtils.setStyle( style, mxConstants.STYLE_IMAGE, SpotImageUpdater.THUMBNAIL_STYLE );
+				graph.getModel().setStyle( cell, style );
 			}
 		}
-
-		// Set spot image to cell style
-		if ( null != spotImageUpdater )
+		finally
 		{
-			gui.logger.setStatus( "Collecting spot thumbnails." );
-			final double radiusFactor = displaySettings.getSpotDisplayRadius();
-			int index = 0;
-			try
-			{
-				graph.getModel().beginUpdate();
-
-				// Iterate per frame
-				for ( final Integer frame : frames )
-				{
-					for ( final Spot spot : spotPerFrame.get( frame ) )
-					{
-						final mxICell cell = graph.getCellFor( spot );
-						final String imageStr = spotImageUpdater.getImageString( spot, radiusFactor );
-						String style = cell.getStyle();
-						style = mxStyleUtils.setStyle( style, mxConstants.STYLE_IMAGE, "data:image/base64," + imageStr );
-						graph.getModel().setStyle( cell, style );
-
-					}
-					gui.logger.setProgress( ( double ) index++ / frames.size() );
-				}
-			}
-			finally
-			{
-				graph.getModel().endUpdate();
-				gui.logger.setProgress( 0d );
-				gui.logger.setStatus( "" );
-			}
+			graph.getModel().endUpdate();
 		}
 	}
 
@@ -1145,7 +1140,16 @@ public class TrackScheme extends AbstractTrackMateModelView
 
 	public void captureUndecorated()
 	{
-		final BufferedImage image = mxCellRenderer.createBufferedImage( graph, null, 1, Color.WHITE, true, null, gui.graphComponent.getCanvas() );
+		final BufferedImage image;
+		graph.setExporting( true );
+		try
+		{
+			image = mxCellRenderer.createBufferedImage( graph, null, 1, Color.WHITE, true, null, gui.graphComponent.getCanvas() );
+		}
+		finally
+		{
+			graph.setExporting( false );
+		}
 		final ImagePlus imp = new ImagePlus( "TrackScheme capture", image );
 		imp.show();
 	}
@@ -1159,7 +1163,15 @@ public class TrackScheme extends AbstractTrackMateModelView
 		final Dimension size = view.getViewSize();
 		final BufferedImage image = ( BufferedImage ) view.createImage( size.width, size.height );
 		final Graphics2D captureG = image.createGraphics();
-		view.paintComponents( captureG );
+		graph.setExporting( true );
+		try
+		{
+			view.paintComponents( captureG );
+		}
+		finally
+		{
+			graph.setExporting( false );
+		}
 		view.setViewPosition( currentPos );
 		final ImagePlus imp = new ImagePlus( "TrackScheme capture", image );
 		imp.show();
@@ -22,9 +22,14 @@
 package fiji.plugin.trackmate.visualization.trackscheme;
 
 import com.mxgraph.canvas.mxSvgCanvas;
+import com.mxgraph.model.mxICell;
 import com.mxgraph.util.mxConstants;
 import com.mxgraph.util.mxRectangle;
 import com.mxgraph.util.mxUtils;
+import com.mxgraph.view.mxCellState;
+import com.mxgraph.view.mxGraph;
+
+import java.awt.image.BufferedImage;
 
 import java.util.Map;
 
@@ -34,11 +39,28 @@ import org.w3c.dom.Element;
 public class TrackSchemeSvgCanvas extends mxSvgCanvas
 {
 
+	/** The state of the cell being drawn, to resolve its thumbnail. */
+	private mxCellState currentState;
+
 	public TrackSchemeSvgCanvas( Document document )
 	{
 		super( document );
 	}
 
+	@Override
+	public Object drawCell( mxCellState state )
+	{
+		currentState = state;
+		try
+		{
+			return super.drawCell( state );
+		}
+		finally
+		{
+			currentState = null;
+		}
+	}
+
 	@Override
 	public Element drawShape( int x, int y, int w, int h, Map< String, Object > style )
 	{
@@ -74,6 +96,8 @@ public class TrackSchemeSvgCanvas extends mxSvgCanvas
 		}
 
 		String img = getImageForStyle( style );
+		if ( SpotImageUpdater.THUMBNAIL_STYLE.equals( img ) )
+			img = getThumbnailString();
 
 		if ( img != null )
 		{
@@ -274,4 +298,21 @@ public class TrackSchemeSvgCanvas extends mxSvgCanvas
 		return arcSize;
 	}
 
+
+	/**
+	 * Embeds the thumbnail of the cell being drawn, which is not stored in its
+	 * style.
+	 */
+	private String getThumbnailString()
+	{
+		if ( currentState == null )
+			return null;
+		mxGraph graph = currentState.getView().getGraph();
+		if ( !( graph instanceof JGraphXAdapter ) )
+			return null;
+		BufferedImage thumbnail = ( ( JGraphXAdapter ) graph ).getThumbnailFor( ( mxICell ) currentState.getCell(), true );
+		if ( thumbnail == null )
+			return null;
+		return "data:image/base64," + SpotIconGrabber.toImageString( thumbnail );
+	}
 }
@@ -0,0 +1,257 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2010 - 2023 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.visualization.trackscheme;
+
+import static fiji.plugin.trackmate.gui.Icons.RESET_ZOOM_ICON;
+import static fiji.plugin.trackmate.gui.Icons.TRACK_SCHEME_ICON;
+import static fiji.plugin.trackmate.gui.Icons.ZOOM_IN_ICON;
+import static fiji.plugin.trackmate.gui.Icons.ZOOM_OUT_ICON;
+
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.swing.JButton;
+import javax.swing.JFrame;
+import javax.swing.JScrollPane;
+import javax.swing.JSplitPane;
+import javax.swing.JToolBar;
+import javax.swing.SwingUtilities;
+
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.ModelChangeEvent;
+import fiji.plugin.trackmate.SelectionChangeEvent;
+import fiji.plugin.trackmate.SelectionModel;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.gui.displaysettings.DisplaySettings;
+import fiji.plugin.trackmate.util.Threads;
+import fiji.plugin.trackmate.visualization.AbstractTrackMateModelView;
+
+/**
+ * A TrackScheme for very large lineages.
+ * <p>
+ * Unlike {@link TrackScheme}, it does not mirror the model in a JGraphX graph.
+ * The layout is computed into primitive arrays by
+ * {@link VirtualTrackSchemeLayout}, off the EDT, and
+ * {@link VirtualTrackSchemePanel} only paints what is in the viewport, with
+ * branches collapsed into bars when zoomed out. Spot selection is read from
+ * and written to the {@link SelectionModel}. There is no editing of links nor
+ * thumbnails.
+ *
+ * @author Jean-Yves Tinevez
+ */
+public class VirtualTrackScheme extends AbstractTrackMateModelView
+{
+
+	public static final String KEY = "VIRTUAL_TRACKSCHEME";
+
+	/**
+	 * Number of spots in tracks above which the virtualized TrackScheme is
+	 * preferred over the JGraphX one.
+	 */
+	public static final int SPOT_THRESHOLD = 50_000;
+
+	private static final Dimension DEFAULT_SIZE = new Dimension( 800, 600 );
+
+	private final JFrame frame;
+
+	private final VirtualTrackSchemePanel panel;
+
+	/** Computes the layouts one after the other, off the EDT. */
+	private final ExecutorService layoutExecutor;
+
+	/** Generation of the last layout requested. */
+	private final AtomicLong layoutRequested = new AtomicLong();
+
+	/** Generation of the last layout shown. Accessed on the EDT. */
+	private long layoutShown;
+
+	/*
+	 * CONSTRUCTOR
+	 */
+
+	public VirtualTrackScheme( final Model model, final SelectionModel selectionModel, final DisplaySettings displaySettings )
+	{
+		super( model, selectionModel, displaySettings );
+		this.panel = new VirtualTrackSchemePanel( model, selectionModel, displaySettings );
+		this.layoutExecutor = Threads.newSingleThreadExecutor();
+
+		final JScrollPane scrollPane = new JScrollPane( panel );
+		scrollPane.getVerticalScrollBar().setUnitIncrement( 16 );
+		scrollPane.getHorizontalScrollBar().setUnitIncrement( 16 );
+
+		final InfoPane infoPane = new InfoPane( model, selectionModel );
+		final JSplitPane splitPane = new JSplitPane( JSplitPane.HORIZONTAL_SPLIT, infoPane, scrollPane );
+		splitPane.setDividerLocation( 170 );
+
+		final JToolBar toolbar = new JToolBar();
+		toolbar.setFloatable( false );
+		final JButton zoomIn = new JButton( ZOOM_IN_ICON );
+		zoomIn.setToolTipText( "Zoom in" );
+		zoomIn.addActionListener( e -> panel.zoomIn() );
+		final JButton zoomOut = new JButton( ZOOM_OUT_ICON );
+		zoomOut.setToolTipText( "Zoom out" );
+		zoomOut.addActionListener( e -> panel.zoomOut() );
+		final JButton zoomFit = new JButton( RESET_ZOOM_ICON );
+		zoomFit.setToolTipText( "Fit all tracks in the window" );
+		zoomFit.addActionListener( e -> panel.zoomToFit() );
+		toolbar.add( zoomIn );
+		toolbar.add( zoomOut );
+		toolbar.add( zoomFit );
+
+		this.frame = new JFrame( "TrackScheme" );
+		frame.setIconImage( TRACK_SCHEME_ICON.getImage() );
+		frame.getContentPane().setLayout( new BorderLayout() );
+		frame.getContentPane().add( toolbar, BorderLayout.NORTH );
+		frame.getContentPane().add( splitPane, BorderLayout.CENTER );
+		frame.setSize( DEFAULT_SIZE );
+		frame.addWindowListener( new WindowAdapter()
+		{
+			@Override
+			public void windowClosing( final WindowEvent e )
+			{
+				model.removeModelChangeListener( VirtualTrackScheme.this );
+				selectionModel.removeSelectionChangeListener( VirtualTrackScheme.this );
+				layoutExecutor.shutdownNow();
+			}
+		} );
+		frame.setLocationByPlatform( true );
+		frame.setLocationRelativeTo( null );
+	}
+
+	/*
+	 * METHODS
+	 */
+
+	/**
+	 * Returns <code>true</code> if the tracks of the specified model are large
+	 * enough for the virtualized TrackScheme to be preferred.
+	 *
+	 * @param model
+	 *            the model.
+	 * @return whether to use the virtualized TrackScheme.
+	 */
+	public static boolean isPreferredFor( final Model model )
+	{
+		return model.getTrackModel().vertexSet().size() > SPOT_THRESHOLD;
+	}
+
+	@Override
+	public void render()
+	{
+		relayout( true );
+	}
+
+	@Override
+	public void refresh()
+	{
+		panel.repaint();
+	}
+
+	@Override
+	public void clear()
+	{}
+
+	@Override
+	public void centerViewOn( final Spot spot )
+	{
+		SwingUtilities.invokeLater( () -> panel.centerOn( spot ) );
+	}
+
+	@Override
+	public void selectionChanged( final SelectionChangeEvent event )
+	{
+		super.selectionChanged( event );
+		panel.repaint();
+	}
+
+	@Override
+	public void modelChanged( final ModelChangeEvent event )
+	{
+		switch ( event.getEventID() )
+		{
+		case ModelChangeEvent.MODEL_MODIFIED:
+		case ModelChangeEvent.TRACKS_COMPUTED:
+		case ModelChangeEvent.TRACKS_VISIBILITY_CHANGED:
+			relayout( false );
+			break;
+
+		default:
+			SwingUtilities.invokeLater( () -> {
+				panel.invalidateColorGenerators();
+				panel.repaint();
+			} );
+			break;
+		}
+	}
+
+	@Override
+	public Model getModel()
+	{
+		return model;
+	}
+
+	@Override
+	public String getKey()
+	{
+		return KEY;
+	}
+
+	/**
+	 * Recomputes the layout on the layout thread. Requests queued behind a
+	 * more recent one are skipped, and a layout is not shown if a more recent
+	 * one already is.
+	 *
+	 * @param show
+	 *            if <code>true</code>, the frame is shown and zoomed to fit
+	 *            once the layout is ready.
+	 */
+	private void relayout( final boolean show )
+	{
+		final long generation = layoutRequested.incrementAndGet();
+		layoutExecutor.execute( () -> {
+			// Superseded while queued? The frame is shown by the newer one.
+			if ( !show && generation != layoutRequested.get() )
+				return;
+
+			final long start = System.currentTimeMillis();
+			final VirtualTrackSchemeLayout layout = VirtualTrackSchemeLayout.compute( model );
+			final long end = System.currentTimeMillis();
+			SwingUtilities.invokeLater( () -> {
+				if ( generation > layoutShown )
+				{
+					layoutShown = generation;
+					panel.setTrackSchemeLayout( layout );
+				}
+				if ( show )
+				{
+					frame.setVisible( true );
+					panel.zoomToFit();
+					frame.setTitle( String.format( "TrackScheme - %d spots, laid out in %.1f s", layout.nSpots(), ( end - start ) / 1000d ) );
+				}
+			} );
+		} );
+	}
+}
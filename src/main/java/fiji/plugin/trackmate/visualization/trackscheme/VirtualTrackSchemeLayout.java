@@ -0,0 +1,652 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2010 - 2023 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.visualization.trackscheme;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.IntConsumer;
+
+import org.jgrapht.graph.DefaultEdge;
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.jgrapht.graph.SimpleDirectedGraph;
+import org.jgrapht.traverse.DepthFirstIterator;
+
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.TrackModel;
+import fiji.plugin.trackmate.graph.ConvexBranchesDecomposition;
+import fiji.plugin.trackmate.graph.ConvexBranchesDecomposition.TrackBranchDecomposition;
+import fiji.plugin.trackmate.graph.GraphUtils;
+import fiji.plugin.trackmate.graph.SortedDepthFirstIterator;
+import fiji.plugin.trackmate.graph.TimeDirectedNeighborIndex;
+
+/**
+ * The TrackScheme layout of a model, computed into primitive arrays instead of
+ * JGraphX cells.
+ * <p>
+ * The arrangement is the one of {@link TrackSchemeGraphLayout}: one lane per
+ * visible track, in track name order, and one row per frame. On top of it, the
+ * spots, edges and straight branches are indexed by row and column so that
+ * the items intersecting a viewport can be visited without iterating over the
+ * whole model. Instances are immutable snapshots: they are recomputed when the
+ * model changes.
+ *
+ * @author Jean-Yves Tinevez
+ */
+public class VirtualTrackSchemeLayout
+{
+
+	private static final int START_COLUMN = 1;
+
+	/** The spots laid out, in the order of the track iteration. */
+	final Spot[] spots;
+
+	/** The column of each spot. */
+	final int[] spotColumn;
+
+	/** The row, that is the frame, of each spot. */
+	final int[] spotRow;
+
+	/** The index of the lane of each spot. */
+	final int[] spotLane;
+
+	/** The edges of the visible tracks. */
+	final DefaultWeightedEdge[] edges;
+
+	/** The index of the source spot of each edge. */
+	final int[] edgeSource;
+
+	/** The index of the target spot of each edge. */
+	final int[] edgeTarget;
+
+	/** The track ID of each lane. */
+	final Integer[] laneTrackID;
+
+	/** The first column of each lane. */
+	final int[] laneFirstColumn;
+
+	/**
+	 * The column right after the last column of each lane, where the lane
+	 * separator is drawn. Sorted in ascending order.
+	 */
+	final int[] laneEndColumn;
+
+	/**
+	 * The column of each run. A run is a maximal set of spots linked one below
+	 * the other in the same column, that is a straight branch segment. Runs
+	 * are sorted by column, then by first row.
+	 */
+	final int[] runColumn;
+
+	/** The first row of each run. */
+	final int[] runFirstRow;
+
+	/** The last row of each run. */
+	final int[] runLastRow;
+
+	/** The index of the lane of each run. */
+	final int[] runLane;
+
+	/** The number of rows. */
+	final int nRows;
+
+	/** The number of columns. */
+	final int nColumns;
+
+	private final Map< Spot, Integer > spotIndex;
+
+	/** Spot indices, sorted by row then by column. */
+	private final int[] spotsByRow;
+
+	/** Start of each row in {@link #spotsByRow}, with one extra element. */
+	private final int[] spotRowStart;
+
+	/** Edge indices, sorted by the smallest row of their two spots. */
+	private final int[] edgesByRow;
+
+	/** Start of each row in {@link #edgesByRow}, with one extra element. */
+	private final int[] edgeRowStart;
+
+	/** The largest number of rows spanned by an edge. */
+	private final int maxEdgeSpan;
+
+	private final int nRuns;
+
+	/*
+	 * CONSTRUCTOR
+	 */
+
+	private VirtualTrackSchemeLayout(
+			final Spot[] spots,
+			final int[] spotColumn,
+			final int[] spotRow,
+			final int[] spotLane,
+			final Map< Spot, Integer > spotIndex,
+			final DefaultWeightedEdge[] edges,
+			final int[] edgeSource,
+			final int[] edgeTarget,
+			final Integer[] laneTrackID,
+			final int[] laneFirstColumn,
+			final int[] laneEndColumn,
+			final int nRows )
+	{
+		this.spots = spots;
+		this.spotColumn = spotColumn;
+		this.spotRow = spotRow;
+		this.spotLane = spotLane;
+		this.spotIndex = spotIndex;
+		this.edges = edges;
+		this.edgeSource = edgeSource;
+		this.edgeTarget = edgeTarget;
+		this.laneTrackID = laneTrackID;
+		this.laneFirstColumn = laneFirstColumn;
+		this.laneEndColumn = laneEndColumn;
+		this.nRows = nRows;
+
+		int maxColumn = laneEndColumn.length == 0 ? START_COLUMN : laneEndColumn[ laneEndColumn.length - 1 ];
+		for ( final int column : spotColumn )
+			maxColumn = Math.max( maxColumn, column );
+		this.nColumns = maxColumn + 1;
+
+		/*
+		 * Spots by row, then by column. We counting-sort on rows and sort each
+		 * row on packed (column, index) keys.
+		 */
+
+		final int nSpots = spots.length;
+		this.spotRowStart = new int[ nRows + 1 ];
+		for ( int i = 0; i < nSpots; i++ )
+			spotRowStart[ spotRow[ i ] + 1 ]++;
+		for ( int r = 0; r < nRows; r++ )
+			spotRowStart[ r + 1 ] += spotRowStart[ r ];
+
+		final long[] keys = new long[ nSpots ];
+		final int[] fill = Arrays.copyOf( spotRowStart, nRows );
+		for ( int i = 0; i < nSpots; i++ )
+			keys[ fill[ spotRow[ i ] ]++ ] = ( ( long ) spotColumn[ i ] << 32 ) | i;
+		this.spotsByRow = new int[ nSpots ];
+		for ( int r = 0; r < nRows; r++ )
+		{
+			Arrays.sort( keys, spotRowStart[ r ], spotRowStart[ r + 1 ] );
+			for ( int p = spotRowStart[ r ]; p < spotRowStart[ r + 1 ]; p++ )
+				spotsByRow[ p ] = ( int ) keys[ p ];
+		}
+
+		/*
+		 * Edges by their smallest row.
+		 */
+
+		final int nEdges = edges.length;
+		this.edgeRowStart = new int[ nRows + 1 ];
+		int span = 0;
+		for ( int e = 0; e < nEdges; e++ )
+		{
+			final int rs = spotRow[ edgeSource[ e ] ];
+			final int rt = spotRow[ edgeTarget[ e ] ];
+			edgeRowStart[ Math.min( rs, rt ) + 1 ]++;
+			span = Math.max( span, Math.abs( rs - rt ) );
+		}
+		this.maxEdgeSpan = span;
+		for ( int r = 0; r < nRows; r++ )
+			edgeRowStart[ r + 1 ] += edgeRowStart[ r ];
+		final int[] edgeFill = Arrays.copyOf( edgeRowStart, nRows );
+		this.edgesByRow = new int[ nEdges ];
+		for ( int e = 0; e < nEdges; e++ )
+			edgesByRow[ edgeFill[ Math.min( spotRow[ edgeSource[ e ] ], spotRow[ edgeTarget[ e ] ] ) ]++ ] = e;
+
+		/*
+		 * Runs. We order spots by column then by row, with a stable counting
+		 * sort of the row-sorted spots, and cut wherever two consecutive spots
+		 * of a column are not linked by an edge.
+		 */
+
+		final int[] columnStart = new int[ nColumns + 1 ];
+		for ( int i = 0; i < nSpots; i++ )
+			columnStart[ spotColumn[ i ] + 1 ]++;
+		for ( int c = 0; c < nColumns; c++ )
+			columnStart[ c + 1 ] += columnStart[ c ];
+		final int[] byColumn = new int[ nSpots ];
+		final int[] position = new int[ nSpots ];
+		for ( final int s : spotsByRow )
+		{
+			final int p = columnStart[ spotColumn[ s ] ]++;
+			byColumn[ p ] = s;
+			position[ s ] = p;
+		}
+
+		final boolean[] linkedToPrevious = new boolean[ nSpots ];
+		for ( int e = 0; e < nEdges; e++ )
+		{
+			final int ps = position[ edgeSource[ e ] ];
+			final int pt = position[ edgeTarget[ e ] ];
+			if ( spotColumn[ edgeSource[ e ] ] != spotColumn[ edgeTarget[ e ] ] || Math.abs( ps - pt ) != 1 )
+				continue;
+			linkedToPrevious[ Math.max( ps, pt ) ] = true;
+		}
+
+		final int[] rc = new int[ nSpots ];
+		final int[] rf = new int[ nSpots ];
+		final int[] rl = new int[ nSpots ];
+		final int[] rlane = new int[ nSpots ];
+		int n = 0;
+		for ( int p = 0; p < nSpots; p++ )
+		{
+			final int s = byColumn[ p ];
+			if ( p > 0 && linkedToPrevious[ p ] && spotColumn[ byColumn[ p - 1 ] ] == spotColumn[ s ] )
+			{
+				rl[ n - 1 ] = spotRow[ s ];
+				continue;
+			}
+			rc[ n ] = spotColumn[ s ];
+			rf[ n ] = spotRow[ s ];
+			rl[ n ] = spotRow[ s ];
+			rlane[ n ] = spotLane[ s ];
+			n++;
+		}
+		this.nRuns = n;
+		this.runColumn = Arrays.copyOf( rc, n );
+		this.runFirstRow = Arrays.copyOf( rf, n );
+		this.runLastRow = Arrays.copyOf( rl, n );
+		this.runLane = Arrays.copyOf( rlane, n );
+	}
+
+	/*
+	 * METHODS
+	 */
+
+	/**
+	 * Returns the index of the specified spot in this layout, or -1 if it is
+	 * not laid out.
+	 *
+	 * @param spot
+	 *            the spot.
+	 * @return the spot index.
+	 */
+	public int indexOf( final Spot spot )
+	{
+		final Integer index = spotIndex.get( spot );
+		return index == null ? -1 : index.intValue();
+	}
+
+	/**
+	 * Returns the index of the spot at the specified cell, or -1 if the cell is
+	 * empty.
+	 *
+	 * @param column
+	 *            the column.
+	 * @param row
+	 *            the row.
+	 * @return the spot index.
+	 */
+	public int spotAt( final int column, final int row )
+	{
+		if ( row < 0 || row >= nRows )
+			return -1;
+		final int p = firstInRow( row, column );
+		if ( p < spotRowStart[ row + 1 ] && spotColumn[ spotsByRow[ p ] ] == column )
+			return spotsByRow[ p ];
+		return -1;
+	}
+
+	/**
+	 * Visits the index of every spot lying in the specified range of rows and
+	 * columns, bounds included.
+	 *
+	 * @param firstRow
+	 *            the first row.
+	 * @param lastRow
+	 *            the last row.
+	 * @param firstColumn
+	 *            the first column.
+	 * @param lastColumn
+	 *            the last column.
+	 * @param consumer
+	 *            the consumer of spot indices.
+	 */
+	public void forEachSpot( final int firstRow, final int lastRow, final int firstColumn, final int lastColumn, final IntConsumer consumer )
+	{
+		final int from = Math.max( 0, firstRow );
+		final int to = Math.min( nRows - 1, lastRow );
+		for ( int r = from; r <= to; r++ )
+		{
+			for ( int p = firstInRow( r, firstColumn ); p < spotRowStart[ r + 1 ]; p++ )
+			{
+				final int s = spotsByRow[ p ];
+				if ( spotColumn[ s ] > lastColumn )
+					break;
+				consumer.accept( s );
+			}
+		}
+	}
+
+	/**
+	 * Visits the index of every edge whose segment may intersect the specified
+	 * range of rows and columns, bounds included.
+	 *
+	 * @param firstRow
+	 *            the first row.
+	 * @param lastRow
+	 *            the last row.
+	 * @param firstColumn
+	 *            the first column.
+	 * @param lastColumn
+	 *            the last column.
+	 * @param crossColumnOnly
+	 *            if <code>true</code>, only the edges that link spots in
+	 *            different columns are visited.
+	 * @param consumer
+	 *            the consumer of edge indices.
+	 */
+	public void forEachEdge( final int firstRow, final int lastRow, final int firstColumn, final int lastColumn, final boolean crossColumnOnly, final IntConsumer consumer )
+	{
+		final int from = Math.max( 0, firstRow - maxEdgeSpan );
+		final int to = Math.min( nRows - 1, lastRow );
+		for ( int r = from; r <= to; r++ )
+		{
+			for ( int p = edgeRowStart[ r ]; p < edgeRowStart[ r + 1 ]; p++ )
+			{
+				final int e = edgesByRow[ p ];
+				final int s = edgeSource[ e ];
+				final int t = edgeTarget[ e ];
+				if ( Math.max( spotRow[ s ], spotRow[ t ] ) < firstRow )
+					continue;
+				final int cs = spotColumn[ s ];
+				final int ct = spotColumn[ t ];
+				if ( crossColumnOnly && cs == ct )
+					continue;
+				if ( Math.min( cs, ct ) > lastColumn || Math.max( cs, ct ) < firstColumn )
+					continue;
+				consumer.accept( e );
+			}
+		}
+	}
+
+	/**
+	 * Visits the index of every run intersecting the specified range of rows
+	 * and columns, bounds included.
+	 *
+	 * @param firstRow
+	 *            the first row.
+	 * @param lastRow
+	 *            the last row.
+	 * @param firstColumn
+	 *            the first column.
+	 * @param lastColumn
+	 *            the last column.
+	 * @param consumer
+	 *            the consumer of run indices.
+	 */
+	public void forEachRun( final int firstRow, final int lastRow, final int firstColumn, final int lastColumn, final IntConsumer consumer )
+	{
+		int lo = 0;
+		int hi = nRuns;
+		while ( lo < hi )
+		{
+			final int mid = ( lo + hi ) >>> 1;
+			if ( runColumn[ mid ] < firstColumn )
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		for ( int r = lo; r < nRuns && runColumn[ r ] <= lastColumn; r++ )
+		{
+			if ( runLastRow[ r ] < firstRow || runFirstRow[ r ] > lastRow )
+				continue;
+			consumer.accept( r );
+		}
+	}
+
+	/**
+	 * Returns the index of the lane containing the specified column, or -1 if
+	 * there is none.
+	 *
+	 * @param column
+	 *            the column.
+	 * @return the lane index.
+	 */
+	public int laneAt( final int column )
+	{
+		int lo = 0;
+		int hi = laneEndColumn.length;
+		while ( lo < hi )
+		{
+			final int mid = ( lo + hi ) >>> 1;
+			if ( laneEndColumn[ mid ] <= column )
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		if ( lo < laneEndColumn.length && laneFirstColumn[ lo ] <= column )
+			return lo;
+		return -1;
+	}
+
+	/**
+	 * Returns the number of spots laid out.
+	 *
+	 * @return the number of spots.
+	 */
+	public int nSpots()
+	{
+		return spots.length;
+	}
+
+	/**
+	 * Returns the number of runs.
+	 *
+	 * @return the number of runs.
+	 */
+	public int nRuns()
+	{
+		return nRuns;
+	}
+
+	/**
+	 * Position of the first spot of the specified row whose column is larger
+	 * than or equal to the specified column.
+	 */
+	private int firstInRow( final int row, final int column )
+	{
+		int lo = spotRowStart[ row ];
+		int hi = spotRowStart[ row + 1 ];
+		while ( lo < hi )
+		{
+			final int mid = ( lo + hi ) >>> 1;
+			if ( spotColumn[ spotsByRow[ mid ] ] < column )
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	/*
+	 * STATIC METHODS
+	 */
+
+	/**
+	 * Computes the layout of the visible tracks of the specified model. The
+	 * model is locked while it is read, so that the layout is consistent.
+	 *
+	 * @param model
+	 *            the model to lay out.
+	 * @return a new layout.
+	 */
+	public static VirtualTrackSchemeLayout compute( final Model model )
+	{
+		synchronized ( model )
+		{
+			return compute( model.getTrackModel() );
+		}
+	}
+
+	private static VirtualTrackSchemeLayout compute( final TrackModel trackModel )
+	{
+		final Set< Integer > trackIDs = trackModel.trackIDs( true );
+
+		/*
+		 * Index spots and edges of the visible tracks.
+		 */
+
+		int nSpots = 0;
+		int nEdges = 0;
+		for ( final Integer trackID : trackIDs )
+		{
+			nSpots += trackModel.trackSpots( trackID ).size();
+			nEdges += trackModel.trackEdges( trackID ).size();
+		}
+
+		final Spot[] spots = new Spot[ nSpots ];
+		final int[] spotRow = new int[ nSpots ];
+		final Map< Spot, Integer > spotIndex = new HashMap<>( 1 + nSpots * 4 / 3 );
+		int maxFrame = -1;
+		int index = 0;
+		for ( final Integer trackID : trackIDs )
+		{
+			for ( final Spot spot : trackModel.trackSpots( trackID ) )
+			{
+				spots[ index ] = spot;
+				spotRow[ index ] = spot.getFeature( Spot.FRAME ).intValue();
+				maxFrame = Math.max( maxFrame, spotRow[ index ] );
+				spotIndex.put( spot, Integer.valueOf( index ) );
+				index++;
+			}
+		}
+
+		final DefaultWeightedEdge[] edges = new DefaultWeightedEdge[ nEdges ];
+		final int[] edgeSource = new int[ nEdges ];
+		final int[] edgeTarget = new int[ nEdges ];
+		index = 0;
+		for ( final Integer trackID : trackIDs )
+		{
+			for ( final DefaultWeightedEdge edge : trackModel.trackEdges( trackID ) )
+			{
+				edges[ index ] = edge;
+				edgeSource[ index ] = spotIndex.get( trackModel.getEdgeSource( edge ) );
+				edgeTarget[ index ] = spotIndex.get( trackModel.getEdgeTarget( edge ) );
+				index++;
+			}
+		}
+
+		/*
+		 * Lay out, track by track.
+		 */
+
+		final int nRows = maxFrame + 1;
+		final int[] spotColumn = new int[ nSpots ];
+		final int[] spotLane = new int[ nSpots ];
+		final boolean[] placed = new boolean[ nSpots ];
+
+		final int nLanes = trackIDs.size();
+		final Integer[] laneTrackID = new Integer[ nLanes ];
+		final int[] laneFirstColumn = new int[ nLanes ];
+		final int[] laneEndColumn = new int[ nLanes ];
+
+		final TimeDirectedNeighborIndex neighborCache = trackModel.getDirectedNeighborIndex();
+		final Map< Spot, Integer > cumulativeBranchWidth = GraphUtils.cumulativeBranchWidth( trackModel );
+
+		final int[] columns = new int[ nRows ];
+		Arrays.fill( columns, START_COLUMN );
+
+		int lane = 0;
+		for ( final Integer trackID : trackIDs )
+		{
+			laneTrackID[ lane ] = trackID;
+			laneFirstColumn[ lane ] = columns.length == 0 ? START_COLUMN : columns[ 0 ];
+
+			final Set< Spot > track = trackModel.trackSpots( trackID );
+			if ( GraphUtils.isTree( track, neighborCache ) )
+			{
+				final TreeSet< Spot > sortedTrack = new TreeSet<>( Spot.frameComparator );
+				sortedTrack.addAll( track );
+				final SortedDepthFirstIterator< Spot, DefaultWeightedEdge > iterator = trackModel.getSortedDepthFirstIterator( sortedTrack.first(), Spot.nameComparator, false );
+				while ( iterator.hasNext() )
+				{
+					final Spot spot = iterator.next();
+					final int s = spotIndex.get( spot );
+					final int frame = spotRow[ s ];
+					final int width = cumulativeBranchWidth.get( spot );
+					place( s, columns[ frame ] + width / 2, lane, spotColumn, spotLane, placed );
+					columns[ frame ] += width;
+
+					// Leaf: fill the remaining rows.
+					if ( neighborCache.successorsOf( spot ).isEmpty() )
+						Arrays.fill( columns, columns[ frame ] );
+				}
+			}
+			else
+			{
+				final TrackBranchDecomposition branchDecomposition = ConvexBranchesDecomposition.processTrack( trackID, trackModel, neighborCache, false, false );
+				final SimpleDirectedGraph< List< Spot >, DefaultEdge > branchGraph = ConvexBranchesDecomposition.buildBranchGraph( branchDecomposition );
+				final DepthFirstIterator< List< Spot >, DefaultEdge > iterator = new DepthFirstIterator<>( branchGraph );
+				while ( iterator.hasNext() )
+				{
+					final List< Spot > branch = iterator.next();
+					final int firstFrame = branch.get( 0 ).getFeature( Spot.FRAME ).intValue();
+					final int lastFrame = branch.get( branch.size() - 1 ).getFeature( Spot.FRAME ).intValue();
+
+					int targetColumn = columns[ firstFrame ];
+					for ( final Spot spot : branch )
+						targetColumn = Math.max( targetColumn, columns[ spotRow[ spotIndex.get( spot ) ] ] );
+
+					for ( final Spot spot : branch )
+						place( spotIndex.get( spot ), targetColumn, lane, spotColumn, spotLane, placed );
+
+					for ( int frame = firstFrame; frame <= lastFrame; frame++ )
+						columns[ frame ] = targetColumn + 1;
+				}
+			}
+
+			// Move all columns to the next free column.
+			int maxCol = 0;
+			for ( final int column : columns )
+				maxCol = Math.max( maxCol, column );
+			Arrays.fill( columns, maxCol + 1 );
+			laneEndColumn[ lane ] = maxCol;
+			lane++;
+		}
+
+		// Spots the track iteration missed go after the last lane.
+		for ( int s = 0; s < nSpots; s++ )
+		{
+			if ( placed[ s ] )
+				continue;
+			spotColumn[ s ] = columns[ spotRow[ s ] ]++;
+			spotLane[ s ] = -1;
+		}
+
+		return new VirtualTrackSchemeLayout( spots, spotColumn, spotRow, spotLane, spotIndex,
+				edges, edgeSource, edgeTarget,
+				laneTrackID, laneFirstColumn, laneEndColumn, nRows );
+	}
+
+	private static void place( final int s, final int column, final int lane, final int[] spotColumn, final int[] spotLane, final boolean[] placed )
+	{
+		spotColumn[ s ] = column;
+		spotLane[ s ] = lane;
+		placed[ s ] = true;
+	}
+}
@@ -0,0 +1,571 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2010 - 2023 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.visualization.trackscheme;
+
+import static fiji.plugin.trackmate.visualization.trackscheme.TrackScheme.DEFAULT_CELL_HEIGHT;
+import static fiji.plugin.trackmate.visualization.trackscheme.TrackScheme.DEFAULT_CELL_WIDTH;
+import static fiji.plugin.trackmate.visualization.trackscheme.TrackScheme.X_COLUMN_SIZE;
+import static fiji.plugin.trackmate.visualization.trackscheme.TrackScheme.Y_COLUMN_SIZE;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Stroke;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.util.Set;
+
+import javax.swing.JComponent;
+import javax.swing.JViewport;
+import javax.swing.Scrollable;
+import javax.swing.SwingConstants;
+import javax.swing.SwingUtilities;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.SelectionModel;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.features.FeatureUtils;
+import fiji.plugin.trackmate.gui.displaysettings.DisplaySettings;
+import fiji.plugin.trackmate.visualization.FeatureColorGenerator;
+
+/**
+ * A Swing component that paints a {@link VirtualTrackSchemeLayout}.
+ * <p>
+ * Only the rows and columns intersecting the clip are visited, thanks to the
+ * indexes of the layout. When a column is narrower than
+ * {@link #LOD_COLUMN_WIDTH} pixels, each straight branch segment is drawn as a
+ * single bar instead of as individual spots and edges. Clicking on a spot
+ * selects it in the {@link SelectionModel}, dragging pans the view and the
+ * mouse wheel with the control key held zooms around the mouse cursor.
+ *
+ * @author Jean-Yves Tinevez
+ */
+public class VirtualTrackSchemePanel extends JComponent implements Scrollable
+{
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Column width in pixels below which branches are drawn as summary bars.
+	 */
+	static final double LOD_COLUMN_WIDTH = 24.;
+
+	/** Column width in pixels above which spot names are drawn. */
+	static final double LABEL_COLUMN_WIDTH = 80.;
+
+	private static final double MIN_SCALE = 0.002;
+
+	private static final double MAX_SCALE = 4.;
+
+	private static final double ZOOM_FACTOR = 1.25;
+
+	private final Model model;
+
+	private final SelectionModel selectionModel;
+
+	private final DisplaySettings displaySettings;
+
+	private VirtualTrackSchemeLayout layout;
+
+	private double scale = 1.;
+
+	private FeatureColorGenerator< Spot > spotColorGenerator;
+
+	private FeatureColorGenerator< DefaultWeightedEdge > trackColorGenerator;
+
+	private FeatureColorGenerator< Integer > laneColorGenerator;
+
+	/*
+	 * CONSTRUCTOR
+	 */
+
+	public VirtualTrackSchemePanel( final Model model, final SelectionModel selectionModel, final DisplaySettings displaySettings )
+	{
+		this.model = model;
+		this.selectionModel = selectionModel;
+		this.displaySettings = displaySettings;
+		setOpaque( true );
+		setFocusable( true );
+		displaySettings.listeners().add( () -> {
+			invalidateColorGenerators();
+			repaint();
+		} );
+
+		final MouseHandler mouseHandler = new MouseHandler();
+		addMouseListener( mouseHandler );
+		addMouseMotionListener( mouseHandler );
+		addMouseWheelListener( mouseHandler );
+	}
+
+	/*
+	 * METHODS
+	 */
+
+	/**
+	 * Sets the layout to paint. Must be called on the EDT.
+	 *
+	 * @param layout
+	 *            the new layout.
+	 */
+	public void setTrackSchemeLayout( final VirtualTrackSchemeLayout layout )
+	{
+		this.layout = layout;
+		invalidateColorGenerators();
+		revalidate();
+		repaint();
+	}
+
+	public VirtualTrackSchemeLayout getTrackSchemeLayout()
+	{
+		return layout;
+	}
+
+	/**
+	 * Discards the color generators, so that they are re-created from the
+	 * current model and display settings at the next repaint.
+	 */
+	public void invalidateColorGenerators()
+	{
+		spotColorGenerator = null;
+		trackColorGenerator = null;
+		laneColorGenerator = null;
+	}
+
+	public double getScale()
+	{
+		return scale;
+	}
+
+	public void zoomIn()
+	{
+		zoomTo( scale * ZOOM_FACTOR, null );
+	}
+
+	public void zoomOut()
+	{
+		zoomTo( scale / ZOOM_FACTOR, null );
+	}
+
+	/**
+	 * Sets the scale so that the whole layout fits in the viewport.
+	 */
+	public void zoomToFit()
+	{
+		final VirtualTrackSchemeLayout l = layout;
+		final JViewport viewport = getViewport();
+		if ( l == null || viewport == null )
+			return;
+		final Dimension extent = viewport.getExtentSize();
+		final double sx = extent.getWidth() / ( ( l.nColumns + 1 ) * X_COLUMN_SIZE );
+		final double sy = extent.getHeight() / ( Math.max( 1, l.nRows ) * Y_COLUMN_SIZE );
+		zoomTo( Math.min( sx, sy ), null );
+	}
+
+	/**
+	 * Scrolls the view so that the specified spot is at its center.
+	 *
+	 * @param spot
+	 *            the spot to center on.
+	 */
+	public void centerOn( final Spot spot )
+	{
+		final VirtualTrackSchemeLayout l = layout;
+		final JViewport viewport = getViewport();
+		if ( l == null || viewport == null )
+			return;
+		final int s = l.indexOf( spot );
+		if ( s < 0 )
+			return;
+		final Dimension extent = viewport.getExtentSize();
+		final int x = ( int ) ( l.spotColumn[ s ] * X_COLUMN_SIZE * scale ) - extent.width / 2;
+		final int y = ( int ) ( ( 0.5 + l.spotRow[ s ] ) * Y_COLUMN_SIZE * scale ) - extent.height / 2;
+		scrollRectToVisible( new Rectangle( x, y, extent.width, extent.height ) );
+	}
+
+	@Override
+	public Dimension getPreferredSize()
+	{
+		final VirtualTrackSchemeLayout l = layout;
+		if ( l == null )
+			return new Dimension( 1, 1 );
+		return new Dimension(
+				( int ) Math.ceil( ( l.nColumns + 1 ) * X_COLUMN_SIZE * scale ),
+				( int ) Math.ceil( Math.max( 1, l.nRows ) * Y_COLUMN_SIZE * scale ) );
+	}
+
+	/*
+	 * SCROLLABLE
+	 */
+
+	@Override
+	public Dimension getPreferredScrollableViewportSize()
+	{
+		return getPreferredSize();
+	}
+
+	@Override
+	public int getScrollableUnitIncrement( final Rectangle visibleRect, final int orientation, final int direction )
+	{
+		return 16;
+	}
+
+	@Override
+	public int getScrollableBlockIncrement( final Rectangle visibleRect, final int orientation, final int direction )
+	{
+		return orientation == SwingConstants.VERTICAL ? visibleRect.height : visibleRect.width;
+	}
+
+	@Override
+	public boolean getScrollableTracksViewportWidth()
+	{
+		return false;
+	}
+
+	@Override
+	public boolean getScrollableTracksViewportHeight()
+	{
+		return false;
+	}
+
+	/*
+	 * PAINTING
+	 */
+
+	@Override
+	protected void paintComponent( final Graphics g )
+	{
+		final Graphics2D g2d = ( Graphics2D ) g;
+		final Rectangle clip = g.getClipBounds() == null ? getVisibleRect() : g.getClipBounds();
+
+		g2d.setColor( displaySettings.getTrackSchemeBackgroundColor1() );
+		g2d.fillRect( clip.x, clip.y, clip.width, clip.height );
+
+		final VirtualTrackSchemeLayout l = layout;
+		if ( l == null )
+			return;
+
+		if ( displaySettings.getUseAntialiasing() )
+			g2d.setRenderingHint( RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON );
+
+		final double xcs = X_COLUMN_SIZE * scale;
+		final double ycs = Y_COLUMN_SIZE * scale;
+		final double margin = DEFAULT_CELL_WIDTH * scale / 2.;
+		final int r0 = ( int ) Math.floor( clip.y / ycs ) - 1;
+		final int r1 = ( int ) Math.ceil( ( clip.y + clip.height ) / ycs ) + 1;
+		final int c0 = ( int ) Math.floor( ( clip.x - margin ) / xcs );
+		final int c1 = ( int ) Math.ceil( ( clip.x + clip.width + margin ) / xcs );
+
+		// Alternating row background.
+		g2d.setColor( displaySettings.getTrackSchemeBackgroundColor2() );
+		for ( int r = Math.max( 0, r0 ); r <= Math.min( l.nRows - 1, r1 ); r++ )
+		{
+			if ( r % 2 != 0 )
+				continue;
+			final int y = ( int ) ( r * ycs );
+			g2d.fillRect( clip.x, y, clip.width, ( int ) ( ( r + 1 ) * ycs ) - y );
+		}
+
+		// Lane separators.
+		g2d.setColor( displaySettings.getTrackSchemeDecorationColor() );
+		final int firstLane = Math.max( 0, l.laneAt( c0 ) );
+		for ( int lane = firstLane; lane < l.laneEndColumn.length && l.laneFirstColumn[ lane ] <= c1; lane++ )
+		{
+			final int x = ( int ) ( l.laneEndColumn[ lane ] * xcs );
+			g2d.drawLine( x, clip.y, x, clip.y + clip.height );
+		}
+
+		if ( xcs < LOD_COLUMN_WIDTH )
+			paintSummary( g2d, l, xcs, ycs, r0, r1, c0, c1 );
+		else
+			paintDetails( g2d, l, xcs, ycs, r0, r1, c0, c1 );
+	}
+
+	/**
+	 * Low level of detail: one bar per straight branch segment, plus the edges
+	 * that jump between columns.
+	 */
+	private void paintSummary( final Graphics2D g2d, final VirtualTrackSchemeLayout l, final double xcs, final double ycs, final int r0, final int r1, final int c0, final int c1 )
+	{
+		final FeatureColorGenerator< DefaultWeightedEdge > edgeColor = getTrackColorGenerator();
+		final FeatureColorGenerator< Integer > laneColor = getLaneColorGenerator();
+		final int w = Math.max( 1, ( int ) Math.round( xcs / 3. ) );
+
+		g2d.setStroke( new BasicStroke( w ) );
+		l.forEachEdge( r0, r1, c0, c1, true, e -> {
+			g2d.setColor( edgeColor.color( l.edges[ e ] ) );
+			drawEdge( g2d, l, e, xcs, ycs );
+		} );
+
+		final Color defaultColor = displaySettings.getTrackSchemeForegroundColor();
+		l.forEachRun( r0, r1, c0, c1, r -> {
+			final int lane = l.runLane[ r ];
+			g2d.setColor( lane < 0 ? defaultColor : laneColor.color( l.laneTrackID[ lane ] ) );
+			final int x = ( int ) ( l.runColumn[ r ] * xcs ) - w / 2;
+			final int y0 = ( int ) ( ( 0.5 + l.runFirstRow[ r ] ) * ycs ) - w / 2;
+			final int y1 = ( int ) ( ( 0.5 + l.runLastRow[ r ] ) * ycs ) + w / 2;
+			g2d.fillRect( x, y0, w, Math.max( w, y1 - y0 ) );
+		} );
+
+		// Selection: only the selected spots, wherever they are.
+		g2d.setColor( displaySettings.getHighlightColor() );
+		final int hw = Math.max( 3, w * 2 );
+		for ( final Spot spot : selectionModel.getSpotSelection() )
+		{
+			final int s = l.indexOf( spot );
+			if ( s < 0 || l.spotRow[ s ] < r0 || l.spotRow[ s ] > r1 || l.spotColumn[ s ] < c0 || l.spotColumn[ s ] > c1 )
+				continue;
+			final int x = ( int ) ( l.spotColumn[ s ] * xcs );
+			final int y = ( int ) ( ( 0.5 + l.spotRow[ s ] ) * ycs );
+			g2d.fillRect( x - hw / 2, y - hw / 2, hw, hw );
+		}
+	}
+
+	/**
+	 * High level of detail: every edge and spot in the clip, with names when
+	 * there is room for them.
+	 */
+	private void paintDetails( final Graphics2D g2d, final VirtualTrackSchemeLayout l, final double xcs, final double ycs, final int r0, final int r1, final int c0, final int c1 )
+	{
+		final FeatureColorGenerator< DefaultWeightedEdge > edgeColor = getTrackColorGenerator();
+		final FeatureColorGenerator< Spot > spotColor = getSpotColorGenerator();
+		final Set< DefaultWeightedEdge > edgeSelection = selectionModel.getEdgeSelection();
+		final Set< Spot > spotSelection = selectionModel.getSpotSelection();
+		final Color highlight = displaySettings.getHighlightColor();
+		final Color foreground = displaySettings.getTrackSchemeForegroundColor();
+
+		final Stroke edgeStroke = new BasicStroke( ( float ) Math.max( 1., 2. * scale ) );
+		final Stroke selectionStroke = new BasicStroke( ( float ) Math.max( 2., displaySettings.getSelectionLineThickness() * scale * 2. ) );
+		l.forEachEdge( r0, r1, c0, c1, false, e -> {
+			final DefaultWeightedEdge edge = l.edges[ e ];
+			if ( edgeSelection.contains( edge ) )
+			{
+				g2d.setStroke( selectionStroke );
+				g2d.setColor( highlight );
+			}
+			else
+			{
+				g2d.setStroke( edgeStroke );
+				g2d.setColor( edgeColor.color( edge ) );
+			}
+			drawEdge( g2d, l, e, xcs, ycs );
+		} );
+
+		final int cw = ( int ) Math.round( DEFAULT_CELL_WIDTH * scale );
+		final int ch = ( int ) Math.round( DEFAULT_CELL_HEIGHT * scale );
+		final int arc = ch / 2;
+		final boolean drawLabels = xcs >= LABEL_COLUMN_WIDTH;
+		if ( drawLabels )
+			g2d.setFont( displaySettings.getFont().deriveFont( ( float ) ( 12. * scale ) ) );
+		final FontMetrics fm = g2d.getFontMetrics();
+
+		l.forEachSpot( r0, r1, c0, c1, s -> {
+			final Spot spot = l.spots[ s ];
+			final int x = ( int ) ( l.spotColumn[ s ] * xcs ) - cw / 2;
+			final int y = ( int ) ( ( 0.5 + l.spotRow[ s ] ) * ycs ) - ch / 2;
+			g2d.setColor( spotColor.color( spot ) );
+			g2d.fillRoundRect( x, y, cw, ch, arc, arc );
+			if ( spotSelection.contains( spot ) )
+			{
+				g2d.setStroke( selectionStroke );
+				g2d.setColor( highlight );
+			}
+			else
+			{
+				g2d.setStroke( edgeStroke );
+				g2d.setColor( foreground );
+			}
+			g2d.drawRoundRect( x, y, cw, ch, arc, arc );
+
+			if ( drawLabels )
+			{
+				final String name = spot.getName();
+				g2d.setColor( foreground );
+				g2d.drawString( name, x + ( cw - fm.stringWidth( name ) ) / 2, y + ( ch + fm.getAscent() - fm.getDescent() ) / 2 );
+			}
+		} );
+	}
+
+	private static void drawEdge( final Graphics2D g2d, final VirtualTrackSchemeLayout l, final int e, final double xcs, final double ycs )
+	{
+		final int s = l.edgeSource[ e ];
+		final int t = l.edgeTarget[ e ];
+		g2d.drawLine(
+				( int ) ( l.spotColumn[ s ] * xcs ),
+				( int ) ( ( 0.5 + l.spotRow[ s ] ) * ycs ),
+				( int ) ( l.spotColumn[ t ] * xcs ),
+				( int ) ( ( 0.5 + l.spotRow[ t ] ) * ycs ) );
+	}
+
+	private FeatureColorGenerator< Spot > getSpotColorGenerator()
+	{
+		if ( spotColorGenerator == null )
+			spotColorGenerator = FeatureUtils.createSpotColorGenerator( model, displaySettings );
+		return spotColorGenerator;
+	}
+
+	private FeatureColorGenerator< DefaultWeightedEdge > getTrackColorGenerator()
+	{
+		if ( trackColorGenerator == null )
+			trackColorGenerator = FeatureUtils.createTrackColorGenerator( model, displaySettings );
+		return trackColorGenerator;
+	}
+
+	private FeatureColorGenerator< Integer > getLaneColorGenerator()
+	{
+		if ( laneColorGenerator == null )
+			laneColorGenerator = FeatureUtils.createWholeTrackColorGenerator( model, displaySettings );
+		return laneColorGenerator;
+	}
+
+	/*
+	 * NAVIGATION
+	 */
+
+	private JViewport getViewport()
+	{
+		return ( JViewport ) SwingUtilities.getAncestorOfClass( JViewport.class, this );
+	}
+
+	/**
+	 * Changes the scale, keeping the specified point of the component, or the
+	 * center of the viewport if <code>null</code>, at the same position on
+	 * screen.
+	 */
+	private void zoomTo( final double newScale, final Point anchor )
+	{
+		final double target = Math.max( MIN_SCALE, Math.min( MAX_SCALE, newScale ) );
+		final JViewport viewport = getViewport();
+		if ( target == scale || viewport == null )
+		{
+			scale = target;
+			revalidate();
+			repaint();
+			return;
+		}
+
+		final Rectangle view = viewport.getViewRect();
+		final Point a = anchor == null
+				? new Point( view.x + view.width / 2, view.y + view.height / 2 )
+				: anchor;
+		final double ratio = target / scale;
+		scale = target;
+
+		final Dimension size = getPreferredSize();
+		setSize( size );
+		final int x = ( int ) Math.round( a.x * ratio ) - ( a.x - view.x );
+		final int y = ( int ) Math.round( a.y * ratio ) - ( a.y - view.y );
+		viewport.setViewPosition( new Point(
+				Math.max( 0, Math.min( x, size.width - view.width ) ),
+				Math.max( 0, Math.min( y, size.height - view.height ) ) ) );
+		revalidate();
+		repaint();
+	}
+
+	private class MouseHandler extends MouseAdapter
+	{
+
+		private Point dragOrigin;
+
+		@Override
+		public void mousePressed( final MouseEvent e )
+		{
+			requestFocusInWindow();
+			dragOrigin = e.getLocationOnScreen();
+		}
+
+		@Override
+		public void mouseReleased( final MouseEvent e )
+		{
+			dragOrigin = null;
+		}
+
+		@Override
+		public void mouseClicked( final MouseEvent e )
+		{
+			final VirtualTrackSchemeLayout l = layout;
+			if ( l == null || !SwingUtilities.isLeftMouseButton( e ) )
+				return;
+
+			final double xcs = X_COLUMN_SIZE * scale;
+			final double ycs = Y_COLUMN_SIZE * scale;
+			final int column = ( int ) Math.round( e.getX() / xcs );
+			final int row = ( int ) Math.floor( e.getY() / ycs );
+			final int s = l.spotAt( column, row );
+
+			if ( s < 0 )
+			{
+				if ( !e.isShiftDown() )
+					selectionModel.clearSelection();
+				return;
+			}
+
+			final Spot spot = l.spots[ s ];
+			if ( e.isShiftDown() )
+			{
+				if ( selectionModel.getSpotSelection().contains( spot ) )
+					selectionModel.removeSpotFromSelection( spot );
+				else
+					selectionModel.addSpotToSelection( spot );
+			}
+			else
+			{
+				selectionModel.clearSelection();
+				selectionModel.addSpotToSelection( spot );
+			}
+		}
+
+		@Override
+		public void mouseDragged( final MouseEvent e )
+		{
+			final JViewport viewport = getViewport();
+			if ( dragOrigin == null || viewport == null )
+				return;
+			final Point p = e.getLocationOnScreen();
+			final Rectangle view = viewport.getViewRect();
+			view.translate( dragOrigin.x - p.x, dragOrigin.y - p.y );
+			scrollRectToVisible( view );
+			dragOrigin = p;
+		}
+
+		@Override
+		public void mouseWheelMoved( final MouseWheelEvent e )
+		{
+			if ( !e.isControlDown() )
+			{
+				// Let the scroll pane scroll.
+				getParent().dispatchEvent( SwingUtilities.convertMouseEvent( VirtualTrackSchemePanel.this, e, getParent() ) );
+				return;
+			}
+			final double factor = Math.pow( ZOOM_FACTOR, -e.getPreciseWheelRotation() );
+			zoomTo( scale * factor, e.getPoint() );
+		}
+	}
+}
@@ -25,10 +25,12 @@ import java.awt.Image;
 import java.awt.Rectangle;
 
 import com.mxgraph.canvas.mxGraphics2DCanvas;
+import com.mxgraph.model.mxICell;
 import com.mxgraph.shape.mxRectangleShape;
 import com.mxgraph.util.mxConstants;
 import com.mxgraph.util.mxUtils;
 import com.mxgraph.view.mxCellState;
+import com.mxgraph.view.mxGraph;
 
 /**
  * This is a shape that is made to display a cell in a way that suits for our
@@ -54,7 +56,18 @@ public class mxScaledLabelShape extends mxRectangleShape
 		final String imgStr = mxUtils.getString( state.getStyle(), mxConstants.STYLE_IMAGE );
 		if ( imgStr != null )
 		{
-			final Image img = canvas.loadImage( mxUtils.getString( state.getStyle(), mxConstants.STYLE_IMAGE ) );
+			final Image img;
+			if ( imgStr.equals( SpotImageUpdater.THUMBNAIL_STYLE ) )
+			{
+				final mxGraph graph = state.getView().getGraph();
+				img = ( graph instanceof JGraphXAdapter )
+						? ( ( JGraphXAdapter ) graph ).getThumbnailFor( ( mxICell ) state.getCell() )
+						: null;
+			}
+			else
+			{
+				img = canvas.loadImage( imgStr );
+			}
 			if ( img != null )
 			{
 				final Rectangle bounds = getImageBounds( state );
@@ -0,0 +1,104 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2010 - 2023 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import fiji.plugin.trackmate.util.Threads;
+
+public class FeatureTableTest
+{
+
+	@Test
+	public void testPutGetRemove()
+	{
+		final FeatureTable< String > table = new FeatureTable<>();
+		assertNull( table.get( "a", "F1" ) );
+
+		table.put( "a", "F1", 1. );
+		table.put( "a", "F2", Double.NaN );
+		table.put( "b", "F2", 3. );
+		assertEquals( 1., table.get( "a", "F1" ), 0. );
+		assertTrue( Double.isNaN( table.get( "a", "F2" ) ) );
+		assertNull( table.get( "b", "F1" ) );
+		assertEquals( 3., table.get( "b", "F2" ), 0. );
+
+		final Map< String, Double > values = table.values( "a" );
+		assertEquals( 2, values.size() );
+		assertEquals( 1., values.get( "F1" ), 0. );
+
+		table.remove( "a", "F1" );
+		assertNull( table.get( "a", "F1" ) );
+		assertEquals( 1, table.values( "a" ).size() );
+	}
+
+	@Test
+	public void testBulkPut()
+	{
+		final FeatureTable< String > table = new FeatureTable<>();
+		table.put( "b", "F1", -1. );
+
+		final String[] keys = new String[] { "a", "b", "c", "unused" };
+		final double[] values = new double[] { 1., 2., 3., 4. };
+		table.put( keys, 3, "F1", values );
+		assertEquals( 1., table.get( "a", "F1" ), 0. );
+		assertEquals( 2., table.get( "b", "F1" ), 0. );
+		assertEquals( 3., table.get( "c", "F1" ), 0. );
+		assertNull( table.get( "unused", "F1" ) );
+	}
+
+	@Test
+	public void testConcurrentWrites() throws Exception
+	{
+		final int nKeys = 10_000;
+		final int nThreads = 8;
+		final FeatureTable< Integer > table = new FeatureTable<>();
+		final ExecutorService executor = Threads.newFixedThreadPool( nThreads );
+		final List< Future< ? > > futures = new ArrayList<>( nThreads );
+		for ( int t = 0; t < nThreads; t++ )
+		{
+			final String feature = "F" + t;
+			futures.add( executor.submit( () -> {
+				for ( int i = 0; i < nKeys; i++ )
+					table.put( Integer.valueOf( i ), feature, i );
+			} ) );
+		}
+		for ( final Future< ? > future : futures )
+			future.get();
+		executor.shutdown();
+
+		assertEquals( nKeys, table.keySet().size() );
+		for ( int i = 0; i < nKeys; i++ )
+			for ( int t = 0; t < nThreads; t++ )
+				assertEquals( i, table.get( Integer.valueOf( i ), "F" + t ), 0. );
+	}
+}
@@ -156,6 +156,44 @@ public class SpotCollectionTest
 		assertFalse( "The target spot " + targetSpot + " could be removed from wrong frame " + targetFrame + ".", flag );
 	}
 
+	@Test
+	public void testSearch()
+	{
+		// All spots can be found.
+		for ( final Spot spot : sc.iterable( false ) )
+			assertEquals( spot, sc.search( spot.ID() ) );
+
+		// Added spot.
+		final int targetFrame = frames.get( 0 );
+		final Spot spot = new Spot( 0d, 0d, 0d, 1d, -1d );
+		assertNull( sc.search( spot.ID() ) );
+		sc.add( spot, targetFrame );
+		assertEquals( spot, sc.search( spot.ID() ) );
+
+		// Removed spot.
+		sc.remove( spot, targetFrame );
+		assertNull( sc.search( spot.ID() ) );
+
+		// Replaced frame content.
+		final Spot replaced = sc.iterator( targetFrame, false ).next();
+		final HashSet< Spot > spots = new HashSet<>();
+		spots.add( spot );
+		sc.put( targetFrame, spots );
+		assertNull( sc.search( replaced.ID() ) );
+		assertEquals( spot, sc.search( spot.ID() ) );
+
+		// Cropped spots.
+		final Spot cropped = sc.iterator( frames.get( 1 ), false ).next();
+		sc.setVisible( true );
+		cropped.putFeature( SpotCollection.VISIBILITY, SpotCollection.ZERO );
+		sc.crop();
+		assertNull( sc.search( cropped.ID() ) );
+
+		// Cleared collection.
+		sc.clear();
+		assertNull( sc.search( spot.ID() ) );
+	}
+
 	@Test
 	public void testIsVisible()
 	{
@@ -214,6 +252,63 @@ public class SpotCollectionTest
 		assertEquals( 3 * 5, sc.getNSpots( true ) );
 	}
 
+	@Test
+	public void testFilterIncremental()
+	{
+		final Random ran = new Random( 1l );
+		for ( final Spot spot : sc.iterable( false ) )
+			spot.putFeature( Spot.RADIUS, Double.valueOf( ran.nextInt( 20 ) ) );
+
+		final List< FeatureFilter > filters = new ArrayList<>();
+		for ( int i = 0; i < 100; i++ )
+		{
+			// Move, add, remove or replace a filter.
+			final int action = ran.nextInt( 4 );
+			final String feature = ran.nextBoolean() ? Spot.QUALITY : Spot.RADIUS;
+			final FeatureFilter filter = new FeatureFilter( feature, ran.nextInt( 110 ) - 5, ran.nextBoolean() );
+			if ( filters.isEmpty() || action == 1 )
+				filters.add( filter );
+			else if ( action == 0 )
+			{
+				final int target = ran.nextInt( filters.size() );
+				final FeatureFilter previous = filters.get( target );
+				filters.set( target, new FeatureFilter( previous.feature, filter.value, previous.isAbove ) );
+			}
+			else if ( action == 2 )
+				filters.remove( ran.nextInt( filters.size() ) );
+			else
+				filters.set( ran.nextInt( filters.size() ), filter );
+
+			sc.filter( filters );
+			int nVisible = 0;
+			for ( final Spot spot : sc.iterable( false ) )
+			{
+				boolean expected = true;
+				for ( final FeatureFilter ff : filters )
+				{
+					final double val = spot.getFeature( ff.feature ).doubleValue();
+					if ( ff.isAbove ? val < ff.value : val > ff.value )
+						expected = false;
+				}
+				assertEquals( "Unexpected visibility for spot " + spot + " with filters " + filters, expected, isVisible( spot ) );
+				if ( expected )
+					nVisible++;
+			}
+			assertEquals( nVisible, sc.getNSpots( true ) );
+		}
+
+		// Changing the content or a feature value must be picked up.
+		final Spot spot = sc.iterator( 1, false ).next();
+		sc.filter( new FeatureFilter( Spot.QUALITY, 1000d, false ) );
+		spot.putFeature( Spot.QUALITY, 2000d );
+		sc.filter( new FeatureFilter( Spot.QUALITY, 1001d, false ) );
+		assertFalse( isVisible( spot ) );
+		assertEquals( N_SPOTS * N_FRAMES - 1, sc.getNSpots( true ) );
+		sc.remove( spot, 1 );
+		sc.filter( new FeatureFilter( Spot.QUALITY, 2d, false ) );
+		assertEquals( 3 * N_FRAMES, sc.getNSpots( true ) );
+	}
+
 	@Test
 	public void testGetClosestSpot()
 	{
@@ -264,6 +359,56 @@ public class SpotCollectionTest
 		}
 	}
 
+	@Test
+	public void testGetNClosestSpots()
+	{
+		// Filter by QUALITY lower than 20
+		final FeatureFilter filter = new FeatureFilter( Spot.QUALITY, 20d, false );
+		sc.filter( filter );
+
+		final Spot location = new Spot( 50.1, 50.1, 50.1, 1d, -1d );
+		for ( final Integer frame : frames )
+		{
+			final List< Spot > all = sc.getNClosestSpots( location, frame, 3, false );
+			assertEquals( 3, all.size() );
+			assertEquals( 50d, all.get( 0 ).getFeature( Spot.QUALITY ), Double.MIN_VALUE );
+			assertEquals( 51d, all.get( 1 ).getFeature( Spot.QUALITY ), Double.MIN_VALUE );
+			assertEquals( 49d, all.get( 2 ).getFeature( Spot.QUALITY ), Double.MIN_VALUE );
+
+			final List< Spot > visible = sc.getNClosestSpots( location, frame, 3, true );
+			assertEquals( 3, visible.size() );
+			assertEquals( 20d, visible.get( 0 ).getFeature( Spot.QUALITY ), Double.MIN_VALUE );
+			assertEquals( 19d, visible.get( 1 ).getFeature( Spot.QUALITY ), Double.MIN_VALUE );
+			assertEquals( 18d, visible.get( 2 ).getFeature( Spot.QUALITY ), Double.MIN_VALUE );
+
+			// Cannot return more spots than there are.
+			assertEquals( 21, sc.getNClosestSpots( location, frame, 1000, true ).size() );
+		}
+	}
+
+	@Test
+	public void testGetSpotsWithin()
+	{
+		final Spot location = new Spot( 50.1, 50.1, 50.1, 1d, -1d );
+		final double radius = 2. * Math.sqrt( 3. );
+		for ( final Integer frame : frames )
+		{
+			final List< Spot > spots = sc.getSpotsWithin( location, frame, radius, false );
+			assertEquals( 4, spots.size() );
+			for ( final Spot spot : spots )
+				assertTrue( spot.squareDistanceTo( location ) <= radius * radius );
+
+			// Moving a spot rebuilds the index.
+			final Spot moved = spots.get( 0 );
+			moved.putFeature( Spot.POSITION_X, 1000. );
+			assertEquals( 3, sc.getSpotsWithin( location, frame, radius, false ).size() );
+
+			// Moving it back too, without invalidating the index explicitly.
+			moved.putFeature( Spot.POSITION_X, 50. );
+			assertEquals( 4, sc.getSpotsWithin( location, frame, radius, false ).size() );
+		}
+	}
+
 	@Test
 	public void testGetNSpots()
 	{
@@ -472,6 +617,31 @@ public class SpotCollectionTest
 		assertArrayEquals( frames.toArray( new Integer[] {} ), sc.keySet().toArray( new Integer[] {} ) );
 	}
 
+	@Test
+	public void testFeatureRevisionIsPerCollection()
+	{
+		final SpotCollection other = new SpotCollection();
+		final Spot foreign = new Spot( 0., 0., 0., 1., -1. );
+		other.add( foreign, 0 );
+
+		// Writes to spots of another collection do not change this one.
+		final long revision = sc.featureRevision();
+		foreign.putFeature( Spot.QUALITY, 10. );
+		assertEquals( revision, sc.featureRevision() );
+
+		// Writes to its own spots do.
+		final Spot own = sc.iterator( false ).next();
+		own.putFeature( Spot.QUALITY, 10. );
+		assertTrue( sc.featureRevision() != revision );
+
+		// Removed spots no longer change it.
+		final int frame = own.getFeature( Spot.FRAME ).intValue();
+		assertTrue( sc.remove( own, frame ) );
+		final long afterRemoval = sc.featureRevision();
+		own.putFeature( Spot.QUALITY, 20. );
+		assertEquals( afterRemoval, sc.featureRevision() );
+	}
+
 	private static final boolean isVisible( final Spot spot )
 	{
 		return spot.getFeature( SpotCollection.VISIBILITY ).compareTo( SpotCollection.ZERO ) > 0;
@@ -0,0 +1,87 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2010 - 2023 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.junit.Test;
+
+public class SpotTest
+{
+
+	@Test
+	public void testPutGetFeature()
+	{
+		final Spot spot = new Spot( 1., 2., 3., 0.5, -1. );
+		assertEquals( 1., spot.getDoublePosition( 0 ), 0. );
+		assertEquals( 2., spot.getDoublePosition( 1 ), 0. );
+		assertEquals( 3., spot.getDoublePosition( 2 ), 0. );
+		assertEquals( 0.5, spot.getFeature( Spot.RADIUS ), 0. );
+
+		assertNull( spot.getFeature( "SPOT_TEST_NEVER_SET" ) );
+		spot.putFeature( "SPOT_TEST_FEATURE", Double.NaN );
+		assertTrue( Double.isNaN( spot.getFeature( "SPOT_TEST_FEATURE" ) ) );
+		spot.putFeature( "SPOT_TEST_FEATURE", 7. );
+		assertEquals( 7., spot.getFeature( "SPOT_TEST_FEATURE" ), 0. );
+
+		// Another spot does not see the feature.
+		final Spot other = new Spot( 0., 0., 0., 1., -1. );
+		assertNull( other.getFeature( "SPOT_TEST_FEATURE" ) );
+	}
+
+	@Test
+	public void testFeatureMapView()
+	{
+		final Spot spot = new Spot( 1., 2., 3., 0.5, -1. );
+		final Map< String, Double > features = spot.getFeatures();
+		final int size = features.size();
+		assertTrue( features.containsKey( Spot.POSITION_X ) );
+
+		// Writes go through to the spot.
+		assertNull( features.put( "SPOT_TEST_VIEW", 4. ) );
+		assertEquals( 4., spot.getFeature( "SPOT_TEST_VIEW" ), 0. );
+		assertEquals( size + 1, spot.getFeatures().size() );
+
+		for ( final Entry< String, Double > entry : features.entrySet() )
+			if ( entry.getKey().equals( "SPOT_TEST_VIEW" ) )
+				entry.setValue( 5. );
+		assertEquals( 5., spot.getFeature( "SPOT_TEST_VIEW" ), 0. );
+
+		assertEquals( 5., features.remove( "SPOT_TEST_VIEW" ), 0. );
+		assertNull( spot.getFeature( "SPOT_TEST_VIEW" ) );
+		assertFalse( features.containsKey( "SPOT_TEST_VIEW" ) );
+
+		final Iterator< String > it = features.keySet().iterator();
+		while ( it.hasNext() )
+			if ( it.next().equals( Spot.QUALITY ) )
+				it.remove();
+		assertNull( spot.getFeature( Spot.QUALITY ) );
+		assertEquals( size - 1, features.size() );
+	}
+}
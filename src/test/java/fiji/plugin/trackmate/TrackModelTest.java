@@ -22,6 +22,8 @@
 package fiji.plugin.trackmate;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.util.ArrayList;
@@ -274,4 +276,51 @@ public class TrackModelTest
 		assertTrue( model.isVisible( id ) );
 	}
 
+	@Test
+	public void testSortedTrackIDs()
+	{
+		final TrackModel model = new TrackModel();
+		for ( int i = 0; i < 12; i++ )
+		{
+			final Spot source = new Spot( 0d, 0d, 0d, 1d, -1d );
+			final Spot target = new Spot( 0d, 0d, 0d, 1d, -1d );
+			model.addEdge( source, target, 1 );
+		}
+
+		// Sorted alpha-numerically by names, and cached.
+		final Set< Integer > ids = model.trackIDs( false );
+		assertEquals( 12, ids.size() );
+		final List< String > names = new ArrayList<>();
+		for ( final Integer id : ids )
+			names.add( model.name( id ) );
+		assertEquals( "Track_0", names.get( 0 ) );
+		assertEquals( "Track_2", names.get( 2 ) );
+		assertEquals( "Track_11", names.get( 11 ) );
+		assertSame( ids, model.trackIDs( false ) );
+		final Set< Integer > visibleIDs = model.trackIDs( true );
+		assertSame( visibleIDs, model.trackIDs( true ) );
+
+		// Renaming reorders.
+		final Integer first = ids.iterator().next();
+		model.setName( first, "Track_99" );
+		final Set< Integer > renamed = model.trackIDs( false );
+		assertEquals( first, new ArrayList<>( renamed ).get( 11 ) );
+		assertEquals( first, new ArrayList<>( model.trackIDs( true ) ).get( 11 ) );
+
+		// Hiding a track only updates the visible view.
+		model.setVisibility( first, false );
+		assertSame( renamed, model.trackIDs( false ) );
+		assertEquals( 11, model.trackIDs( true ).size() );
+		assertFalse( model.trackIDs( true ).contains( first ) );
+		model.setVisibility( first, true );
+		assertEquals( 12, model.trackIDs( true ).size() );
+
+		// Removing a track.
+		final Spot spot = model.trackSpots( first ).iterator().next();
+		model.removeSpot( spot );
+		assertEquals( 11, model.trackIDs( false ).size() );
+		assertFalse( model.trackIDs( false ).contains( first ) );
+		assertEquals( 11, model.trackIDs( true ).size() );
+	}
+
 }
@@ -0,0 +1,174 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2010 - 2023 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.detection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+
+import net.imagej.ImgPlus;
+import net.imagej.axis.Axes;
+import net.imagej.axis.AxisType;
+import net.imglib2.Cursor;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.integer.UnsignedShortType;
+
+public class FramePrefetcherTest
+{
+
+	private static final int N_FRAMES = 6;
+
+	/**
+	 * A 2D+T image in which each pixel value is its frame.
+	 */
+	private static ImgPlus< UnsignedShortType > createImg()
+	{
+		final Img< UnsignedShortType > img = ArrayImgs.unsignedShorts( 8, 5, N_FRAMES );
+		final Cursor< UnsignedShortType > cursor = img.localizingCursor();
+		while ( cursor.hasNext() )
+		{
+			cursor.fwd();
+			cursor.get().set( cursor.getIntPosition( 2 ) );
+		}
+		return new ImgPlus<>( img, "test", new AxisType[] { Axes.X, Axes.Y, Axes.TIME } );
+	}
+
+	private static void assertFrame( final int frame, final ImgPlus< UnsignedShortType > img )
+	{
+		assertEquals( 2, img.numDimensions() );
+		assertEquals( -1, img.dimensionIndex( Axes.TIME ) );
+		for ( final UnsignedShortType p : img )
+			assertEquals( frame, p.get() );
+	}
+
+	@Test( timeout = 10000 )
+	public void testFramesInOrder() throws Exception
+	{
+		final FramePrefetcher< UnsignedShortType > prefetcher = new FramePrefetcher<>( createImg(), 1, N_FRAMES - 1, 2 );
+		try
+		{
+			for ( int frame = 1; frame < N_FRAMES; frame++ )
+			{
+				assertFrame( frame, prefetcher.get( frame ) );
+				prefetcher.release( frame );
+			}
+		}
+		finally
+		{
+			prefetcher.close();
+		}
+	}
+
+	@Test( timeout = 10000 )
+	public void testReleaseRecyclesBuffers() throws Exception
+	{
+		final FramePrefetcher< UnsignedShortType > prefetcher = new FramePrefetcher<>( createImg(), 0, N_FRAMES - 1, 2 );
+		try
+		{
+			final ImgPlus< UnsignedShortType > frame0 = prefetcher.get( 0 );
+			assertFrame( 1, prefetcher.get( 1 ) );
+
+			// Both buffers are in use: frame 2 is not loaded until one is
+			// released.
+			final CompletableFuture< ImgPlus< UnsignedShortType > > frame2 = CompletableFuture.supplyAsync( () -> {
+				try
+				{
+					return prefetcher.get( 2 );
+				}
+				catch ( final Exception e )
+				{
+					throw new RuntimeException( e );
+				}
+			} );
+			try
+			{
+				frame2.get( 200, TimeUnit.MILLISECONDS );
+				throw new AssertionError( "Frame 2 was loaded while all buffers were in use." );
+			}
+			catch ( final TimeoutException e )
+			{
+				// Expected.
+			}
+
+			prefetcher.release( 0 );
+			final ImgPlus< UnsignedShortType > img2 = frame2.get();
+			assertFrame( 2, img2 );
+			assertSame( frame0.getImg(), img2.getImg() );
+
+			// Frames released before being requested are skipped.
+			prefetcher.release( 1 );
+			prefetcher.release( 3 );
+			assertFrame( 4, prefetcher.get( 4 ) );
+		}
+		finally
+		{
+			prefetcher.close();
+		}
+	}
+
+	@Test( timeout = 10000 )
+	public void testClose() throws Exception
+	{
+		final FramePrefetcher< UnsignedShortType > prefetcher = new FramePrefetcher<>( createImg(), 0, N_FRAMES - 1, 1 );
+		assertFrame( 0, prefetcher.get( 0 ) );
+
+		// Frame 1 cannot be loaded before frame 0 is released.
+		final CompletableFuture< Boolean > waiting = CompletableFuture.supplyAsync( () -> {
+			try
+			{
+				prefetcher.get( 1 );
+				return Boolean.FALSE;
+			}
+			catch ( final CancellationException e )
+			{
+				return Boolean.TRUE;
+			}
+			catch ( final Exception e )
+			{
+				throw new RuntimeException( e );
+			}
+		} );
+		Thread.sleep( 100 );
+		assertFalse( waiting.isDone() );
+
+		// Closing unblocks the waiting thread, and later requests fail.
+		prefetcher.close();
+		assertEquals( Boolean.TRUE, waiting.get() );
+		try
+		{
+			prefetcher.get( 2 );
+			throw new AssertionError( "Got a frame after closing." );
+		}
+		catch ( final CancellationException e )
+		{
+			// Expected.
+		}
+	}
+}
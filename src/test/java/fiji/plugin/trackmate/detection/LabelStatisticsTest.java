@@ -0,0 +1,157 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2010 - 2023 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.detection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import fiji.plugin.trackmate.Spot;
+import net.imglib2.Cursor;
+import net.imglib2.img.Img;
+import net.imglib2.img.array.ArrayImgs;
+import net.imglib2.type.numeric.integer.IntType;
+import net.imglib2.type.numeric.real.FloatType;
+import net.imglib2.util.Intervals;
+import net.imglib2.view.Views;
+
+public class LabelStatisticsTest
+{
+
+	/**
+	 * Label 1: box [2, 5] x [3, 4] x [1, 6]. Label 3: box [10, 11] x [0, 9] x
+	 * [5, 7]. Label 2 is absent.
+	 */
+	private static Img< IntType > createLabels()
+	{
+		final Img< IntType > labels = ArrayImgs.ints( 16, 12, 10 );
+		fill( labels, 1, new long[] { 2, 3, 1 }, new long[] { 5, 4, 6 } );
+		fill( labels, 3, new long[] { 10, 0, 5 }, new long[] { 11, 9, 7 } );
+		return labels;
+	}
+
+	private static void fill( final Img< IntType > img, final int label, final long[] min, final long[] max )
+	{
+		Views.interval( img, min, max ).forEach( p -> p.set( label ) );
+	}
+
+	@Test
+	public void testSingleAndMultiThreaded()
+	{
+		final Img< IntType > labels = createLabels();
+		final Img< FloatType > intensity = ArrayImgs.floats( 16, 12, 10 );
+		final Cursor< FloatType > cursor = intensity.localizingCursor();
+		while ( cursor.hasNext() )
+		{
+			cursor.fwd();
+			cursor.get().set( cursor.getIntPosition( 2 ) );
+		}
+
+		for ( final int numThreads : new int[] { 1, 3, 16 } )
+		{
+			final LabelStatistics stats = LabelStatistics.compute( labels, intensity, numThreads );
+			assertEquals( 4, stats.size() );
+			assertEquals( 0, stats.count( 2 ) );
+			assertEquals( 0, stats.count( 12 ) );
+
+			assertEquals( 4 * 2 * 6, stats.count( 1 ) );
+			assertEquals( 3.5, stats.centroid( 1, 0 ), 1e-12 );
+			assertEquals( 3.5, stats.centroid( 1, 1 ), 1e-12 );
+			assertEquals( 3.5, stats.centroid( 1, 2 ), 1e-12 );
+			assertEquals( 2, stats.min( 1, 0 ) );
+			assertEquals( 4, stats.max( 1, 1 ) );
+			assertEquals( 1, stats.min( 1, 2 ) );
+			assertEquals( 6, stats.max( 1, 2 ) );
+
+			assertEquals( 2 * 10 * 3, stats.count( 3 ) );
+			assertEquals( 10.5, stats.centroid( 3, 0 ), 1e-12 );
+			assertEquals( 4.5, stats.centroid( 3, 1 ), 1e-12 );
+			assertEquals( 6., stats.centroid( 3, 2 ), 1e-12 );
+			assertEquals( 0, stats.min( 3, 1 ) );
+			assertEquals( 9, stats.max( 3, 1 ) );
+
+			assertTrue( stats.hasIntensity() );
+			assertEquals( 6., stats.meanIntensity( 3 ), 1e-12 );
+			assertEquals( 2. / 3., stats.intensityVariance( 3 ), 1e-9 );
+			assertEquals( 7., stats.maxIntensity( 3 ), 0. );
+			assertEquals( 6., stats.maxIntensity( 1 ), 0. );
+		}
+	}
+
+	@Test
+	public void testFromLabelImage()
+	{
+		final Img< IntType > labels = createLabels();
+		final double[] calibration = new double[] { 0.5, 0.5, 2. };
+		final long[] offset = new long[] { 100, 200, 3 };
+		final List< Spot > spots = MaskUtils.fromLabelImage(
+				labels,
+				Intervals.translate( Intervals.translate( Intervals.translate( labels, offset[ 0 ], 0 ), offset[ 1 ], 1 ), offset[ 2 ], 2 ),
+				calibration,
+				2 );
+		assertEquals( 2, spots.size() );
+
+		final LabelStatistics stats = LabelStatistics.compute( labels, null, 1 );
+		assertFalse( stats.hasIntensity() );
+		int label = 1;
+		for ( final Spot spot : spots )
+		{
+			for ( int d = 0; d < 3; d++ )
+				assertEquals( calibration[ d ] * ( offset[ d ] + stats.centroid( label, d ) ), spot.getDoublePosition( d ), 1e-12 );
+			assertEquals( stats.count( label ), spot.getFeature( Spot.QUALITY ).doubleValue(), 0. );
+			final double volume = stats.count( label ) * 0.5 * 0.5 * 2.;
+			assertEquals( Math.pow( 3. * volume / ( 4. * Math.PI ), 1. / 3. ), spot.getFeature( Spot.RADIUS ).doubleValue(), 1e-12 );
+			label += 2;
+		}
+	}
+
+	@Test
+	public void testRoundingAndLargeLabels()
+	{
+		final Img< FloatType > labels = ArrayImgs.floats( 4, 4 );
+		final Cursor< FloatType > cursor = labels.localizingCursor();
+		while ( cursor.hasNext() )
+		{
+			cursor.fwd();
+			final int y = cursor.getIntPosition( 1 );
+			if ( y == 0 )
+				cursor.get().set( 1.6f ); // Rounded to 2.
+			else if ( y == 1 )
+				cursor.get().set( 0.4f ); // Rounded to background.
+			else if ( y == 2 )
+				cursor.get().set( 1e10f ); // Too large.
+		}
+
+		for ( final int numThreads : new int[] { 1, 2 } )
+		{
+			final LabelStatistics stats = LabelStatistics.compute( labels, null, numThreads );
+			assertEquals( 3, stats.size() );
+			assertEquals( 0, stats.count( 1 ) );
+			assertEquals( 4, stats.count( 2 ) );
+			assertEquals( 4, stats.numSkipped() );
+		}
+	}
+}
@@ -0,0 +1,58 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2010 - 2023 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.detection;
+
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import net.imglib2.FinalInterval;
+import net.imglib2.img.Img;
+import net.imglib2.type.numeric.real.FloatType;
+
+public class LogDetectorCacheTest
+{
+
+	@Test
+	public void testPoolIsBoundedInSizes()
+	{
+		final LogDetectorCache cache = new LogDetectorCache();
+		final int nSizes = LogDetectorCache.MAX_SIZES + 2;
+		@SuppressWarnings( "unchecked" )
+		final Img< FloatType >[] released = new Img[ nSizes ];
+		for ( int i = 0; i < nSizes; i++ )
+		{
+			released[ i ] = cache.getFloatImg( new FinalInterval( 8 + i, 8 ) );
+			cache.releaseFloatImg( released[ i ] );
+		}
+
+		for ( int i = 0; i < nSizes; i++ )
+		{
+			final Img< FloatType > img = cache.getFloatImg( new FinalInterval( 8 + i, 8 ) );
+			if ( i < LogDetectorCache.MAX_SIZES )
+				assertSame( "Size " + i + " should be pooled.", released[ i ], img );
+			else
+				assertNotSame( "Size " + i + " should not be pooled.", released[ i ], img );
+		}
+	}
+}
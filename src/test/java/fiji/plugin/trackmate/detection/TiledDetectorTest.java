@@ -0,0 +1,76 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2010 - 2023 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.detection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import net.imglib2.Interval;
+import net.imglib2.util.Intervals;
+
+public class TiledDetectorTest
+{
+
+	@Test
+	public void testSplitIntervalPartitions()
+	{
+		final Interval interval = Intervals.createMinMax( 3, -5, 2, 1002, 700, 90 );
+		final long[] margin = new long[] { 10, 10, 4 };
+		final long maxBlockSize = 200l * 200l * 50l;
+		final List< Interval > cores = TiledDetector.splitInterval( interval, margin, maxBlockSize );
+		assertTrue( cores.size() > 1 );
+
+		long total = 0;
+		for ( final Interval core : cores )
+		{
+			total += Intervals.numElements( core );
+			for ( int d = 0; d < interval.numDimensions(); d++ )
+			{
+				assertTrue( core.min( d ) >= interval.min( d ) );
+				assertTrue( core.max( d ) <= interval.max( d ) );
+			}
+			final Interval block = Intervals.intersect( Intervals.expand( core, margin ), interval );
+			assertTrue( Intervals.numElements( block ) <= maxBlockSize );
+			for ( final Interval other : cores )
+				if ( other != core )
+					assertTrue( Intervals.isEmpty( Intervals.intersect( core, other ) ) );
+		}
+		assertEquals( Intervals.numElements( interval ), total );
+	}
+
+	@Test
+	public void testSmallIntervalIsNotSplit()
+	{
+		final Interval interval = Intervals.createMinMax( 0, 0, 63, 63 );
+		final List< Interval > cores = TiledDetector.splitInterval( interval, new long[] { 5, 5 }, TiledDetector.DEFAULT_MAX_BLOCK_SIZE );
+		assertEquals( 1, cores.size() );
+		for ( int d = 0; d < interval.numDimensions(); d++ )
+		{
+			assertEquals( interval.min( d ), cores.get( 0 ).min( d ) );
+			assertEquals( interval.max( d ), cores.get( 0 ).max( d ) );
+		}
+	}
+}
@@ -0,0 +1,196 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2010 - 2023 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.features.edge;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.junit.Before;
+import org.junit.Test;
+
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.features.edges.AbstractEdgeAnalyzer;
+import fiji.plugin.trackmate.features.edges.BatchedEdgeFeatureEngine;
+import fiji.plugin.trackmate.features.edges.DirectionalChangeAnalyzer;
+import fiji.plugin.trackmate.features.edges.EdgeSpeedAnalyzer;
+import fiji.plugin.trackmate.features.edges.EdgeTargetAnalyzer;
+import fiji.plugin.trackmate.features.edges.EdgeTimeLocationAnalyzer;
+
+public class BatchedEdgeFeatureEngineTest
+{
+
+	private static final int N_TRACKS = 30;
+
+	private static final int DEPTH = 100;
+
+	private static final int N_THREADS = 4;
+
+	private Model model;
+
+	@Before
+	public void setUp()
+	{
+		final Random ran = new Random( 1l );
+		model = new Model();
+		model.beginUpdate();
+		try
+		{
+			for ( int i = 0; i < N_TRACKS; i++ )
+			{
+				Spot previous = null;
+				for ( int j = 0; j <= DEPTH; j++ )
+				{
+					final Spot spot = newSpot( ran, j );
+					model.addSpotTo( spot, j );
+					if ( null != previous )
+						model.addEdge( previous, spot, ran.nextDouble() );
+
+					// A division every 10 frames, to get undefined
+					// directional changes as well.
+					if ( j % 10 == 5 )
+					{
+						final Spot sibling = newSpot( ran, j );
+						model.addSpotTo( sibling, j );
+						model.addEdge( previous, sibling, ran.nextDouble() );
+					}
+					previous = spot;
+				}
+			}
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+	}
+
+	@Test
+	public void testBatchesMatchPerEdgeComputation()
+	{
+		final Set< DefaultWeightedEdge > edges = model.getTrackModel().edgeSet();
+		assertTrue( "Need several batches.", edges.size() > 2 * BatchedEdgeFeatureEngine.BATCH_SIZE );
+
+		final List< AbstractEdgeAnalyzer > analyzers = Arrays.asList(
+				new EdgeSpeedAnalyzer(),
+				new DirectionalChangeAnalyzer(),
+				new EdgeTimeLocationAnalyzer(),
+				new EdgeTargetAnalyzer() );
+		final List< String > features = new ArrayList<>();
+		for ( final AbstractEdgeAnalyzer analyzer : analyzers )
+			features.addAll( analyzer.getFeatures() );
+
+		// Batched, multi-threaded.
+		BatchedEdgeFeatureEngine.process( edges, model, analyzers, N_THREADS );
+		final Map< String, Map< DefaultWeightedEdge, Double > > batched = new HashMap<>();
+		for ( final String feature : features )
+		{
+			final Map< DefaultWeightedEdge, Double > values = new HashMap<>();
+			for ( final DefaultWeightedEdge edge : edges )
+			{
+				final Double val = model.getFeatureModel().getEdgeFeature( edge, feature );
+				assertNotNull( "Missing " + feature + " for edge " + edge, val );
+				values.put( edge, val );
+			}
+			batched.put( feature, values );
+		}
+
+		// One edge at a time.
+		final Speed speed = new Speed();
+		final DirectionalChange directionalChange = new DirectionalChange();
+		final TimeLocation timeLocation = new TimeLocation();
+		final Target target = new Target();
+		for ( final DefaultWeightedEdge edge : edges )
+		{
+			speed.analyze( edge, model );
+			directionalChange.analyze( edge, model );
+			timeLocation.analyze( edge, model );
+			target.analyze( edge, model );
+		}
+
+		for ( final String feature : features )
+		{
+			final Map< DefaultWeightedEdge, Double > values = batched.get( feature );
+			for ( final DefaultWeightedEdge edge : edges )
+			{
+				final double expected = model.getFeatureModel().getEdgeFeature( edge, feature ).doubleValue();
+				assertEquals( "Unexpected " + feature + " for edge " + edge, expected, values.get( edge ).doubleValue(), 0. );
+			}
+		}
+	}
+
+	private static Spot newSpot( final Random ran, final int frame )
+	{
+		final Spot spot = new Spot( 100. * ran.nextDouble(), 100. * ran.nextDouble(), 10. * ran.nextDouble(), 1., -1. );
+		spot.putFeature( Spot.POSITION_T, Double.valueOf( 2. * frame ) );
+		return spot;
+	}
+
+	/*
+	 * Expose the per-edge computation of the analyzers under test.
+	 */
+
+	private static final class Speed extends EdgeSpeedAnalyzer
+	{
+		@Override
+		protected void analyze( final DefaultWeightedEdge edge, final Model model )
+		{
+			super.analyze( edge, model );
+		}
+	}
+
+	private static final class DirectionalChange extends DirectionalChangeAnalyzer
+	{
+		@Override
+		protected void analyze( final DefaultWeightedEdge edge, final Model model )
+		{
+			super.analyze( edge, model );
+		}
+	}
+
+	private static final class TimeLocation extends EdgeTimeLocationAnalyzer
+	{
+		@Override
+		protected void analyze( final DefaultWeightedEdge edge, final Model model )
+		{
+			super.analyze( edge, model );
+		}
+	}
+
+	private static final class Target extends EdgeTargetAnalyzer
+	{
+		@Override
+		protected void analyze( final DefaultWeightedEdge edge, final Model model )
+		{
+			super.analyze( edge, model );
+		}
+	}
+}
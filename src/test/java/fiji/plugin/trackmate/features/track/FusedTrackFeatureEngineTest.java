@@ -0,0 +1,110 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2010 - 2023 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.features.track;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import fiji.plugin.trackmate.FeatureModel;
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.Spot;
+
+public class FusedTrackFeatureEngineTest
+{
+
+	private static final int N_TRACKS = 10;
+
+	private static final int DEPTH = 9;
+
+	private static final double EPSILON = 1e-12;
+
+	private Model model;
+
+	@Before
+	public void setUp()
+	{
+		model = new Model();
+		model.beginUpdate();
+		try
+		{
+			for ( int i = 0; i < N_TRACKS; i++ )
+			{
+				// Add spots in reverse frame order: the engine has to sort.
+				Spot next = null;
+				for ( int j = DEPTH; j >= 0; j-- )
+				{
+					final Spot spot = new Spot( 2. * j + i, i, i, 1d, i );
+					spot.putFeature( Spot.POSITION_T, Double.valueOf( j ) );
+					model.addSpotTo( spot, j );
+					if ( null != next )
+						model.addEdge( spot, next, 1 );
+					next = spot;
+				}
+			}
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+	}
+
+	@Test
+	public final void testProcess()
+	{
+		final List< AccumulatingTrackAnalyzer > analyzers = Arrays.asList(
+				new TrackDurationAnalyzer(),
+				new TrackSpeedStatisticsAnalyzer(),
+				new TrackLocationAnalyzer(),
+				new TrackSpotQualityFeatureAnalyzer(),
+				new TrackMotilityAnalyzer() );
+		FusedTrackFeatureEngine.process( model.getTrackModel().trackIDs( true ), model, analyzers, 4 );
+
+		final FeatureModel fm = model.getFeatureModel();
+		for ( final Integer trackID : model.getTrackModel().trackIDs( true ) )
+		{
+			final double i = fm.getTrackFeature( trackID, TrackLocationAnalyzer.Y_LOCATION ).doubleValue();
+
+			assertEquals( DEPTH, fm.getTrackFeature( trackID, TrackDurationAnalyzer.TRACK_DURATION ).doubleValue(), EPSILON );
+			assertEquals( 0., fm.getTrackFeature( trackID, TrackDurationAnalyzer.TRACK_START ).doubleValue(), EPSILON );
+			assertEquals( 2. * DEPTH, fm.getTrackFeature( trackID, TrackDurationAnalyzer.TRACK_DISPLACEMENT ).doubleValue(), EPSILON );
+
+			assertEquals( 2., fm.getTrackFeature( trackID, TrackSpeedStatisticsAnalyzer.TRACK_MEAN_SPEED ).doubleValue(), EPSILON );
+			assertEquals( 2., fm.getTrackFeature( trackID, TrackSpeedStatisticsAnalyzer.TRACK_MEDIAN_SPEED ).doubleValue(), EPSILON );
+			assertEquals( 0., fm.getTrackFeature( trackID, TrackSpeedStatisticsAnalyzer.TRACK_STD_SPEED ).doubleValue(), EPSILON );
+
+			assertEquals( DEPTH + i, fm.getTrackFeature( trackID, TrackLocationAnalyzer.X_LOCATION ).doubleValue(), EPSILON );
+			assertEquals( i, fm.getTrackFeature( trackID, TrackLocationAnalyzer.Z_LOCATION ).doubleValue(), EPSILON );
+			assertEquals( i, fm.getTrackFeature( trackID, TrackSpotQualityFeatureAnalyzer.TRACK_MEAN_QUALITY ).doubleValue(), EPSILON );
+
+			// Motility depends on duration and speed, computed in the same pass.
+			assertEquals( 2. * DEPTH, fm.getTrackFeature( trackID, TrackMotilityAnalyzer.TRACK_TOTAL_DISTANCE_TRAVELED ).doubleValue(), EPSILON );
+			assertEquals( 2. * DEPTH, fm.getTrackFeature( trackID, TrackMotilityAnalyzer.TRACK_MAX_DISTANCE_TRAVELED ).doubleValue(), EPSILON );
+			assertEquals( 1., fm.getTrackFeature( trackID, TrackMotilityAnalyzer.TRACK_CONFINEMENT_RATIO ).doubleValue(), EPSILON );
+			assertEquals( 1., fm.getTrackFeature( trackID, TrackMotilityAnalyzer.TRACK_LINEARITY_OF_FORWARD_PROGRESSION ).doubleValue(), EPSILON );
+		}
+	}
+}
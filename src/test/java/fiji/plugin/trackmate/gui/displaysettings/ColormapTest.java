@@ -0,0 +1,68 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2010 - 2023 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.gui.displaysettings;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+
+import org.junit.Test;
+
+public class ColormapTest
+{
+
+	@Test
+	public void testLUTPaint()
+	{
+		for ( final Colormap colormap : Colormap.getAvailableLUTs() )
+		{
+			for ( int i = 0; i <= 5000; i++ )
+			{
+				final double value = -0.1 + 1.2 * i / 5000.;
+				final Color expected = colormap.getPaint( value );
+				final Color actual = colormap.getLUTPaint( value );
+				assertTrue( "Color for value " + value + " of colormap " + colormap.getName() + " is too far: expected " + expected + " but got " + actual,
+						Math.abs( expected.getRed() - actual.getRed() ) <= 2
+								&& Math.abs( expected.getGreen() - actual.getGreen() ) <= 2
+								&& Math.abs( expected.getBlue() - actual.getBlue() ) <= 2 );
+			}
+			// Colors are not reallocated.
+			assertSame( colormap.getLUTPaint( 0.5 ), colormap.getLUTPaint( 0.5 ) );
+			// Bounds are exact.
+			assertEquals( colormap.getPaint( 0. ), colormap.getLUTPaint( 0. ) );
+			assertEquals( colormap.getPaint( 1. ), colormap.getLUTPaint( 1. ) );
+		}
+	}
+
+	@Test
+	public void testLUTIsRebuiltOnAdd()
+	{
+		final Colormap colormap = new Colormap( "Test", 0., 1. );
+		colormap.add( 0., Color.BLACK );
+		colormap.add( 1., Color.WHITE );
+		assertEquals( Color.WHITE, colormap.getLUTPaint( 1. ) );
+		colormap.add( 1., Color.RED );
+		assertEquals( Color.RED, colormap.getLUTPaint( 1. ) );
+	}
+}
@@ -0,0 +1,99 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2010 - 2023 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.tracking.jaqaman.costmatrix;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import net.imglib2.util.Util;
+
+public class DefaultCostMatrixCreatorTest
+{
+
+	@Test
+	public void testPercentile()
+	{
+		final Random ran = new Random( 1l );
+		for ( int t = 0; t < 1000; t++ )
+		{
+			final double[] values = new double[ 1 + ran.nextInt( 200 ) ];
+			for ( int i = 0; i < values.length; i++ )
+				values[ i ] = ( ran.nextInt( 3 ) == 0 ) ? ran.nextInt( 5 ) : ran.nextDouble();
+			final double percentile = ran.nextDouble();
+			assertEquals( "Bad percentile.", Util.percentile( values, percentile ), DefaultCostMatrixCreator.percentile( values, percentile ), 0. );
+		}
+	}
+
+	@Test
+	public void testMatrix()
+	{
+		final Random ran = new Random( 2l );
+		final List< Integer > rows = new ArrayList<>();
+		final List< Integer > cols = new ArrayList<>();
+		final Set< Long > pairs = new HashSet<>();
+		while ( rows.size() < 5000 )
+		{
+			final int r = ran.nextInt( 700 );
+			final int c = ran.nextInt( 800 );
+			if ( pairs.add( Long.valueOf( 1000l * r + c ) ) )
+			{
+				rows.add( Integer.valueOf( 3 * r ) );
+				cols.add( Integer.valueOf( 7 * c ) );
+			}
+		}
+		final double[] costs = new double[ rows.size() ];
+		for ( int i = 0; i < costs.length; i++ )
+			costs[ i ] = ran.nextDouble();
+
+		final DefaultCostMatrixCreator< Integer, Integer > creator = new DefaultCostMatrixCreator<>( rows, cols, costs, 1.05, 0.9 );
+		assertTrue( creator.checkInput() && creator.process() );
+
+		final SparseCostMatrix scm = creator.getResult();
+		final List< Integer > uniqueRows = creator.getSourceList();
+		final List< Integer > uniqueCols = creator.getTargetList();
+		assertEquals( "Bad cardinality.", costs.length, scm.cardinality );
+		for ( int i = 0; i < costs.length; i++ )
+		{
+			final int r = Collections.binarySearch( uniqueRows, rows.get( i ) );
+			final int c = Collections.binarySearch( uniqueCols, cols.get( i ) );
+			assertEquals( "Bad cost for pair " + i + ".", costs[ i ], scm.get( r, c, Double.NaN ), 0. );
+		}
+
+		// Duplicates are rejected.
+		rows.add( rows.get( 0 ) );
+		cols.add( cols.get( 0 ) );
+		final double[] costs2 = new double[ costs.length + 1 ];
+		System.arraycopy( costs, 0, costs2, 0, costs.length );
+		final DefaultCostMatrixCreator< Integer, Integer > creator2 = new DefaultCostMatrixCreator<>( rows, cols, costs2, 1.05, 0.9 );
+		assertFalse( creator2.process() );
+	}
+}
@@ -0,0 +1,74 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2010 - 2023 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.tracking.jaqaman.costmatrix;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import fiji.plugin.trackmate.Spot;
+import fiji.plugin.trackmate.tracking.jaqaman.costfunction.CostFunction;
+import fiji.plugin.trackmate.tracking.jaqaman.costfunction.SquareDistCostFunction;
+
+public class KDTreeLinkingCostMatrixCreatorTest
+{
+
+	@Test
+	public void testSameAsBruteForce()
+	{
+		final Random ran = new Random( 1l );
+		final List< Spot > sources = new ArrayList<>();
+		final List< Spot > targets = new ArrayList<>();
+		for ( int i = 0; i < 500; i++ )
+		{
+			sources.add( new Spot( 100. * ran.nextDouble(), 100. * ran.nextDouble(), 10. * ran.nextDouble(), 1., 1. ) );
+			targets.add( new Spot( 100. * ran.nextDouble(), 100. * ran.nextDouble(), 10. * ran.nextDouble(), 1., 1. ) );
+		}
+
+		final double maxDist = 5.;
+		final double costThreshold = maxDist * maxDist;
+		final CostFunction< Spot, Spot > costFunction = new SquareDistCostFunction();
+
+		final JaqamanLinkingCostMatrixCreator< Spot, Spot > bruteForce = new JaqamanLinkingCostMatrixCreator<>( sources, targets, costFunction, costThreshold, 1.05, 1. );
+		final KDTreeLinkingCostMatrixCreator< Spot, Spot > kdtree = new KDTreeLinkingCostMatrixCreator<>( sources, targets, costFunction, costThreshold, maxDist, 1.05, 1. );
+		assertTrue( bruteForce.checkInput() && bruteForce.process() );
+		assertTrue( kdtree.checkInput() && kdtree.process() );
+
+		assertEquals( "Source lists differ.", bruteForce.getSourceList(), kdtree.getSourceList() );
+		assertEquals( "Target lists differ.", bruteForce.getTargetList(), kdtree.getTargetList() );
+		assertEquals( "Alternative costs differ.", bruteForce.getAlternativeCostForSource( null ), kdtree.getAlternativeCostForSource( null ), 0. );
+
+		final SparseCostMatrix expected = bruteForce.getResult();
+		final SparseCostMatrix actual = kdtree.getResult();
+		assertEquals( "Bad number of rows.", expected.nRows, actual.nRows );
+		assertEquals( "Bad number of cols.", expected.nCols, actual.nCols );
+		assertArrayEquals( "Bad number of elements per row.", expected.number, actual.number );
+		assertArrayEquals( "Bad column indices.", expected.kk, actual.kk );
+		assertArrayEquals( "Bad costs.", expected.cc, actual.cc, 0. );
+	}
+}
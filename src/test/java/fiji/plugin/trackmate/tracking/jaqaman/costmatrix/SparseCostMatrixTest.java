@@ -21,8 +21,11 @@ package fiji.plugin.trackmate.tracking.jaqaman.costmatrix;
  * #L%
  */
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 
+import java.util.List;
+
 import org.junit.Test;
 
 public class SparseCostMatrixTest
@@ -78,4 +81,37 @@ public class SparseCostMatrixTest
 		}
 	}
 
+	@Test
+	public void testDecompose()
+	{
+		final int[] kk = new int[] { 0, 3, 2, 1, 3, 3, 0, 3 };
+		final double[] cc = new double[] { 0.1, 0.2, 0.3, 0.4, 0.5, 0.6, 0.7, 0.8 };
+		final int[] number = new int[] { 2, 1, 2, 1, 2 };
+		final SparseCostMatrix A = new SparseCostMatrix( cc, kk, number, 4 );
+		final List< SparseCostMatrix.Block > blocks = A.decompose();
+
+		assertEquals( "Bad number of blocks.", 2, blocks.size() );
+		assertArrayEquals( "Bad rows in block 0.", new int[] { 0, 2, 3, 4 }, blocks.get( 0 ).getRows() );
+		assertArrayEquals( "Bad cols in block 0.", new int[] { 0, 1, 3 }, blocks.get( 0 ).getCols() );
+		assertArrayEquals( "Bad rows in block 1.", new int[] { 1 }, blocks.get( 1 ).getRows() );
+		assertArrayEquals( "Bad cols in block 1.", new int[] { 2 }, blocks.get( 1 ).getCols() );
+
+		int cardinality = 0;
+		for ( final SparseCostMatrix.Block block : blocks )
+		{
+			final SparseCostMatrix B = block.getMatrix();
+			cardinality += B.cardinality;
+			for ( int i = 0; i < B.nRows; i++ )
+			{
+				for ( int j = 0; j < B.nCols; j++ )
+				{
+					final double actual = B.get( i, j, Double.POSITIVE_INFINITY );
+					final double expected = A.get( block.getRows()[ i ], block.getCols()[ j ], Double.POSITIVE_INFINITY );
+					assertEquals( "Bad value at row " + i + ", col " + j + ".", expected, actual, Double.MIN_VALUE );
+				}
+			}
+		}
+		assertEquals( "Bad total cardinality.", A.cardinality, cardinality );
+	}
+
 }
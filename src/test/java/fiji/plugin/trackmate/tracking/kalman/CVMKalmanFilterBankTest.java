@@ -0,0 +1,145 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2010 - 2023 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.tracking.kalman;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class CVMKalmanFilterBankTest
+{
+
+	private static final double POSITION_PROCESS_STD = 2.;
+
+	private static final double VELOCITY_PROCESS_STD = 1.5;
+
+	private static final double POSITION_MEASUREMENT_STD = 0.3;
+
+	private static final double INIT_COVARIANCE = 1e-2;
+
+	@Test
+	public void testSameAsMatrixFilter()
+	{
+		final Random ran = new Random( 1l );
+		final int nFilters = 20_000;
+		final int nFrames = 20;
+		final int maxOcclusions = 3;
+
+		final CVMKalmanFilterBank< Integer > bank = new CVMKalmanFilterBank<>( POSITION_PROCESS_STD, VELOCITY_PROCESS_STD, POSITION_MEASUREMENT_STD );
+		final CVMKalmanFilter[] filters = new CVMKalmanFilter[ nFilters ];
+		final int[] slots = new int[ nFilters ];
+		for ( int i = 0; i < nFilters; i++ )
+		{
+			final double[] X0 = new double[ 6 ];
+			for ( int d = 0; d < 6; d++ )
+				X0[ d ] = 10. * ran.nextGaussian();
+			filters[ i ] = new CVMKalmanFilter( X0, INIT_COVARIANCE, POSITION_PROCESS_STD, VELOCITY_PROCESS_STD, POSITION_MEASUREMENT_STD );
+			slots[ i ] = bank.add( Integer.valueOf( i ), X0[ 0 ], X0[ 1 ], X0[ 2 ], X0[ 3 ], X0[ 4 ], X0[ 5 ], INIT_COVARIANCE );
+		}
+
+		final int[] updated = new int[ nFilters ];
+		final boolean[] measured = new boolean[ nFilters ];
+		final double[] measurements = new double[ 3 * nFilters ];
+		for ( int t = 0; t < nFrames; t++ )
+		{
+			bank.predictAll();
+			int n = 0;
+			for ( int i = 0; i < nFilters; i++ )
+			{
+				if ( null == filters[ i ] )
+					continue;
+
+				measured[ i ] = false;
+				final double[] Xp = filters[ i ].predict();
+				for ( int d = 0; d < 3; d++ )
+					assertEquals( Xp[ d ], bank.getPredictedPosition( slots[ i ], d ), 1e-9 );
+
+				if ( ran.nextDouble() < 0.2 )
+					continue; // Occluded.
+
+				final double[] Xm = new double[ 3 ];
+				for ( int d = 0; d < 3; d++ )
+				{
+					Xm[ d ] = Xp[ d ] + ran.nextGaussian();
+					measurements[ 3 * n + d ] = Xm[ d ];
+				}
+				filters[ i ].update( Xm );
+				measured[ i ] = true;
+				updated[ n++ ] = slots[ i ];
+			}
+			bank.updateAll( updated, measurements, n );
+
+			for ( int i = 0; i < nFilters; i++ )
+			{
+				if ( null == filters[ i ] )
+					continue;
+				if ( !measured[ i ] )
+					filters[ i ].update( null );
+			}
+			bank.occludePending( maxOcclusions, slot -> {
+				final int i = bank.getAttachment( slot ).intValue();
+				assertEquals( maxOcclusions + 1, filters[ i ].getNOcclusion() );
+				filters[ i ] = null;
+			} );
+
+			for ( int i = 0; i < nFilters; i++ )
+			{
+				if ( null == filters[ i ] )
+					continue;
+				assertEquals( filters[ i ].getNOcclusion(), bank.getNOcclusion( slots[ i ] ) );
+				assertEquals( filters[ i ].getPositionError(), bank.getPositionError( slots[ i ] ), 1e-9 );
+				assertEquals( filters[ i ].getVelocityError(), bank.getVelocityError( slots[ i ] ), 1e-9 );
+			}
+		}
+	}
+
+	@Test
+	public void testSlotReuse()
+	{
+		final CVMKalmanFilterBank< String > bank = new CVMKalmanFilterBank<>( POSITION_PROCESS_STD, VELOCITY_PROCESS_STD, POSITION_MEASUREMENT_STD );
+		final int a = bank.add( "a", 0., 0., 0., 1., 0., 0., INIT_COVARIANCE );
+		final int b = bank.add( "b", 0., 0., 0., 0., 1., 0., INIT_COVARIANCE );
+		assertEquals( 2, bank.size() );
+
+		// Only b is updated, a dies at its first occlusion.
+		bank.predictAll();
+		bank.update( b, 0., 1., 0. );
+		bank.occludePending( 0, null );
+		assertEquals( 1, bank.size() );
+
+		final int c = bank.add( "c", 5., 5., 5., 0., 0., 0., INIT_COVARIANCE );
+		assertEquals( a, c );
+		assertEquals( 2, bank.size() );
+		assertEquals( 2, bank.slotBound() );
+		assertEquals( "c", bank.getAttachment( c ) );
+
+		// A filter added after the prediction step is not occluded.
+		bank.predictAll();
+		final int d = bank.add( "d", 0., 0., 0., 0., 0., 0., INIT_COVARIANCE );
+		bank.occludePending( 0, null );
+		assertEquals( 1, bank.size() );
+		assertEquals( "d", bank.getAttachment( d ) );
+		assertEquals( 0, bank.getNOcclusion( d ) );
+	}
+}
@@ -0,0 +1,169 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2010 - 2023 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class TrackMateExecutorTest
+{
+
+	@Test
+	public void testMaxConcurrency() throws Exception
+	{
+		final AtomicInteger running = new AtomicInteger();
+		final AtomicInteger max = new AtomicInteger();
+		final List< Callable< Void > > tasks = new ArrayList<>();
+		for ( int i = 0; i < 50; i++ )
+		{
+			tasks.add( () -> {
+				max.accumulateAndGet( running.incrementAndGet(), Math::max );
+				Thread.sleep( 1 );
+				running.decrementAndGet();
+				return null;
+			} );
+		}
+
+		final ExecutorService executor = TrackMateExecutor.newStage( "test-concurrency", 2, null );
+		for ( final Future< Void > future : executor.invokeAll( tasks ) )
+			future.get();
+		executor.shutdown();
+		assertTrue( executor.awaitTermination( 1, TimeUnit.SECONDS ) );
+		assertTrue( max.get() <= 2 );
+		assertEquals( 50, TrackMateExecutor.getMetrics().get( "test-concurrency" ).getCompleted() );
+	}
+
+	@Test( timeout = 10_000 )
+	public void testNestedStages() throws Exception
+	{
+		// More nested blocking tasks than threads in the pool.
+		final int n = 2 * TrackMateExecutor.getParallelism() + 2;
+		final List< Callable< Integer > > outerTasks = new ArrayList<>();
+		for ( int i = 0; i < n; i++ )
+		{
+			outerTasks.add( () -> {
+				final ExecutorService inner = Threads.newFixedThreadPool( n );
+				final List< Callable< Integer > > innerTasks = new ArrayList<>();
+				for ( int j = 0; j < n; j++ )
+					innerTasks.add( () -> 1 );
+				int sum = 0;
+				for ( final Future< Integer > future : inner.invokeAll( innerTasks ) )
+					sum += future.get();
+				inner.shutdown();
+				return sum;
+			} );
+		}
+
+		final ExecutorService outer = Threads.newFixedThreadPool( n );
+		int total = 0;
+		for ( final Future< Integer > future : outer.invokeAll( outerTasks ) )
+			total += future.get();
+		outer.shutdown();
+		assertEquals( n * n, total );
+	}
+
+	@Test( timeout = 10_000 )
+	public void testNestedStagesTimedGet() throws Exception
+	{
+		// Timed waits must also compensate the blocked pool workers.
+		final int n = 2 * TrackMateExecutor.getParallelism() + 2;
+		final List< Callable< Integer > > outerTasks = new ArrayList<>();
+		for ( int i = 0; i < n; i++ )
+		{
+			outerTasks.add( () -> {
+				final ExecutorService inner = Threads.newFixedThreadPool( n );
+				final List< Future< Integer > > futures = new ArrayList<>();
+				for ( int j = 0; j < n; j++ )
+					futures.add( inner.submit( () -> 1 ) );
+				int sum = 0;
+				for ( final Future< Integer > future : futures )
+					sum += future.get( 5, TimeUnit.SECONDS );
+				inner.shutdown();
+				return sum;
+			} );
+		}
+
+		final ExecutorService outer = Threads.newFixedThreadPool( n );
+		final List< Future< Integer > > futures = new ArrayList<>();
+		for ( final Callable< Integer > task : outerTasks )
+			futures.add( outer.submit( task ) );
+		int total = 0;
+		for ( final Future< Integer > future : futures )
+			total += future.get( 5, TimeUnit.SECONDS );
+		outer.shutdown();
+		assertEquals( n * n, total );
+	}
+
+	@Test
+	public void testWorkerContextClassLoader() throws Exception
+	{
+		final ClassLoader loader = TrackMateExecutor.pool().submit( () -> Thread.currentThread().getContextClassLoader() ).get();
+		assertNotNull( loader );
+		// The TrackMate classes must be visible from the workers.
+		assertEquals( TrackMateExecutor.class, Class.forName( TrackMateExecutor.class.getName(), false, loader ) );
+	}
+
+	@Test
+	public void testCancel() throws Exception
+	{
+		final TrackMateExecutor.StageExecutorService executor = TrackMateExecutor.newStage( "test-cancel", 1, null );
+		final List< Future< ? > > futures = new ArrayList<>();
+		for ( int i = 0; i < 10; i++ )
+			futures.add( executor.submit( () -> {
+				try
+				{
+					Thread.sleep( 20 );
+				}
+				catch ( final InterruptedException e )
+				{}
+			} ) );
+		executor.cancel( "test" );
+
+		int nCanceled = 0;
+		for ( final Future< ? > future : futures )
+		{
+			try
+			{
+				future.get();
+			}
+			catch ( final CancellationException e )
+			{
+				nCanceled++;
+			}
+		}
+		assertTrue( nCanceled >= 9 );
+		assertTrue( executor.isCanceled() );
+		executor.shutdown();
+	}
+}
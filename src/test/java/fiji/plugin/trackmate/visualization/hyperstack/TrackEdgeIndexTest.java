@@ -0,0 +1,139 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2010 - 2023 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.visualization.hyperstack;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.jgrapht.graph.DefaultWeightedEdge;
+import org.junit.Test;
+
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.Spot;
+
+public class TrackEdgeIndexTest
+{
+
+	private static final int N_TRACKS = 50;
+
+	private static final int N_FRAMES = 30;
+
+	private static final double[] CALIBRATION = new double[] { 0.5, 0.5, 1. };
+
+	private static Model createModel( final Random ran )
+	{
+		final Model model = new Model();
+		model.beginUpdate();
+		try
+		{
+			for ( int i = 0; i < N_TRACKS; i++ )
+			{
+				double x = ran.nextDouble() * 200.;
+				double y = ran.nextDouble() * 200.;
+				Spot previous = null;
+				for ( int t = ran.nextInt( 10 ); t < N_FRAMES; t++ )
+				{
+					// Some long jumps to span several tiles.
+					final double step = ran.nextDouble() < 0.05 ? 80. : 5.;
+					x += ( ran.nextDouble() - 0.5 ) * step;
+					y += ( ran.nextDouble() - 0.5 ) * step;
+					final Spot spot = model.addSpotTo( new Spot( x, y, 0, 1, -1 ), t );
+					if ( previous != null )
+						model.addEdge( previous, spot, 1 );
+					previous = spot;
+				}
+			}
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+		return model;
+	}
+
+	@Test
+	public void testQueries()
+	{
+		final Random ran = new Random( 3l );
+		final Model model = createModel( ran );
+		final TrackEdgeIndex index = new TrackEdgeIndex( model, CALIBRATION );
+		assertEquals( model.getTrackModel().edgeSet().size(), index.edges.length );
+
+		for ( int i = 0; i < 500; i++ )
+		{
+			final int fromFrame = ran.nextInt( N_FRAMES + 4 ) - 2;
+			final int toFrame = fromFrame + ran.nextInt( N_FRAMES );
+			final double minx = ran.nextDouble() * 500. - 50.;
+			final double miny = ran.nextDouble() * 500. - 50.;
+			final double maxx = minx + ran.nextDouble() * 200.;
+			final double maxy = miny + ran.nextDouble() * 200.;
+
+			final Set< DefaultWeightedEdge > expected = new HashSet<>();
+			for ( final DefaultWeightedEdge edge : model.getTrackModel().edgeSet() )
+			{
+				final Spot source = model.getTrackModel().getEdgeSource( edge );
+				final Spot target = model.getTrackModel().getEdgeTarget( edge );
+				final int frame = source.getFeature( Spot.FRAME ).intValue();
+				if ( frame < fromFrame || frame > toFrame )
+					continue;
+				final double x0 = source.getDoublePosition( 0 ) / CALIBRATION[ 0 ] + 0.5f;
+				final double y0 = source.getDoublePosition( 1 ) / CALIBRATION[ 1 ] + 0.5f;
+				final double x1 = target.getDoublePosition( 0 ) / CALIBRATION[ 0 ] + 0.5f;
+				final double y1 = target.getDoublePosition( 1 ) / CALIBRATION[ 1 ] + 0.5f;
+				if ( Math.max( x0, x1 ) < minx || Math.min( x0, x1 ) > maxx || Math.max( y0, y1 ) < miny || Math.min( y0, y1 ) > maxy )
+					continue;
+				expected.add( edge );
+			}
+
+			final Set< DefaultWeightedEdge > actual = new HashSet<>();
+			index.forEach( fromFrame, toFrame, minx, miny, maxx, maxy, e -> assertTrue( "Edge visited twice.", actual.add( index.edges[ e ] ) ) );
+			assertEquals( expected, actual );
+		}
+	}
+
+	@Test
+	public void testStale()
+	{
+		final Model model = createModel( new Random( 5l ) );
+		final TrackEdgeIndex index = new TrackEdgeIndex( model, CALIBRATION );
+		assertFalse( index.isStale() );
+		index.sources[ 0 ].putFeature( Spot.POSITION_X, 12. );
+		assertTrue( index.isStale() );
+	}
+
+	@Test
+	public void testInvisibleTracks()
+	{
+		final Model model = createModel( new Random( 7l ) );
+		final Integer trackID = model.getTrackModel().trackIDs( true ).iterator().next();
+		final int nEdges = model.getTrackModel().trackEdges( trackID ).size();
+		model.setTrackVisibility( trackID, false );
+
+		final TrackEdgeIndex index = new TrackEdgeIndex( model, CALIBRATION );
+		assertEquals( model.getTrackModel().edgeSet().size() - nEdges, index.edges.length );
+	}
+}
@@ -0,0 +1,113 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2010 - 2023 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.visualization.trackscheme;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.image.BufferedImage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import fiji.plugin.trackmate.Settings;
+import fiji.plugin.trackmate.Spot;
+import ij.IJ;
+import ij.ImagePlus;
+
+public class SpotImageUpdaterTest
+{
+
+	private static Settings createSettings()
+	{
+		final ImagePlus imp = IJ.createImage( "Test Image", "8-bit ramp", 64, 64, 1, 1, 5 );
+		return new Settings( imp );
+	}
+
+	private static Spot createSpot( final double x, final double y, final int frame )
+	{
+		final Spot spot = new Spot( x, y, 0, 4, -1 );
+		spot.putFeature( Spot.FRAME, Double.valueOf( frame ) );
+		return spot;
+	}
+
+	@Test
+	public void testCache()
+	{
+		final SpotImageUpdater updater = new SpotImageUpdater( createSettings() );
+		final Spot spot = createSpot( 20, 20, 2 );
+
+		final BufferedImage image = updater.getImage( spot, 1. );
+		assertNotNull( image );
+		assertEquals( 8, image.getWidth() );
+		assertSame( "Thumbnail should come from the cache.", image, updater.getImage( spot, 1. ) );
+		assertSame( image, updater.getThumbnail( spot, 1. ) );
+
+		// Other radius factor: other thumbnail.
+		final BufferedImage larger = updater.getImage( spot, 2. );
+		assertEquals( 16, larger.getWidth() );
+
+		// Moving the spot invalidates its thumbnail.
+		spot.putFeature( Spot.POSITION_X, 30. );
+		assertNotSame( image, updater.getImage( spot, 1. ) );
+	}
+
+	@Test
+	public void testEviction()
+	{
+		// Room for 2 thumbnails of 8x8 pixels.
+		final SpotImageUpdater updater = new SpotImageUpdater( createSettings(), 128 );
+		final Spot s1 = createSpot( 10, 10, 0 );
+		final Spot s2 = createSpot( 20, 20, 0 );
+		final Spot s3 = createSpot( 30, 30, 0 );
+
+		final BufferedImage i1 = updater.getImage( s1, 1. );
+		updater.getImage( s2, 1. );
+		// Touch s1 so that s2 is the least recently used.
+		assertSame( i1, updater.getImage( s1, 1. ) );
+		updater.getImage( s3, 1. );
+		assertSame( i1, updater.getImage( s1, 1. ) );
+	}
+
+	@Test
+	public void testAsynchronous() throws InterruptedException
+	{
+		final SpotImageUpdater updater = new SpotImageUpdater( createSettings() );
+		final int nSpots = 20;
+		final CountDownLatch latch = new CountDownLatch( nSpots );
+		updater.addThumbnailListener( latch::countDown );
+
+		final Spot[] spots = new Spot[ nSpots ];
+		for ( int i = 0; i < nSpots; i++ )
+		{
+			spots[ i ] = createSpot( 10 + i, 10 + i, i % 5 );
+			updater.getThumbnail( spots[ i ], 1. );
+		}
+		assertTrue( "Thumbnails were not generated in time.", latch.await( 10, TimeUnit.SECONDS ) );
+		for ( final Spot spot : spots )
+			assertNotNull( updater.getThumbnail( spot, 1. ) );
+	}
+}
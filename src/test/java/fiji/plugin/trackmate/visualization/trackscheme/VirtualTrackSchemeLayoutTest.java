@@ -0,0 +1,190 @@
+/*-
+ * #%L
+ * TrackMate: your buddy for everyday tracking.
+ * %%
+ * Copyright (C) 2010 - 2023 TrackMate developers.
+ * %%
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public
+ * License along with this program.  If not, see
+ * <http://www.gnu.org/licenses/gpl-3.0.html>.
+ * #L%
+ */
+package fiji.plugin.trackmate.visualization.trackscheme;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import fiji.plugin.trackmate.Model;
+import fiji.plugin.trackmate.Spot;
+
+public class VirtualTrackSchemeLayoutTest
+{
+
+	private static final int N_LINEAR = 20;
+
+	private static final int DEPTH = 10;
+
+	private Model model;
+
+	@Before
+	public void setUp()
+	{
+		model = new Model();
+		model.beginUpdate();
+		try
+		{
+			// Linear tracks.
+			for ( int i = 0; i < N_LINEAR; i++ )
+			{
+				Spot previous = null;
+				for ( int t = 0; t < DEPTH; t++ )
+				{
+					final Spot spot = model.addSpotTo( new Spot( i, t, 0, 1, -1, "L" + i + "_" + t ), t );
+					if ( previous != null )
+						model.addEdge( previous, spot, 1 );
+					previous = spot;
+				}
+			}
+
+			// A dividing track.
+			final Spot root = model.addSpotTo( new Spot( 0, 0, 0, 1, -1, "D" ), 0 );
+			divide( root, 0, 4 );
+
+			// A track with a merge, which is not a tree.
+			final Spot a0 = model.addSpotTo( new Spot( 0, 0, 0, 1, -1, "MA_0" ), 0 );
+			final Spot a1 = model.addSpotTo( new Spot( 0, 0, 0, 1, -1, "MA_1" ), 1 );
+			final Spot b0 = model.addSpotTo( new Spot( 0, 0, 0, 1, -1, "MB_0" ), 0 );
+			final Spot b1 = model.addSpotTo( new Spot( 0, 0, 0, 1, -1, "MB_1" ), 1 );
+			final Spot nexus = model.addSpotTo( new Spot( 0, 0, 0, 1, -1, "M_NEXUS" ), 2 );
+			final Spot c3 = model.addSpotTo( new Spot( 0, 0, 0, 1, -1, "MC_3" ), 3 );
+			final Spot c5 = model.addSpotTo( new Spot( 0, 0, 0, 1, -1, "MC_5" ), 5 );
+			model.addEdge( a0, a1, 1 );
+			model.addEdge( b0, b1, 1 );
+			model.addEdge( a1, nexus, 1 );
+			model.addEdge( b1, nexus, 1 );
+			model.addEdge( nexus, c3, 1 );
+			model.addEdge( c3, c5, 1 );
+		}
+		finally
+		{
+			model.endUpdate();
+		}
+	}
+
+	private void divide( final Spot parent, final int frame, final int depth )
+	{
+		if ( depth == 0 )
+			return;
+		for ( int i = 0; i < 2; i++ )
+		{
+			final Spot child = model.addSpotTo( new Spot( 0, 0, 0, 1, -1, parent.getName() + i ), frame + 1 );
+			model.addEdge( parent, child, 1 );
+			divide( child, frame + 1, depth - 1 );
+		}
+	}
+
+	@Test
+	public void testCells()
+	{
+		final VirtualTrackSchemeLayout layout = VirtualTrackSchemeLayout.compute( model );
+		assertEquals( model.getTrackModel().vertexSet().size(), layout.nSpots() );
+		assertEquals( model.getTrackModel().nTracks( true ), layout.laneTrackID.length );
+
+		final Set< Long > cells = new HashSet<>();
+		for ( int s = 0; s < layout.nSpots(); s++ )
+		{
+			final Spot spot = layout.spots[ s ];
+			assertEquals( s, layout.indexOf( spot ) );
+			assertEquals( spot.getFeature( Spot.FRAME ).intValue(), layout.spotRow[ s ] );
+			assertTrue( "Two spots in the same cell.", cells.add( ( ( long ) layout.spotColumn[ s ] << 32 ) | layout.spotRow[ s ] ) );
+			assertEquals( s, layout.spotAt( layout.spotColumn[ s ], layout.spotRow[ s ] ) );
+
+			// Each spot lies in the lane of its track.
+			final int lane = layout.spotLane[ s ];
+			assertEquals( model.getTrackModel().trackIDOf( spot ), layout.laneTrackID[ lane ] );
+			assertTrue( layout.spotColumn[ s ] >= layout.laneFirstColumn[ lane ] );
+			assertTrue( layout.spotColumn[ s ] < layout.laneEndColumn[ lane ] );
+			assertEquals( lane, layout.laneAt( layout.spotColumn[ s ] ) );
+		}
+	}
+
+	@Test
+	public void testQueries()
+	{
+		final VirtualTrackSchemeLayout layout = VirtualTrackSchemeLayout.compute( model );
+		final Random ran = new Random( 12l );
+		for ( int i = 0; i < 200; i++ )
+		{
+			final int r0 = ran.nextInt( layout.nRows + 2 ) - 1;
+			final int r1 = r0 + ran.nextInt( layout.nRows );
+			final int c0 = ran.nextInt( layout.nColumns + 2 ) - 1;
+			final int c1 = c0 + ran.nextInt( layout.nColumns );
+
+			final Set< Integer > expectedSpots = new HashSet<>();
+			for ( int s = 0; s < layout.nSpots(); s++ )
+				if ( layout.spotRow[ s ] >= r0 && layout.spotRow[ s ] <= r1 && layout.spotColumn[ s ] >= c0 && layout.spotColumn[ s ] <= c1 )
+					expectedSpots.add( s );
+			final Set< Integer > spots = new HashSet<>();
+			layout.forEachSpot( r0, r1, c0, c1, s -> assertTrue( spots.add( s ) ) );
+			assertEquals( expectedSpots, spots );
+
+			final Set< Integer > expectedEdges = new HashSet<>();
+			for ( int e = 0; e < layout.edges.length; e++ )
+			{
+				final int s = layout.edgeSource[ e ];
+				final int t = layout.edgeTarget[ e ];
+				if ( Math.max( layout.spotRow[ s ], layout.spotRow[ t ] ) >= r0
+						&& Math.min( layout.spotRow[ s ], layout.spotRow[ t ] ) <= r1
+						&& Math.max( layout.spotColumn[ s ], layout.spotColumn[ t ] ) >= c0
+						&& Math.min( layout.spotColumn[ s ], layout.spotColumn[ t ] ) <= c1 )
+					expectedEdges.add( e );
+			}
+			final Set< Integer > edges = new HashSet<>();
+			layout.forEachEdge( r0, r1, c0, c1, false, e -> assertTrue( edges.add( e ) ) );
+			assertEquals( expectedEdges, edges );
+		}
+	}
+
+	@Test
+	public void testRuns()
+	{
+		final VirtualTrackSchemeLayout layout = VirtualTrackSchemeLayout.compute( model );
+
+		// Each spot is covered by exactly one run.
+		final int[] covered = new int[ layout.nSpots() ];
+		for ( int r = 0; r < layout.nRuns(); r++ )
+		{
+			if ( r > 0 )
+				assertTrue( layout.runColumn[ r ] >= layout.runColumn[ r - 1 ] );
+			final int run = r;
+			layout.forEachSpot( layout.runFirstRow[ r ], layout.runLastRow[ r ], layout.runColumn[ r ], layout.runColumn[ r ], s -> covered[ s ]++ );
+			layout.forEachRun( layout.runFirstRow[ r ], layout.runFirstRow[ r ], layout.runColumn[ r ], layout.runColumn[ r ], q -> assertEquals( run, q ) );
+		}
+		for ( final int c : covered )
+			assertEquals( 1, c );
+
+		// Linear tracks collapse into a single run.
+		int fullRuns = 0;
+		for ( int r = 0; r < layout.nRuns(); r++ )
+			if ( layout.runFirstRow[ r ] == 0 && layout.runLastRow[ r ] == DEPTH - 1 )
+				fullRuns++;
+		assertEquals( N_LINEAR, fullRuns );
+	}
+}